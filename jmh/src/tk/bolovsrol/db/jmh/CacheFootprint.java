@@ -0,0 +1,91 @@
+package tk.bolovsrol.db.jmh;
+
+import tk.bolovsrol.db.collections.ConcurrentLongHashMap;
+import tk.bolovsrol.db.collections.LongHashMap;
+import tk.bolovsrol.db.collections.LongHashSet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Сравнивает память, которую занимают старые и новые хранилища кэшей: карты ид→значение
+ * и сеты ид изменений. Значения общие для всех карт и в замер не входят, считается только накладной расход.
+ * <p>
+ * Это не JMH-бенчмарк, а самостоятельная программа: JMH измеряет время, а не занятую память.
+ * Запускать с достаточной кучей, например:
+ * <pre>
+ * java -Xmx4g -cp db.jar:jmh.jar tk.bolovsrol.db.jmh.CacheFootprint 5000000
+ * </pre>
+ * Первый аргумент — количество записей, по умолчанию миллион.
+ */
+public final class CacheFootprint {
+
+    /** Заполненная структура, которую нельзя собрать до замера. */
+    private static volatile Object sink;
+
+    private CacheFootprint() {}
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(Fixtures.SEED);
+        long[] ids = new long[count];
+        Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            // ид идут с пропусками, как в живой таблице
+            ids[i] = i * 3L + random.nextInt(3);
+            values[i] = new Object();
+        }
+
+        System.out.println("layout,entries,bytes,bytesPerEntry");
+        report("ConcurrentHashMap<Long,V> (RichVersionCache, old)", count, () -> fillMap(new ConcurrentHashMap<>(), ids, values));
+        report("ConcurrentLongHashMap<V> (RichVersionCache, new)", count, () -> fillMap(new ConcurrentLongHashMap<>(), ids, values));
+        report("LinkedHashMap<Long,V> (ManualCache, old)", count, () -> fillMap(new LinkedHashMap<>(), ids, values));
+        report("LongHashMap<V> (ManualCache, new)", count, () -> fillMap(new LongHashMap<>(), ids, values));
+        report("TreeSet<Long> (VersionIdChangesContainer, old)", count, () -> fillSet(new TreeSet<>(), ids));
+        report("LongHashSet (VersionIdChangesContainer, new)", count, () -> fillSet(new LongHashSet(), ids));
+    }
+
+    private static Object fillMap(Map<Long, Object> map, long[] ids, Object[] values) {
+        for (int i = 0; i < ids.length; i++) {
+            map.put(ids[i], values[i]);
+        }
+        return map;
+    }
+
+    private static Object fillSet(Set<Long> set, long[] ids) {
+        for (long id : ids) {
+            set.add(id);
+        }
+        return set;
+    }
+
+    private static void report(String layout, int count, Supplier<Object> filler) {
+        long before = usedMemory();
+        sink = filler.get();
+        long after = usedMemory();
+        sink = null;
+        long bytes = after - before;
+        System.out.println('"' + layout + "\"," + count + ',' + bytes + ',' + String.format("%.1f", (double) bytes / count));
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // сборщик не обязан собрать всё за один вызов, поэтому берём наименьший из нескольких замеров
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
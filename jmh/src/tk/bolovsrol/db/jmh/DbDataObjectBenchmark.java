@@ -0,0 +1,41 @@
+package tk.bolovsrol.db.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tk.bolovsrol.db.benchmark.BenchmarkTable;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Копирование значений полей между объектами одного класса. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DbDataObjectBenchmark {
+
+    @Param({"4", "16", "64"}) public int width;
+
+    private BenchmarkTable source;
+    private BenchmarkTable target;
+
+    @Setup public void setUp() {
+        source = Fixtures.newTable(width, new Random(Fixtures.SEED));
+        target = source.cleanCopy();
+    }
+
+    @Benchmark public BenchmarkTable copyTo() throws Exception {
+        return source.copyTo(target);
+    }
+}
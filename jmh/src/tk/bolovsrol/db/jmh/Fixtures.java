@@ -0,0 +1,39 @@
+package tk.bolovsrol.db.jmh;
+
+import tk.bolovsrol.db.benchmark.BenchmarkTable;
+import tk.bolovsrol.db.orm.fields.DbDataField;
+
+import java.util.List;
+import java.util.Random;
+
+/** Заготовки данных для бенчмарков. */
+final class Fixtures {
+
+    /** Сид, чтобы прогоны были сравнимы между собой. */
+    static final long SEED = 1302L;
+
+    private Fixtures() {}
+
+    /**
+     * Создаёт таблицу с указанным количеством полей каждого типа (инт, чар, деньги),
+     * заполненную случайными значениями, с ключевым полем.
+     */
+    static BenchmarkTable newTable(int width, Random random) {
+        BenchmarkTable table = new BenchmarkTable("bench", "benchmark", width, width, width);
+        table.setRandomValues(random);
+        table.idField().setValue((long) random.nextInt(Integer.MAX_VALUE));
+        return table;
+    }
+
+    /**
+     * Возвращает значения всех полей таблицы в порядке полей, как их вернул бы драйвер в ряду резалтсета.
+     */
+    static Object[] toRow(BenchmarkTable table) {
+        List<DbDataField<?, ?>> fields = table.fields();
+        Object[] row = new Object[fields.size()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = fields.get(i).getValue();
+        }
+        return row;
+    }
+}
@@ -0,0 +1,58 @@
+package tk.bolovsrol.db.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tk.bolovsrol.db.DatabaseDialect;
+import tk.bolovsrol.db.benchmark.BenchmarkTable;
+import tk.bolovsrol.db.jmh.fake.FakePreparedStatement;
+import tk.bolovsrol.db.orm.sql.conditions.In;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Запись условия IN с тысячами идентификаторов. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InBenchmark {
+
+    @Param({"1000", "10000"}) public int idsCount;
+
+    private In in;
+    private FakePreparedStatement ps;
+
+    @Setup public void setUp() {
+        Random random = new Random(Fixtures.SEED);
+        BenchmarkTable table = Fixtures.newTable(1, random);
+        List<Long> ids = new ArrayList<>(idsCount);
+        for (int i = 0; i < idsCount; i++) {
+            ids.add((long) random.nextInt(Integer.MAX_VALUE));
+        }
+        in = table.idField().in(ids);
+        ps = new FakePreparedStatement();
+    }
+
+    @Benchmark public String writeSqlExpression() throws Exception {
+        StringBuilder sb = new StringBuilder(256);
+        in.writeSqlExpression(sb, DatabaseDialect.MYSQL, null);
+        return sb.toString();
+    }
+
+    @Benchmark public int putValues() throws Exception {
+        return in.putValues(ps, 1);
+    }
+}
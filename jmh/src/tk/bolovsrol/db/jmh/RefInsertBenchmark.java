@@ -0,0 +1,61 @@
+package tk.bolovsrol.db.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tk.bolovsrol.db.DatabaseDialect;
+import tk.bolovsrol.db.benchmark.BenchmarkTable;
+import tk.bolovsrol.db.jmh.fake.FakePreparedStatement;
+import tk.bolovsrol.db.orm.sql.statements.insert.RefInsert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Генерация и заполнение параметрами пакетного инсерта. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RefInsertBenchmark {
+
+    @Param({"100", "1000"}) public int bunchSize;
+
+    @Param({"8"}) public int width;
+
+    private RefInsert insert;
+    private FakePreparedStatement ps;
+
+    @Setup public void setUp() {
+        Random random = new Random(Fixtures.SEED);
+        BenchmarkTable template = Fixtures.newTable(width, random);
+        List<BenchmarkTable> bunch = new ArrayList<>(bunchSize);
+        for (int i = 0; i < bunchSize; i++) {
+            BenchmarkTable copy = template.cleanCopy();
+            copy.setRandomValues(random);
+            bunch.add(copy);
+        }
+        insert = new RefInsert(bunch);
+        insert.setAllowLogging(false);
+        ps = new FakePreparedStatement();
+    }
+
+    @Benchmark public int putValues() throws Exception {
+        return insert.putValues(ps, 1);
+    }
+
+    @Benchmark public String generateSqlExpression() throws Exception {
+        return insert.generateSqlExpression(DatabaseDialect.MYSQL, false);
+    }
+}
@@ -0,0 +1,82 @@
+package tk.bolovsrol.db.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tk.bolovsrol.db.DatabaseDialect;
+import tk.bolovsrol.db.benchmark.BenchmarkTable;
+import tk.bolovsrol.db.jmh.fake.FakePreparedStatement;
+import tk.bolovsrol.db.jmh.fake.FakeResultSet;
+import tk.bolovsrol.db.orm.sql.statements.SqlTemplate;
+import tk.bolovsrol.db.orm.sql.statements.select.Select;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Генерация, заполнение параметрами и разбор результата селекта по широкой таблице.
+ * <p>
+ * Селект с условием по ключу, сортировкой и лимитом; ширина таблицы -- количество полей каждого типа.
+ * {@link #generateAndBind()} и {@link #templateAndBind()} сравнивают обычное исполнение
+ * со скомпилированным шаблоном ({@link SqlTemplate}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectBenchmark {
+
+    @Param({"4", "16", "64"}) public int width;
+
+    private BenchmarkTable table;
+    private Select select;
+    private SqlTemplate template;
+    private FakePreparedStatement ps;
+    private FakeResultSet rs;
+
+    @Setup public void setUp() throws Exception {
+        Random random = new Random(Fixtures.SEED);
+        BenchmarkTable source = Fixtures.newTable(width, random);
+        table = source.cleanCopy();
+        table.idField().setValue(source.idField().getValue());
+        select = table.select().where(table.idField().eqSelf()).orderBy(table.idField()).limit(100).allowLogging(false);
+        template = select.compile(DatabaseDialect.MYSQL);
+        ps = new FakePreparedStatement();
+        rs = new FakeResultSet(Fixtures.toRow(source));
+    }
+
+    @Benchmark public String writeSqlExpression() throws Exception {
+        StringBuilder sb = new StringBuilder(256);
+        select.writeSqlExpression(sb, DatabaseDialect.MYSQL);
+        return sb.toString();
+    }
+
+    @Benchmark public int generateAndBind() throws Exception {
+        String sql = select.generateSqlExpression(DatabaseDialect.MYSQL, false);
+        return select.putValues(ps, 1) + sql.length();
+    }
+
+    @Benchmark public int templateAndBind() throws Exception {
+        String sql = template.getSql();
+        return template.putValues(ps, 1) + sql.length();
+    }
+
+    @Benchmark public int pickValues() throws Exception {
+        return select.pickValues(rs.moveTo(0), 1);
+    }
+
+    /** Генерация текста с подставленными значениями, как для лога; за вычетом {@link #writeSqlExpression()} -- подстановка. */
+    @Benchmark public String fillInPlaceholders() throws Exception {
+        return select.generateSqlExpression(DatabaseDialect.MYSQL, true);
+    }
+}
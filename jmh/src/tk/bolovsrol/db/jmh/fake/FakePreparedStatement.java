@@ -0,0 +1,214 @@
+package tk.bolovsrol.db.jmh.fake;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * Подготовленное выражение без драйвера: запоминает записанные параметры и ничего не исполняет.
+ * <p>
+ * {@link #executeQuery()} возвращает заданный при создании резалтсет (перемотанный в начало),
+ * {@link #executeUpdate()} сообщает об одном изменённом ряде.
+ * Методы, которыми ORM не пользуется, бросают {@link SQLFeatureNotSupportedException}.
+ */
+public class FakePreparedStatement implements PreparedStatement {
+
+    private final FakeResultSet resultSet;
+    private Object[] parameters = new Object[64];
+    private int parametersCount = 0;
+    private int fetchSize = 0;
+    private boolean closed = false;
+
+    public FakePreparedStatement() {
+        this(new FakeResultSet());
+    }
+
+    public FakePreparedStatement(FakeResultSet resultSet) {
+        this.resultSet = resultSet;
+    }
+
+    /** @return количество записанных параметров (наибольший номер) */
+    public int getParametersCount() {
+        return parametersCount;
+    }
+
+    /**
+     * @param parameterIndex номер параметра, с единицы
+     * @return записанное значение параметра
+     */
+    public Object getParameter(int parameterIndex) {
+        return parameters[parameterIndex - 1];
+    }
+
+    private static SQLException unsupported() {
+        return new SQLFeatureNotSupportedException("Not supported by fake prepared statement");
+    }
+
+    private void set(int parameterIndex, Object value) throws SQLException {
+        if (closed) {
+            throw new SQLException("Statement is closed");
+        }
+        if (parameterIndex > parameters.length) {
+            parameters = Arrays.copyOf(parameters, Math.max(parameterIndex, parameters.length << 1));
+        }
+        parameters[parameterIndex - 1] = value;
+        if (parameterIndex > parametersCount) {
+            parametersCount = parameterIndex;
+        }
+    }
+
+    @Override public void setNull(int parameterIndex, int sqlType) throws SQLException {set(parameterIndex, null);}
+
+    @Override public void setBoolean(int parameterIndex, boolean x) throws SQLException {set(parameterIndex, x);}
+
+    @Override public void setByte(int parameterIndex, byte x) throws SQLException {set(parameterIndex, x);}
+
+    @Override public void setShort(int parameterIndex, short x) throws SQLException {set(parameterIndex, x);}
+
+    @Override public void setInt(int parameterIndex, int x) throws SQLException {set(parameterIndex, x);}
+
+    @Override public void setLong(int parameterIndex, long x) throws SQLException {set(parameterIndex, x);}
+
+    @Override public void setFloat(int parameterIndex, float x) throws SQLException {set(parameterIndex, x);}
+
+    @Override public void setDouble(int parameterIndex, double x) throws SQLException {set(parameterIndex, x);}
+
+    @Override public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {set(parameterIndex, x);}
+
+    @Override public void setString(int parameterIndex, String x) throws SQLException {set(parameterIndex, x);}
+
+    @Override public void setBytes(int parameterIndex, byte[] x) throws SQLException {set(parameterIndex, x);}
+
+    @Override public void setDate(int parameterIndex, Date x) throws SQLException {set(parameterIndex, x);}
+
+    @Override public void setTime(int parameterIndex, Time x) throws SQLException {set(parameterIndex, x);}
+
+    @Override public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {set(parameterIndex, x);}
+
+    @Override public void setObject(int parameterIndex, Object x) throws SQLException {set(parameterIndex, x);}
+
+    @Override public void clearParameters() throws SQLException {
+        Arrays.fill(parameters, 0, parametersCount, null);
+        parametersCount = 0;
+    }
+
+    @Override public ResultSet executeQuery() throws SQLException {return resultSet.rewind();}
+
+    @Override public int executeUpdate() throws SQLException {return 1;}
+
+    @Override public boolean execute() throws SQLException {return false;}
+
+    @Override public void addBatch() throws SQLException {}
+
+    @Override public void clearBatch() throws SQLException {}
+
+    @Override public int[] executeBatch() throws SQLException {return new int[0];}
+
+    @Override public void setFetchSize(int rows) throws SQLException {fetchSize = rows;}
+
+    @Override public int getFetchSize() throws SQLException {return fetchSize;}
+
+    @Override public SQLWarning getWarnings() throws SQLException {return null;}
+
+    @Override public void clearWarnings() throws SQLException {}
+
+    @Override public boolean isCloseOnCompletion() throws SQLException {return false;}
+
+    @Override public void close() throws SQLException {closed = true;}
+
+    @Override public boolean isClosed() throws SQLException {return closed;}
+
+    // -------- всё прочее не поддерживается
+
+    @Override public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {throw unsupported();}
+    @Override public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {throw unsupported();}
+    @Override public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {throw unsupported();}
+    @Override public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {throw unsupported();}
+    @Override public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {throw unsupported();}
+    @Override public void setRef(int parameterIndex, Ref x) throws SQLException {throw unsupported();}
+    @Override public void setBlob(int parameterIndex, Blob x) throws SQLException {throw unsupported();}
+    @Override public void setClob(int parameterIndex, Clob x) throws SQLException {throw unsupported();}
+    @Override public void setArray(int parameterIndex, Array x) throws SQLException {throw unsupported();}
+    @Override public ResultSetMetaData getMetaData() throws SQLException {throw unsupported();}
+    @Override public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {throw unsupported();}
+    @Override public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {throw unsupported();}
+    @Override public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {throw unsupported();}
+    @Override public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {throw unsupported();}
+    @Override public void setURL(int parameterIndex, URL x) throws SQLException {throw unsupported();}
+    @Override public ParameterMetaData getParameterMetaData() throws SQLException {throw unsupported();}
+    @Override public void setRowId(int parameterIndex, RowId x) throws SQLException {throw unsupported();}
+    @Override public void setNString(int parameterIndex, String value) throws SQLException {throw unsupported();}
+    @Override public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {throw unsupported();}
+    @Override public void setNClob(int parameterIndex, NClob value) throws SQLException {throw unsupported();}
+    @Override public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {throw unsupported();}
+    @Override public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {throw unsupported();}
+    @Override public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {throw unsupported();}
+    @Override public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {throw unsupported();}
+    @Override public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {throw unsupported();}
+    @Override public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {throw unsupported();}
+    @Override public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {throw unsupported();}
+    @Override public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {throw unsupported();}
+    @Override public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {throw unsupported();}
+    @Override public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {throw unsupported();}
+    @Override public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {throw unsupported();}
+    @Override public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {throw unsupported();}
+    @Override public void setClob(int parameterIndex, Reader reader) throws SQLException {throw unsupported();}
+    @Override public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {throw unsupported();}
+    @Override public void setNClob(int parameterIndex, Reader reader) throws SQLException {throw unsupported();}
+    @Override public ResultSet executeQuery(String sql) throws SQLException {throw unsupported();}
+    @Override public int executeUpdate(String sql) throws SQLException {throw unsupported();}
+    @Override public int getMaxFieldSize() throws SQLException {throw unsupported();}
+    @Override public void setMaxFieldSize(int max) throws SQLException {throw unsupported();}
+    @Override public int getMaxRows() throws SQLException {throw unsupported();}
+    @Override public void setMaxRows(int max) throws SQLException {throw unsupported();}
+    @Override public void setEscapeProcessing(boolean enable) throws SQLException {throw unsupported();}
+    @Override public int getQueryTimeout() throws SQLException {throw unsupported();}
+    @Override public void setQueryTimeout(int seconds) throws SQLException {throw unsupported();}
+    @Override public void cancel() throws SQLException {throw unsupported();}
+    @Override public void setCursorName(String name) throws SQLException {throw unsupported();}
+    @Override public boolean execute(String sql) throws SQLException {throw unsupported();}
+    @Override public ResultSet getResultSet() throws SQLException {throw unsupported();}
+    @Override public int getUpdateCount() throws SQLException {throw unsupported();}
+    @Override public boolean getMoreResults() throws SQLException {throw unsupported();}
+    @Override public void setFetchDirection(int direction) throws SQLException {throw unsupported();}
+    @Override public int getFetchDirection() throws SQLException {throw unsupported();}
+    @Override public int getResultSetConcurrency() throws SQLException {throw unsupported();}
+    @Override public int getResultSetType() throws SQLException {throw unsupported();}
+    @Override public void addBatch(String sql) throws SQLException {throw unsupported();}
+    @Override public Connection getConnection() throws SQLException {throw unsupported();}
+    @Override public boolean getMoreResults(int current) throws SQLException {throw unsupported();}
+    @Override public ResultSet getGeneratedKeys() throws SQLException {throw unsupported();}
+    @Override public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {throw unsupported();}
+    @Override public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {throw unsupported();}
+    @Override public int executeUpdate(String sql, String[] columnNames) throws SQLException {throw unsupported();}
+    @Override public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {throw unsupported();}
+    @Override public boolean execute(String sql, int[] columnIndexes) throws SQLException {throw unsupported();}
+    @Override public boolean execute(String sql, String[] columnNames) throws SQLException {throw unsupported();}
+    @Override public int getResultSetHoldability() throws SQLException {throw unsupported();}
+    @Override public void setPoolable(boolean poolable) throws SQLException {throw unsupported();}
+    @Override public boolean isPoolable() throws SQLException {throw unsupported();}
+    @Override public void closeOnCompletion() throws SQLException {throw unsupported();}
+    @Override public <T> T unwrap(Class<T> iface) throws SQLException {throw unsupported();}
+    @Override public boolean isWrapperFor(Class<?> iface) throws SQLException {throw unsupported();}
+}
@@ -0,0 +1,67 @@
+package tk.bolovsrol.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Диалект SQL, на котором генераторы выражений пишут для конкретной СУБД.
+ * <p/>
+ * Определяется по {@link java.sql.DatabaseMetaData#getDatabaseProductName()}, см. {@link DatabaseProductNames}.
+ * Соединения из пула знают свой диалект заранее, см. {@link #of(Connection)}.
+ */
+public enum DatabaseDialect {
+    MYSQL(DatabaseProductNames.MYSQL),
+    POSTGRESQL(DatabaseProductNames.POSTGRESQL),
+    ORACLE(DatabaseProductNames.ORACLE),
+    /** Встраиваемая HyperSQL, см. {@link tk.bolovsrol.db.pool.HsqldbMetaDataSourceProvider}. */
+    HSQLDB(DatabaseProductNames.HSQLDB),
+    /** Прочие СУБД, для которых специального синтаксиса нет. */
+    OTHER(null);
+
+    private final String productName;
+
+    DatabaseDialect(String productName) {
+        this.productName = productName;
+    }
+
+    /** @return название СУБД из {@link DatabaseProductNames} или null для {@link #OTHER} */
+    public String getProductName() {
+        return productName;
+    }
+
+    /**
+     * Возвращает диалект по названию СУБД.
+     *
+     * @param productName название СУБД, как его возвращает драйвер
+     * @return диалект, {@link #OTHER} для неизвестных СУБД
+     */
+    public static DatabaseDialect forProductName(String productName) {
+        for (DatabaseDialect dialect : values()) {
+            if (dialect.productName != null && dialect.productName.equals(productName)) {
+                return dialect;
+            }
+        }
+        return OTHER;
+    }
+
+    /**
+     * Возвращает диалект СУБД соединения.
+     * <p/>
+     * Соединения, знающие свой диалект ({@link DialectAware}), отвечают сразу,
+     * у остальных спрашиваются метаданные.
+     *
+     * @param con соединение
+     * @return диалект
+     * @throws SQLException
+     */
+    public static DatabaseDialect of(Connection con) throws SQLException {
+        if (con instanceof DialectAware) {
+            return ((DialectAware) con).getDialect();
+        }
+        return forProductName(con.getMetaData().getDatabaseProductName());
+    }
+
+    @Override public String toString() {
+        return productName == null ? name() : productName;
+    }
+}
@@ -10,6 +10,7 @@ public final class DatabaseProductNames {
     public static final String MYSQL = "MySQL";
     public static final String POSTGRESQL = "PostgreSQL";
     public static final String ORACLE = "Oracle";
+    public static final String HSQLDB = "HSQL Database Engine";
 
     private DatabaseProductNames() {
     }
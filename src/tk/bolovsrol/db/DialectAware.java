@@ -0,0 +1,13 @@
+package tk.bolovsrol.db;
+
+import java.sql.SQLException;
+
+/** Соединение, которое знает диалект своей СУБД и не ходит за ним в метаданные. */
+public interface DialectAware {
+
+    /**
+     * @return диалект СУБД соединения
+     * @throws SQLException
+     */
+    DatabaseDialect getDialect() throws SQLException;
+}
@@ -1,10 +1,12 @@
 package tk.bolovsrol.db.benchmark;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.benchmark.fields.RandomableBigDecimalDbField;
 import tk.bolovsrol.db.benchmark.fields.RandomableField;
 import tk.bolovsrol.db.benchmark.fields.RandomableIntegerDbField;
 import tk.bolovsrol.db.benchmark.fields.RandomableStringDbField;
 import tk.bolovsrol.db.orm.object.AbstractRefDbDataObject;
+import tk.bolovsrol.db.orm.sql.DbException;
 
 import java.util.Random;
 
@@ -55,6 +57,44 @@ public class BenchmarkTable extends AbstractRefDbDataObject {
         return result;
     }
 
+    /**
+     * Генерирует команду создания таблицы, если её ещё нет.
+     * <p>
+     * В отличие от {@link #generateSqlCreateTableTemplate()}, команда готова к исполнению.
+     * Нужна, чтобы гонять бенчмарк на пустой встраиваемой БД.
+     *
+     * @param dialect СУБД
+     * @return команда CREATE TABLE
+     * @throws DbException для СУБД не умеем генерировать автоинкремент
+     */
+    public String generateSqlCreateTable(DatabaseDialect dialect) throws DbException {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("CREATE TABLE IF NOT EXISTS \"").append(getSqlCatalogName()).append("\".\"").append(getSqlTableName()).append("\"(\"");
+        sb.append(idField().getName());
+        switch (dialect) {
+        case MYSQL:
+            sb.append("\" BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY");
+            break;
+        case HSQLDB:
+            sb.append("\" BIGINT GENERATED BY DEFAULT AS IDENTITY (START WITH 1) PRIMARY KEY");
+            break;
+        default:
+            throw new DbException("Cannot create benchmark table for DB " + dialect);
+        }
+        for (RandomableField dataField : dataFields) {
+            sb.append(",\"").append(dataField.getName()).append('"');
+            if (dataField instanceof RandomableIntegerDbField) {
+                sb.append(" INT");
+            } else if (dataField instanceof RandomableStringDbField) {
+                sb.append(" VARCHAR(64)");
+            } else {
+                sb.append(" DECIMAL(12,").append(((RandomableBigDecimalDbField) dataField).getDbScale()).append(')');
+            }
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
     public BenchmarkTable cleanCopy() {
         return new BenchmarkTable(getSqlCatalogName(), getSqlTableName(), intsCount, stringsCount, bigDecimalsCount);
     }
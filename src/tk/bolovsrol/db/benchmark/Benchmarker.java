@@ -1,8 +1,10 @@
 package tk.bolovsrol.db.benchmark;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.benchmark.threads.InserterThread;
 import tk.bolovsrol.db.benchmark.threads.SelecterThread;
 import tk.bolovsrol.db.benchmark.threads.UpdaterThread;
+import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.statements.truncate.Truncate;
 import tk.bolovsrol.db.pool.ConnectionManager;
 import tk.bolovsrol.utils.Spell;
@@ -16,11 +18,16 @@ import tk.bolovsrol.utils.properties.Cfg;
 import tk.bolovsrol.utils.threads.Suspendable;
 import tk.bolovsrol.utils.threads.Suspendables;
 import tk.bolovsrol.utils.time.Duration;
-import tk.bolovsrol.utils.time.SleepUtils;
 import tk.bolovsrol.utils.time.TimeUtils;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Random;
 
 public final class Benchmarker {
@@ -34,6 +41,7 @@ public final class Benchmarker {
         @Param(desc = "количество инт-полей в таблице") public int intFieldsCount = 8;
         @Param(desc = "количество чар-полей (на 64 символа) в таблице") public int charFieldsCount = 8;
         @Param(desc = "количество денежных полей (2 десятичных цифры) в таблице") public int moneyFieldsCount = 4;
+        @Param(desc = "создавать схему и таблицы, если их нет, например, для встраиваемой БД") public boolean createTables = false;
 
         @Param(desc = "сид для рандом-генератора") public long seed = 1302;
 
@@ -48,7 +56,10 @@ public final class Benchmarker {
         @Param(desc = "максимальное количество записей, которое можно читать за раз") public int maxSelectBunchSize = 10240;
         @Param(desc = "лог для селектера") public String selecterLog = null;
 
+        @Param(desc = "длительность разогрева, результаты которого не попадают в итог") public Duration warmupDuration = new Duration(10L * TimeUtils.MS_IN_SECOND);
         @Param(desc = "длительность теста") public Duration testDuration = new Duration(TimeUtils.MS_IN_MINUTE);
+        @Param(desc = "интервал промежуточных отчётов") public Duration reportInterval = new Duration(10L * TimeUtils.MS_IN_SECOND);
+        @Param(desc = "файл, куда писать результаты по интервалам и итоги в формате CSV") public String resultFile = null;
     }
 
     public static void main(String[] args) throws UnexpectedBehaviourException {
@@ -63,6 +74,10 @@ public final class Benchmarker {
 
             BenchmarkTable[] tables = BenchmarkTable.newTables(c.tableCount, c.sqlCatalogName, c.sqlTableName, c.intFieldsCount, c.charFieldsCount, c.moneyFieldsCount);
             log.hint("Opeating with " + Spell.get(tables.length) + " tables");
+            if (c.createTables) {
+                log.hint("Creating tables...");
+                createTables(c.sqlCatalogName, tables);
+            }
             log.hint("Truncating...");
             truncate(tables);
 
@@ -96,60 +111,82 @@ public final class Benchmarker {
                 }
             }
 
-            log.hint("Starting, then waiting for " + c.testDuration);
-            for (Suspendable thread : threads) {
-                thread.start();
-            }
+            OperationStats[] operations = {
+                new OperationStats("insert", inserters),
+                new OperationStats("update", updaters),
+                new OperationStats("select", selecters),
+            };
 
-            SleepUtils.sleepAtLeast(c.testDuration);
+            try (PrintWriter out = c.resultFile == null ? null : new PrintWriter(Files.newBufferedWriter(Paths.get(c.resultFile), StandardCharsets.UTF_8))) {
+                if (out != null) {
+                    out.println(OperationStats.CSV_HEADER);
+                }
 
-            log.hint("Stop!");
-            Suspendables.shutdown(threads);
+                log.hint("Starting, warming up for " + c.warmupDuration + ", then measuring for " + c.testDuration);
+                for (Suspendable thread : threads) {
+                    thread.start();
+                }
 
-            long insertsPerformed = 0L, rowsInserted = 0L, selectsPerformed = 0L, rowsSelected = 0L, updatesPerformed = 0L;
-            for (InserterThread inserter : inserters) {
-                insertsPerformed += inserter.getInsertsPerformed();
-                rowsInserted += inserter.getRowsInserted();
-            }
-            for (UpdaterThread updater : updaters) {
-                updatesPerformed += updater.getUpdatesPerformed();
-            }
-            for (SelecterThread selecter : selecters) {
-                selectsPerformed += selecter.getSelectsPerformed();
-                rowsSelected += selecter.getRowsSelected();
-            }
+                runPhase(log, out, "warmup", operations, c.warmupDuration.getMillis(), c.reportInterval.getMillis(), false);
+                long measureStart = System.currentTimeMillis();
+                runPhase(log, out, "measure", operations, c.testDuration.getMillis(), c.reportInterval.getMillis(), true);
 
-            long elapsedSeconds = c.testDuration.getMillis() / TimeUtils.MS_IN_SECOND;
-
-            log.hint("So, in " + c.testDuration + ':');
-            long rowsInsertedInSec = rowsInserted / elapsedSeconds;
-            long insertsPerformedInSec = insertsPerformed / elapsedSeconds;
-            log.hint(
-                "Inserted " + rowsInserted + " rows in " + insertsPerformed + " statements; "
-                    + rowsInsertedInSec + " rows/sec, " + insertsPerformedInSec + " inserts/sec in " + c.inserterCount + " threads; "
-                    + rowsInsertedInSec / c.inserterCount + " rows/sec, " + insertsPerformedInSec / c.inserterCount + " inserts/sec for a single thread"
-            );
-            long updatesPerformedInSec = updatesPerformed / elapsedSeconds;
-            log.hint(
-                "Selected-and-then-updated " + updatesPerformed + " rows; "
-                    + updatesPerformedInSec + " operations/sec in " + c.updaterCount + " threads; "
-                    + updatesPerformedInSec / c.updaterCount + " operations/sec for a single thread"
-            );
-            long rowsSelectedInSec = rowsSelected / elapsedSeconds;
-            long selectsPerformedInSec = selectsPerformed / elapsedSeconds;
-            log.hint(
-                "Selected " + rowsSelected + " rows in " + selectsPerformed + " statements; "
-                    + rowsSelectedInSec + " rows/sec, " + selectsPerformedInSec + " selects/sec in " + c.selecterCount + " threads; "
-                    + rowsSelectedInSec / c.selecterCount + " rows/sec, " + selectsPerformedInSec / c.selecterCount + " selects/sec for a single thread"
-            );
+                log.hint("Stop!");
+                Suspendables.shutdown(threads);
+
+                log.hint("So, in " + c.testDuration + ':');
+                for (OperationStats operation : operations) {
+                    operation.reportTotal(log, out, measureStart);
+                }
+            }
 
         } catch (InvalidConfigurationException | InterruptedException e) {
             log.warning(e);
-        } catch (SQLException e) {
+        } catch (SQLException | DbException | IOException e) {
             log.exception(e);
         }
     }
 
+    /**
+     * Ждёт окончания фазы, по окончании каждого интервала отчитываясь о каждом виде операций.
+     *
+     * @param log лог
+     * @param out файл результатов или null
+     * @param phase название фазы
+     * @param operations виды операций
+     * @param durationMillis длительность фазы
+     * @param intervalMillis длительность интервала
+     * @param measured true для фазы измерения, чьи интервалы попадают в итог
+     * @throws InterruptedException
+     */
+    private static void runPhase(LogDome log, PrintWriter out, String phase, OperationStats[] operations, long durationMillis, long intervalMillis, boolean measured) throws InterruptedException {
+        long intervalStart = System.currentTimeMillis();
+        long phaseEnd = intervalStart + durationMillis;
+        while (intervalStart < phaseEnd) {
+            long intervalEnd = Math.min(intervalStart + intervalMillis, phaseEnd);
+            long now;
+            while ((now = System.currentTimeMillis()) < intervalEnd) {
+                Thread.sleep(intervalEnd - now);
+            }
+            for (OperationStats operation : operations) {
+                operation.closeInterval(log, out, phase, intervalStart, now - intervalStart, measured);
+            }
+            intervalStart = now;
+        }
+    }
+
+    private static void createTables(String sqlCatalogName, BenchmarkTable[] tables) throws SQLException, InterruptedException, DbException {
+        try (Connection con = ConnectionManager.getConnection()) {
+            DatabaseDialect dialect = DatabaseDialect.of(con);
+            try (Statement st = con.createStatement()) {
+                st.execute("CREATE SCHEMA IF NOT EXISTS \"" + sqlCatalogName + '"');
+                for (BenchmarkTable table : tables) {
+                    st.execute(table.generateSqlCreateTable(dialect));
+                }
+            }
+        }
+    }
+
     private static void truncate(BenchmarkTable[] tables) throws SQLException, InterruptedException {
         try (Connection con = ConnectionManager.getConnection()) {
             for (BenchmarkTable table : tables) {
@@ -0,0 +1,95 @@
+package tk.bolovsrol.db.benchmark;
+
+import tk.bolovsrol.db.benchmark.threads.AbstractWorkerThread;
+import tk.bolovsrol.db.stats.Histogram;
+import tk.bolovsrol.utils.log.LogDome;
+
+import java.io.PrintWriter;
+
+/**
+ * Статистика одного вида операций бенчмарка, собранная со всех нитей этого вида.
+ * <p>
+ * По окончании каждого интервала снимает с нитей накопленные длительности и количество рядов,
+ * пишет в лог и в файл результатов пропускную способность и процентили за интервал.
+ * Интервалы фазы измерения накапливаются в итог.
+ */
+class OperationStats {
+
+    /** Заголовок файла результатов, колонки через запятую. */
+    static final String CSV_HEADER = "phase,operation,threads,startMs,durationMs,ops,opsPerSec,rows,rowsPerSec,meanUs,p50Us,p99Us,p999Us,maxUs";
+
+    private final String name;
+    private final AbstractWorkerThread[] workers;
+    private final long[] lastRows;
+
+    private final Histogram total = new Histogram();
+    private long totalRows = 0L;
+    private long totalMillis = 0L;
+
+    OperationStats(String name, AbstractWorkerThread[] workers) {
+        this.name = name;
+        this.workers = workers;
+        this.lastRows = new long[workers.length];
+    }
+
+    /**
+     * Завершает интервал: снимает статистику с нитей и отчитывается о ней.
+     *
+     * @param log куда писать человекочитаемый отчёт
+     * @param out куда писать строку результата или null
+     * @param phase название фазы
+     * @param startMillis начало интервала
+     * @param durationMillis длительность интервала
+     * @param measured true, если интервал относится к фазе измерения и должен попасть в итог
+     */
+    void closeInterval(LogDome log, PrintWriter out, String phase, long startMillis, long durationMillis, boolean measured) {
+        Histogram interval = new Histogram();
+        long rows = 0L;
+        for (int i = 0; i < workers.length; i++) {
+            interval.add(workers[i].getLatencies().snapshotAndReset());
+            long workerRows = workers[i].getRowsProcessed();
+            rows += workerRows - lastRows[i];
+            lastRows[i] = workerRows;
+        }
+        Histogram.Snapshot snapshot = interval.snapshot();
+        if (measured) {
+            total.add(snapshot);
+            totalRows += rows;
+            totalMillis += durationMillis;
+        }
+        report(log, out, phase, startMillis, durationMillis, snapshot, rows);
+    }
+
+    /**
+     * Отчитывается об итогах фазы измерения.
+     *
+     * @param log куда писать человекочитаемый отчёт
+     * @param out куда писать строку результата или null
+     * @param startMillis начало фазы измерения
+     */
+    void reportTotal(LogDome log, PrintWriter out, long startMillis) {
+        report(log, out, "total", startMillis, totalMillis, total.snapshot(), totalRows);
+    }
+
+    private void report(LogDome log, PrintWriter out, String phase, long startMillis, long durationMillis, Histogram.Snapshot snapshot, long rows) {
+        long opsPerSec = perSecond(snapshot.getCount(), durationMillis);
+        long rowsPerSec = perSecond(rows, durationMillis);
+        log.hint(
+            phase + ' ' + name + " in " + workers.length + " threads: "
+                + snapshot.getCount() + " ops, " + opsPerSec + " ops/sec, "
+                + rows + " rows, " + rowsPerSec + " rows/sec; latency us " + snapshot
+        );
+        if (out != null) {
+            out.println(
+                phase + ',' + name + ',' + workers.length + ',' + startMillis + ',' + durationMillis + ','
+                    + snapshot.getCount() + ',' + opsPerSec + ',' + rows + ',' + rowsPerSec + ','
+                    + Math.round(snapshot.getMean()) + ',' + snapshot.getP50() + ',' + snapshot.getP99() + ',' + snapshot.getP999() + ',' + snapshot.getMax()
+            );
+            out.flush();
+        }
+    }
+
+    private static long perSecond(long quantity, long durationMillis) {
+        return durationMillis <= 0L ? 0L : quantity * 1000L / durationMillis;
+    }
+}
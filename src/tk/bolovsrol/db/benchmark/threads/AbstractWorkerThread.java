@@ -1,6 +1,7 @@
 package tk.bolovsrol.db.benchmark.threads;
 
 import tk.bolovsrol.db.benchmark.BenchmarkTable;
+import tk.bolovsrol.db.stats.Histogram;
 import tk.bolovsrol.utils.log.LogDome;
 import tk.bolovsrol.utils.threads.HaltableThread;
 
@@ -12,6 +13,9 @@ public abstract class AbstractWorkerThread extends HaltableThread {
     protected final BenchmarkTable[] tables;
     protected final Random random;
 
+    /** Длительности операций в микросекундах. */
+    private final Histogram latencies = new Histogram();
+
     public AbstractWorkerThread(String name, LogDome log, BenchmarkTable[] tables, Random random) {
         super(name);
         this.log = log;
@@ -22,7 +26,9 @@ public abstract class AbstractWorkerThread extends HaltableThread {
     @Override public void run() {
         try {
             while (!isInterrupted()) {
+                long start = System.nanoTime();
                 work();
+                latencies.record((System.nanoTime() - start) / 1000L);
             }
         } catch (InterruptedException e) {
             // job is over
@@ -35,5 +41,16 @@ public abstract class AbstractWorkerThread extends HaltableThread {
         return tables[random.nextInt(tables.length)];
     }
 
+    /**
+     * Гистограмма длительностей выполненных операций (вызовов {@link #work()}) в микросекундах.
+     * Читающий может снимать с неё снимки, пока нить работает.
+     */
+    public Histogram getLatencies() {
+        return latencies;
+    }
+
+    /** @return количество обработанных нитью рядов; можно читать, пока нить работает */
+    public abstract long getRowsProcessed();
+
     abstract protected void work() throws Exception;
 }
@@ -18,8 +18,8 @@ import java.util.Random;
 public class InserterThread extends AbstractWorkerThread {
     private final int maxBunchSize;
 
-    private long insertsPerformed;
-    private long rowsInserted;
+    private volatile long insertsPerformed;
+    private volatile long rowsInserted;
 
     public InserterThread(String name, LogDome log, BenchmarkTable[] tables, Random random, int maxBunchSize) {
         super(name, log, tables, random);
@@ -53,4 +53,8 @@ public class InserterThread extends AbstractWorkerThread {
     public long getRowsInserted() {
         return rowsInserted;
     }
+
+    @Override public long getRowsProcessed() {
+        return rowsInserted;
+    }
 }
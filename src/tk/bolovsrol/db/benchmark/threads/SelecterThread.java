@@ -17,8 +17,8 @@ import java.util.Random;
 public class SelecterThread extends AbstractWorkerThread {
     private final int maxLimit;
 
-    private long selectsPerformed = 0;
-    private long rowsSelected = 0;
+    private volatile long selectsPerformed = 0;
+    private volatile long rowsSelected = 0;
 
     public SelecterThread(String name, LogDome log, BenchmarkTable[] tables, Random random, int maxLimit) {
         super(name, log, tables, random);
@@ -47,4 +47,8 @@ public class SelecterThread extends AbstractWorkerThread {
     public long getRowsSelected() {
         return rowsSelected;
     }
+
+    @Override public long getRowsProcessed() {
+        return rowsSelected;
+    }
 }
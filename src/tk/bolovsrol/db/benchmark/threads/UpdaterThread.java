@@ -12,7 +12,7 @@ import java.util.Random;
  * Развлекается, селектя случайные индивидуальные записи, обновляя им поля  и апдейтя их обратно.
  */
 public class UpdaterThread extends AbstractWorkerThread {
-    private long updatesPerformed;
+    private volatile long updatesPerformed;
 
     public UpdaterThread(String name, LogDome log, BenchmarkTable[] tables, Random random) {
         super(name, log, tables, random);
@@ -37,4 +37,8 @@ public class UpdaterThread extends AbstractWorkerThread {
     public long getUpdatesPerformed() {
         return updatesPerformed;
     }
+
+    @Override public long getRowsProcessed() {
+        return updatesPerformed;
+    }
 }
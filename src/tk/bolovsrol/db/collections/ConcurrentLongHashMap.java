@@ -0,0 +1,387 @@
+package tk.bolovsrol.db.collections;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Потокобезопасная хэш-карта с ключами-лонгами: несколько сегментов {@link LongHashMap}, каждый под своим {@link StampedLock}.
+ * <p>
+ * Чтение по ключу обычно не блокирует: сегмент читается оптимистично, и лишь если одновременно с чтением
+ * в сегмент писали, чтение повторяется под локом. Записи в разные сегменты не мешают друг другу.
+ * <p>
+ * Итераторы слабо согласованы, как у {@link java.util.concurrent.ConcurrentHashMap}, и ничего не копируют:
+ * обход идёт по живым массивам сегментов, каждая ячейка читается оптимистично. Запись, которую одновременно с обходом
+ * сдвинуло удаление соседки из другой нити, обход может пропустить или вернуть дважды; записи, которые во время обхода
+ * не трогали, он вернёт ровно по разу. Удаление через итератор поддерживается и обхода не сбивает.
+ * Нул-ключи и нул-значения карта не принимает.
+ *
+ * @param <V> тип значений
+ */
+public class ConcurrentLongHashMap<V> extends AbstractMap<Long, V> implements ConcurrentMap<Long, V> {
+
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+    private static final class Segment<V> {
+        private final StampedLock lock = new StampedLock();
+        private final LongHashMap<V> map;
+
+        private Segment(int expectedSize) {
+            this.map = new LongHashMap<>(expectedSize);
+        }
+    }
+
+    private final Segment<V>[] segments;
+
+    private Set<Long> keySet = null;
+    private Set<Map.Entry<Long, V>> entrySet = null;
+
+    public ConcurrentLongHashMap() {
+        this(0);
+    }
+
+    /** @param expectedSize сколько записей ожидается всего */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLongHashMap(int expectedSize) {
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(expectedSize / SEGMENTS);
+        }
+    }
+
+    private Segment<V> segmentFor(long key) {
+        // младшие биты хэша выбирают ячейку внутри сегмента, старшие — сегмент
+        return segments[LongHashMap.hash(key) >>> (32 - SEGMENT_BITS)];
+    }
+
+    /**
+     * Значение по ключу без упаковки.
+     *
+     * @param key ключ
+     * @return значение или нул
+     */
+    public V get(long key) {
+        Segment<V> segment = segmentFor(key);
+        long stamp = segment.lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            V value = segment.map.get(key);
+            if (segment.lock.validate(stamp)) {
+                return value;
+            }
+        }
+        stamp = segment.lock.readLock();
+        try {
+            return segment.map.get(key);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Кладёт значение по ключу без упаковки.
+     *
+     * @param key ключ
+     * @param value значение, не нул
+     * @return прежнее значение или нул
+     */
+    public V put(long key, V value) {
+        Segment<V> segment = segmentFor(key);
+        long stamp = segment.lock.writeLock();
+        try {
+            return segment.map.put(key, value);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Удаляет ключ без упаковки.
+     *
+     * @param key ключ
+     * @return удалённое значение или нул
+     */
+    public V remove(long key) {
+        Segment<V> segment = segmentFor(key);
+        long stamp = segment.lock.writeLock();
+        try {
+            return segment.map.remove(key);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override public V get(Object key) {
+        return key instanceof Long ? get(((Long) key).longValue()) : null;
+    }
+
+    @Override public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override public V put(Long key, V value) {
+        return put(key.longValue(), value);
+    }
+
+    @Override public V remove(Object key) {
+        return key instanceof Long ? remove(((Long) key).longValue()) : null;
+    }
+
+    @Override public V putIfAbsent(Long key, V value) {
+        Segment<V> segment = segmentFor(key);
+        long stamp = segment.lock.writeLock();
+        try {
+            V existing = segment.map.get(key.longValue());
+            return existing != null ? existing : segment.map.put(key.longValue(), value);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override public boolean remove(Object key, Object value) {
+        if (!(key instanceof Long) || value == null) {
+            return false;
+        }
+        long k = (Long) key;
+        Segment<V> segment = segmentFor(k);
+        long stamp = segment.lock.writeLock();
+        try {
+            if (value.equals(segment.map.get(k))) {
+                segment.map.remove(k);
+                return true;
+            }
+            return false;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override public boolean replace(Long key, V oldValue, V newValue) {
+        Objects.requireNonNull(oldValue);
+        Segment<V> segment = segmentFor(key);
+        long stamp = segment.lock.writeLock();
+        try {
+            if (oldValue.equals(segment.map.get(key.longValue()))) {
+                segment.map.put(key.longValue(), newValue);
+                return true;
+            }
+            return false;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override public V replace(Long key, V value) {
+        Segment<V> segment = segmentFor(key);
+        long stamp = segment.lock.writeLock();
+        try {
+            return segment.map.containsKey(key.longValue()) ? segment.map.put(key.longValue(), value) : null;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                size += segment.map.size();
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    @Override public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override public void clear() {
+        for (Segment<V> segment : segments) {
+            long stamp = segment.lock.writeLock();
+            try {
+                segment.map.clear();
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    @Override public Set<Long> keySet() {
+        if (keySet == null) {
+            keySet = new AbstractSet<Long>() {
+                @Override public Iterator<Long> iterator() {
+                    EntryIterator it = new EntryIterator();
+                    return new Iterator<Long>() {
+                        @Override public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override public Long next() {
+                            return it.next().getKey();
+                        }
+
+                        @Override public void remove() {
+                            it.remove();
+                        }
+                    };
+                }
+
+                @Override public int size() {
+                    return ConcurrentLongHashMap.this.size();
+                }
+
+                @Override public boolean contains(Object o) {
+                    return containsKey(o);
+                }
+
+                @Override public boolean remove(Object o) {
+                    return ConcurrentLongHashMap.this.remove(o) != null;
+                }
+
+                @Override public void clear() {
+                    ConcurrentLongHashMap.this.clear();
+                }
+            };
+        }
+        return keySet;
+    }
+
+    @Override public Set<Map.Entry<Long, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<Long, V>>() {
+                @Override public Iterator<Map.Entry<Long, V>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override public int size() {
+                    return ConcurrentLongHashMap.this.size();
+                }
+
+                @Override public void clear() {
+                    ConcurrentLongHashMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /** Обходит сегменты по очереди, читая ячейки их массивов на месте. */
+    private final class EntryIterator implements Iterator<Map.Entry<Long, V>> {
+        private int segmentIndex = 0;
+        private Segment<V> segment = null;
+        private long[] keys = null;
+        private Object[] values = null;
+        private int slot = 0;
+        /** Ячейка, из которой прочитана следующая запись. */
+        private int nextSlot = -1;
+        /** Ячейка, из которой прочитана последняя отданная запись, и номер её сегмента. */
+        private int lastSlot = -1;
+        private int lastSegmentIndex = -1;
+        /** Уже отданные записи из начала массива, чья цепочка начинается в его конце; нул, пока таких нет. */
+        private LongHashSet wrapped = null;
+        private Map.Entry<Long, V> next = null;
+        private Map.Entry<Long, V> last = null;
+
+        @Override public boolean hasNext() {
+            while (next == null) {
+                if (values == null || slot >= values.length) {
+                    if (segmentIndex == SEGMENTS) {
+                        return false;
+                    }
+                    startSegment(segments[segmentIndex++]);
+                } else {
+                    nextSlot = slot;
+                    next = readSlot(slot++);
+                }
+            }
+            return true;
+        }
+
+        /** Берёт массивы сегмента; после расширения сегмента обход доберёт записи из прежних массивов. */
+        private void startSegment(Segment<V> segment) {
+            this.segment = segment;
+            slot = 0;
+            wrapped = null;
+            long stamp = segment.lock.tryOptimisticRead();
+            if (stamp != 0L) {
+                keys = segment.map.keyArray();
+                values = segment.map.valueArray();
+                if (segment.lock.validate(stamp) && keys.length == values.length) {
+                    return;
+                }
+            }
+            stamp = segment.lock.readLock();
+            try {
+                keys = segment.map.keyArray();
+                values = segment.map.valueArray();
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+
+        private Map.Entry<Long, V> readSlot(int i) {
+            long key;
+            Object value;
+            long stamp = segment.lock.tryOptimisticRead();
+            key = keys[i];
+            value = values[i];
+            if (stamp == 0L || !segment.lock.validate(stamp)) {
+                // ключ и значение без лока могли достаться от разных записей
+                stamp = segment.lock.readLock();
+                try {
+                    key = keys[i];
+                    value = values[i];
+                } finally {
+                    segment.lock.unlockRead(stamp);
+                }
+            }
+            if (value == null || wrapped != null && wrapped.contains(key)) {
+                // удаление в конце массива могло перенести туда запись из его начала, которую мы уже отдали
+                return null;
+            }
+            @SuppressWarnings("unchecked") V v = (V) value;
+            return new SimpleImmutableEntry<>(key, v);
+        }
+
+        @Override public Map.Entry<Long, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            lastSlot = nextSlot;
+            lastSegmentIndex = segmentIndex;
+            next = null;
+            if ((LongHashMap.hash(last.getKey()) & (values.length - 1)) > lastSlot) {
+                if (wrapped == null) {
+                    wrapped = new LongHashSet();
+                }
+                wrapped.add(last.getKey());
+            }
+            return last;
+        }
+
+        @Override public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            // если hasNext() уже ушёл в следующий сегмент, до конца прежнего ячейки были пусты и сдвигать в них нечего
+            if (ConcurrentLongHashMap.this.remove(last.getKey(), last.getValue())
+                && segmentIndex == lastSegmentIndex && segment.map.valueArray() == values) {
+                // удаление сдвинуло хвост цепочки в освободившуюся ячейку, дочитываем с неё,
+                // в том числе запись, которую hasNext() мог уже прочитать дальше
+                next = null;
+                slot = lastSlot;
+            }
+            last = null;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package tk.bolovsrol.db.collections;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Хэш-карта с ключами-лонгами и открытой адресацией.
+ * <p>
+ * Ключи лежат в массиве примитивов, значения — в параллельном массиве ссылок, так что на запись
+ * не тратится ни упакованный {@link Long}, ни объект-узел. Пустую ячейку обозначает нул в массиве значений,
+ * поэтому нул-значения карта не принимает. Коллизии разрешаются линейным пробированием,
+ * удаление сдвигает хвост цепочки назад и не оставляет надгробий.
+ * <p>
+ * Карта не потокобезопасна и не хранит порядок вставки. Итераторы не поддерживают удаление,
+ * удалять следует методами самой карты или её {@link #keySet()}.
+ *
+ * @param <V> тип значений
+ */
+public class LongHashMap<V> extends AbstractMap<Long, V> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int resizeAt;
+
+    private Set<Long> keySet = null;
+    private Set<Map.Entry<Long, V>> entrySet = null;
+
+    public LongHashMap() {
+        this(0);
+    }
+
+    /** @param expectedSize сколько записей ожидается; до этого размера карта не будет расширяться */
+    public LongHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /** @param source карта, которую надо скопировать */
+    public LongHashMap(Map<Long, ? extends V> source) {
+        if (source instanceof LongHashMap) {
+            LongHashMap<?> that = (LongHashMap<?>) source;
+            this.keys = that.keys.clone();
+            this.values = that.values.clone();
+            this.size = that.size;
+            this.resizeAt = that.resizeAt;
+        } else {
+            allocate(capacityFor(source.size()));
+            putAll(source);
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = Math.max(MIN_CAPACITY, (long) expectedSize * 4L / 3L + 1L);
+        if (needed > 1 << 30) {
+            return 1 << 30;
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        resizeAt = capacity / 4 * 3;
+    }
+
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Значение по ключу без упаковки.
+     * <p>
+     * Метод терпит одновременную запись в карту: в худшем случае он вернёт неверный результат,
+     * но не зациклится и не упадёт, — на это полагается {@link ConcurrentLongHashMap}.
+     *
+     * @param key ключ
+     * @return значение или нул
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        if (keys.length != values.length) {
+            return null;
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            Object value = values[i];
+            if (value == null) {
+                return null;
+            }
+            if (keys[i] == key) {
+                return (V) value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /** @return true, если в карте есть указанный ключ */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Кладёт значение по ключу без упаковки.
+     *
+     * @param key ключ
+     * @param value значение, не нул
+     * @return прежнее значение или нул
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null value for key " + key);
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size >= resizeAt) {
+            resize();
+            return put(key, value);
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        return null;
+    }
+
+    /**
+     * Удаляет ключ без упаковки.
+     *
+     * @param key ключ
+     * @return удалённое значение или нул
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                shiftBack(i, mask);
+                size--;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /** Заполняет освободившуюся ячейку записями из хвоста цепочки, которые вправе в неё переехать. */
+    private void shiftBack(int gap, int mask) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == null) {
+                break;
+            }
+            int home = hash(keys[i]) & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        values[gap] = null;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        if (oldKeys.length == 1 << 30) {
+            throw new IllegalStateException("Map is too large");
+        }
+        long[] newKeys = new long[oldKeys.length << 1];
+        Object[] newValues = new Object[newKeys.length];
+        int mask = newKeys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != null) {
+                int i = hash(oldKeys[j]) & mask;
+                while (newValues[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                newKeys[i] = oldKeys[j];
+                newValues[i] = oldValues[j];
+            }
+        }
+        // читатель, заставший массивы разных поколений, увидит разную их длину и не выйдет за границы
+        keys = newKeys;
+        values = newValues;
+        resizeAt = newKeys.length / 4 * 3;
+    }
+
+    @Override public V get(Object key) {
+        return key instanceof Long ? get(((Long) key).longValue()) : null;
+    }
+
+    @Override public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override public V put(Long key, V value) {
+        return put(key.longValue(), value);
+    }
+
+    @Override public V remove(Object key) {
+        return key instanceof Long ? remove(((Long) key).longValue()) : null;
+    }
+
+    @Override public int size() {
+        return size;
+    }
+
+    @Override public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override public void clear() {
+        if (size > 0) {
+            Arrays.fill(values, null);
+            size = 0;
+        }
+    }
+
+    /**
+     * Обходит записи карты без упаковки ключей.
+     *
+     * @param consumer получатель записей
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachEntry(LongObjConsumer<? super V> consumer) {
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                consumer.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /** Живой массив ключей для обхода без копирования в {@link ConcurrentLongHashMap}. */
+    long[] keyArray() {
+        return keys;
+    }
+
+    /** Живой массив значений той же длины, что и {@link #keyArray()}, если карту не расширяли между вызовами. */
+    Object[] valueArray() {
+        return values;
+    }
+
+    /** Получатель пары из ключа-лонга и значения. */
+    @FunctionalInterface
+    public interface LongObjConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    @Override public Set<Long> keySet() {
+        if (keySet == null) {
+            keySet = new AbstractSet<Long>() {
+                @Override public Iterator<Long> iterator() {
+                    Iterator<Map.Entry<Long, V>> it = entrySet().iterator();
+                    return new Iterator<Long>() {
+                        @Override public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override public Long next() {
+                            return it.next().getKey();
+                        }
+                    };
+                }
+
+                @Override public int size() {
+                    return size;
+                }
+
+                @Override public boolean contains(Object o) {
+                    return containsKey(o);
+                }
+
+                @Override public boolean remove(Object o) {
+                    return LongHashMap.this.remove(o) != null;
+                }
+
+                @Override public void clear() {
+                    LongHashMap.this.clear();
+                }
+            };
+        }
+        return keySet;
+    }
+
+    @Override public Set<Map.Entry<Long, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<Long, V>>() {
+                @Override public Iterator<Map.Entry<Long, V>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override public int size() {
+                    return size;
+                }
+
+                @Override public void clear() {
+                    LongHashMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<Long, V>> {
+        private final long[] keys = LongHashMap.this.keys;
+        private final Object[] values = LongHashMap.this.values;
+        private int next = seek(0);
+
+        private int seek(int from) {
+            while (from < values.length && values[from] == null) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override public boolean hasNext() {
+            return next < values.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override public Map.Entry<Long, V> next() {
+            if (next >= values.length) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<Long, V> result = new SimpleImmutableEntry<>(keys[next], (V) values[next]);
+            next = seek(next + 1);
+            return result;
+        }
+    }
+}
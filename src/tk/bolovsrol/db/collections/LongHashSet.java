@@ -0,0 +1,253 @@
+package tk.bolovsrol.db.collections;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Хэш-сет лонгов с открытой адресацией: значения лежат в массиве примитивов без упаковки.
+ * <p>
+ * Пустую ячейку обозначает ноль, а сам ноль, если он есть в сете, учитывается отдельным флагом.
+ * Коллизии разрешаются линейным пробированием, удаление сдвигает хвост цепочки назад.
+ * <p>
+ * Сет не потокобезопасен и не хранит порядок. Итератор не поддерживает удаление,
+ * а {@link #removeAll(Collection)} и {@link #retainAll(Collection)} реализованы без него.
+ * Нул сет не принимает.
+ */
+public class LongHashSet extends AbstractSet<Long> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private boolean hasZero;
+    private int size;
+    private int resizeAt;
+
+    public LongHashSet() {
+        this(0);
+    }
+
+    /** @param expectedSize сколько значений ожидается; до этого размера сет не будет расширяться */
+    public LongHashSet(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /** @param source коллекция, которую надо скопировать */
+    public LongHashSet(Collection<Long> source) {
+        this(source.size());
+        addAll(source);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = Math.max(MIN_CAPACITY, (long) expectedSize * 4L / 3L + 1L);
+        if (needed > 1 << 30) {
+            return 1 << 30;
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        resizeAt = capacity / 4 * 3;
+    }
+
+    /** @return true, если значение есть в сете */
+    public boolean contains(long value) {
+        if (value == 0L) {
+            return hasZero;
+        }
+        int mask = keys.length - 1;
+        int i = LongHashMap.hash(value) & mask;
+        long k;
+        while ((k = keys[i]) != 0L) {
+            if (k == value) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Добавляет значение.
+     *
+     * @param value значение
+     * @return true, если значения в сете не было
+     */
+    public boolean add(long value) {
+        if (value == 0L) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int i = LongHashMap.hash(value) & mask;
+        long k;
+        while ((k = keys[i]) != 0L) {
+            if (k == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size >= resizeAt) {
+            resize();
+            return add(value);
+        }
+        keys[i] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Удаляет значение.
+     *
+     * @param value значение
+     * @return true, если значение было в сете
+     */
+    public boolean remove(long value) {
+        if (value == 0L) {
+            if (!hasZero) {
+                return false;
+            }
+            hasZero = false;
+            size--;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int i = LongHashMap.hash(value) & mask;
+        long k;
+        while ((k = keys[i]) != 0L) {
+            if (k == value) {
+                shiftBack(i, mask);
+                size--;
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    private void shiftBack(int gap, int mask) {
+        int i = gap;
+        long k;
+        while ((k = keys[i = (i + 1) & mask]) != 0L) {
+            int home = LongHashMap.hash(k) & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = k;
+                gap = i;
+            }
+        }
+        keys[gap] = 0L;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        if (oldKeys.length == 1 << 30) {
+            throw new IllegalStateException("Set is too large");
+        }
+        allocate(oldKeys.length << 1);
+        int mask = keys.length - 1;
+        for (long k : oldKeys) {
+            if (k != 0L) {
+                int i = LongHashMap.hash(k) & mask;
+                while (keys[i] != 0L) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+            }
+        }
+    }
+
+    @Override public boolean contains(Object o) {
+        return o instanceof Long && contains(((Long) o).longValue());
+    }
+
+    @Override public boolean add(Long value) {
+        return add(value.longValue());
+    }
+
+    @Override public boolean remove(Object o) {
+        return o instanceof Long && remove(((Long) o).longValue());
+    }
+
+    @Override public boolean removeAll(Collection<?> c) {
+        boolean modified = false;
+        for (Object o : c) {
+            modified |= remove(o);
+        }
+        return modified;
+    }
+
+    @Override public boolean retainAll(Collection<?> c) {
+        LongHashSet retained = new LongHashSet(Math.min(size, c.size()));
+        if (hasZero && c.contains(0L)) {
+            retained.add(0L);
+        }
+        for (long k : keys) {
+            if (k != 0L && c.contains(k)) {
+                retained.add(k);
+            }
+        }
+        if (retained.size == size) {
+            return false;
+        }
+        this.keys = retained.keys;
+        this.hasZero = retained.hasZero;
+        this.size = retained.size;
+        this.resizeAt = retained.resizeAt;
+        return true;
+    }
+
+    @Override public int size() {
+        return size;
+    }
+
+    @Override public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, 0L);
+            hasZero = false;
+            size = 0;
+        }
+    }
+
+    @Override public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+            private final long[] keys = LongHashSet.this.keys;
+            private boolean zeroPending = hasZero;
+            private int next = seek(0);
+
+            private int seek(int from) {
+                while (from < keys.length && keys[from] == 0L) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override public boolean hasNext() {
+                return zeroPending || next < keys.length;
+            }
+
+            @Override public Long next() {
+                if (zeroPending) {
+                    zeroPending = false;
+                    return 0L;
+                }
+                if (next >= keys.length) {
+                    throw new NoSuchElementException();
+                }
+                long result = keys[next];
+                next = seek(next + 1);
+                return result;
+            }
+        };
+    }
+}
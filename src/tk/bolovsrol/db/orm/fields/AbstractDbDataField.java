@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.fields;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.PickFailedException;
 import tk.bolovsrol.db.orm.containers.DbValueContainer;
 import tk.bolovsrol.db.orm.object.DbDataObject;
@@ -65,7 +66,7 @@ public abstract class AbstractDbDataField<V, C extends DbValueContainer<V>> impl
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException {
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException {
         if (tableAliases != null) {
             sb.append(tableAliases.get(owner));
             sb.append('.');
@@ -73,8 +74,8 @@ public abstract class AbstractDbDataField<V, C extends DbValueContainer<V>> impl
 		sb.append('\"').append(name).append('\"');
 	}
 
-    @Override public void writeSqlExpressionForSelect(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException {
-        writeSqlExpression(sb, databaseProductName, tableAliases);
+    @Override public void writeSqlExpressionForSelect(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException {
+        writeSqlExpression(sb, dialect, tableAliases);
     }
 
     @Override public int putValuesForSelect(PreparedStatement ps, int pos) throws DbException {
@@ -90,8 +91,8 @@ public abstract class AbstractDbDataField<V, C extends DbValueContainer<V>> impl
     }
 
     @Override
-    public void writeSqlExpressionForUpdate(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException {
-        writeSqlExpression(sb, databaseProductName, tableAliases);
+    public void writeSqlExpressionForUpdate(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException {
+        writeSqlExpression(sb, dialect, tableAliases);
         sb.append("=?");
     }
 
@@ -2,6 +2,7 @@ package tk.bolovsrol.db.orm.localcache;
 
 import tk.bolovsrol.db.JDBCUtils;
 import tk.bolovsrol.db.orm.object.RefDbDataObject;
+import tk.bolovsrol.db.orm.processing.ParallelRefDbdoLoader;
 import tk.bolovsrol.db.orm.sql.statements.select.Browser;
 import tk.bolovsrol.db.orm.sql.statements.select.Select;
 import tk.bolovsrol.db.pool.ConnectionManager;
@@ -17,13 +18,25 @@ import java.util.Map;
 public abstract class AbstractLocalRefCacheObjectFactory<O extends RefDbDataObject> implements LocalCacheObjectFactory<Long, O> {
 
     private final String dbName;
+    private final int loadThreads;
 
     protected AbstractLocalRefCacheObjectFactory() {
         this(null);
     }
 
     protected AbstractLocalRefCacheObjectFactory(String dbName) {
+        this(dbName, 1);
+    }
+
+    /**
+     * @param dbName имя БД или нул для БД по умолчанию
+     * @param loadThreads сколько соединений одновременно может занять {@link #newObjects(Collection)};
+     * если больше одного, большие наборы ид делятся на пачки, которые читаются параллельно
+     * @see ParallelRefDbdoLoader
+     */
+    protected AbstractLocalRefCacheObjectFactory(String dbName, int loadThreads) {
         this.dbName = dbName;
+        this.loadThreads = loadThreads;
     }
 
     protected abstract O newDbdo();
@@ -48,6 +61,9 @@ public abstract class AbstractLocalRefCacheObjectFactory<O extends RefDbDataObje
     }
 
     @Override public Map<Long, O> newObjects(Collection<Long> ids) throws ObjectCreationFailedException {
+        if (loadThreads > 1) {
+            return newObjectsInParallel(ids);
+        }
         Map<Long, O> result = new LinkedHashMap<>(ids.size());
         O template = newDbdo();
 		Select s = template.select().where(template.idField().in(ids));
@@ -68,4 +84,20 @@ public abstract class AbstractLocalRefCacheObjectFactory<O extends RefDbDataObje
         }
         return result;
     }
+
+    private Map<Long, O> newObjectsInParallel(Collection<Long> ids) throws ObjectCreationFailedException {
+        Map<Long, O> result = new LinkedHashMap<>(ids.size());
+        ParallelRefDbdoLoader<O> loader = new ParallelRefDbdoLoader<>(dbName, this::newDbdo, loadThreads);
+        try {
+            loader.browseIds(ids, o -> {
+                O copy = o.copyTo(newDbdo());
+                synchronized (result) {
+                    result.put(o.getId(), copy);
+                }
+            });
+        } catch (Exception e) {
+            throw new ObjectCreationFailedException("Cannot load " + Spell.get(newDbdo().getSqlTableName()) + " for ids " + Spell.get(ids), e);
+        }
+        return result;
+    }
 }
@@ -1,16 +1,23 @@
 package tk.bolovsrol.db.orm.manualcache;
 
+import tk.bolovsrol.db.collections.LongHashMap;
 import tk.bolovsrol.db.orm.RecordNotFoundException;
+import tk.bolovsrol.db.orm.fields.DbDataField;
+import tk.bolovsrol.db.orm.processing.ParallelRefDbdoLoader;
 import tk.bolovsrol.db.orm.sql.statements.select.Select;
+import tk.bolovsrol.db.orm.versioncache.CacheSnapshot;
 import tk.bolovsrol.db.orm.versioncache.CacheableDbDataObject;
+import tk.bolovsrol.db.orm.versioncache.VersionCacheConst;
 import tk.bolovsrol.db.pool.ConnectionManager;
 import tk.bolovsrol.utils.Spell;
 import tk.bolovsrol.utils.log.Log;
 import tk.bolovsrol.utils.syncro.Locked;
+import tk.bolovsrol.utils.time.Duration;
 
 import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -18,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiConsumer;
@@ -26,17 +34,47 @@ import java.util.function.BiConsumer;
  * Ручной кэш. Ему нужно говорить, что и когда обновилось, а он уже подтянется.
  * <p>
  * В конструкторе можно задать специальное условие для выборки из БД, в таком режиме кэш будет вычитывать только те записи, которые подходят под это условие.
+ * <p>
+ * Если включена {@link VersionCacheConst#MANUAL_CACHE_COPY_ON_PUBLISH публикация копиями}, обновление собирает новую карту данных
+ * и подменяет ею прежнюю, а читатели обращаются к опубликованной карте без локов.
+ * <p>
+ * Кэш с условием выборки обычно перечитывает таблицу целиком при каждом обновлении: иначе он не заметит записи, переставшие удовлетворять условию.
+ * Если в таблице есть колонка времени изменения или версии записи, её можно передать при регистрации, и тогда кэш будет перечитывать
+ * только записи, изменившиеся после прошлого обновления, а целиком — раз в {@link VersionCacheConst#MANUAL_CACHE_RECONCILE_INTERVAL}.
+ * <p>
+ * Кэшу таблицы, которую меняют другие системы, можно {@link #withAutoRefresh(Duration, Duration, Duration) назначить}
+ * самостоятельное обновление по расписанию и предел устаревания данных.
  *
  * @param <D>
  * @param <C>
  */
 public class ManualCache<D extends CacheableDbDataObject<C>, C> {
 
-    private final HashMap<Long, C> data = new LinkedHashMap<>();
+    /** Все созданные кэши, чтобы узнать, не держит ли нить лок какого-нибудь из них. */
+    private static final Set<ManualCache<?, ?>> INSTANCES = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private final boolean copyOnPublish = VersionCacheConst.MANUAL_CACHE_COPY_ON_PUBLISH;
+
+    /**
+     * Данные кэша в порядке загрузки (с учётом сортировки в {@link #selectCustomizer}).
+     * В режиме публикации копиями опубликованная карта больше не меняется,
+     * обновление подменяет её новой, иначе карта меняется на месте под локом записи.
+     */
+    private volatile LinkedHashMap<Long, C> data = new LinkedHashMap<>();
+    /** Неизменяемый список записей опубликованной карты, только в режиме публикации копиями. */
+    private volatile List<C> publishedObjects = Collections.emptyList();
     private final D dbdo;
     private final BiConsumer<D, Select> selectCustomizer;
+    private final Watermark<?> watermark;
+    private final ManualCacheStats stats = new ManualCacheStats();
+
+    /** Когда начато последнее обновление, после которого кэш соответствует всей таблице. */
+    private volatile long freshSince = 0L;
+    /** Насколько могут устареть данные, прежде чем чтение обновит кэш, мс, или 0, если без ограничения. */
+    private volatile long maxStalenessMillis = 0L;
 
     private final Set<ManualCacheClient<C>> clients = new CopyOnWriteArraySet<>();
+    private final Set<ManualCacheDeltaClient<C>> deltaClients = new CopyOnWriteArraySet<>();
     private final Set<ManualCache<?, ?>> chain = new CopyOnWriteArraySet<>();
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     private final ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
@@ -70,9 +108,38 @@ public class ManualCache<D extends CacheableDbDataObject<C>, C> {
         return cache;
     }
 
+    /**
+     * Регистрирует в кэше указанный БД-объект с модификатором селектов из БД, который фильтрует записи для кеширования,
+     * и колонкой времени изменения или версии записи, по которой кэш будет перечитывать только изменившиеся записи.
+     *
+     * @param dbdo
+     * @param selectCustomizer
+     * @param watermarkField поле объекта, значение которого растёт при каждой вставке и изменении записи
+     * @param <D>
+     * @param <C>
+     * @param <V>
+     * @return
+     * @see Watermark
+     */
+    public static <D extends CacheableDbDataObject<C>, C, V extends Comparable<? super V>> ManualCache<D, C> register(D dbdo, BiConsumer<D, Select> selectCustomizer, DbDataField<V, ?> watermarkField) {
+        ManualCache<D, C> cache = new ManualCache<D, C>(dbdo, selectCustomizer, watermarkField);
+        ManualCacheManager.register(cache);
+        return cache;
+    }
+
     protected ManualCache(D dbdo, BiConsumer<D, Select> selectCustomizer) {
+        this(dbdo, selectCustomizer, (Watermark<?>) null);
+    }
+
+    protected <V extends Comparable<? super V>> ManualCache(D dbdo, BiConsumer<D, Select> selectCustomizer, DbDataField<V, ?> watermarkField) {
+        this(dbdo, selectCustomizer, new Watermark<>(watermarkField));
+    }
+
+    private ManualCache(D dbdo, BiConsumer<D, Select> selectCustomizer, Watermark<?> watermark) {
         this.dbdo = dbdo;
         this.selectCustomizer = selectCustomizer;
+        this.watermark = watermark;
+        INSTANCES.add(this);
         StringBuilder sb = new StringBuilder(128);
         sb.append("Cache ").append(dbdo.getLogCatalogAndTableName());
         if (selectCustomizer != null) {
@@ -82,7 +149,15 @@ public class ManualCache<D extends CacheableDbDataObject<C>, C> {
         this.caption = sb.toString();
 
         try {
-            refresh(null);
+            long started = System.currentTimeMillis();
+            if (selectCustomizer == null && CacheSnapshot.isEnabled() && VersionCacheConst.SNAPSHOT_MANUAL_CACHE) {
+                Locked.run(writeLock, this::loadSnapshotSync);
+            } else if (selectCustomizer == null && VersionCacheConst.INITIAL_LOAD_THREADS > 1 && isDbdoConstructible()) {
+                Locked.run(writeLock, this::loadInParallelSync);
+            } else {
+                refresh(null);
+            }
+            freshSince = started;
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize " + dbdo.getLogCatalogAndTableName() + " cache", e);
         }
@@ -102,7 +177,21 @@ public class ManualCache<D extends CacheableDbDataObject<C>, C> {
      */
     public ManualCache<D, C> withClient(ManualCacheClient<C> client) {
         clients.add(client);
-        Locked.run(readLock, () -> client.cacheUpdated(data));
+        Locked.run(readLock, () -> client.cacheUpdated(view()));
+        return this;
+    }
+
+    /**
+     * Добавляет кэшу клиента, который будет получать только изменения данных.
+     * <p>
+     * При регистрации клиент тут же получает актуальные данные через {@link ManualCacheDeltaClient#cacheReset(Map)}.
+     *
+     * @param client
+     * @return this
+     */
+    public ManualCache<D, C> withDeltaClient(ManualCacheDeltaClient<C> client) {
+        deltaClients.add(client);
+        Locked.run(readLock, () -> client.cacheReset(view()));
         return this;
     }
 
@@ -110,6 +199,7 @@ public class ManualCache<D extends CacheableDbDataObject<C>, C> {
      * После обновления обновления кэша (кроме инициализации) запускает обновление клиентов указанного кэша.
      * <p>
      * Если клиент кэша использует данные другого кэша, то он может зарегистрировать свой кэш тут, чтобы получать обновления.
+     * Клиенты, получающие изменения, узнают, что именно изменилось в этом кэше, через {@link ManualCacheDeltaClient#chainedCacheChanged}.
      *
      * @param clientCache клиентский кэш
      * @return this
@@ -120,6 +210,19 @@ public class ManualCache<D extends CacheableDbDataObject<C>, C> {
         return this;
     }
 
+    /**
+     * @param clientCache кэш
+     * @return true, если указанный кэш получает обновления этого кэша непосредственно или через другие кэши
+     */
+    boolean chainsTo(ManualCache<?, ?> clientCache) {
+        for (ManualCache<?, ?> chained : chain) {
+            if (chained == clientCache || chained.chainsTo(clientCache)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void checkUpdateChainLoop(ManualCache<?, ?> matter) {
         for (ManualCache<?, ?> chained : chain) {
             if (chained == matter) {
@@ -134,40 +237,66 @@ public class ManualCache<D extends CacheableDbDataObject<C>, C> {
     }
 
     private void refreshSync(Collection<Long> idsOrNull) throws Exception {
+        long started = System.currentTimeMillis();
         D d = dbdo;
         Select s = d.select();
-        if (selectCustomizer != null) {
-            // Если установлен кастомайзер, нужно всегда вычитывать полный кэш, так как некоторые записи могут исчезать из вида кэша, перестав удовлетворять условию, и их мы уже не удалим никак.
-            idsOrNull = null;
-            selectCustomizer.accept(d, s);
-        }
+        try (Connection con = ConnectionManager.getConnection()) {
+            if (watermark != null) {
+                // Если задан водяной знак, перечитываем только изменившиеся после него записи, а целиком — только при сверке.
+                idsOrNull = watermark.isReconciliationDue() ? null : watermark.collectChangedIds(con, d, idsOrNull);
+                if (idsOrNull != null && idsOrNull.isEmpty()) {
+                    watermark.commit();
+                    freshSince = started;
+                    Log.trace(caption + "0 removed and 0 created, total " + Spell.get(data.size()) + " item(s) / nothing changed since " + watermark);
+                    return;
+                }
+            } else if (selectCustomizer != null) {
+                // Если установлен кастомайзер, нужно всегда вычитывать полный кэш, так как некоторые записи могут исчезать из вида кэша, перестав удовлетворять условию, и их мы уже не удалим никак.
+                idsOrNull = null;
+            }
+            if (selectCustomizer != null) {
+                selectCustomizer.accept(d, s);
+            }
+            if (idsOrNull == null && watermark != null) {
+                watermark.startReconciliation(con, d);
+            }
 
-        Map<Long, C> itemsToDelete = new HashMap<>(data); // это элементы, которые надо удалить, ниже мы выкинем из этой карты все существующие в БД элементы
+            LinkedHashMap<Long, C> target; // сюда складываем вычитанное: в режиме публикации копиями это новая карта, иначе сами данные
+            LongHashMap<C> itemsToDelete; // это элементы, которые надо удалить, ниже мы выкинем из этой карты все существующие в БД элементы
 
-        // А: в БД не нул, в data нул;
-        // Б: в БД не нул, в data не нул, и они отличаются
-        Map<Long, C> createdItems;
+            // А: в БД не нул, в data нул;
+            // Б: в БД не нул, в data не нул, и они отличаются
+            Map<Long, C> createdItems;
 
-        // А: в БД нул, в data не нул;
-        // Б: в БД не нул, в data не нул, и они отличаются
-        Map<Long, C> removedItems;
+            // А: в БД нул, в data не нул;
+            // Б: в БД не нул, в data не нул, и они отличаются
+            Map<Long, C> removedItems;
 
-        if (idsOrNull != null) {
-            s.where(d.idField().in(idsOrNull));
-            itemsToDelete.keySet().retainAll(idsOrNull);
-            createdItems = new HashMap<>(idsOrNull.size());
-            removedItems = new HashMap<>();
-        } else {
-            createdItems = new HashMap<>();
-            removedItems = new HashMap<>();
-        }
+            if (idsOrNull != null) {
+                s.where(d.idField().in(idsOrNull));
+                target = copyOnPublish ? new LinkedHashMap<>(data) : data;
+                itemsToDelete = new LongHashMap<>(idsOrNull.size());
+                for (Long id : idsOrNull) {
+                    C item = data.get(id);
+                    if (item != null) {
+                        itemsToDelete.put(id, item);
+                    }
+                }
+                createdItems = new HashMap<>(idsOrNull.size());
+                removedItems = new HashMap<>();
+            } else {
+                // при полном перечитывании все оставшиеся записи придут из БД, так что новую карту собираем с нуля
+                target = copyOnPublish ? new LinkedHashMap<>(data.size() * 4 / 3 + 1) : data;
+                itemsToDelete = new LongHashMap<>(data);
+                createdItems = new HashMap<>();
+                removedItems = new HashMap<>();
+            }
 
-        try (Connection con = ConnectionManager.getConnection()) {
             s.withFetchSize(Integer.MIN_VALUE).browse(con, () -> {
                 Long id = d.getId();
                 C newItem = d.getCacheItem();
                 C obsoleteItem = itemsToDelete.remove(id);
-                data.put(id, newItem);
+                target.put(id, newItem);
                 if (!Objects.equals(newItem, obsoleteItem)) {
                     // элемент появился либо обновился, засунем его в новые и, если он обновился, то и в старые
                     createdItems.put(id, newItem);
@@ -176,31 +305,139 @@ public class ManualCache<D extends CacheableDbDataObject<C>, C> {
                     }
                 }
             });
-        }
-        if (!itemsToDelete.isEmpty()) {
-            for (Map.Entry<Long, C> entry : itemsToDelete.entrySet()) {
-                Long id = entry.getKey();
-                C obsoleteItem = entry.getValue();
-                data.remove(id, obsoleteItem);
-                // элемент удалился, засунем его в старые
-                removedItems.put(id, obsoleteItem);
+
+            if (!itemsToDelete.isEmpty()) {
+                for (Map.Entry<Long, C> entry : itemsToDelete.entrySet()) {
+                    Long id = entry.getKey();
+                    C obsoleteItem = entry.getValue();
+                    target.remove(id, obsoleteItem);
+                    // элемент удалился, засунем его в старые
+                    removedItems.put(id, obsoleteItem);
+                }
             }
+            if (watermark != null) {
+                watermark.commit();
+            }
+            if (idsOrNull == null || watermark != null) {
+                // прочитано всё изменившееся в таблице, а не только то, о чём сообщили
+                freshSince = started;
+            }
+            Log.trace(caption + removedItems.size() + " removed and " + createdItems.size() + " created, total " + Spell.get(target.size()) + " item(s) / " + (idsOrNull == null ? "hard refresh" : "partial refresh"));
+            if (!removedItems.isEmpty() || !createdItems.isEmpty()) {
+                publish(target);
+                broadcastUpdate(removedItems, createdItems);
+            }
+        }
+    }
+
+    /**
+     * Первоначально заполняет кэш из снимка на диске, дочитывая из БД изменённое после снимка, и обновляет снимок.
+     *
+     * @see CacheSnapshot
+     */
+    private void loadSnapshotSync() throws Exception {
+        D d = dbdo;
+        try (Connection con = ConnectionManager.getConnection()) {
+            CacheSnapshot.browse(con, d, "manualcache", () -> data.put(d.getId(), d.getCacheItem()), data::clear);
         }
-        Log.trace(caption + removedItems.size() + " removed and " + createdItems.size() + " created, total " + Spell.get(data.size()) + " item(s) / hard refresh");
-        if (!removedItems.isEmpty() || !createdItems.isEmpty()) {
-            broadcastUpdate();
+        publish(data);
+        Log.trace(caption + "0 removed and " + data.size() + " created, total " + Spell.get(data.size()) + " item(s) / snapshot load");
+    }
+
+    private boolean isDbdoConstructible() {
+        try {
+            ParallelRefDbdoLoader.constructorOf(getDbdoClass());
+            return true;
+        } catch (IllegalArgumentException e) {
+            Log.trace(caption + "single select, " + Spell.get(getDbdoClass()) + " cannot be instantiated for parallel load");
+            return false;
+        }
+    }
+
+    /**
+     * Первоначально заполняет кэш, читая таблицу в {@link VersionCacheConst#INITIAL_LOAD_THREADS} нитей.
+     *
+     * @see ParallelRefDbdoLoader
+     */
+    private void loadInParallelSync() throws Exception {
+        ParallelRefDbdoLoader<D> loader = new ParallelRefDbdoLoader<>(null, ParallelRefDbdoLoader.constructorOf(getDbdoClass()), VersionCacheConst.INITIAL_LOAD_THREADS);
+        loader.browseAll(d -> {
+            Long id = d.getId();
+            C item = d.getCacheItem();
+            synchronized (data) {
+                data.put(id, item);
+            }
+        });
+        publish(data);
+        Log.trace(caption + "0 removed and " + data.size() + " created, total " + Spell.get(data.size()) + " item(s) / parallel load");
+    }
+
+    /**
+     * Делает переданную карту данными кэша. В режиме публикации копиями после этого карту менять нельзя.
+     */
+    private void publish(LinkedHashMap<Long, C> newData) {
+        if (copyOnPublish) {
+            data = newData;
+            publishedObjects = Collections.unmodifiableList(new ArrayList<>(newData.values()));
         }
     }
 
+    /**
+     * @return неизменяемое представление данных кэша для клиентов; без публикации копиями оно живое
+     * и годится только пока держим лок
+     */
+    private Map<Long, C> view() {
+        return Collections.unmodifiableMap(data);
+    }
+
     private void broadcastUpdate() {
+        Map<Long, C> view = view();
         for (ManualCacheClient<C> ccc : clients) {
-            ccc.cacheUpdated(data);
+            ccc.cacheUpdated(view);
+        }
+        for (ManualCacheDeltaClient<C> cdc : deltaClients) {
+            cdc.cacheReset(view);
         }
         for (ManualCache<?, ?> chained : chain) {
             chained.updateClients();
         }
     }
 
+    private void broadcastUpdate(Map<Long, C> removedItems, Map<Long, C> createdItems) {
+        Map<Long, C> removed = Collections.unmodifiableMap(removedItems);
+        Map<Long, C> created = Collections.unmodifiableMap(createdItems);
+        if (!clients.isEmpty()) {
+            Map<Long, C> view = view();
+            for (ManualCacheClient<C> ccc : clients) {
+                ccc.cacheUpdated(view);
+            }
+        }
+        for (ManualCacheDeltaClient<C> cdc : deltaClients) {
+            cdc.cacheChanged(removed, created);
+        }
+        for (ManualCache<?, ?> chained : chain) {
+            chained.updateChainedClients(this, removed, created);
+        }
+    }
+
+    /**
+     * Сообщает клиентам, что изменился кэш, от которого зависит этот, и передаёт изменения дальше по цепочке.
+     */
+    private void updateChainedClients(ManualCache<?, ?> source, Map<Long, ?> removed, Map<Long, ?> created) {
+        Locked.run(readLock, () -> {
+            Map<Long, C> view = view();
+            for (ManualCacheClient<C> ccc : clients) {
+                ccc.cacheUpdated(view);
+            }
+            for (ManualCacheDeltaClient<C> cdc : deltaClients) {
+                cdc.chainedCacheChanged(source, removed, created, view);
+            }
+            for (ManualCache<?, ?> chained : chain) {
+                chained.updateChainedClients(source, removed, created);
+            }
+        });
+    }
+
     /**
      * Уведомляет кэш, что записи с указанными ид изменились.
      * <p>
@@ -210,15 +447,29 @@ public class ManualCache<D extends CacheableDbDataObject<C>, C> {
      * @throws Exception
      */
     public final void refresh(Collection<Long> idsOrNull) throws Exception {
-        Locked.run(writeLock, () -> refreshSync(idsOrNull));
+        long started = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            Locked.run(writeLock, () -> refreshSync(idsOrNull));
+            success = true;
+        } finally {
+            stats.refreshed(System.currentTimeMillis() - started, success);
+        }
     }
 
     private void refreshLightSync(Map<Long, C> createdItems) throws Exception {
-        Map<Long, C> removedItems = new LinkedHashMap<>(data);
-        removedItems.keySet().retainAll(createdItems.keySet());
-        data.putAll(createdItems);
-        Log.trace(caption + removedItems.size() + " removed and " + createdItems.size() + " created, total " + Spell.get(data.size()) + " item(s) / light refresh");
-        broadcastUpdate();
+        Map<Long, C> removedItems = new HashMap<>();
+        for (Long id : createdItems.keySet()) {
+            C item = data.get(id);
+            if (item != null) {
+                removedItems.put(id, item);
+            }
+        }
+        LinkedHashMap<Long, C> target = copyOnPublish ? new LinkedHashMap<>(data) : data;
+        target.putAll(createdItems);
+        publish(target);
+        Log.trace(caption + removedItems.size() + " removed and " + createdItems.size() + " created, total " + Spell.get(target.size()) + " item(s) / light refresh");
+        broadcastUpdate(removedItems, createdItems);
     }
 
     /**
@@ -229,18 +480,98 @@ public class ManualCache<D extends CacheableDbDataObject<C>, C> {
      */
     public void refreshLight(Map<Long, C> updatedItems) throws Exception {
         if (selectCustomizer != null) {
-            refresh(null);
+            // с водяным знаком перечитаем переданные записи и изменившиеся после него, проверив, удовлетворяют ли они условию, иначе — весь кэш
+            refresh(watermark == null ? null : updatedItems.keySet());
         } else {
             // хитрый режим без доступа к БД, обновлённое уже у нас в руках — используем его, если в кэше не установлено кастомных фильтров и, следовательно, все элементы подходят
             Locked.run(writeLock, () -> refreshLightSync(updatedItems));
+            stats.lightRefreshed();
         }
     }
 
+    /**
+     * Включает самостоятельное обновление кэша.
+     * <p>
+     * Раз в интервал, смещённый на случайную величину в пределах разброса, кэш перечитывается из БД целиком
+     * вместе с остальными кэшами того же класса, так что много джава-машин с одинаковыми кэшами не ходят в БД разом.
+     * <p>
+     * Если с последнего полного обновления прошло больше допустимого предела, чтение сначала обновляет кэш
+     * и ждёт обновления не дольше {@link VersionCacheConst#MANUAL_CACHE_STALE_REFRESH_TIMEOUT}.
+     * Нить, которая держит лок ручного кэша, например, его клиент, обновления не ждёт и читает то, что есть.
+     *
+     * @param intervalOrNull интервал обновления или нул, если по расписанию не обновлять
+     * @param jitterOrNull наибольшее случайное смещение интервала в обе стороны или нул, если без смещения
+     * @param maxStalenessOrNull допустимый возраст данных при чтении или нул, если без ограничения
+     * @return this
+     * @see ManualCacheAutoRefresher
+     */
+    public ManualCache<D, C> withAutoRefresh(Duration intervalOrNull, Duration jitterOrNull, Duration maxStalenessOrNull) {
+        if (maxStalenessOrNull != null) {
+            maxStalenessMillis = Math.max(1L, maxStalenessOrNull.getMillis());
+        }
+        if (intervalOrNull != null) {
+            ManualCacheAutoRefresher.schedule(this, Math.max(1L, intervalOrNull.getMillis()), jitterOrNull == null ? 0L : jitterOrNull.getMillis());
+        }
+        return this;
+    }
+
+    /** @return true, если текущая нить держит лок этого кэша на чтение или на запись */
+    boolean isLockedByCurrentThread() {
+        return lock.isWriteLockedByCurrentThread() || lock.getReadHoldCount() > 0;
+    }
+
+    /** @return true, если текущая нить держит лок только на чтение, и обновить кэш, не отпустив его, она не сможет */
+    boolean isReadLockedOnlyByCurrentThread() {
+        return !lock.isWriteLockedByCurrentThread() && lock.getReadHoldCount() > 0;
+    }
+
+    /**
+     * Нить, держащая лок какого-нибудь кэша, например, клиент, которого кэш уведомляет, не должна ждать чужого обновления:
+     * обновлению может понадобиться этот самый лок.
+     *
+     * @return true, если текущая нить держит лок хотя бы одного ручного кэша
+     */
+    static boolean isAnyLockedByCurrentThread() {
+        synchronized (INSTANCES) {
+            for (ManualCache<?, ?> cache : INSTANCES) {
+                if (cache.isLockedByCurrentThread()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** @return когда начато последнее обновление, после которого кэш соответствует всей таблице */
+    long getFreshSince() {
+        return freshSince;
+    }
+
+    /**
+     * Если данные старше допустимого, обновляет кэши класса, прежде чем их читать.
+     */
+    private void ensureFresh() {
+        long maxStaleness = maxStalenessMillis;
+        if (maxStaleness > 0L && System.currentTimeMillis() - freshSince > maxStaleness) {
+            stats.staleRead();
+            ManualCacheAutoRefresher.refreshStale(this);
+        }
+    }
+
+    /** @return счётчики обновлений кэша */
+    public ManualCacheStats getStats() {
+        return stats;
+    }
+
     /**
      * @param id
      * @return хранимую в кэше запись с указанным ид либо нул, если такой записи не хранится
      */
     public C getById(Long id) {
+        ensureFresh();
+        if (copyOnPublish) {
+            return data.get(id);
+        }
         return Locked.call(readLock, () -> data.get(id));
     }
 
@@ -257,18 +588,42 @@ public class ManualCache<D extends CacheableDbDataObject<C>, C> {
         return c;
     }
 
-    /** @return копию набора ид хранимых записей */
+    /**
+     * Ид идут в порядке загрузки записей.
+     *
+     * @return копию набора ид хранимых записей, а в режиме публикации копиями — неизменяемое представление опубликованного набора
+     */
     public Set<Long> getIds() {
+        ensureFresh();
+        if (copyOnPublish) {
+            return Collections.unmodifiableSet(data.keySet());
+        }
         return Locked.call(readLock, () -> new LinkedHashSet<>(data.keySet()));
     }
 
-    /** @return копию списка хранимых записей */
+    /**
+     * Записи идут в порядке загрузки.
+     *
+     * @return копию списка хранимых записей, а в режиме публикации копиями — неизменяемый опубликованный список
+     */
     public List<C> getObjects() {
+        ensureFresh();
+        if (copyOnPublish) {
+            return publishedObjects;
+        }
         return Locked.call(readLock, () -> new ArrayList<>(data.values()));
     }
 
-    /** @return копию карты ид→запись для хранимых записей */
+    /**
+     * Записи в карте идут в порядке загрузки.
+     *
+     * @return копию карты ид→запись для хранимых записей, а в режиме публикации копиями — неизменяемое представление опубликованной карты
+     */
     public Map<Long, C> getIdToObject() {
+        ensureFresh();
+        if (copyOnPublish) {
+            return Collections.unmodifiableMap(data);
+        }
         return Locked.call(readLock, () -> new LinkedHashMap<>(data));
     }
 
@@ -0,0 +1,219 @@
+package tk.bolovsrol.db.orm.manualcache;
+
+import tk.bolovsrol.db.orm.versioncache.VersionCacheConst;
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.log.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Самостоятельно обновляет ручные кэши по расписанию и по требованию читателей, заставших устаревшие данные.
+ * <p>
+ * Расписание ведётся по классам кэшируемых объектов: по сработавшему расписанию целиком перечитываются
+ * все кэши класса, зарегистрированные в {@link ManualCacheManager}, так что один запрос к таблице обслуживает их все.
+ * Интервал класса — наименьший из интервалов его кэшей, разброс — наибольший.
+ * Если все кэши класса уже перечитаны за интервал, например, по {@link ManualCacheManager#update(Class)}, обновление пропускается.
+ * <p>
+ * Обновления идут через {@link ManualCacheRefresher}, поэтому совпавшие с ними обновления тех же кэшей объединяются.
+ *
+ * @see ManualCache#withAutoRefresh
+ */
+final class ManualCacheAutoRefresher {
+
+    private static final ScheduledThreadPoolExecutor SCHEDULER;
+
+    private static final Map<Class<?>, Schedule> SCHEDULES = new ConcurrentHashMap<>();
+
+    /** Идущие обновления устаревших кэшей по классам, под локом самой карты. */
+    private static final Map<Class<?>, CompletableFuture<Void>> STALE_REFRESHES = new HashMap<>();
+
+    static {
+        SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "ManualCacheAutoRefresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    private ManualCacheAutoRefresher() {
+    }
+
+    /**
+     * Назначает кэшу обновление по расписанию.
+     *
+     * @param cache кэш
+     * @param intervalMillis интервал обновления, мс
+     * @param jitterMillis наибольшее случайное смещение интервала в обе стороны, мс
+     */
+    static void schedule(ManualCache<?, ?> cache, long intervalMillis, long jitterMillis) {
+        SCHEDULES.computeIfAbsent(cache.getDbdoClass(), Schedule::new).add(cache, intervalMillis, jitterMillis);
+    }
+
+    /**
+     * Ставит кэши класса указанного кэша на обновление и ждёт его не дольше {@link VersionCacheConst#MANUAL_CACHE_STALE_REFRESH_TIMEOUT}.
+     * Читатели, пришедшие, пока обновление идёт, ждут его же, а не запрашивают новое.
+     * <p>
+     * Ошибки обновления пишутся в лог, а читатели получают то, что есть в кэше; так же и не дождавшиеся обновления.
+     * Нить пула обновлений и нить, которая держит лок какого-нибудь ручного кэша, например, клиент обновляемого кэша,
+     * обновления не ждут и тоже получают то, что есть: обновлению, возможно, нужны их нить или лок.
+     *
+     * @param cache устаревший кэш
+     */
+    static void refreshStale(ManualCache<?, ?> cache) {
+        if (ManualCacheRefresher.isInPool() || ManualCache.isAnyLockedByCurrentThread()) {
+            return;
+        }
+        Class<?> cl = cache.getDbdoClass();
+        CompletableFuture<Void> refresh;
+        boolean mine = false;
+        synchronized (STALE_REFRESHES) {
+            refresh = STALE_REFRESHES.get(cl);
+            if (refresh == null) {
+                refresh = new CompletableFuture<>();
+                STALE_REFRESHES.put(cl, refresh);
+                mine = true;
+            }
+        }
+        if (mine) {
+            startStaleRefresh(cache, cl, refresh);
+        }
+        try {
+            refresh.get(VersionCacheConst.MANUAL_CACHE_STALE_REFRESH_TIMEOUT.getMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.warning("Stale " + Spell.get(cache) + " is still refreshing after " + VersionCacheConst.MANUAL_CACHE_STALE_REFRESH_TIMEOUT + ", reading stale data");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // ошибки обновления уже в логе
+        }
+    }
+
+    /**
+     * Ставит кэши класса на обновление и по его окончании завершает ожидание читателей.
+     */
+    private static void startStaleRefresh(ManualCache<?, ?> cache, Class<?> cl, CompletableFuture<Void> refresh) {
+        Runnable done = () -> {
+            synchronized (STALE_REFRESHES) {
+                STALE_REFRESHES.remove(cl, refresh);
+            }
+            refresh.complete(null);
+        };
+        Map<ManualCache, CompletableFuture<Void>> futures;
+        try {
+            List<ManualCache> caches = ManualCacheManager.getCaches(cl);
+            if (!caches.contains(cache)) {
+                caches.add(cache);
+            }
+            futures = ManualCacheRefresher.submit(caches, null);
+        } catch (RuntimeException e) {
+            Log.exception(e);
+            done.run();
+            return;
+        }
+        List<CompletableFuture<Void>> all = new ArrayList<>(futures.size());
+        for (Map.Entry<ManualCache, CompletableFuture<Void>> entry : futures.entrySet()) {
+            ManualCache stale = entry.getKey();
+            all.add(entry.getValue().whenComplete((v, e) -> {
+                if (e != null) {
+                    Log.warning("Stale " + Spell.get(stale) + " refresh failed: " + Spell.get(e));
+                }
+            }));
+        }
+        CompletableFuture.allOf(all.toArray(new CompletableFuture[all.size()])).whenComplete((v, e) -> done.run());
+    }
+
+    /** Расписание обновления кэшей одного класса. */
+    private static final class Schedule {
+        private final Class<?> cl;
+        /** Кэши, которым назначено обновление, на случай, если какой-то из них не зарегистрирован в менеджере. */
+        private final Set<ManualCache<?, ?>> caches = new CopyOnWriteArraySet<>();
+        private long intervalMillis = Long.MAX_VALUE;
+        private long jitterMillis = 0L;
+        /** Номер последнего назначенного запуска, запуски с другими номерами отменены. */
+        private long generation = 0L;
+        private ScheduledFuture<?> next = null;
+
+        private Schedule(Class<?> cl) {
+            this.cl = cl;
+        }
+
+        private synchronized void add(ManualCache<?, ?> cache, long intervalMillis, long jitterMillis) {
+            caches.add(cache);
+            this.jitterMillis = Math.max(this.jitterMillis, jitterMillis);
+            if (intervalMillis < this.intervalMillis) {
+                this.intervalMillis = intervalMillis;
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            if (next != null) {
+                next.cancel(false);
+            }
+            long jitter = jitterMillis > 0L ? ThreadLocalRandom.current().nextLong(-jitterMillis, jitterMillis + 1L) : 0L;
+            long run = ++generation;
+            next = SCHEDULER.schedule(() -> run(run), Math.max(0L, intervalMillis + jitter), TimeUnit.MILLISECONDS);
+        }
+
+        private void run(long run) {
+            List<ManualCache> refreshing;
+            synchronized (this) {
+                if (run != generation) {
+                    return;
+                }
+                refreshing = ManualCacheManager.getCaches(cl);
+                for (ManualCache<?, ?> cache : caches) {
+                    if (!refreshing.contains(cache)) {
+                        refreshing.add(cache);
+                    }
+                }
+                long threshold = System.currentTimeMillis() - intervalMillis;
+                boolean stale = false;
+                for (ManualCache cache : refreshing) {
+                    if (cache.getFreshSince() <= threshold) {
+                        stale = true;
+                        break;
+                    }
+                }
+                if (!stale) {
+                    scheduleNext();
+                    return;
+                }
+            }
+
+            Map<ManualCache, CompletableFuture<Void>> futures;
+            try {
+                futures = ManualCacheRefresher.submit(refreshing, null);
+            } catch (RuntimeException e) {
+                Log.exception(e);
+                scheduleNext();
+                return;
+            }
+            List<CompletableFuture<Void>> all = new ArrayList<>(futures.size());
+            for (Map.Entry<ManualCache, CompletableFuture<Void>> entry : futures.entrySet()) {
+                ManualCache cache = entry.getKey();
+                cache.getStats().autoRefreshed();
+                all.add(entry.getValue().whenComplete((v, e) -> {
+                    if (e != null) {
+                        Log.warning("Scheduled " + Spell.get(cache) + " refresh failed: " + Spell.get(e));
+                    }
+                }));
+            }
+            CompletableFuture.allOf(all.toArray(new CompletableFuture[all.size()])).whenComplete((v, e) -> scheduleNext());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package tk.bolovsrol.db.orm.manualcache;
+
+import java.util.Map;
+
+/**
+ * Клиент ручного кэша, который получает не полный набор данных после каждого обновления, а только изменения.
+ * <p>
+ * Все карты не нул и не изменяемы, но, возможно, некоторые пусты.
+ *
+ * @param <C>
+ * @see ManualCache#withDeltaClient(ManualCacheDeltaClient)
+ */
+public interface ManualCacheDeltaClient<C> {
+
+    /**
+     * Заполняет клиента полным набором актуальных данных.
+     * <p>
+     * Кэш вызывает этот метод при регистрации клиента и когда изменения неизвестны,
+     * например, при {@link ManualCache#updateClients()}, а по умолчанию и при изменениях в связанном кэше.
+     * Клиент должен заменить этим набором всё, что накопил из изменений, иначе он разойдётся с кэшем.
+     *
+     * @param data полный набор актуальных данных БД (с учётом возможного фильтра)
+     */
+    void cacheReset(Map<Long, ? extends C> data);
+
+    /**
+     * Обновляет клиента под новое состояние БД.
+     *
+     * @param removed записи, которые были удалены из БД и которые были обновлены (их старые версии)
+     * @param created записи, которые были добавлены в БД и которые были обновлены (их новые версии)
+     */
+    void cacheChanged(Map<Long, ? extends C> removed, Map<Long, ? extends C> created);
+
+    /**
+     * Сообщает клиенту об изменениях в кэше, от данных которого зависит его кэш.
+     * <p>
+     * Вызывается, если кэш клиента зарегистрирован в цепочке обновлений кэша-источника
+     * (в том числе через промежуточные кэши).
+     * По умолчанию заполняет клиента заново методом {@link #cacheReset(Map)}.
+     *
+     * @param source кэш, в котором произошли изменения
+     * @param removed старые версии удалённых и обновлённых записей кэша-источника
+     * @param created новые версии добавленных и обновлённых записей кэша-источника
+     * @param data полный набор актуальных данных кэша клиента
+     * @see ManualCache#chainUpdates(ManualCache)
+     */
+    default void chainedCacheChanged(ManualCache<?, ?> source, Map<Long, ?> removed, Map<Long, ?> created, Map<Long, ? extends C> data) {
+        cacheReset(data);
+    }
+}
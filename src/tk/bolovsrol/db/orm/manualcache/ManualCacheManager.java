@@ -67,6 +67,9 @@ public final class ManualCacheManager {
      * <p>
      * Класс может быть произвольным. Если для этого класса зарегистрированы кэши, то менеджер обновит в них закписи с указанными ид.
      * Если в качестве списка ид передать нул, менеджер обновит кэши целиком. Иначе менеджер ничего не сделает.
+     * <p>
+     * Кэши обновляются параллельно, кэши из цепочек обновлений — после своих источников.
+     * Запросы на обновление кэша, пришедшие, пока он ждёт своей очереди, объединяются.
      *
      * @param cl
      * @param idsOrNull
@@ -75,16 +78,7 @@ public final class ManualCacheManager {
     @SuppressWarnings("SuspiciousMethodCalls") public static Map<ManualCache, Exception> update(Class<?> cl, Collection<Long> idsOrNull) {
         List<ManualCache> list = CLASS_TO_CACHES.get(cl);
         if (list != null) {
-            Map<ManualCache, Exception> ccToE = new LinkedHashMap<>(list.size());
-            for (ManualCache cc : list) {
-                try {
-                    cc.refresh(idsOrNull);
-                    ccToE.put(cc, null);
-                } catch (Exception e) {
-                    ccToE.put(cc, e);
-                }
-            }
-            return ccToE;
+            return ManualCacheRefresher.refresh(new ArrayList<>(list), idsOrNull);
         } else {
             return Collections.emptyMap();
         }
@@ -149,6 +143,15 @@ public final class ManualCacheManager {
         return ccToE;
     }
 
+    /**
+     * @param cl класс кэшируемого объекта
+     * @return копию списка кэшей, зарегистрированных для класса, возможно, пустую
+     */
+    static List<ManualCache> getCaches(Class<?> cl) {
+        List<ManualCache> list = CLASS_TO_CACHES.get(cl);
+        return list == null ? new ArrayList<>() : new ArrayList<>(list);
+    }
+
     /** @return набор классов, для которых зарегистрированы кэши */
     public static Set<Class<? extends CacheableDbDataObject<?>>> getRegisteredClasses() {
         return CLASS_TO_CACHES.keySet();
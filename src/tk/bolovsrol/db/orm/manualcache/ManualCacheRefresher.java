@@ -0,0 +1,229 @@
+package tk.bolovsrol.db.orm.manualcache;
+
+import tk.bolovsrol.db.orm.versioncache.VersionCacheConst;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Обновляет ручные кэши параллельно на ограниченном пуле из {@link VersionCacheConst#MANUAL_CACHE_REFRESH_THREADS} нитей.
+ * <p>
+ * Кэш, который получает обновления другого обновляемого кэша ({@link ManualCache#chainUpdates(ManualCache)}),
+ * обновляется после него, так что его клиенты видят уже обновлённые данные источника. Прочие кэши обновляются одновременно.
+ * <p>
+ * Обновление, которое ещё ждёт свободной нити, принимает к себе запросы на обновление того же кэша:
+ * ид объединяются, и все запросившие дожидаются одного обновления. Запрос, пришедший, когда обновление уже идёт,
+ * ставит новое, ведь идущее могло прочитать данные до изменения.
+ * <p>
+ * Если обновление запрошено из нити пула, например, клиентом кэша, или нитью, которая держит лок какого-нибудь ручного кэша,
+ * кэши обновляются последовательно в этой же нити, чтобы не ждать пул, который она сама занимает,
+ * или обновление, которому нужен её лок. Кэш, лок которого нить держит только на чтение, так обновить нельзя,
+ * и его обновление ставится в пул без ожидания: оно пройдёт, когда нить отпустит лок.
+ */
+final class ManualCacheRefresher {
+
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    /** Нить принадлежит пулу. */
+    private static final ThreadLocal<Boolean> IN_POOL = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    /** Обновления, ещё не взятые нитями пула, под локом самой карты. */
+    private static final Map<ManualCache<?, ?>, Flight> PENDING = new HashMap<>();
+
+    static {
+        int threads = Math.max(1, VersionCacheConst.MANUAL_CACHE_REFRESH_THREADS);
+        AtomicInteger threadNumber = new AtomicInteger();
+        EXECUTOR = new ThreadPoolExecutor(
+            threads, threads,
+            0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            r -> {
+                Thread thread = new Thread(() -> {
+                    IN_POOL.set(Boolean.TRUE);
+                    r.run();
+                }, "ManualCacheRefresh-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+    }
+
+    private ManualCacheRefresher() {
+    }
+
+    /** @return true, если текущая нить принадлежит пулу, то есть, в частности, уведомляет клиентов обновлённого кэша */
+    static boolean isInPool() {
+        return IN_POOL.get();
+    }
+
+    /**
+     * Обновляет кэши и дожидается окончания обновления.
+     *
+     * @param caches кэши
+     * @param idsOrNull ид изменившихся записей или нул, если изменились все
+     * @return карта кэшей в исходном порядке с исключениями, которые кэши выкинули при обновлении (или нулом, если кэш обновился без ошибок)
+     */
+    static Map<ManualCache, Exception> refresh(List<ManualCache> caches, Collection<Long> idsOrNull) {
+        Map<ManualCache, Exception> ccToE = new LinkedHashMap<>(caches.size());
+        for (ManualCache cc : caches) {
+            ccToE.put(cc, null);
+        }
+
+        if (IN_POOL.get() || ManualCache.isAnyLockedByCurrentThread()) {
+            for (ManualCache cc : sortByChain(caches)) {
+                if (cc.isReadLockedOnlyByCurrentThread()) {
+                    schedule(cc, idsOrNull);
+                    continue;
+                }
+                try {
+                    cc.refresh(idsOrNull);
+                } catch (Exception e) {
+                    ccToE.put(cc, e);
+                }
+            }
+            return ccToE;
+        }
+
+        Map<ManualCache, CompletableFuture<Void>> futures = submit(caches, idsOrNull);
+        boolean interrupted = false;
+        for (ManualCache cc : caches) {
+            if (interrupted) {
+                ccToE.put(cc, new InterruptedException("Interrupted while waiting for cache refresh"));
+                continue;
+            }
+            try {
+                futures.get(cc).get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                ccToE.put(cc, cause instanceof Exception ? (Exception) cause : e);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                ccToE.put(cc, e);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return ccToE;
+    }
+
+    /**
+     * Ставит обновление кэшей в очередь пула, не дожидаясь его.
+     *
+     * @param caches кэши
+     * @param idsOrNull ид изменившихся записей или нул, если изменились все
+     * @return карта кэшей с завершением их обновлений
+     */
+    @SuppressWarnings("unchecked")
+    static Map<ManualCache, CompletableFuture<Void>> submit(List<ManualCache> caches, Collection<Long> idsOrNull) {
+        Map<ManualCache, CompletableFuture<Void>> futures = new LinkedHashMap<>(caches.size());
+        for (ManualCache cc : sortByChain(caches)) {
+            List<CompletableFuture<Void>> sources = new ArrayList<>();
+            for (Map.Entry<ManualCache, CompletableFuture<Void>> entry : futures.entrySet()) {
+                if (entry.getKey().chainsTo(cc)) {
+                    sources.add(entry.getValue());
+                }
+            }
+            CompletableFuture<Void> future = sources.isEmpty()
+                ? schedule(cc, idsOrNull)
+                // ошибка источника не отменяет обновления, клиенты получат то, что есть
+                : CompletableFuture.allOf(sources.toArray(new CompletableFuture[sources.size()]))
+                .handle((v, e) -> null)
+                .thenCompose(v -> schedule(cc, idsOrNull));
+            futures.put(cc, future);
+        }
+        return futures;
+    }
+
+    /**
+     * @return кэши в таком порядке, что кэш, получающий обновления другого кэша из списка, стоит после него
+     */
+    private static List<ManualCache> sortByChain(List<ManualCache> caches) {
+        List<ManualCache> rest = new ArrayList<>(caches);
+        List<ManualCache> result = new ArrayList<>(caches.size());
+        while (!rest.isEmpty()) {
+            // цепочки обновлений не замкнуты, так что за проход находится хотя бы один кэш без источников
+            for (Iterator<ManualCache> it = rest.iterator(); it.hasNext(); ) {
+                ManualCache cc = it.next();
+                if (!hasSource(rest, cc)) {
+                    result.add(cc);
+                    it.remove();
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean hasSource(List<ManualCache> caches, ManualCache cc) {
+        for (ManualCache source : caches) {
+            if (source != cc && source.chainsTo(cc)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static CompletableFuture<Void> schedule(ManualCache<?, ?> cache, Collection<Long> idsOrNull) {
+        Flight flight;
+        synchronized (PENDING) {
+            flight = PENDING.get(cache);
+            if (flight != null) {
+                flight.merge(idsOrNull);
+                cache.getStats().coalesced();
+                return flight.done;
+            }
+            flight = new Flight(cache, idsOrNull);
+            PENDING.put(cache, flight);
+        }
+        EXECUTOR.execute(flight);
+        return flight.done;
+    }
+
+    /** Обновление кэша, к которому присоединяются запросы, пришедшие, пока оно ждёт нить. */
+    private static final class Flight implements Runnable {
+        private final ManualCache<?, ?> cache;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        /** Ид, которые надо обновить, или нул, если кэш обновляется целиком, под локом {@link #PENDING}. */
+        private Set<Long> ids;
+
+        private Flight(ManualCache<?, ?> cache, Collection<Long> idsOrNull) {
+            this.cache = cache;
+            this.ids = idsOrNull == null ? null : new LinkedHashSet<>(idsOrNull);
+        }
+
+        private void merge(Collection<Long> idsOrNull) {
+            if (idsOrNull == null) {
+                ids = null;
+            } else if (ids != null) {
+                ids.addAll(idsOrNull);
+            }
+        }
+
+        @Override public void run() {
+            Set<Long> idsOrNull;
+            synchronized (PENDING) {
+                PENDING.remove(cache, this);
+                idsOrNull = ids;
+            }
+            try {
+                cache.refresh(idsOrNull);
+                done.complete(null);
+            } catch (Throwable e) {
+                done.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package tk.bolovsrol.db.orm.manualcache;
+
+import tk.bolovsrol.db.stats.Histogram;
+import tk.bolovsrol.utils.StringDumpBuilder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики обновлений ручного кэша.
+ *
+ * @see ManualCache#getStats()
+ */
+public class ManualCacheStats {
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder lightRefreshes = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder autoRefreshes = new LongAdder();
+    private final LongAdder staleReads = new LongAdder();
+    private final Histogram refreshMillis = new Histogram();
+
+    void refreshed(long millis, boolean success) {
+        refreshes.increment();
+        if (!success) {
+            failed.increment();
+        }
+        refreshMillis.record(millis);
+    }
+
+    void lightRefreshed() {
+        lightRefreshes.increment();
+    }
+
+    void coalesced() {
+        coalesced.increment();
+    }
+
+    void autoRefreshed() {
+        autoRefreshes.increment();
+    }
+
+    void staleRead() {
+        staleReads.increment();
+    }
+
+    /** @return сколько раз кэш обновлялся из БД */
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    /** @return сколько обновлений из БД завершились ошибкой */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /** @return сколько раз кэш обновлялся переданными записями, не обращаясь к БД */
+    public long getLightRefreshes() {
+        return lightRefreshes.sum();
+    }
+
+    /** @return сколько запросов на обновление присоединились к уже ожидающему обновлению */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /** @return сколько раз кэш обновлялся по расписанию */
+    public long getAutoRefreshes() {
+        return autoRefreshes.sum();
+    }
+
+    /** @return сколько раз чтение застало данные старше допустимого и обновило кэш */
+    public long getStaleReads() {
+        return staleReads.sum();
+    }
+
+    /** @return время обновления из БД вместе с ожиданием лока, мс */
+    public Histogram getRefreshMillis() {
+        return refreshMillis;
+    }
+
+    public String toString() {
+        return new StringDumpBuilder()
+                .append("refreshes", getRefreshes())
+                .append("failed", getFailed())
+                .append("lightRefreshes", getLightRefreshes())
+                .append("coalesced", getCoalesced())
+                .append("autoRefreshes", getAutoRefreshes())
+                .append("staleReads", getStaleReads())
+                .append("refreshMillis", refreshMillis)
+                .toString();
+    }
+}
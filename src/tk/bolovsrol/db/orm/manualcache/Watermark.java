@@ -0,0 +1,133 @@
+package tk.bolovsrol.db.orm.manualcache;
+
+import tk.bolovsrol.db.collections.LongHashSet;
+import tk.bolovsrol.db.orm.fields.DbDataField;
+import tk.bolovsrol.db.orm.object.RefDbDataObject;
+import tk.bolovsrol.db.orm.sql.statements.select.Select;
+import tk.bolovsrol.db.orm.versioncache.VersionCacheConst;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Водяной знак ручного кэша: наибольшее виденное значение колонки времени изменения или версии записи.
+ * <p>
+ * По водяному знаку кэш находит записи, изменившиеся после прошлого обновления. Их ид вычитываются без условия выборки кэша,
+ * чтобы заметить и записи, которые перестали ему удовлетворять, а перечитываются с условием только эти записи.
+ * <p>
+ * Удалённые записи колонку не трогают, поэтому кэш узнаёт о них, только если их ид переданы в обновление,
+ * либо при полной сверке, которую водяной знак назначает раз в {@link VersionCacheConst#MANUAL_CACHE_RECONCILE_INTERVAL}.
+ * Полная сверка подберёт и записи, которые закоммитили со значением колонки меньше уже виденного.
+ * <p>
+ * Записи отбираются нестрогим сравнением, чтобы не потерять записи, закоммиченные с уже виденным граничным значением.
+ * Ид записей с граничным значением, которые кэш уже прочитал, водяной знак помнит и повторно их не перечитывает,
+ * так что без изменений обновление обходится одним запросом. Зато изменение записи, не поменявшее граничного значения колонки,
+ * например, в пределах её точности, кэш заметит только при полной сверке.
+ * Колонка должна обновляться при каждой вставке и изменении записи, записи с нулом в колонке водяной знак не видит.
+ * <p>
+ * Класс не потокобезопасен, им пользуются под локом записи кэша.
+ *
+ * @param <V> тип колонки
+ */
+final class Watermark<V extends Comparable<? super V>> {
+
+    private final DbDataField<V, ?> field;
+    /** Наибольшее значение колонки, изменения до которого кэш уже вычитал. */
+    private V value = null;
+    /** Ид уже прочитанных записей, у которых значение колонки равно водяному знаку. */
+    private Set<Long> boundaryIds = new LongHashSet();
+    /** Значение, которое станет водяным знаком, если обновление пройдёт успешно. */
+    private V pendingValue = null;
+    /** Ид, которые станут граничными, если обновление пройдёт успешно. */
+    private Set<Long> pendingBoundaryIds = new LongHashSet();
+    /** Обновление перечитывает таблицу целиком. */
+    private boolean pendingReconciliation = false;
+    private long nextReconciliation = 0L;
+
+    Watermark(DbDataField<V, ?> field) {
+        this.field = field;
+    }
+
+    /** @return true, если пора перечитать таблицу целиком */
+    boolean isReconciliationDue() {
+        return value == null || System.currentTimeMillis() >= nextReconciliation;
+    }
+
+    /**
+     * Запоминает наибольшее значение колонки перед тем, как перечитать таблицу целиком.
+     *
+     * @param con соединение
+     * @param table объект таблицы
+     * @throws SQLException
+     */
+    void startReconciliation(Connection con, RefDbDataObject table) throws SQLException {
+        pendingValue = Select.from(table).load(con, field.max());
+        pendingBoundaryIds = new LongHashSet();
+        if (pendingValue != null) {
+            browseFrom(con, table, pendingValue, null);
+        }
+        pendingReconciliation = true;
+    }
+
+    /**
+     * Вычитывает ид записей, изменившихся после водяного знака, и добавляет к ним переданные ид.
+     *
+     * @param con соединение
+     * @param table объект таблицы
+     * @param idsOrNull ид, о которых кэшу сообщили, или нул
+     * @return ид записей, которые надо перечитать, либо нул, если их больше {@link VersionCacheConst#FULL_RELOAD_THRESHOLD}
+     * и таблицу проще перечитать целиком
+     * @throws SQLException
+     */
+    Collection<Long> collectChangedIds(Connection con, RefDbDataObject table, Collection<Long> idsOrNull) throws SQLException {
+        Set<Long> ids = idsOrNull == null ? new LinkedHashSet<>() : new LinkedHashSet<>(idsOrNull);
+        pendingValue = value;
+        pendingBoundaryIds = new LongHashSet(boundaryIds);
+        pendingReconciliation = false;
+        browseFrom(con, table, value, ids);
+        return ids.size() > VersionCacheConst.FULL_RELOAD_THRESHOLD ? null : ids;
+    }
+
+    /**
+     * Просматривает записи со значением колонки не меньше указанного, продвигая запомненное значение и граничные ид.
+     *
+     * @param idsOrNull куда складывать ид ещё не прочитанных записей, или нул, если ид не нужны
+     */
+    private void browseFrom(Connection con, RefDbDataObject table, V from, Set<Long> idsOrNull) throws SQLException {
+        Select.from(table).where(field.ge(from)).browse(con, table.idField(), field, (Long id, V v) -> {
+            if (v == null) {
+                return;
+            }
+            if (idsOrNull != null && !(v.compareTo(value) == 0 && boundaryIds.contains(id))) {
+                idsOrNull.add(id);
+            }
+            int cmp = v.compareTo(pendingValue);
+            if (cmp > 0) {
+                pendingValue = v;
+                pendingBoundaryIds.clear();
+            }
+            if (cmp >= 0) {
+                pendingBoundaryIds.add(id);
+            }
+        });
+    }
+
+    /**
+     * Обновление кэша прошло успешно, запомненное значение становится водяным знаком.
+     */
+    void commit() {
+        if (pendingReconciliation) {
+            nextReconciliation = System.currentTimeMillis() + VersionCacheConst.MANUAL_CACHE_RECONCILE_INTERVAL.getMillis();
+            pendingReconciliation = false;
+        }
+        value = pendingValue;
+        boundaryIds = pendingBoundaryIds;
+    }
+
+    @Override public String toString() {
+        return field.getName() + '=' + value;
+    }
+}
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.object;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.DbProperties;
 import tk.bolovsrol.db.orm.fields.DbDataField;
 import tk.bolovsrol.db.orm.sql.DbException;
@@ -170,7 +171,7 @@ public class AbstractDbDataObject implements DbDataObject, Iterable<DbDataField<
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException {
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException {
         sb.append(meta.sqlCatalogAndTableName);
         if (tableAliases != null) {
             sb.append(" AS ").append(tableAliases.get(this));
@@ -19,6 +19,7 @@ import tk.bolovsrol.db.orm.sql.statements.insert.Insert;
 import tk.bolovsrol.db.orm.sql.statements.insert.RefInsert;
 import tk.bolovsrol.db.orm.sql.statements.insert.RowlessInsertOrUpdate;
 import tk.bolovsrol.db.orm.sql.statements.update.Update;
+import tk.bolovsrol.db.orm.versioncache.LocalChangeFeed;
 import tk.bolovsrol.utils.RefObject;
 import tk.bolovsrol.utils.Spell;
 import tk.bolovsrol.utils.log.LogDome;
@@ -128,11 +129,15 @@ public interface RefDbDataObject extends RefObject, DbDataObject {
 
 	/**
 	 * Вставляет объект в БД. В ключевое поле будет вычитан полученный из СУБД ид.
+	 * <p>
+	 * Если соединение — {@link tk.bolovsrol.db.pool.HookConnection}, после коммита о новой записи
+	 * узнают кэши справочников, см. {@link LocalChangeFeed}.
 	 *
 	 * @throws SQLException
 	 */
 	default void insert(Connection con) throws SQLException {
 		Insert.intoAndLoadId(this).execute(con);
+		LocalChangeFeed.created(con, this);
 	}
 
 	/** Вставляет объект в БД, получает сгенерированный Id и пишет соответствующую запись
@@ -151,6 +156,7 @@ public interface RefDbDataObject extends RefObject, DbDataObject {
 	 * Обновляет объект по его ид.
 	 * Проверяет, что ид не нул (иначе {@link IllegalArgumentException} и что он сам не изменён (иначе {@link IllegalStateException}).
 	 * Проверяет, что есть изменившиеся колонки и обновляет их и возвращает true, либо, если изменившихся нет, возвращает false.
+	 * Об обновлении, как и о вставке и удалении, узнают кэши справочников, см. {@link LocalChangeFeed}.
 	 *
 	 * @return true, если какие-то изменения обнаружены и сохранены, false иначе
 	 * @throws SQLException
@@ -174,6 +180,7 @@ public interface RefDbDataObject extends RefObject, DbDataObject {
 		if (rows != 1) {
 			throw new SuspiciousUpdatedRowCountException(this, this.idField(), rows);
 		}
+		LocalChangeFeed.updated(con, this);
 		return true;
 	}
 
@@ -224,7 +231,11 @@ public interface RefDbDataObject extends RefObject, DbDataObject {
 		if (idField().isValueNull()) {
 			throw new IllegalArgumentException("Cannot do delete, keyfield " + Spell.get(idField()) + " is null.");
 		}
-		return new Delete(this).where(idField().eqSelf()).execute(con) > 0;
+		if (new Delete(this).where(idField().eqSelf()).execute(con) > 0) {
+			LocalChangeFeed.deleted(con, this);
+			return true;
+		}
+		return false;
 	}
 
 	/**
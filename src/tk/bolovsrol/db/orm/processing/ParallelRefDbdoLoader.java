@@ -0,0 +1,244 @@
+package tk.bolovsrol.db.orm.processing;
+
+import tk.bolovsrol.db.orm.object.RefDbDataObject;
+import tk.bolovsrol.db.orm.sql.statements.select.Select;
+import tk.bolovsrol.db.pool.ConnectionManager;
+import tk.bolovsrol.utils.Spell;
+
+import java.lang.reflect.Constructor;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Читает таблицу в несколько нитей, каждую на своём соединении из пула.
+ * <p>
+ * Работа делится на куски: либо диапазоны ид между наименьшим и наибольшим ид таблицы, либо пачки переданных ид.
+ * Кусков в несколько раз больше, чем нитей, и свободная нить берёт следующий кусок, так что
+ * неравномерно заполненные диапазоны не задерживают загрузку. Одну из нитей составляет сама вызывающая нить.
+ * <p>
+ * Если нить одна или записей слишком мало, чтобы их стоило делить, таблица читается одним селектом.
+ * <p>
+ * Обработчик записей вызывается из разных нитей одновременно, каждая нить — со своим объектом,
+ * поэтому обработчик должен быть потокобезопасным.
+ * <p>
+ * Если какой-нибудь кусок не загрузился, остальные нити бросают свои куски на очередной записи,
+ * а загрузка выкидывает исключение: обработчик к тому времени получил не все записи.
+ *
+ * @param <D> класс объекта таблицы
+ */
+public class ParallelRefDbdoLoader<D extends RefDbDataObject> {
+
+    /** Во сколько раз кусков больше, чем нитей. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** Меньше этого количества ид в кусок не кладём. */
+    private static final int MIN_CHUNK_SIZE = 1000;
+
+    /** Прерывает чтение куска, когда другой кусок уже не загрузился. */
+    private static final class ChunkAbandoned extends RuntimeException {
+        private ChunkAbandoned() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Обработчик загруженной записи.
+     *
+     * @param <D> класс объекта таблицы
+     * @param <E> исключение обработчика
+     */
+    @FunctionalInterface public interface RowConsumer<D, E extends Exception> {
+        /**
+         * Нить загрузила в объект очередную запись.
+         *
+         * @param dbdo объект нити с загруженной записью
+         */
+        void rowLoaded(D dbdo) throws E;
+    }
+
+    private final String dbName;
+    private final Supplier<? extends D> dbdoFactory;
+    private final int threads;
+
+    /**
+     * @param dbName имя БД или нул для БД по умолчанию
+     * @param dbdoFactory генератор пустых объектов таблицы, по одному на нить
+     * @param threads наибольшее количество нитей и, соответственно, соединений, занятых загрузкой
+     */
+    public ParallelRefDbdoLoader(String dbName, Supplier<? extends D> dbdoFactory, int threads) {
+        this.dbName = dbName;
+        this.dbdoFactory = dbdoFactory;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Возвращает генератор, создающий объекты указанного класса конструктором без параметров,
+     * даже если конструктор непубличный.
+     *
+     * @param cl класс объекта
+     * @return генератор объектов
+     * @throws IllegalArgumentException у класса нет конструктора без параметров
+     */
+    public static <D> Supplier<D> constructorOf(Class<? extends D> cl) throws IllegalArgumentException {
+        Constructor<? extends D> constructor;
+        try {
+            constructor = cl.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException | RuntimeException e) {
+            throw new IllegalArgumentException("Cannot use constructor of " + Spell.get(cl), e);
+        }
+        return () -> {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot create an instance of " + Spell.get(cl), e);
+            }
+        };
+    }
+
+    /**
+     * Загружает все записи таблицы.
+     *
+     * @param consumer потокобезопасный обработчик записей
+     * @throws SQLException
+     * @throws InterruptedException
+     */
+    public <E extends Exception> void browseAll(RowConsumer<? super D, E> consumer) throws SQLException, InterruptedException, E {
+        List<BiConsumer<D, Select>> chunks = new ArrayList<>();
+        if (threads > 1) {
+            D d = dbdoFactory.get();
+            Long minId;
+            Long maxId;
+            try (Connection con = ConnectionManager.getConnection(dbName)) {
+                minId = Select.from(d).load(con, d.idField().min());
+                maxId = Select.from(d).load(con, d.idField().max());
+            }
+            if (minId != null && maxId != null) {
+                long span = maxId - minId + 1L;
+                int count = (int) Math.min(threads * CHUNKS_PER_THREAD, span / MIN_CHUNK_SIZE);
+                if (count > 1) {
+                    long step = span / count;
+                    for (int i = 0; i < count; i++) {
+                        long from = minId + step * i;
+                        Long to = i == count - 1 ? null : minId + step * (i + 1);
+                        chunks.add((o, s) -> {
+                            s.where(o.idField().ge(from));
+                            if (to != null) {
+                                s.where(o.idField().lt(to));
+                            }
+                        });
+                    }
+                }
+            }
+        }
+        if (chunks.isEmpty()) {
+            chunks.add((o, s) -> {});
+        }
+        run(chunks, consumer);
+    }
+
+    /**
+     * Загружает записи таблицы с указанными ид.
+     *
+     * @param ids ид записей
+     * @param consumer потокобезопасный обработчик записей
+     * @throws SQLException
+     * @throws InterruptedException
+     */
+    public <E extends Exception> void browseIds(Collection<Long> ids, RowConsumer<? super D, E> consumer) throws SQLException, InterruptedException, E {
+        if (ids.isEmpty()) {
+            return;
+        }
+        int count = (int) Math.max(1L, Math.min(threads * CHUNKS_PER_THREAD, ids.size() / MIN_CHUNK_SIZE));
+        int chunkSize = (ids.size() + count - 1) / count;
+        List<BiConsumer<D, Select>> chunks = new ArrayList<>(count);
+        List<Long> chunkIds = new ArrayList<>(chunkSize);
+        for (Long id : ids) {
+            chunkIds.add(id);
+            if (chunkIds.size() == chunkSize) {
+                chunks.add(inChunk(chunkIds));
+                chunkIds = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!chunkIds.isEmpty()) {
+            chunks.add(inChunk(chunkIds));
+        }
+        run(chunks, consumer);
+    }
+
+    private BiConsumer<D, Select> inChunk(List<Long> ids) {
+        return (o, s) -> s.where(o.idField().in(ids));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends Exception> void run(List<BiConsumer<D, Select>> chunks, RowConsumer<? super D, E> consumer) throws SQLException, InterruptedException, E {
+        AtomicInteger nextChunk = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Runnable worker = () -> {
+            try {
+                D d = dbdoFactory.get();
+                try (Connection con = ConnectionManager.getConnection(dbName)) {
+                    int i;
+                    while (failure.get() == null && (i = nextChunk.getAndIncrement()) < chunks.size()) {
+                        Select s = d.selectAllColumns();
+                        chunks.get(i).accept(d, s);
+                        s.browse(con, () -> {
+                            if (failure.get() != null) {
+                                throw new ChunkAbandoned();
+                            }
+                            consumer.rowLoaded(d);
+                        });
+                    }
+                }
+            } catch (ChunkAbandoned ignored) {
+                // исключение уже запомнила нить, кусок которой не загрузился
+            } catch (Throwable e) {
+                if (!failure.compareAndSet(null, e)) {
+                    failure.get().addSuppressed(e);
+                }
+            }
+        };
+
+        List<Thread> helpers = new ArrayList<>();
+        int helperCount = Math.min(threads, chunks.size()) - 1;
+        for (int i = 0; i < helperCount; i++) {
+            Thread thread = new Thread(worker, "ParallelLoad-" + Thread.currentThread().getName() + '-' + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            helpers.add(thread);
+        }
+        worker.run();
+        try {
+            for (Thread thread : helpers) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread thread : helpers) {
+                thread.interrupt();
+            }
+            throw e;
+        }
+
+        Throwable e = failure.get();
+        if (e == null) {
+            return;
+        } else if (e instanceof SQLException) {
+            throw (SQLException) e;
+        } else if (e instanceof InterruptedException) {
+            throw (InterruptedException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        } else {
+            throw (E) e;
+        }
+    }
+}
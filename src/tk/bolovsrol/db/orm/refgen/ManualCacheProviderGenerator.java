@@ -20,6 +20,7 @@ public class ManualCacheProviderGenerator implements ObjectGenerator {
             "import tk.bolovsrol.db.orm.RecordNotFoundException;\n" +
             "import tk.bolovsrol.db.orm.manualcache.ManualCache;\n" +
             "import tk.bolovsrol.db.orm.manualcache.ManualCacheClient;\n" +
+            "import tk.bolovsrol.db.orm.manualcache.ManualCacheDeltaClient;\n" +
             '\n' +
             "public final class " + mi.getName() + PROVIDER + " {\n" +
             '\n' +
@@ -30,6 +31,8 @@ public class ManualCacheProviderGenerator implements ObjectGenerator {
             '\n' +
             "    public static void addClient(ManualCacheClient<" + mi.getName() + "> client) { CACHE.withClient(client); }\n" +
             '\n' +
+            "    public static void addDeltaClient(ManualCacheDeltaClient<" + mi.getName() + "> client) { CACHE.withDeltaClient(client); }\n" +
+            '\n' +
             "    public static void chainUpdates(ManualCache<?,?> alienCache) { CACHE.chainUpdates(alienCache); }\n" +
             '\n' +
             "    public static " + mi.getName() + " getByIdOrDie(Long id) throws RecordNotFoundException { return CACHE.getByIdOrDie(id); }\n" +
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 
 import java.sql.SQLException;
@@ -12,6 +13,6 @@ import java.util.Map;
  */
 public interface WritingSqlExpression {
 
-    void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException;
+    void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException;
 
 }
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.conditions;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.containers.DbBigDecimal;
 import tk.bolovsrol.db.orm.containers.DbByteArray;
 import tk.bolovsrol.db.orm.containers.DbDate;
@@ -167,8 +168,8 @@ public class ConsecutiveCondition extends ConsecutiveSqlExpression implements Co
     }
 
     // ДБ-методы
-    @Override public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        super.writeConsecutiveSqlExpression(sb, databaseProductName, tableAliases);
+    @Override public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        super.writeConsecutiveSqlExpression(sb, dialect, tableAliases);
     }
 
     @Override public int putValues(PreparedStatement ps, int pos) throws SQLException, DbException {
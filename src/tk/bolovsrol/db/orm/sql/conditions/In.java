@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.conditions;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.containers.DbValueContainer;
 import tk.bolovsrol.db.orm.fields.DbDataField;
 import tk.bolovsrol.db.orm.object.DbDataObject;
@@ -48,8 +49,8 @@ public class In<V, C extends DbValueContainer<V>> implements Condition {
         this.containers = Arrays.asList(containers);
     }
 
-    @Override public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        column.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+    @Override public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        column.writeSqlExpressionForSelect(sb, dialect, tableAliases);
         int i = containers.size();
         if (i == 1) {
             sb.append(singleComparison).append('?');
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.conditions;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 
@@ -28,8 +29,8 @@ public class ProxyCondition implements Condition {
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        delegate.writeSqlExpression(sb, databaseProductName, tableAliases);
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        delegate.writeSqlExpression(sb, dialect, tableAliases);
     }
 
     @Override public int putValues(PreparedStatement ps, int pos) throws SQLException, DbException {
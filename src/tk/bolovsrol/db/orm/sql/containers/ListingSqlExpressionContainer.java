@@ -1,6 +1,7 @@
 package tk.bolovsrol.db.orm.sql.containers;
 
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.PuttingSqlExpression;
@@ -64,14 +65,14 @@ public class ListingSqlExpressionContainer<T extends PuttingSqlExpression> imple
         return entities.isEmpty();
     }
 
-    @Override public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+    @Override public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
         if (entities.isEmpty()) { throw new DbException("Cowardly refusing to generate " + getClass().getSimpleName() + " clause with no entities."); }
         int size = entities.size();
         if (size == 1) {
             if (prefix != null && putPrefixAndSuffixForSingleItem) {
                 sb.append(prefix);
             }
-            entities.get(0).writeSqlExpression(sb, databaseProductName, tableAliases);
+            entities.get(0).writeSqlExpression(sb, dialect, tableAliases);
             if (suffix != null && putPrefixAndSuffixForSingleItem) {
                 sb.append(suffix);
             }
@@ -79,12 +80,12 @@ public class ListingSqlExpressionContainer<T extends PuttingSqlExpression> imple
             if (prefix != null) {
                 sb.append(prefix);
             }
-            entities.get(0).writeSqlExpression(sb, databaseProductName, tableAliases);
+            entities.get(0).writeSqlExpression(sb, dialect, tableAliases);
             for (int i = 1; i < size; i++) {
                 if (infix != null) {
                     sb.append(infix);
                 }
-                entities.get(i).writeSqlExpression(sb, databaseProductName, tableAliases);
+                entities.get(i).writeSqlExpression(sb, dialect, tableAliases);
             }
             if (suffix != null) {
                 sb.append(suffix);
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.containers.consecutive;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.containers.DbValueContainer;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
@@ -88,9 +89,9 @@ public class ConsecutiveSqlExpression {
         return this;
     }
 
-    protected void writeConsecutiveSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+    protected void writeConsecutiveSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
         for (ConsecutiveItem consecutiveItem : consecutiveItems) {
-            consecutiveItem.writeSqlExpression(sb, databaseProductName, tableAliases);
+            consecutiveItem.writeSqlExpression(sb, dialect, tableAliases);
         }
     }
 
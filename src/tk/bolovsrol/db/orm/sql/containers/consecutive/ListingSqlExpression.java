@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.containers.consecutive;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.containers.DbValueContainer;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
@@ -75,18 +76,18 @@ public class ListingSqlExpression {
         return this;
     }
 
-    protected void writeListSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+    protected void writeListSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
         Iterator<ConsecutiveItem> iterator = consecutiveItems.iterator();
         if (!iterator.hasNext()) {
             throw new DbException("Empty list expression " + this);
         }
-        if (prefixItem != null) { prefixItem.writeSqlExpression(sb, databaseProductName, tableAliases); }
-        iterator.next().writeSqlExpression(sb, databaseProductName, tableAliases);
+        if (prefixItem != null) { prefixItem.writeSqlExpression(sb, dialect, tableAliases); }
+        iterator.next().writeSqlExpression(sb, dialect, tableAliases);
         do {
-            delimiterItem.writeSqlExpression(sb, databaseProductName, tableAliases);
-            iterator.next().writeSqlExpression(sb, databaseProductName, tableAliases);
+            delimiterItem.writeSqlExpression(sb, dialect, tableAliases);
+            iterator.next().writeSqlExpression(sb, dialect, tableAliases);
         } while (iterator.hasNext());
-        if (suffixItem != null) { suffixItem.writeSqlExpression(sb, databaseProductName, tableAliases); }
+        if (suffixItem != null) { suffixItem.writeSqlExpression(sb, dialect, tableAliases); }
     }
 
     protected int putConsecutiveValues(PreparedStatement ps, int pos) throws SQLException, DbException {
@@ -5,6 +5,7 @@ import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.conditions.Condition;
@@ -14,9 +15,9 @@ public class ConditionItem implements ConsecutiveItem {
 
 	public ConditionItem(Condition condition) { this.condition = condition; }
 
-	@Override public void writeSqlExpression( StringBuilder sb, String databaseProductName,
+	@Override public void writeSqlExpression( StringBuilder sb, DatabaseDialect dialect,
 			Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-		condition.writeSqlExpression(sb, databaseProductName, tableAliases); }
+		condition.writeSqlExpression(sb, dialect, tableAliases); }
 
 	@Override public int putValues(PreparedStatement ps, int pos) throws DbException {
 		return pos; }
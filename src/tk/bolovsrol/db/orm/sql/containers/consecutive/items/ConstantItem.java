@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.containers.consecutive.items;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 
@@ -16,7 +17,7 @@ public class ConstantItem implements ConsecutiveItem {
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException {
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException {
         sb.append(matter);
     }
 
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.containers.consecutive.items;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.dbcolumns.DbColumn;
@@ -18,8 +19,8 @@ public class DbColumnItem implements ConsecutiveItem {
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        dbColumn.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        dbColumn.writeSqlExpressionForSelect(sb, dialect, tableAliases);
     }
 
     @Override public int putValues(PreparedStatement ps, int pos) throws SQLException {
@@ -1,6 +1,6 @@
 package tk.bolovsrol.db.orm.sql.containers.consecutive.items;
 
-import tk.bolovsrol.db.DatabaseProductNames;
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 
@@ -27,19 +27,19 @@ public class RegexpItem implements ConsecutiveItem {
         this.postgreKeyword = postgreKeyword;
     }
 
-    private String pickKeyword(String databaseProductName) {
-        switch (databaseProductName) {
-        case DatabaseProductNames.MYSQL:
+    private String pickKeyword(DatabaseDialect dialect) {
+        switch (dialect) {
+        case MYSQL:
             return mysqlKeyword;
-        case DatabaseProductNames.POSTGRESQL:
+        case POSTGRESQL:
             return postgreKeyword;
         default:
-            throw new DbException("REGEXP matching is not supported for " + databaseProductName);
+            throw new DbException("REGEXP matching is not supported for " + dialect);
         }
     }
 
-    @Override public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException {
-        sb.append(pickKeyword(databaseProductName));
+    @Override public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException {
+        sb.append(pickKeyword(dialect));
     }
 
     @Override public void committed() {
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.containers.consecutive.items;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.statements.select.Select;
@@ -33,7 +34,7 @@ public class SubSelectItem implements ConsecutiveItem {
         select.appendSqlLogValues(list);
     }
 
-    @Override public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        select.writeSqlExpression(sb, databaseProductName);
+    @Override public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        select.writeSqlExpression(sb, dialect);
     }
 }
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.containers.consecutive.items;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.containers.DbValueContainer;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
@@ -19,7 +20,7 @@ public class ValueItem implements ConsecutiveItem {
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException {
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException {
         // Если контейнер содержит отрицательную циферку, а предыдущий символ "+",
         // то этот плюс можно будет откусить.
         if (container instanceof NumberContainer
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.dbcolumns;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 
@@ -15,9 +16,9 @@ public class CountDistinct extends AbstractCount {
     }
 
     @Override
-    public void writeSqlExpressionForSelect(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+    public void writeSqlExpressionForSelect(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
         sb.append("COUNT(DISTINCT ");
-        column.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+        column.writeSqlExpressionForSelect(sb, dialect, tableAliases);
         sb.append(')');
     }
 
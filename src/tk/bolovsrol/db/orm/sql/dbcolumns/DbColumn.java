@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.dbcolumns;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.containers.DbValueContainer;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
@@ -31,7 +32,7 @@ import java.util.Map;
  */
 public interface DbColumn<V> {
 
-    void writeSqlExpressionForSelect(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException;
+    void writeSqlExpressionForSelect(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException;
 
     int putValuesForSelect(PreparedStatement ps, int pos) throws SQLException, DbException;
 
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.dbcolumns;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.PickFailedException;
 import tk.bolovsrol.db.orm.containers.DbValueContainer;
 import tk.bolovsrol.db.orm.fields.DbDataField;
@@ -54,8 +55,8 @@ public class ForkDbColumn<V> implements ValueDbColumn<V> {
 
     // записываем колонку
     @Override
-    public void writeSqlExpressionForSelect(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        column.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+    public void writeSqlExpressionForSelect(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        column.writeSqlExpressionForSelect(sb, dialect, tableAliases);
     }
 
     @Override public int putValuesForSelect(PreparedStatement ps, int pos) throws SQLException, DbException {
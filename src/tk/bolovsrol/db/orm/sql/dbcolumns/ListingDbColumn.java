@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.dbcolumns;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.containers.DbBigDecimal;
 import tk.bolovsrol.db.orm.containers.DbByteArray;
 import tk.bolovsrol.db.orm.containers.DbDate;
@@ -153,8 +154,8 @@ public class ListingDbColumn<V> extends ListingSqlExpression implements DbColumn
     }
 
     // ДБ-методы
-    @Override public void writeSqlExpressionForSelect(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        super.writeListSqlExpression(sb, databaseProductName, tableAliases);
+    @Override public void writeSqlExpressionForSelect(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        super.writeListSqlExpression(sb, dialect, tableAliases);
     }
 
     @Override public int putValuesForSelect(PreparedStatement ps, int pos) throws SQLException, DbException {
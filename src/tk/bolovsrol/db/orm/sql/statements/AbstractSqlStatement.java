@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.utils.Spell;
 import tk.bolovsrol.utils.log.Log;
@@ -54,7 +55,7 @@ public abstract class AbstractSqlStatement implements SqlStatement {
         if (con == null) {
             throw new NullPointerException("No Connection is passed to SQL Statement Generator");
         }
-        return generateSqlExpression(con.getMetaData().getDatabaseProductName(), false);
+        return generateSqlExpression(DatabaseDialect.of(con), false);
     }
 
 
@@ -63,14 +64,14 @@ public abstract class AbstractSqlStatement implements SqlStatement {
      * Если fillInPlaceholders труе, то вопросики будут заменены на соовтетствующие значения —
      * это для лога и отладки.
      *
-     * @param databaseProductName СУБД, для которой нужно подготовить текст
+     * @param dialect СУБД, для которой нужно подготовить текст
      * @return SQL-выражение
      * @throws DbException ошибка формирования SQL-выражения для указаной СУБД
      * @throws SQLException прочая SQL-ошибка
      */
-    @Override public String generateSqlExpression(String databaseProductName, boolean fillInPlaceholders) throws DbException, SQLException {
+    @Override public String generateSqlExpression(DatabaseDialect dialect, boolean fillInPlaceholders) throws DbException, SQLException {
         StringBuilder sb = new StringBuilder(256);
-        writeSqlExpression(sb, databaseProductName);
+        writeSqlExpression(sb, dialect);
         String sql = sb.toString();
         if (allowLogging || fillInPlaceholders) {
             String filledSql = fillInPlaceholders(sql);
@@ -80,17 +81,29 @@ public abstract class AbstractSqlStatement implements SqlStatement {
         return sql;
     }
 
+    /**
+     * Записывает в лог готовое SQL-выражение, если логгирование разрешено, так же,
+     * как {@link #generateSqlExpression(DatabaseDialect, boolean)}.
+     *
+     * @param sql SQL-выражение с вопросиками
+     */
+    protected void logSqlExpression(String sql) {
+        if (allowLogging) {
+            SQL_LOG.trace(fillInPlaceholders(sql));
+        }
+    }
+
     /**
      * Записывает в предоставленный стринг-билдер SQL-выражение в синтаксисе,
      * подходящем для указанной СУБД.
      *
      * @param sb куда записывать SQL-выражение
-     * @param databaseProductName СУБД, для которой нужно подготовить текст
+     * @param dialect СУБД, для которой нужно подготовить текст
      * @throws DbException ошибка формирования SQL-выражения для указаного соединения
      * @throws SQLException прочая SQL-ошибка
-     * @see tk.bolovsrol.db.DatabaseProductNames
+     * @see tk.bolovsrol.db.DatabaseDialect
      */
-    protected abstract void writeSqlExpression(StringBuilder sb, String databaseProductName) throws DbException, SQLException;
+    protected abstract void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect) throws DbException, SQLException;
 
     /**
      * Заменяет в переданном SQL-выражении знаки вопроса на значения параметров,
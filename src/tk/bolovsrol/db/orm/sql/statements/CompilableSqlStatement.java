@@ -0,0 +1,101 @@
+package tk.bolovsrol.db.orm.sql.statements;
+
+import tk.bolovsrol.db.DatabaseDialect;
+import tk.bolovsrol.db.orm.sql.DbException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SQL-выражение, которое можно скомпилировать в неизменяемый {@link SqlTemplate}
+ * и исполнять многократно, не генерируя текст заново.
+ *
+ * @see SqlTemplate
+ */
+public abstract class CompilableSqlStatement extends AbstractSqlStatement {
+
+    /** Скомпилированный шаблон выражения или null. */
+    private SqlTemplate template = null;
+
+    protected CompilableSqlStatement() {
+    }
+
+    /**
+     * Компилирует выражение для указанной СУБД в неизменяемый шаблон и запоминает его.
+     * <p>
+     * Пока шаблон запомнен, исполнение выражения на соединении с этой СУБД не генерирует
+     * текст заново, а только записывает значения параметров. Изменение структуры выражения
+     * методами-сеттерами шаблон сбрасывает. Изменения, внесённые в обход сеттеров
+     * (например, в контейнер условий, полученный геттером), шаблон не замечает,
+     * в таком случае следует вызвать {@link #dropTemplate()} самостоятельно.
+     *
+     * @param dialect СУБД, для которой нужно подготовить текст
+     * @return шаблон
+     * @throws DbException ошибка формирования SQL-выражения для указанной СУБД
+     * @throws SQLException прочая SQL-ошибка
+     */
+    public SqlTemplate compile(DatabaseDialect dialect) throws DbException, SQLException {
+        List<SqlTemplate.Binder> binders = new ArrayList<>(8);
+        collectBinders(binders);
+        StringBuilder sb = new StringBuilder(256);
+        writeSqlExpression(sb, dialect);
+        template = new SqlTemplate(sb.toString(), dialect, binders);
+        return template;
+    }
+
+    /**
+     * Компилирует выражение для СУБД переданного соединения.
+     *
+     * @param con соединение
+     * @return шаблон
+     * @throws DbException ошибка формирования SQL-выражения
+     * @throws SQLException прочая SQL-ошибка
+     * @see #compile(DatabaseDialect)
+     */
+    public SqlTemplate compile(Connection con) throws DbException, SQLException {
+        return compile(DatabaseDialect.of(con));
+    }
+
+    /** @return запомненный шаблон или null, если выражение не скомпилировано */
+    public SqlTemplate getTemplate() {
+        return template;
+    }
+
+    /** Забывает скомпилированный шаблон, дальше выражение будет генерироваться заново при каждом исполнении. */
+    public void dropTemplate() {
+        template = null;
+    }
+
+    /**
+     * Возвращает запомненный шаблон, если он скомпилирован для СУБД переданного соединения.
+     *
+     * @param con соединение
+     * @return шаблон или null
+     * @throws SQLException
+     */
+    protected SqlTemplate getTemplate(Connection con) throws SQLException {
+        SqlTemplate t = template;
+        return t != null && t.getDialect() == DatabaseDialect.of(con) ? t : null;
+    }
+
+    /**
+     * Возвращает текст шаблона, при необходимости записывая выражение в лог.
+     *
+     * @param template шаблон
+     * @return SQL-выражение
+     */
+    protected String getSqlExpression(SqlTemplate template) {
+        String sql = template.getSql();
+        logSqlExpression(sql);
+        return sql;
+    }
+
+    /**
+     * Добавляет в список в порядке следования параметров части выражения, записывающие значения.
+     *
+     * @param binders куда добавлять части
+     */
+    protected abstract void collectBinders(List<SqlTemplate.Binder> binders);
+}
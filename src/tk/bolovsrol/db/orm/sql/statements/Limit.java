@@ -1,6 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements;
 
-import tk.bolovsrol.db.DatabaseProductNames;
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.PuttingSqlExpression;
@@ -47,23 +47,24 @@ public class Limit implements PuttingSqlExpression {
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        switch (databaseProductName) {
-        case DatabaseProductNames.MYSQL:
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        switch (dialect) {
+        case MYSQL:
             sb.append(" LIMIT ");
             if (offset != 0) {
                 sb.append(offset).append(',');
             }
             sb.append(rowCount);
             break;
-        case DatabaseProductNames.POSTGRESQL:
+        case POSTGRESQL:
+        case HSQLDB:
             sb.append(" LIMIT ");
             sb.append(rowCount);
             if (offset != 0) {
                 sb.append(" OFFSET ").append(offset);
             }
             break;
-        case DatabaseProductNames.ORACLE:
+        case ORACLE:
             // https://forums.oracle.com/forums/thread.jspa?threadID=415724
             // http://stackoverflow.com/questions/470542/how-do-i-limit-the-number-of-rows-returned-by-an-oracle-query
             if (offset > 0) {
@@ -76,7 +77,7 @@ public class Limit implements PuttingSqlExpression {
             }
             break;
         default:
-            throw new DbException("Unsupported instruction LIMIT for DB: " + Spell.get(databaseProductName));
+            throw new DbException("Unsupported instruction LIMIT for DB: " + Spell.get(dialect));
         }
     }
 
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.JDBCUtils;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
@@ -28,9 +29,9 @@ public class SimpleDbdoStatement extends AbstractSqlStatement {
         }
     }
 
-    @Override protected void writeSqlExpression(StringBuilder sb, String databaseProductName) throws DbException, SQLException {
+    @Override protected void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect) throws DbException, SQLException {
         sb.append(statement);
-        dbdo.writeSqlExpression(sb, databaseProductName, null);
+        dbdo.writeSqlExpression(sb, dialect, null);
     }
 
     @Override protected void appendSqlLogValues(List<String> values) {
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.utils.properties.Cfg;
 
@@ -18,5 +19,13 @@ public interface SqlStatement {
 
     String generateSqlExpression(Connection con) throws SQLException, DbException;
 
-    String generateSqlExpression(String databaseProductName, boolean fillInPlaceholders) throws DbException, SQLException;
+    String generateSqlExpression(DatabaseDialect dialect, boolean fillInPlaceholders) throws DbException, SQLException;
+
+    /**
+     * То же, что {@link #generateSqlExpression(DatabaseDialect, boolean)}, для имени СУБД,
+     * которое возвращает Connection#getMetaData()#getDatabaseProductName().
+     */
+    default String generateSqlExpression(String databaseProductName, boolean fillInPlaceholders) throws DbException, SQLException {
+        return generateSqlExpression(DatabaseDialect.forProductName(databaseProductName), fillInPlaceholders);
+    }
 }
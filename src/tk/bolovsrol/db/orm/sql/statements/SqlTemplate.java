@@ -0,0 +1,74 @@
+package tk.bolovsrol.db.orm.sql.statements;
+
+import tk.bolovsrol.db.DatabaseDialect;
+import tk.bolovsrol.db.orm.sql.DbException;
+import tk.bolovsrol.utils.StringDumpBuilder;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Скомпилированное SQL-выражение: готовый текст для определённого диалекта
+ * и упорядоченный список частей выражения, записывающих значения параметров.
+ * <p>
+ * Шаблон неизменяем. Сами части выражения (условия, колонки) остаются живыми,
+ * поэтому при повторном исполнении в {@link PreparedStatement} попадают их текущие значения.
+ * Чтобы повторно исполнять выражение с другими значениями, условия следует строить
+ * на контейнерах или собственных значениях полей (методы с суффиксами <code>Value</code> и <code>Self</code>),
+ * а не на явных значениях.
+ *
+ * @see CompilableSqlStatement#compile(DatabaseDialect)
+ */
+public final class SqlTemplate {
+
+    /** Часть выражения, записывающая значения своих параметров. */
+    @FunctionalInterface
+    public interface Binder {
+        int putValues(PreparedStatement ps, int pos) throws SQLException, DbException;
+    }
+
+    private final String sql;
+    private final DatabaseDialect dialect;
+    private final Binder[] binders;
+
+    SqlTemplate(String sql, DatabaseDialect dialect, List<Binder> binders) {
+        this.sql = sql;
+        this.dialect = dialect;
+        this.binders = binders.toArray(new Binder[binders.size()]);
+    }
+
+    /** @return текст SQL-выражения */
+    public String getSql() {
+        return sql;
+    }
+
+    /** @return диалект, для которого скомпилирован шаблон */
+    public DatabaseDialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * Записывает в выражение текущие значения параметров.
+     *
+     * @param ps подготовленное по {@link #getSql()} выражение
+     * @param pos номер первого параметра
+     * @return номер следующего за последним записанным параметра
+     * @throws SQLException
+     * @throws DbException
+     */
+    public int putValues(PreparedStatement ps, int pos) throws SQLException, DbException {
+        for (Binder binder : binders) {
+            pos = binder.putValues(ps, pos);
+        }
+        return pos;
+    }
+
+    @Override public String toString() {
+        return new StringDumpBuilder()
+            .append("dialect", dialect)
+            .append("sql", sql)
+            .append("binders", binders.length)
+            .toString();
+    }
+}
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.fields.LongDbField;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.object.RefDbDataObject;
@@ -94,9 +95,9 @@ public class Tables implements WritingSqlExpression {
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
         if (primaryTable != null) {
-            primaryTable.writeSqlExpression(sb, databaseProductName, tableAliases);
+            primaryTable.writeSqlExpression(sb, dialect, tableAliases);
         }
         if (forceIndexNames != null) {
             sb.append(" FORCE INDEX(");
@@ -108,7 +109,7 @@ public class Tables implements WritingSqlExpression {
         if (joins != null) {
             for (Join join : joins) {
                 sb.append(' ');
-                join.writeSqlExpression(sb, databaseProductName, tableAliases);
+                join.writeSqlExpression(sb, dialect, tableAliases);
             }
         }
     }
@@ -1,10 +1,12 @@
 package tk.bolovsrol.db.orm.sql.statements.delete;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.JDBCUtils;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.conditions.Condition;
-import tk.bolovsrol.db.orm.sql.statements.AbstractSqlStatement;
+import tk.bolovsrol.db.orm.sql.statements.CompilableSqlStatement;
+import tk.bolovsrol.db.orm.sql.statements.SqlTemplate;
 import tk.bolovsrol.db.orm.sql.statements.Where;
 
 import java.sql.Connection;
@@ -14,7 +16,7 @@ import java.util.Collection;
 import java.util.List;
 
 /** Single-table delete. */
-public class Delete extends AbstractSqlStatement {
+public class Delete extends CompilableSqlStatement {
 
     private DbDataObject table;
     private final Where where = new Where();
@@ -32,10 +34,10 @@ public class Delete extends AbstractSqlStatement {
     //-------- генератор
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName) throws DbException, SQLException {
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect) throws DbException, SQLException {
         sb.append("DELETE FROM ");
-        table.writeSqlExpression(sb, databaseProductName, null);
-        where.writeSqlExpression(sb, databaseProductName, null);
+        table.writeSqlExpression(sb, dialect, null);
+        where.writeSqlExpression(sb, dialect, null);
     }
 
     public int putValues(PreparedStatement ps, int pos) throws SQLException, DbException {
@@ -43,6 +45,10 @@ public class Delete extends AbstractSqlStatement {
         return pos;
     }
 
+    @Override protected void collectBinders(List<SqlTemplate.Binder> binders) {
+        binders.add(where::putValues);
+    }
+
     @Override
     protected void appendSqlLogValues(List<String> values) {
         where.appendSqlLogValues(values);
@@ -55,9 +61,14 @@ public class Delete extends AbstractSqlStatement {
      * @throws SQLException
      */
     public int execute(Connection con) throws SQLException, DbException {
-        PreparedStatement ps = con.prepareStatement(generateSqlExpression(con));
+        SqlTemplate template = getTemplate(con);
+        PreparedStatement ps = con.prepareStatement(template == null ? generateSqlExpression(con) : getSqlExpression(template));
         try {
-            putValues(ps, 1);
+            if (template == null) {
+                putValues(ps, 1);
+            } else {
+                template.putValues(ps, 1);
+            }
             return ps.executeUpdate();
         } finally {
             JDBCUtils.close(ps);
@@ -69,6 +80,7 @@ public class Delete extends AbstractSqlStatement {
 
     @Deprecated
     public Delete setTable(DbDataObject primaryTable) {
+        dropTemplate();
         this.table = primaryTable;
         return this;
     }
@@ -76,16 +88,19 @@ public class Delete extends AbstractSqlStatement {
     // ----------- Where (and) ---------------
 
     public Delete where(Condition condition) {
+        dropTemplate();
         this.where.add(condition);
         return this;
     }
 
     public Delete where(Condition... conditions) {
+        dropTemplate();
         this.where.add(conditions);
         return this;
     }
 
     public Delete where(Collection<? extends Condition> conditions) {
+        dropTemplate();
         this.where.add(conditions);
         return this;
     }
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements.insert;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.JDBCUtils;
 import tk.bolovsrol.db.orm.fields.DbDataField;
 import tk.bolovsrol.db.orm.object.DbDataObject;
@@ -44,18 +45,18 @@ public class InsertSelect extends AbstractSqlStatement {
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName) throws DbException, SQLException {
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect) throws DbException, SQLException {
         // insert into TABLE (col1,col2,col3) select ...
         sb.append("INSERT INTO ");
-        insertTable.writeSqlExpression(sb, databaseProductName, null);
+        insertTable.writeSqlExpression(sb, dialect, null);
         sb.append('(');
         for (DbDataField<?, ?> column : columns) {
-            column.writeSqlExpression(sb, databaseProductName, null);
+            column.writeSqlExpression(sb, dialect, null);
             sb.append(',');
         }
         sb.setCharAt(sb.length() - 1, ')');
         sb.append(' ');
-        select.writeSqlExpression(sb, databaseProductName);
+        select.writeSqlExpression(sb, dialect);
     }
 
     public int putValues(PreparedStatement ps, int pos) throws SQLException {
@@ -1,6 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements.insert;
 
-import tk.bolovsrol.db.DatabaseProductNames;
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.fields.DbDataField;
 import tk.bolovsrol.db.orm.fields.LongDbField;
 import tk.bolovsrol.db.orm.object.RefDbDataObject;
@@ -42,16 +42,16 @@ public class RefInsert extends AbstractSqlStatement {
 	}
 
 	@Override
-	public void writeSqlExpression(StringBuilder sb, String databaseProductName) throws DbException, SQLException {
+	public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect) throws DbException, SQLException {
 		RefDbDataObject table = tables.get(0);
-		if (tables.size() > 1 && DatabaseProductNames.ORACLE.equals(databaseProductName)) {
+		if (tables.size() > 1 && dialect == DatabaseDialect.ORACLE) {
 			// insert all into TABLE (col1,col2,col3) values (val1a,val2a,val3a) into TABLE(col1,col2,col3) values (val1b,val2b,val3b) ... SELECT * from dual
 			StringBuilder ib = new StringBuilder(256);
 			ib.append(" INTO ");
-			table.writeSqlExpression(ib, databaseProductName, null);
+			table.writeSqlExpression(ib, dialect, null);
 			ib.append('(');
 			for (DbDataField<?, ?> field : table.fields()) {
-				field.writeSqlExpression(ib, databaseProductName, null);
+				field.writeSqlExpression(ib, dialect, null);
 				ib.append(',');
 			}
 			ib.setCharAt(ib.length() - 1, ')');
@@ -63,10 +63,10 @@ public class RefInsert extends AbstractSqlStatement {
 		} else {
 			// insert into TABLE (col1,col2,col3) values (val1a,val2a,val3a),(val1b,val2b,val3b),...
 			sb.append("INSERT INTO ");
-			table.writeSqlExpression(sb, databaseProductName, null);
+			table.writeSqlExpression(sb, dialect, null);
 			sb.append('(');
 			for (DbDataField<?, ?> field : table.fields()) {
-				field.writeSqlExpression(sb, databaseProductName, null);
+				field.writeSqlExpression(sb, dialect, null);
 				sb.append(',');
 			}
 			sb.setCharAt(sb.length() - 1, ')');
@@ -95,7 +95,7 @@ public class RefInsert extends AbstractSqlStatement {
 	}
 
 	private int insertOracle(Connection con) throws SQLException {
-		String databaseProductName = con.getMetaData().getDatabaseProductName();
+		DatabaseDialect dialect = DatabaseDialect.of(con);
 		if (isAllowLogging()) {
 			Log.trace("Insert using Oracle Workaround Mode");
 		}
@@ -108,7 +108,7 @@ public class RefInsert extends AbstractSqlStatement {
 			{
 				StringBuilder sb = new StringBuilder(64);
 				sb.append("LOCK TABLE");
-				table.writeSqlExpression(sb, databaseProductName, null);
+				table.writeSqlExpression(sb, dialect, null);
 				sb.append(" IN EXCLUSIVE MODE");
 				if (isAllowLogging()) {
 					Log.trace(sb);
@@ -129,9 +129,9 @@ public class RefInsert extends AbstractSqlStatement {
 			{
 				StringBuilder sb = new StringBuilder(64);
 				sb.append("SELECT MAX(");
-				keyField.writeSqlExpression(sb, databaseProductName, null);
+				keyField.writeSqlExpression(sb, dialect, null);
 				sb.append(") FROM ");
-				table.writeSqlExpression(sb, databaseProductName, null);
+				table.writeSqlExpression(sb, dialect, null);
 				if (LOG_SQL) {
 					Log.trace(sb);
 				}
@@ -198,7 +198,7 @@ public class RefInsert extends AbstractSqlStatement {
 // К сожалению, некоторые таблицы сдизайнены жопами, и в качестве ключевого поля они используют чужие ид
 //		tables.forEach(table -> table.idField().dropValue());
 		int rowCount;
-		if (DatabaseProductNames.ORACLE.equals(con.getMetaData().getDatabaseProductName())) {
+		if (DatabaseDialect.of(con) == DatabaseDialect.ORACLE) {
 			rowCount = insertOracle(con);
 		} else {
 			rowCount = insertCommon(con);
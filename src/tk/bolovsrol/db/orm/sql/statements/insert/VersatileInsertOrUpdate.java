@@ -1,6 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements.insert;
 
-import tk.bolovsrol.db.DatabaseProductNames;
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.JDBCUtils;
 import tk.bolovsrol.db.orm.containers.DbValueContainer;
 import tk.bolovsrol.db.orm.fields.DbDataField;
@@ -62,17 +62,17 @@ class VersatileInsertOrUpdate extends AbstractSqlStatement implements Columnless
 	//-------- генератор
 
 	@Override
-	public void writeSqlExpression(StringBuilder sb, String databaseProductName) throws DbException, SQLException {
-		if (valueRows.size() > 1 && DatabaseProductNames.ORACLE.equals(databaseProductName)) {
+	public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect) throws DbException, SQLException {
+		if (valueRows.size() > 1 && dialect == DatabaseDialect.ORACLE) {
 			// insert all into TABLE (col1,col2,col3) values (val1a,val2a,val3a) into TABLE(col1,col2,col3) values (val1b,val2b,val3b) ... SELECT * from dual
 			String valuesAndQuestions = "VALUES(" + StringUtils.copies("?", ",", columns.size()) + ')';
 			sb.append("INSERT ALL ");
 			for (int i = valueRows.size(); i > 0; i--) {
 				sb.append("INTO ");
-				table.writeSqlExpression(sb, databaseProductName, null);
+				table.writeSqlExpression(sb, dialect, null);
 				sb.append('(');
 				for (DbDataField<?, ?> column : columns) {
-					column.writeSqlExpression(sb, databaseProductName, null);
+					column.writeSqlExpression(sb, dialect, null);
 					sb.append(',');
 				}
 				sb.setCharAt(sb.length() - 1, ')');
@@ -82,10 +82,10 @@ class VersatileInsertOrUpdate extends AbstractSqlStatement implements Columnless
 
 			StringBuilder ib = new StringBuilder(256);
 			ib.append(" INTO ");
-			table.writeSqlExpression(ib, databaseProductName, null);
+			table.writeSqlExpression(ib, dialect, null);
 			ib.append('(');
 			for (DbDataField<?, ?> field : columns) {
-				field.writeSqlExpression(ib, databaseProductName, null);
+				field.writeSqlExpression(ib, dialect, null);
 				ib.append(',');
 			}
 			ib.setCharAt(ib.length() - 1, ')');
@@ -98,10 +98,10 @@ class VersatileInsertOrUpdate extends AbstractSqlStatement implements Columnless
 		} else {
 			// insert into TABLE (col1,col2,col3) values (val1a,val2a,val3a),(val1b,val2b,val3b),...
 			sb.append("INSERT INTO ");
-			table.writeSqlExpression(sb, databaseProductName, null);
+			table.writeSqlExpression(sb, dialect, null);
 			sb.append('(');
 			for (DbDataField<?, ?> column : columns) {
-				column.writeSqlExpression(sb, databaseProductName, null);
+				column.writeSqlExpression(sb, dialect, null);
 				sb.append(',');
 			}
 			sb.setCharAt(sb.length() - 1, ')');
@@ -110,11 +110,11 @@ class VersatileInsertOrUpdate extends AbstractSqlStatement implements Columnless
 		}
 
 		if (updateColumns != null) {
-			if (databaseProductName.equals(DatabaseProductNames.MYSQL)) {
+			if (dialect == DatabaseDialect.MYSQL) {
 				sb.append(" ON DUPLICATE KEY UPDATE ");
-				updateColumns.writeSqlExpression(sb, databaseProductName, null);
+				updateColumns.writeSqlExpression(sb, dialect, null);
 			} else {
-				throw new DbException("Unsupported instruction ON DUPLICATE KEY UPDATE for " + databaseProductName);
+				throw new DbException("Unsupported instruction ON DUPLICATE KEY UPDATE for " + dialect);
 			}
 		}
 	}
@@ -1,6 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements.locks;
 
-import tk.bolovsrol.db.DatabaseProductNames;
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.JDBCUtils;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
@@ -51,33 +51,35 @@ public class Lock extends AbstractSqlStatement {
 	}
 
 	@Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName) throws DbException, SQLException {
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect) throws DbException, SQLException {
         // LOCK TABLES dbdo0,dbdo1 READ|WRITE
-        switch (databaseProductName) {
-        case DatabaseProductNames.MYSQL:
-            sb.append("LOCK TABLES ");
-            dbdos[0].writeSqlExpression(sb, databaseProductName, null);
+        switch (dialect) {
+        case MYSQL:
+        case HSQLDB:
+            // у HSQLDB блокировки держатся до конца транзакции, см. Unlock
+            sb.append(dialect == DatabaseDialect.MYSQL ? "LOCK TABLES " : "LOCK TABLE ");
+            dbdos[0].writeSqlExpression(sb, dialect, null);
             sb.append(lockWrites[0] ? " WRITE" : " READ");
             for (int i = 1; i < dbdos.length; i++) {
                 sb.append(',');
-                dbdos[i].writeSqlExpression(sb, databaseProductName, null);
+                dbdos[i].writeSqlExpression(sb, dialect, null);
                 sb.append(lockWrites[i] ? " WRITE" : " READ");
             }
             break;
 
-        case DatabaseProductNames.POSTGRESQL:
+        case POSTGRESQL:
             sb.append("LOCK TABLE ");
-            dbdos[0].writeSqlExpression(sb, databaseProductName, null);
+            dbdos[0].writeSqlExpression(sb, dialect, null);
             sb.append(" IN ").append(lockWrites[0] ? " ROW EXCLUSIVE" : " ROW SHARE").append(" MODE");
             for (int i = 1; i < dbdos.length; i++) {
                 sb.append(',');
-                dbdos[i].writeSqlExpression(sb, databaseProductName, null);
+                dbdos[i].writeSqlExpression(sb, dialect, null);
                 sb.append(" IN ").append(lockWrites[i] ? " ROW EXCLUSIVE" : " ROW SHARE").append(" MODE");
             }
             break;
 
         default:
-            throw new DbException("Unsupported instruction LOCK for DB " + databaseProductName);
+            throw new DbException("Unsupported instruction LOCK for DB " + dialect);
         }
     }
 
@@ -1,6 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements.locks;
 
-import tk.bolovsrol.db.DatabaseProductNames;
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.JDBCUtils;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.statements.AbstractSqlStatement;
@@ -18,6 +18,7 @@ public class Unlock extends AbstractSqlStatement {
 
 	private final Connection con;
 	private static final String SQL = "UNLOCK TABLES";
+	private static final String HSQLDB_SQL = "COMMIT";
 
 	protected Unlock(Connection con) {
 		this.con = con;
@@ -38,12 +39,14 @@ public class Unlock extends AbstractSqlStatement {
 	}
 
 	@Override
-	public void writeSqlExpression(StringBuilder sb, String databaseProductName) throws DbException, SQLException {
-		String dbName = con.getMetaData().getDatabaseProductName();
-		if (dbName.equals(DatabaseProductNames.MYSQL)) {
+	public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect) throws DbException, SQLException {
+		if (dialect == DatabaseDialect.MYSQL) {
 			sb.append(SQL);
+		} else if (dialect == DatabaseDialect.HSQLDB) {
+			// HSQLDB снимает блокировки таблиц только по завершении транзакции
+			sb.append(HSQLDB_SQL);
 		} else {
-			throw new DbException("Unsupported instruction UNLOCK TABLES for DB: " + Spell.get(dbName));
+			throw new DbException("Unsupported instruction UNLOCK TABLES for DB: " + Spell.get(dialect.toString()));
 		}
 	}
 
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements.select;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.PickFailedException;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
@@ -46,14 +47,14 @@ class DbColumns implements PuttingSqlExpression {
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
         Iterator<DbColumn> it = columns.iterator();
         if (it.hasNext()) {
             sb.append(' ');
-            it.next().writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+            it.next().writeSqlExpressionForSelect(sb, dialect, tableAliases);
             while (it.hasNext()) {
                 sb.append(',');
-                it.next().writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+                it.next().writeSqlExpressionForSelect(sb, dialect, tableAliases);
             }
         }
     }
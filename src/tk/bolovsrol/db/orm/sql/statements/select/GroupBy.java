@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements.select;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.WritingSqlExpression;
@@ -37,14 +38,14 @@ class GroupBy implements WritingSqlExpression {
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
         Iterator<GroupByEntity> it = columns.iterator();
         if (it.hasNext()) {
             sb.append(" GROUP BY ");
-            it.next().writeSqlExpression(sb, databaseProductName, tableAliases);
+            it.next().writeSqlExpression(sb, dialect, tableAliases);
             while (it.hasNext()) {
                 sb.append(',');
-                it.next().writeSqlExpression(sb, databaseProductName, tableAliases);
+                it.next().writeSqlExpression(sb, dialect, tableAliases);
             }
         }
     }
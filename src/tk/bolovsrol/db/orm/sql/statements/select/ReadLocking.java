@@ -1,6 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements.select;
 
-import tk.bolovsrol.db.DatabaseProductNames;
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.WritingSqlExpression;
@@ -19,11 +19,11 @@ public class ReadLocking implements WritingSqlExpression {
         this.mysqlText = mysqlText;
     }
 
-    @Override public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        if (DatabaseProductNames.MYSQL.equals(databaseProductName)) {
+    @Override public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        if (dialect == DatabaseDialect.MYSQL) {
             sb.append(mysqlText);
         } else {
-            throw new DbException("Read locking for " + databaseProductName + " is not yet supported");
+            throw new DbException("Read locking for " + dialect + " is not yet supported");
         }
     }
 
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements.select;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.JDBCUtils;
 import tk.bolovsrol.db.orm.PickFailedException;
 import tk.bolovsrol.db.orm.object.DbDataObject;
@@ -9,8 +10,9 @@ import tk.bolovsrol.db.orm.sql.conditions.Condition;
 import tk.bolovsrol.db.orm.sql.dbcolumns.CountAll;
 import tk.bolovsrol.db.orm.sql.dbcolumns.DbColumn;
 import tk.bolovsrol.db.orm.sql.dbcolumns.ValueDbColumn;
-import tk.bolovsrol.db.orm.sql.statements.AbstractSqlStatement;
+import tk.bolovsrol.db.orm.sql.statements.CompilableSqlStatement;
 import tk.bolovsrol.db.orm.sql.statements.Limit;
+import tk.bolovsrol.db.orm.sql.statements.SqlTemplate;
 import tk.bolovsrol.db.orm.sql.statements.Tables;
 import tk.bolovsrol.db.orm.sql.statements.Where;
 import tk.bolovsrol.db.orm.sql.statements.select.joins.InnerJoin;
@@ -62,13 +64,16 @@ import java.util.Map;
  * o.select().where(o.id.eq(123L)).load(con);
  * </pre>
  * Ради наглядности сеттеры этого объекта называются сходно с ключевыми словами SQL, без глаголов.
+ * <p>
+ * Селект, который исполняется многократно, не меняя структуры, можно скомпилировать
+ * методом {@link #compile(Connection)}, тогда повторные исполнения не будут генерировать текст заново.
  *
  * @see #browse(Connection)
  * @see #load(Connection)
  * @see #load(Connection, ValueDbColumn)
  * @see #countAll(Connection)
  */
-public class Select extends AbstractSqlStatement {
+public class Select extends CompilableSqlStatement {
 
     private static final long WARN_SELECT_LONGER_MS = Cfg.getLong("log.sql.select.longer.ms", 0L, Log.getInstance());
     private static final int DEFAULT_FETCH_SIZE = Cfg.getInteger("sql.select.defaultFetchSize", 0, Log.getInstance());
@@ -113,32 +118,32 @@ public class Select extends AbstractSqlStatement {
     //-------- генератор
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName) throws DbException, SQLException {
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect) throws DbException, SQLException {
         Map<DbDataObject, String> tableAliases = tables.getAliases();
         sb.append("SELECT");
         if (distinct) {
             sb.append(" DISTINCT");
         }
-        columns.writeSqlExpression(sb, databaseProductName, tableAliases);
+        columns.writeSqlExpression(sb, dialect, tableAliases);
         sb.append(" FROM ");
-        tables.writeSqlExpression(sb, databaseProductName, tableAliases);
+        tables.writeSqlExpression(sb, dialect, tableAliases);
         if (where != null) {
-            where.writeSqlExpression(sb, databaseProductName, tableAliases);
+            where.writeSqlExpression(sb, dialect, tableAliases);
         }
         if (groupBy != null) {
-            groupBy.writeSqlExpression(sb, databaseProductName, tableAliases);
+            groupBy.writeSqlExpression(sb, dialect, tableAliases);
         }
         if (having != null) {
-            having.writeSqlExpression(sb, databaseProductName, tableAliases);
+            having.writeSqlExpression(sb, dialect, tableAliases);
         }
         if (orderBy != null) {
-            orderBy.writeSqlExpression(sb, databaseProductName, tableAliases);
+            orderBy.writeSqlExpression(sb, dialect, tableAliases);
         }
         if (limit != null) {
-            limit.writeSqlExpression(sb, databaseProductName, tableAliases);
+            limit.writeSqlExpression(sb, dialect, tableAliases);
         }
         if (readLocking != null) {
-            readLocking.writeSqlExpression(sb, databaseProductName, tableAliases);
+            readLocking.writeSqlExpression(sb, dialect, tableAliases);
         }
     }
 
@@ -178,6 +183,37 @@ public class Select extends AbstractSqlStatement {
         return pos;
     }
 
+    @Override protected void collectBinders(List<SqlTemplate.Binder> binders) {
+        binders.add(columns::putValues);
+        binders.add(tables::putValues);
+        if (where != null) {
+            binders.add(where::putValues);
+        }
+        if (having != null) {
+            binders.add(having::putValues);
+        }
+        if (orderBy != null) {
+            binders.add(orderBy::putValues);
+        }
+        if (limit != null) {
+            binders.add(limit::putValues);
+        }
+    }
+
+    /**
+     * Компилирует селект в шаблон.
+     * <p>
+     * Если в запросе не заданы колонки, сперва добавляет колонки всех привязанных к запросу таблиц (основной и джойнов).
+     *
+     * @see CompilableSqlStatement#compile(DatabaseDialect)
+     */
+    @Override public SqlTemplate compile(DatabaseDialect dialect) throws DbException, SQLException {
+        if (this.columns.isEmpty()) {
+            allColumns();
+        }
+        return super.compile(dialect);
+    }
+
     public int pickValues(ResultSet rs, int pos) throws SQLException, PickFailedException, DbException {
         try {
             return columns.pickValues(rs, pos);
@@ -232,7 +268,10 @@ public class Select extends AbstractSqlStatement {
         if (this.columns.isEmpty()) {
             allColumns();
         }
-        this.limit = Limit.LIMIT_1;
+        if (this.limit != Limit.LIMIT_1) {
+            dropTemplate();
+            this.limit = Limit.LIMIT_1;
+        }
         try (Browser browser = browse(con)) {
             return browser.next();
         }
@@ -418,11 +457,16 @@ public class Select extends AbstractSqlStatement {
             ResultSet rs = null;
             try {
                 this.con = con;
-                sql = generateSqlExpression(this.con);
+                SqlTemplate template = getTemplate(this.con);
+                sql = template == null ? generateSqlExpression(this.con) : getSqlExpression(template);
 //                ps = this.con.prepareStatement(sql);
                 ps = this.con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
                 ps.setFetchSize(fetchSize);
-                Select.this.putValues(ps, 1);
+                if (template == null) {
+                    Select.this.putValues(ps, 1);
+                } else {
+                    template.putValues(ps, 1);
+                }
                 if (WARN_SELECT_LONGER_MS == 0L) {
                     rs = ps.executeQuery();
                 } else {
@@ -498,6 +542,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select distinct(boolean distinct) {
+        dropTemplate();
         this.distinct = distinct;
         return this;
     }
@@ -508,6 +553,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select distinct() {
+        dropTemplate();
         this.distinct = true;
         return this;
     }
@@ -521,6 +567,7 @@ public class Select extends AbstractSqlStatement {
      * @see #lockInShareMode()
      */
     public Select lock(ReadLocking readLockingOrNull) {
+        dropTemplate();
         this.readLocking = readLockingOrNull;
         return this;
     }
@@ -533,6 +580,7 @@ public class Select extends AbstractSqlStatement {
      * @see #lockInShareMode()
      */
     public Select forUpdate() {
+        dropTemplate();
         this.readLocking = ReadLocking.FOR_UPDATE;
         return this;
     }
@@ -545,6 +593,7 @@ public class Select extends AbstractSqlStatement {
      * @see #forUpdate()
      */
     public Select lockInShareMode() {
+        dropTemplate();
         this.readLocking = ReadLocking.LOCK_IN_SHARE_MODE;
         return this;
     }
@@ -558,6 +607,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select forceIndex(String... indexNames) {
+        dropTemplate();
         this.tables.addForceIndex(indexNames);
         return this;
     }
@@ -568,6 +618,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select withoutForceIndex() {
+        dropTemplate();
         this.tables.dropForceIndex();
         return this;
     }
@@ -585,6 +636,7 @@ public class Select extends AbstractSqlStatement {
      * @see #allColumns()
      */
     public Select columns(DbDataObject dbDataObject) {
+        dropTemplate();
         this.columns.addAll(dbDataObject);
         return this;
     }
@@ -596,6 +648,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select column(DbColumn<?> column) {
+        dropTemplate();
         this.columns.add(column);
         return this;
     }
@@ -607,6 +660,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     @SuppressWarnings({"OverloadedVarargsMethod"}) public Select columns(DbColumn... columns) {
+        dropTemplate();
         this.columns.addAll(columns);
         return this;
     }
@@ -618,6 +672,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select columns(Collection<? extends DbColumn> columns) {
+        dropTemplate();
         this.columns.addAll(columns);
         return this;
     }
@@ -630,6 +685,7 @@ public class Select extends AbstractSqlStatement {
      * (методами <code>column(...)</code>) нужно, чтобы селектить только некоторые колонки.
      */
     public Select allColumns() {
+        dropTemplate();
         columns.addAll(tables.getPrimaryTable());
         if (tables.hasJoins()) {
             for (Join join : tables.getJoins()) {
@@ -645,6 +701,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select dropColumns() {
+        dropTemplate();
         columns.clear();
         return this;
     }
@@ -658,6 +715,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select join(Join join) {
+        dropTemplate();
         tables.addJoin(join);
         return this;
     }
@@ -671,6 +729,7 @@ public class Select extends AbstractSqlStatement {
      * @see #innerJoin(RefDbDataObject, DbColumn)
      */
     public Select innerJoin(DbDataObject table, Condition condition) {
+        dropTemplate();
         tables.addJoin(new InnerJoin(table, condition));
         return this;
     }
@@ -684,6 +743,7 @@ public class Select extends AbstractSqlStatement {
      * @see #innerJoin(RefDbDataObject, DbColumn)
      */
     public Select leftJoin(DbDataObject table, Condition condition) {
+        dropTemplate();
         tables.addJoin(new LeftJoin(table, condition));
         return this;
     }
@@ -699,6 +759,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select innerJoin(RefDbDataObject table, DbColumn<Long> externalIdColumn) {
+        dropTemplate();
         tables.addJoin(new InnerJoin(table, table.idField().eqColumn(externalIdColumn)));
         return this;
     }
@@ -714,6 +775,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select leftJoin(RefDbDataObject table, DbColumn<Long> externalIdColumn) {
+        dropTemplate();
         tables.addJoin(new LeftJoin(table, table.idField().eqColumn(externalIdColumn)));
         return this;
     }
@@ -737,6 +799,7 @@ public class Select extends AbstractSqlStatement {
      * @see Condition#or(Condition)
      */
     public Select where(Condition condition) {
+        dropTemplate();
         getWhere().add(condition);
         return this;
     }
@@ -752,6 +815,7 @@ public class Select extends AbstractSqlStatement {
      */
     @SuppressWarnings({"OverloadedVarargsMethod"})
     public Select where(Condition... conditions) {
+        dropTemplate();
         getWhere().add(conditions);
         return this;
     }
@@ -766,6 +830,7 @@ public class Select extends AbstractSqlStatement {
      * @see Condition#or(Condition)
      */
     public Select where(Collection<? extends Condition> conditions) {
+        dropTemplate();
         getWhere().add(conditions);
         return this;
     }
@@ -774,6 +839,7 @@ public class Select extends AbstractSqlStatement {
      * Очищает where-часть запроса. Можно добавлять условия заново, пожалуйста.
      */
     public void dropWhere() {
+        dropTemplate();
         this.where = null;
     }
 
@@ -792,6 +858,7 @@ public class Select extends AbstractSqlStatement {
      * @return
      */
     public Select withoutOrder() {
+        dropTemplate();
         getOrderBy().clear();
         getOrderBy().add(OrderByEntity.custom().str("NULL"));
         return this;
@@ -804,6 +871,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select orderBy(DbColumn column) {
+        dropTemplate();
         getOrderBy().add(new OrderByColumn(column, Direction.ASC));
         return this;
     }
@@ -816,6 +884,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select orderBy(DbColumn column, Direction direction) {
+        dropTemplate();
         getOrderBy().add(new OrderByColumn(column, direction));
         return this;
     }
@@ -827,6 +896,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select randomOrder() {
+        dropTemplate();
         getOrderBy().add(RandomOrder.NOW);
         return this;
     }
@@ -838,6 +908,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select randomOrder(int seed) {
+        dropTemplate();
         getOrderBy().add(new RandomOrder(seed));
         return this;
     }
@@ -849,6 +920,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select orderByColumnNo(int number) {
+        dropTemplate();
         getOrderBy().add(new OrderByNumber(number, Direction.ASC));
         return this;
     }
@@ -861,6 +933,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select orderByColumnNo(int number, Direction direction) {
+        dropTemplate();
         getOrderBy().add(new OrderByNumber(number, direction));
         return this;
     }
@@ -872,6 +945,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select orderByCondition(Condition condition) {
+        dropTemplate();
         getOrderBy().add(new OrderByCondition(condition, Direction.ASC));
         return this;
     }
@@ -884,6 +958,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select orderByCondition(Condition condition, Direction direction) {
+        dropTemplate();
         getOrderBy().add(new OrderByCondition(condition, direction));
         return this;
     }
@@ -895,6 +970,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select orderBy(OrderByEntity entity) {
+        dropTemplate();
         getOrderBy().add(entity);
         return this;
     }
@@ -908,6 +984,7 @@ public class Select extends AbstractSqlStatement {
      */
     @SuppressWarnings({"OverloadedVarargsMethod"})
     public Select orderBy(OrderByEntity... entities) {
+        dropTemplate();
         getOrderBy().add(entities);
         return this;
     }
@@ -919,6 +996,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select orderBy(Collection<? extends OrderByEntity> entities) {
+        dropTemplate();
         getOrderBy().add(entities);
         return this;
     }
@@ -942,6 +1020,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select having(Condition condition) {
+        dropTemplate();
         getHaving().add(condition);
         return this;
     }
@@ -962,6 +1041,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select groupBy(GroupByEntity entity) {
+        dropTemplate();
         getGroupBy().add(entity);
         return this;
     }
@@ -973,6 +1053,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select groupBy(GroupByEntity... entities) {
+        dropTemplate();
         getGroupBy().add(entities);
         return this;
     }
@@ -984,6 +1065,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select groupBy(Collection<? extends GroupByEntity> entities) {
+        dropTemplate();
         getGroupBy().add(entities);
         return this;
     }
@@ -996,6 +1078,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select dropLimit() {
+        dropTemplate();
         this.limit = null;
         return this;
     }
@@ -1007,6 +1090,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select limit(Limit limit) {
+        dropTemplate();
         this.limit = limit;
         return this;
     }
@@ -1020,6 +1104,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select limit(int limit) {
+        dropTemplate();
         this.limit = limit == 1 ? Limit.LIMIT_1 : new Limit(limit);
         return this;
     }
@@ -1034,6 +1119,7 @@ public class Select extends AbstractSqlStatement {
      * @return this
      */
     public Select limit1() {
+        dropTemplate();
         this.limit = Limit.LIMIT_1;
         return this;
     }
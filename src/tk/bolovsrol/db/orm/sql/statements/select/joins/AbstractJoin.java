@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements.select.joins;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.conditions.Condition;
@@ -23,11 +24,11 @@ class AbstractJoin implements Join {
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
         sb.append(mode).append(' ');
-        joinTable.writeSqlExpression(sb, databaseProductName, tableAliases);
+        joinTable.writeSqlExpression(sb, dialect, tableAliases);
         sb.append(" ON ");
-        condition.writeSqlExpression(sb, databaseProductName, tableAliases);
+        condition.writeSqlExpression(sb, dialect, tableAliases);
     }
 
     @Override public int putValues(PreparedStatement ps, int pos) throws SQLException, DbException {
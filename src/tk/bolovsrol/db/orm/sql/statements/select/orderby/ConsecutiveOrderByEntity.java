@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements.select.orderby;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.containers.DbBigDecimal;
 import tk.bolovsrol.db.orm.containers.DbByteArray;
 import tk.bolovsrol.db.orm.containers.DbDate;
@@ -212,9 +213,9 @@ public class ConsecutiveOrderByEntity extends ConsecutiveSqlExpression implement
     }
 
     // ДБ-методы
-    @Override public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        super.writeConsecutiveSqlExpression(sb, databaseProductName, tableAliases);
-        direction.writeSqlExpression(sb, databaseProductName, tableAliases);
+    @Override public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        super.writeConsecutiveSqlExpression(sb, dialect, tableAliases);
+        direction.writeSqlExpression(sb, dialect, tableAliases);
     }
 
     @Override public int putValues(PreparedStatement ps, int pos) throws SQLException, DbException {
@@ -4,6 +4,6 @@ import tk.bolovsrol.db.orm.sql.WritingSqlExpression;
 
 /** Направление сортировки. */
 public interface Direction extends WritingSqlExpression {
-    Direction ASC = (sb, databaseProductName, aliases) -> sb.append(" ASC");
-    Direction DESC = (sb, databaseProductName, aliases) -> sb.append(" DESC");
+    Direction ASC = (sb, dialect, aliases) -> sb.append(" ASC");
+    Direction DESC = (sb, dialect, aliases) -> sb.append(" DESC");
 }
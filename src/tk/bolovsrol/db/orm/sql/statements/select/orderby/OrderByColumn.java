@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements.select.orderby;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.dbcolumns.DbColumn;
@@ -20,9 +21,9 @@ public class OrderByColumn implements OrderByEntity {
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        column.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
-        direction.writeSqlExpression(sb, databaseProductName, tableAliases);
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        column.writeSqlExpressionForSelect(sb, dialect, tableAliases);
+        direction.writeSqlExpression(sb, dialect, tableAliases);
     }
 
     @Override public int putValues(PreparedStatement ps, int pos) throws SQLException, DbException {
@@ -1,6 +1,7 @@
 package tk.bolovsrol.db.orm.sql.statements.select.orderby;
 
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.conditions.Condition;
@@ -21,9 +22,9 @@ public class OrderByCondition implements OrderByEntity {
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        condition.writeSqlExpression(sb, databaseProductName, tableAliases);
-        direction.writeSqlExpression(sb, databaseProductName, tableAliases);
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        condition.writeSqlExpression(sb, dialect, tableAliases);
+        direction.writeSqlExpression(sb, dialect, tableAliases);
     }
 
     @Override
@@ -6,7 +6,7 @@ import tk.bolovsrol.db.orm.sql.statements.SimpleDbdoStatement;
 public class Truncate extends SimpleDbdoStatement {
 
     public Truncate(DbDataObject dbdo) {
-        super("TRUNCATE ", dbdo);
+        super("TRUNCATE TABLE ", dbdo);
     }
 
 }
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements.update;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.JDBCUtils;
 import tk.bolovsrol.db.orm.fields.DbDataField;
 import tk.bolovsrol.db.orm.fields.LongDbField;
@@ -9,7 +10,8 @@ import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.conditions.Condition;
 import tk.bolovsrol.db.orm.sql.dbcolumns.DbColumn;
 import tk.bolovsrol.db.orm.sql.dbcolumns.ValueDbColumn;
-import tk.bolovsrol.db.orm.sql.statements.AbstractSqlStatement;
+import tk.bolovsrol.db.orm.sql.statements.CompilableSqlStatement;
+import tk.bolovsrol.db.orm.sql.statements.SqlTemplate;
 import tk.bolovsrol.db.orm.sql.statements.Tables;
 import tk.bolovsrol.db.orm.sql.statements.Where;
 import tk.bolovsrol.db.orm.sql.statements.select.Join;
@@ -24,7 +26,7 @@ import java.util.List;
 import java.util.Map;
 
 /** Обновление одной или нескольких таблиц. */
-public class Update extends AbstractSqlStatement {
+public class Update extends CompilableSqlStatement {
 
     private final Tables tables = new Tables();
     private final UpdateColumns<UpdateColumn<?>> columns = new UpdateColumns<>();
@@ -53,13 +55,13 @@ public class Update extends AbstractSqlStatement {
     //-------- генератор
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName) throws DbException, SQLException {
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect) throws DbException, SQLException {
         Map<DbDataObject, String> tableAliases = tables.getAliases();
         sb.append("UPDATE ");
-        tables.writeSqlExpression(sb, databaseProductName, tableAliases);
+        tables.writeSqlExpression(sb, dialect, tableAliases);
         sb.append(" SET ");
-        columns.writeSqlExpression(sb, databaseProductName, tableAliases);
-        where.writeSqlExpression(sb, databaseProductName, tableAliases);
+        columns.writeSqlExpression(sb, dialect, tableAliases);
+        where.writeSqlExpression(sb, dialect, tableAliases);
     }
 
     public int putValues(PreparedStatement ps, int pos) throws SQLException, DbException {
@@ -68,6 +70,11 @@ public class Update extends AbstractSqlStatement {
         return pos;
     }
 
+    @Override protected void collectBinders(List<SqlTemplate.Binder> binders) {
+        binders.add(columns::putValues);
+        binders.add(where::putValues);
+    }
+
     @Override
     protected void appendSqlLogValues(List<String> values) {
         columns.appendSqlLogValues(values);
@@ -100,9 +107,14 @@ public class Update extends AbstractSqlStatement {
 				where(keyField.eqSelf());
 			}
         }
-        PreparedStatement ps = con.prepareStatement(generateSqlExpression(con));
+        SqlTemplate template = getTemplate(con);
+        PreparedStatement ps = con.prepareStatement(template == null ? generateSqlExpression(con) : getSqlExpression(template));
         try {
-            putValues(ps, 1);
+            if (template == null) {
+                putValues(ps, 1);
+            } else {
+                template.putValues(ps, 1);
+            }
             int rowCount = ps.executeUpdate();
             columns.committed();
             return rowCount;
@@ -126,6 +138,7 @@ public class Update extends AbstractSqlStatement {
      * @return this
      */
     public Update column(UpdateColumn<?> column) {
+        dropTemplate();
         this.columns.add(column);
         return this;
     }
@@ -137,6 +150,7 @@ public class Update extends AbstractSqlStatement {
      * @return this
      */
     public Update columns(UpdateColumn<?>... columns) {
+        dropTemplate();
         this.columns.add(columns);
         return this;
     }
@@ -148,6 +162,7 @@ public class Update extends AbstractSqlStatement {
      * @return this
      */
     public Update columns(Collection<? extends UpdateColumn<?>> columns) {
+        dropTemplate();
         this.columns.add(columns);
         return this;
     }
@@ -163,12 +178,14 @@ public class Update extends AbstractSqlStatement {
      * @return
      */
     public <V> Update set(DbDataField<V, ?> field, V value) {
+        dropTemplate();
         column(field.with(value));
         return this;
     }
 
     /** Добавляет в update поле, назначая ему указанную колонку или функцию. */
     public <V> Update set(DbDataField<V, ?> field, DbColumn<V> column) {
+        dropTemplate();
         column(field.withColumn(column));
         return this;
     }
@@ -187,6 +204,7 @@ public class Update extends AbstractSqlStatement {
      * @return this
      */
     public Update join(Join join) {
+        dropTemplate();
         tables.addJoin(join);
         return this;
     }
@@ -200,6 +218,7 @@ public class Update extends AbstractSqlStatement {
      * @see #innerJoin(RefDbDataObject, DbColumn)
      */
     public Update innerJoin(DbDataObject table, Condition condition) {
+        dropTemplate();
         tables.addJoin(new InnerJoin(table, condition));
         return this;
     }
@@ -215,6 +234,7 @@ public class Update extends AbstractSqlStatement {
      * @return this
      */
     public Update innerJoin(RefDbDataObject table, DbColumn<Long> externalIdColumn) {
+        dropTemplate();
 		tables.addJoin(new InnerJoin(table, table.idField().eqColumn(externalIdColumn)));
 		return this;
 	}
@@ -234,6 +254,7 @@ public class Update extends AbstractSqlStatement {
      * @return this
      */
     public Update where(Condition condition) {
+        dropTemplate();
         this.where.add(condition);
         return this;
     }
@@ -246,6 +267,7 @@ public class Update extends AbstractSqlStatement {
      */
     @SuppressWarnings({"OverloadedVarargsMethod"})
     public Update where(Condition... conditions) {
+        dropTemplate();
         this.where.add(conditions);
         return this;
     }
@@ -257,6 +279,7 @@ public class Update extends AbstractSqlStatement {
      * @return this
      */
     public Update where(Collection<? extends Condition> conditions) {
+        dropTemplate();
         this.where.add(conditions);
         return this;
     }
@@ -267,6 +290,7 @@ public class Update extends AbstractSqlStatement {
      * @return this
      */
     public Update clearWhere() {
+        dropTemplate();
         this.where.clear();
         return this;
     }
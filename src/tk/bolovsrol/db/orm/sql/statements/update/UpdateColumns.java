@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.statements.update;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.PuttingSqlExpression;
@@ -38,12 +39,12 @@ public class UpdateColumns<V extends InsertOrUpdateColumn<?>> implements Putting
     }
 
     @Override
-    public void writeSqlExpression(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+    public void writeSqlExpression(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
         if (!columns.isEmpty()) {
-            columns.get(0).writeSqlExpressionForUpdate(sb, databaseProductName, tableAliases);
+            columns.get(0).writeSqlExpressionForUpdate(sb, dialect, tableAliases);
             for (int i = 1; i < columns.size(); i++) {
                 sb.append(',');
-                columns.get(i).writeSqlExpressionForUpdate(sb, databaseProductName, tableAliases);
+                columns.get(i).writeSqlExpressionForUpdate(sb, dialect, tableAliases);
             }
         }
     }
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.updatecolumns;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.containers.DbInteger;
 import tk.bolovsrol.db.orm.containers.DbValueContainer;
 import tk.bolovsrol.db.orm.fields.DbDataField;
@@ -40,10 +41,10 @@ public class ArithmeticUpdateColumn<V extends Number> implements NumericUpdateCo
         this.delta = delta;
     }
 
-    @Override public void writeSqlExpressionForUpdate(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        column.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+    @Override public void writeSqlExpressionForUpdate(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        column.writeSqlExpressionForSelect(sb, dialect, tableAliases);
         sb.append('=');
-        column.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+        column.writeSqlExpressionForSelect(sb, dialect, tableAliases);
         sb.append(operator);
         sb.append('?');
     }
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.updatecolumns;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.containers.DbBigDecimal;
 import tk.bolovsrol.db.orm.containers.DbByteArray;
 import tk.bolovsrol.db.orm.containers.DbDate;
@@ -165,8 +166,8 @@ public class ConsecutiveUpdateColumn<V> extends ConsecutiveSqlExpression impleme
     }
 
     // ДБ-методы
-    @Override public void writeSqlExpressionForUpdate(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        super.writeConsecutiveSqlExpression(sb, databaseProductName, tableAliases);
+    @Override public void writeSqlExpressionForUpdate(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        super.writeConsecutiveSqlExpression(sb, dialect, tableAliases);
     }
 
     @Override public int putValuesForUpdate(PreparedStatement ps, int pos) throws SQLException, DbException {
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.updatecolumns;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.dbcolumns.DbColumn;
@@ -25,10 +26,10 @@ public class UpdateColumnWithColumn<V> implements UpdateColumn<V> {
     }
 
     @Override
-    public void writeSqlExpressionForUpdate(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        targetColumn.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+    public void writeSqlExpressionForUpdate(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        targetColumn.writeSqlExpressionForSelect(sb, dialect, tableAliases);
         sb.append('=');
-        sourceColumn.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+        sourceColumn.writeSqlExpressionForSelect(sb, dialect, tableAliases);
     }
 
 	@Override public int putValuesForUpdate(PreparedStatement ps, int pos)
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.updatecolumns;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.containers.DbValueContainer;
 import tk.bolovsrol.db.orm.fields.DbDataField;
 import tk.bolovsrol.db.orm.object.DbDataObject;
@@ -26,8 +27,8 @@ public class UpdateColumnWithValue<V> implements UpdateColumn<V> {
     }
 
     @Override
-    public void writeSqlExpressionForUpdate(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        column.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+    public void writeSqlExpressionForUpdate(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        column.writeSqlExpressionForSelect(sb, dialect, tableAliases);
         sb.append("=?");
     }
 
@@ -1,6 +1,6 @@
 package tk.bolovsrol.db.orm.sql.updatecolumns;
 
-import tk.bolovsrol.db.DatabaseProductNames;
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.containers.DbValueContainer;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
@@ -38,25 +38,25 @@ public class UpdateColumnWithValuesByCondition<V> implements UpdateColumn<V> {
     }
 
     @Override
-    public void writeSqlExpressionForUpdate(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        if (DatabaseProductNames.MYSQL.equals(databaseProductName)) {
-            updatingColumn.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+    public void writeSqlExpressionForUpdate(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        if (dialect == DatabaseDialect.MYSQL) {
+            updatingColumn.writeSqlExpressionForSelect(sb, dialect, tableAliases);
             sb.append("=CASE");
             for (Condition condition : conditionToValue.keySet()) {
                 sb.append(" WHEN ");
-                condition.writeSqlExpression(sb, databaseProductName, tableAliases);
+                condition.writeSqlExpression(sb, dialect, tableAliases);
                 sb.append(" THEN ?");
             }
             if (defaultValue != null) {
                 sb.append(" ELSE ?");
             }
             sb.append("END");
-        } else if (DatabaseProductNames.ORACLE.equals(databaseProductName)) {
-            updatingColumn.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+        } else if (dialect == DatabaseDialect.ORACLE) {
+            updatingColumn.writeSqlExpressionForSelect(sb, dialect, tableAliases);
             sb.append("=CASE");
             for (Condition condition : conditionToValue.keySet()) {
                 sb.append(" WHEN(");
-                condition.writeSqlExpression(sb, databaseProductName, tableAliases);
+                condition.writeSqlExpression(sb, dialect, tableAliases);
                 sb.append(")THEN ?");
             }
             if (defaultValue != null) {
@@ -64,7 +64,7 @@ public class UpdateColumnWithValuesByCondition<V> implements UpdateColumn<V> {
             }
             sb.append(" END");
         } else {
-            throw new UnsupportedOperationException("Don't know how to encode UpdateColumnWithCaseValue on " + databaseProductName);
+            throw new UnsupportedOperationException("Don't know how to encode UpdateColumnWithCaseValue on " + dialect);
         }
     }
 
@@ -1,6 +1,6 @@
 package tk.bolovsrol.db.orm.sql.updatecolumns;
 
-import tk.bolovsrol.db.DatabaseProductNames;
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.containers.DbValueContainer;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
@@ -42,11 +42,11 @@ public class UpdateColumnWithValuesByReference<V, R> implements UpdateColumn<V>
     }
 
     @Override
-    public void writeSqlExpressionForUpdate(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        if (DatabaseProductNames.MYSQL.equals(databaseProductName)) {
-            updatingColumn.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+    public void writeSqlExpressionForUpdate(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        if (dialect == DatabaseDialect.MYSQL) {
+            updatingColumn.writeSqlExpressionForSelect(sb, dialect, tableAliases);
             sb.append("=CASE ");
-            referenceColumn.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+            referenceColumn.writeSqlExpressionForSelect(sb, dialect, tableAliases);
             for (int i = referenceToValue.size(); i > 0; i--) {
                 sb.append(" WHEN ? THEN ?");
             }
@@ -54,10 +54,10 @@ public class UpdateColumnWithValuesByReference<V, R> implements UpdateColumn<V>
                 sb.append(" ELSE ?");
             }
             sb.append("END");
-        } else if (DatabaseProductNames.ORACLE.equals(databaseProductName)) {
-            updatingColumn.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+        } else if (dialect == DatabaseDialect.ORACLE) {
+            updatingColumn.writeSqlExpressionForSelect(sb, dialect, tableAliases);
             sb.append("=DECODE(");
-            referenceColumn.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+            referenceColumn.writeSqlExpressionForSelect(sb, dialect, tableAliases);
             for (int i = referenceToValue.size(); i > 0; i--) {
                 sb.append(",?,?");
             }
@@ -66,7 +66,7 @@ public class UpdateColumnWithValuesByReference<V, R> implements UpdateColumn<V>
             }
             sb.append(')');
         } else {
-            throw new UnsupportedOperationException("Don't know how to encode UpdateColumnWithCaseValue on " + databaseProductName);
+            throw new UnsupportedOperationException("Don't know how to encode UpdateColumnWithCaseValue on " + dialect);
         }
     }
 
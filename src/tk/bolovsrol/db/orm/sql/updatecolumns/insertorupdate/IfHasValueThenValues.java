@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.updatecolumns.insertorupdate;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.dbcolumns.DbColumn;
@@ -15,12 +16,12 @@ public class IfHasValueThenValues<V> implements InsertOrUpdateColumn<V> {
         this.column = column;
     }
 
-    @Override public void writeSqlExpressionForUpdate(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
-        column.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+    @Override public void writeSqlExpressionForUpdate(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException {
+        column.writeSqlExpressionForSelect(sb, dialect, tableAliases);
         sb.append("=IFNULL(VALUES(");
-        column.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+        column.writeSqlExpressionForSelect(sb, dialect, tableAliases);
         sb.append("),");
-        column.writeSqlExpressionForSelect(sb, databaseProductName, tableAliases);
+        column.writeSqlExpressionForSelect(sb, dialect, tableAliases);
         sb.append(")");
     }
 
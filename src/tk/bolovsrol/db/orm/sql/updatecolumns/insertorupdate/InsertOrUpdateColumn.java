@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.sql.updatecolumns.insertorupdate;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.DbDataObject;
 import tk.bolovsrol.db.orm.sql.DbException;
 import tk.bolovsrol.db.orm.sql.updatecolumns.UpdateColumn;
@@ -21,13 +22,13 @@ public interface InsertOrUpdateColumn<V> {
      * Записывает выражение апдейт-колонки.
      *
      * @param sb куда писать
-     * @param databaseProductName для какой СУБД писать
+     * @param dialect для какой СУБД писать
      * @param tableAliases алиасы таблиц или нул
      * @throws DbException
      * @throws SQLException
-     * @see tk.bolovsrol.db.DatabaseProductNames
+     * @see tk.bolovsrol.db.DatabaseDialect
      */
-    void writeSqlExpressionForUpdate(StringBuilder sb, String databaseProductName, Map<DbDataObject, String> tableAliases) throws DbException, SQLException;
+    void writeSqlExpressionForUpdate(StringBuilder sb, DatabaseDialect dialect, Map<DbDataObject, String> tableAliases) throws DbException, SQLException;
 
     /**
      * Проставляет значения вопросиков апдейт-колонки.
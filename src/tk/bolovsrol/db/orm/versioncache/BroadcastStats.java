@@ -0,0 +1,207 @@
+package tk.bolovsrol.db.orm.versioncache;
+
+import tk.bolovsrol.db.stats.Histogram;
+import tk.bolovsrol.utils.StringDumpBuilder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики опроса истории версий и рассылки изменений справочников кэшам.
+ *
+ * @see VersionCacheManager#getBroadcastStats()
+ */
+public class BroadcastStats {
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder broadcasts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder localChanges = new LongAdder();
+    private final LongAdder fullReloads = new LongAdder();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Histogram lagMillis = new Histogram();
+    private final LongAdder polls = new LongAdder();
+    private volatile long refreshIntervalMillis;
+    private final Histogram propagationLagMillis = new Histogram();
+    private final LongAdder cleanups = new LongAdder();
+    private final LongAdder cleanupBatches = new LongAdder();
+    private final LongAdder cleanupDeleted = new LongAdder();
+    private final LongAdder cleanupPartitionsDropped = new LongAdder();
+    private volatile long cleanupRemainingIds;
+    private final Histogram cleanupBatchMillis = new Histogram();
+
+    void batchReceived(boolean merged) {
+        batches.increment();
+        if (merged) {
+            coalesced.increment();
+        }
+    }
+
+    void scheduled() {
+        queued.incrementAndGet();
+    }
+
+    void started() {
+        queued.decrementAndGet();
+    }
+
+    void localChange() {
+        localChanges.increment();
+    }
+
+    void fullReload() {
+        fullReloads.increment();
+    }
+
+    void polled() {
+        polls.increment();
+    }
+
+    void refreshIntervalChanged(long refreshIntervalMillis) {
+        this.refreshIntervalMillis = refreshIntervalMillis;
+    }
+
+    void propagated(long lagMillis) {
+        propagationLagMillis.record(lagMillis);
+    }
+
+    void cleanupStarted(long remainingIds) {
+        cleanups.increment();
+        cleanupRemainingIds = remainingIds;
+    }
+
+    void cleanupBatch(long millis, int deleted, long remainingIds) {
+        cleanupBatches.increment();
+        cleanupDeleted.add(deleted);
+        cleanupBatchMillis.record(millis);
+        cleanupRemainingIds = remainingIds;
+    }
+
+    void cleanupFinished() {
+        cleanupRemainingIds = 0L;
+    }
+
+    void partitionDropped() {
+        cleanupPartitionsDropped.increment();
+    }
+
+    void finished(long lagMillis, boolean failed) {
+        broadcasts.increment();
+        if (failed) {
+            failures.increment();
+        }
+        this.lagMillis.record(lagMillis);
+    }
+
+    /** @return сколько пачек изменений получено по наблюдаемым таблицам */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /** @return сколько пачек влито в ещё не разосланную пачку той же таблицы */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /** @return сколько раз изменения вычитаны из таблиц и разосланы кэшам */
+    public long getBroadcasts() {
+        return broadcasts.sum();
+    }
+
+    /** @return сколько рассылок окончились ошибкой */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /** @return сколько изменений получено из локальной ленты */
+    public long getLocalChanges() {
+        return localChanges.sum();
+    }
+
+    /** @return сколько раз изменений оказалось так много, что таблица перечитана целиком */
+    public long getFullReloads() {
+        return fullReloads.sum();
+    }
+
+    /** @return сколько таблиц сейчас ждут рассылки в очереди */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /** @return время от получения первой пачки изменений до окончания их рассылки, мс */
+    public Histogram getLagMillis() {
+        return lagMillis;
+    }
+
+    /** @return сколько раз наблюдатель проверял историю версий */
+    public long getPolls() {
+        return polls.sum();
+    }
+
+    /** @return текущий интервал проверки истории версий, мс */
+    public long getRefreshIntervalMillis() {
+        return refreshIntervalMillis;
+    }
+
+    /**
+     * Время от записи в историю версий до того, как наблюдатель её прочитал, мс.
+     * Время записи назначает СУБД, так что разница часов сервера и джава-машины попадает сюда же.
+     *
+     * @return гистограмма задержек
+     */
+    public Histogram getPropagationLagMillis() {
+        return propagationLagMillis;
+    }
+
+    /** @return сколько раз запускалась очистка истории версий */
+    public long getCleanups() {
+        return cleanups.sum();
+    }
+
+    /** @return сколько запросов удаления выполнила очистка истории версий */
+    public long getCleanupBatches() {
+        return cleanupBatches.sum();
+    }
+
+    /** @return сколько записей истории версий удалено запросами очистки, не считая удалённых секций */
+    public long getCleanupDeleted() {
+        return cleanupDeleted.sum();
+    }
+
+    /** @return сколько секций истории версий удалено целиком */
+    public long getCleanupPartitionsDropped() {
+        return cleanupPartitionsDropped.sum();
+    }
+
+    /** @return ширина диапазона ид, который текущей очистке истории версий ещё осталось пройти, 0, если очистка не идёт */
+    public long getCleanupRemainingIds() {
+        return cleanupRemainingIds;
+    }
+
+    /** @return время выполнения одного запроса очистки истории версий, мс */
+    public Histogram getCleanupBatchMillis() {
+        return cleanupBatchMillis;
+    }
+
+    public String toString() {
+        return new StringDumpBuilder()
+                .append("batches", getBatches())
+                .append("coalesced", getCoalesced())
+                .append("broadcasts", getBroadcasts())
+                .append("failures", getFailures())
+                .append("localChanges", getLocalChanges())
+                .append("fullReloads", getFullReloads())
+                .append("queued", getQueued())
+                .append("lagMillis", lagMillis)
+                .append("polls", getPolls())
+                .append("refreshIntervalMillis", getRefreshIntervalMillis())
+                .append("propagationLagMillis", propagationLagMillis)
+                .append("cleanups", getCleanups())
+                .append("cleanupBatches", getCleanupBatches())
+                .append("cleanupDeleted", getCleanupDeleted())
+                .append("cleanupPartitionsDropped", getCleanupPartitionsDropped())
+                .append("cleanupRemainingIds", getCleanupRemainingIds())
+                .append("cleanupBatchMillis", cleanupBatchMillis)
+                .toString();
+    }
+}
@@ -0,0 +1,477 @@
+package tk.bolovsrol.db.orm.versioncache;
+
+import tk.bolovsrol.db.collections.LongHashSet;
+import tk.bolovsrol.db.orm.fields.DbDataField;
+import tk.bolovsrol.db.orm.sql.DbException;
+import tk.bolovsrol.db.orm.sql.statements.select.BrowseConsumer;
+import tk.bolovsrol.db.orm.sql.statements.select.Browser;
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.containers.ValueParsingException;
+import tk.bolovsrol.utils.log.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Снимок таблицы-справочника на диске, чтобы после перезапуска не перечитывать большие таблицы целиком.
+ * <p>
+ * В снимке лежат значения всех полей каждой записи в их строковом виде, штамп — наибольший ид истории версий
+ * на момент, когда таблицу начали читать, — и время последнего полного чтения таблицы. Загружая таблицу, кэш берёт
+ * записи из снимка, а из таблицы дочитывает только записи, упомянутые в истории версий после штампа
+ * или не раньше {@link VersionCacheConst#SNAPSHOT_REPLAY_MARGIN} до начала снимка. Заодно пишется новый снимок.
+ * <p>
+ * Таблица перечитывается целиком, если снимка нет, он повреждён, снят с другого набора полей,
+ * если история версий после штампа уже почищена, изменений в ней больше {@link VersionCacheConst#FULL_RELOAD_THRESHOLD}
+ * или с последнего полного чтения прошло больше {@link VersionCacheConst#SNAPSHOT_FULL_RELOAD_INTERVAL}.
+ * <p>
+ * Снимки пишутся в {@link VersionCacheConst#SNAPSHOT_DIR}, если она задана.
+ */
+public final class CacheSnapshot {
+
+    private static final int MAGIC = 0x56435348;
+    private static final int FORMAT_VERSION = 2;
+
+    private static final byte ROW = 1;
+    private static final byte END = 0;
+
+    private final CacheableDbDataObject<?> cdbdo;
+    private final CatalogAndTableName catalogAndTableName;
+    private final List<DbDataField<?, ?>> fields;
+    private final Path file;
+
+    private CacheSnapshot(CacheableDbDataObject<?> cdbdo, String kind) {
+        this.cdbdo = cdbdo;
+        this.catalogAndTableName = new CatalogAndTableName(cdbdo.getSqlCatalogName(), cdbdo.getSqlTableName());
+        this.fields = cdbdo.fields();
+        this.file = Paths.get(VersionCacheConst.SNAPSHOT_DIR, kind + '.' + catalogAndTableName + ".snapshot");
+    }
+
+    /** @return true, если снимки включены */
+    public static boolean isEnabled() {
+        return VersionCacheConst.SNAPSHOT_DIR != null;
+    }
+
+    /**
+     * Загружает все записи таблицы, по возможности из снимка, и пишет новый снимок.
+     * <p>
+     * Для каждой записи заполняет поля объекта и вызывает {@link BrowseConsumer#rowLoaded()}, как при обычном чтении селектом.
+     * Если снимок окажется негодным уже после того, как часть записей из него была отдана,
+     * вызывается <code>discard</code>, и таблица читается целиком: потребитель должен забыть отданное,
+     * иначе у него останутся записи, удалённые из таблицы после снимка.
+     * <p>
+     * Если исключение вылетит из самого чтения, потребитель уже мог получить часть записей,
+     * и собранное им до исключения использовать нельзя.
+     *
+     * @param con соединение
+     * @param cdbdo объект таблицы
+     * @param kind вид кэша, чтобы снимки разных кэшей одной таблицы не перепутались
+     * @param consumer обработчик записей
+     * @param discard сбрасывает всё, что получил обработчик, перед чтением таблицы заново
+     * @throws SQLException
+     */
+    public static <E extends Exception> void browse(Connection con, CacheableDbDataObject<?> cdbdo, String kind, BrowseConsumer<E> consumer, Runnable discard) throws SQLException, DbException, E {
+        new CacheSnapshot(cdbdo, kind).load(con, consumer, discard);
+    }
+
+    private <E extends Exception> void load(Connection con, BrowseConsumer<E> consumer, Runnable discard) throws SQLException, DbException, E {
+        VersionHistoryDbdo versionHistory = new VersionHistoryDbdo();
+        // штамп берём до чтения таблицы: изменения, сделанные во время чтения, будут дочитаны ещё раз, но не потеряны
+        long startedAt = System.currentTimeMillis();
+        Long maxId = versionHistory.retrieveMaxId(con);
+        long stamp = maxId == null ? 0L : maxId;
+
+        try {
+            if (loadWarm(con, versionHistory, stamp, startedAt, consumer)) {
+                return;
+            }
+        } catch (IOException | ValueParsingException e) {
+            Log.warning(catalogAndTableName + ": snapshot " + Spell.get(file) + " is unusable, reading the whole table", e);
+            discard.run();
+        }
+
+        Writer coldWriter = new Writer(stamp, startedAt, startedAt);
+        int[] count = {0};
+        cdbdo.selectAllColumns().browse(con, () -> {
+            coldWriter.row();
+            consumer.rowLoaded();
+            count[0]++;
+        });
+        coldWriter.commit();
+        if (VersionCacheConst.LOG_CHANGES) {
+            Log.info(catalogAndTableName + ": read " + count[0] + " item(s) from the table, snapshot stamp " + stamp);
+        }
+    }
+
+    /**
+     * Загружает записи из снимка, дочитывает изменившиеся после него и пишет новый снимок.
+     *
+     * @return true, если записи загружены, false, если снимок не годится и ничего не загружено
+     */
+    private <E extends Exception> boolean loadWarm(Connection con, VersionHistoryDbdo versionHistory, long stamp, long startedAt, BrowseConsumer<E> consumer) throws SQLException, DbException, E, IOException, ValueParsingException {
+        if (!Files.isRegularFile(file)) {
+            Log.info(catalogAndTableName + ": no snapshot " + Spell.get(file) + " is found");
+            return false;
+        }
+
+        // первым проходом проверяем контрольную сумму, чтобы не отдать потребителю мусор
+        long fileStamp;
+        long createdAt;
+        long fullLoadAt;
+        try (Reader reader = new Reader()) {
+            fileStamp = reader.stamp;
+            createdAt = reader.createdAt;
+            fullLoadAt = reader.fullLoadAt;
+            reader.skipAll();
+        }
+
+        if (startedAt - fullLoadAt > VersionCacheConst.SNAPSHOT_FULL_RELOAD_INTERVAL.getMillis()) {
+            Log.info(catalogAndTableName + ": snapshot " + Spell.get(file) + " is based on a full read older than full reload interval");
+            return false;
+        }
+        // записи истории версий, вставленные незадолго до снимка, но закоммиченные после, дочитываем заново
+        long replayFrom = createdAt - VersionCacheConst.SNAPSHOT_REPLAY_MARGIN.getMillis();
+        if (VersionCacheConst.CLEANUP_ENABLED && startedAt - replayFrom > VersionCacheConst.CLEANUP_AGE.getMillis()) {
+            Log.info(catalogAndTableName + ": snapshot " + Spell.get(file) + " is older than version history cleanup age");
+            return false;
+        }
+        if (fileStamp > stamp) {
+            Log.info(catalogAndTableName + ": snapshot stamp " + fileStamp + " is ahead of version history " + stamp);
+            return false;
+        }
+        Long minId = versionHistory.retrieveMinId(con);
+        if (minId == null ? fileStamp != stamp : minId > fileStamp + 1L) {
+            Log.info(catalogAndTableName + ": version history after snapshot stamp " + fileStamp + " is already cleaned up");
+            return false;
+        }
+
+        Long replayFromId = versionHistory.retrieveMaxIdBefore(con, new Date(replayFrom));
+        if (replayFromId == null) {
+            // в истории нет записей старше запаса, так что дочитываем её всю
+            replayFromId = minId == null ? fileStamp : minId - 1L;
+        }
+        LongHashSet changedIds = retrieveChangedIds(con, versionHistory, Math.min(replayFromId, fileStamp), stamp);
+        if (changedIds == null) {
+            Log.info(catalogAndTableName + ": too many changes after snapshot stamp " + fileStamp);
+            return false;
+        }
+
+        // новый снимок наследует время полного чтения, чтобы дописывание историей не откладывало полное чтение бесконечно
+        Writer writer = new Writer(stamp, startedAt, fullLoadAt);
+        boolean committed = false;
+        int count = 0;
+        try {
+            try (Reader reader = new Reader()) {
+                while (reader.nextRow()) {
+                    if (!changedIds.contains(cdbdo.getId().longValue())) {
+                        writer.row();
+                        consumer.rowLoaded();
+                        count++;
+                    }
+                }
+            }
+            if (!changedIds.isEmpty()) {
+                cdbdo.selectAllColumns().where(cdbdo.idField().in(changedIds)).browse(con, () -> {
+                    writer.row();
+                    consumer.rowLoaded();
+                });
+            }
+            writer.commit();
+            committed = true;
+        } finally {
+            if (!committed) {
+                writer.abort();
+            }
+        }
+        if (VersionCacheConst.LOG_CHANGES) {
+            Log.info(catalogAndTableName + ": read " + count + " item(s) from snapshot stamp " + fileStamp
+                + " and " + changedIds.size() + " changed id(s) from the table, snapshot stamp " + stamp);
+        }
+        return true;
+    }
+
+    /**
+     * Собирает ид записей таблицы, упомянутых в истории версий в промежутке (fromId, toId].
+     *
+     * @return ид записей или нул, если их больше {@link VersionCacheConst#FULL_RELOAD_THRESHOLD}
+     */
+    private LongHashSet retrieveChangedIds(Connection con, VersionHistoryDbdo versionHistory, long fromId, long toId) throws SQLException {
+        LongHashSet result = new LongHashSet();
+        Long afterId = fromId;
+        while (afterId < toId) {
+            int rows = 0;
+            try (Browser br = versionHistory.browseAfterId(con, afterId, VersionCacheConst.PARTIAL_MAX_RECORDS)) {
+                while (br.next()) {
+                    rows++;
+                    afterId = versionHistory.getId();
+                    if (afterId > toId) {
+                        break;
+                    }
+                    if (catalogAndTableName.equals(new CatalogAndTableName(versionHistory.getDbName(), versionHistory.getTableName()))) {
+                        result.add(versionHistory.getRecordId().longValue());
+                        if (result.size() > VersionCacheConst.FULL_RELOAD_THRESHOLD) {
+                            return null;
+                        }
+                    }
+                }
+            }
+            if (rows < VersionCacheConst.PARTIAL_MAX_RECORDS) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Пишет новый снимок во временный файл и по готовности подменяет им прежний.
+     * <p>
+     * Ошибка записи не мешает загрузке: писатель пишет её в лог, удаляет временный файл и молча пропускает остальное.
+     */
+    private final class Writer {
+        /** Недописанный снимок, у каждого писателя свой; нул, пока не создан или после подмены им прежнего. */
+        private Path tmpFile;
+        private final CRC32 crc = new CRC32();
+        private OutputStream raw;
+        private DataOutputStream out;
+        private long count = 0L;
+
+        /**
+         * @param stamp наибольший ид истории версий на момент начала чтения
+         * @param createdAt когда начато чтение
+         * @param fullLoadAt когда таблица последний раз была прочитана целиком
+         */
+        Writer(long stamp, long createdAt, long fullLoadAt) {
+            try {
+                Files.createDirectories(file.getParent());
+                tmpFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+                raw = new BufferedOutputStream(Files.newOutputStream(tmpFile), 65536);
+                out = new DataOutputStream(new CheckedOutputStream(raw, crc));
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, catalogAndTableName.toString());
+                out.writeInt(fields.size());
+                for (DbDataField<?, ?> field : fields) {
+                    writeString(out, field.getName());
+                }
+                out.writeLong(stamp);
+                out.writeLong(createdAt);
+                out.writeLong(fullLoadAt);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /** Пишет текущую запись объекта таблицы. */
+        void row() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.writeByte(ROW);
+                for (DbDataField<?, ?> field : fields) {
+                    writeString(out, field.isValueNull() ? null : field.valueToString());
+                }
+                count++;
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /** Дописывает снимок и подменяет им прежний. */
+        void commit() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.writeByte(END);
+                out.writeLong(count);
+                out.flush();
+                // сумма пишется мимо подсчёта
+                new DataOutputStream(raw).writeLong(crc.getValue());
+                raw.close();
+                out = null;
+                Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                tmpFile = null;
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /** Бросает снимок недописанным и удаляет временный файл. */
+        void abort() {
+            if (out != null) {
+                close();
+            }
+            if (tmpFile != null) {
+                try {
+                    Files.deleteIfExists(tmpFile);
+                } catch (IOException ignored) {
+                }
+                tmpFile = null;
+            }
+        }
+
+        private void fail(IOException e) {
+            Log.warning(catalogAndTableName + ": cannot write snapshot " + Spell.get(file), e);
+            abort();
+        }
+
+        private void close() {
+            if (raw != null) {
+                try {
+                    raw.close();
+                } catch (IOException | RuntimeException ignored) {
+                }
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Читает снимок, проверяя заголовок в конструкторе и контрольную сумму в конце.
+     * Прочитанная запись раскладывается по полям объекта таблицы.
+     */
+    private final class Reader implements Closeable {
+        private final CRC32 crc = new CRC32();
+        private final InputStream raw;
+        private final DataInputStream in;
+        private final String[] values;
+        private final long fileSize;
+        private long count = 0L;
+        final long stamp;
+        final long createdAt;
+        final long fullLoadAt;
+
+        Reader() throws IOException {
+            fileSize = Files.size(file);
+            raw = new BufferedInputStream(Files.newInputStream(file), 65536);
+            in = new DataInputStream(new CheckedInputStream(raw, crc));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a cache snapshot");
+                }
+                int formatVersion = in.readInt();
+                if (formatVersion != FORMAT_VERSION) {
+                    throw new IOException("Unsupported snapshot format version " + formatVersion);
+                }
+                String tableName = readString();
+                if (!catalogAndTableName.toString().equals(tableName)) {
+                    throw new IOException("Snapshot of " + tableName + " instead of " + catalogAndTableName);
+                }
+                int fieldCount = in.readInt();
+                if (fieldCount != fields.size()) {
+                    throw new IOException("Snapshot has " + fieldCount + " field(s), table has " + fields.size());
+                }
+                for (DbDataField<?, ?> field : fields) {
+                    String fieldName = readString();
+                    if (!field.getName().equals(fieldName)) {
+                        throw new IOException("Snapshot field " + fieldName + " does not match table field " + field.getName());
+                    }
+                }
+                stamp = in.readLong();
+                createdAt = in.readLong();
+                fullLoadAt = in.readLong();
+            } catch (IOException | RuntimeException e) {
+                raw.close();
+                throw e;
+            }
+            values = new String[fields.size()];
+        }
+
+        /**
+         * Читает очередную запись в поля объекта таблицы.
+         *
+         * @return true, если запись прочитана, false, если снимок кончился и его сумма сошлась
+         */
+        boolean nextRow() throws IOException, ValueParsingException {
+            if (!readValues()) {
+                return false;
+            }
+            for (int i = 0; i < values.length; i++) {
+                DbDataField<?, ?> field = fields.get(i);
+                if (values[i] == null) {
+                    field.dropValue();
+                } else {
+                    field.parseValue(values[i]);
+                }
+            }
+            return true;
+        }
+
+        /** Пролистывает весь снимок, проверяя его целостность. */
+        void skipAll() throws IOException {
+            while (readValues()) {
+            }
+        }
+
+        private boolean readValues() throws IOException {
+            byte marker = in.readByte();
+            if (marker == END) {
+                long expectedCount = in.readLong();
+                long expectedCrc = crc.getValue();
+                if (new DataInputStream(raw).readLong() != expectedCrc) {
+                    throw new IOException("Snapshot checksum mismatch");
+                }
+                if (expectedCount != count) {
+                    throw new IOException("Snapshot has " + count + " row(s) instead of " + expectedCount);
+                }
+                if (raw.read() != -1) {
+                    throw new IOException("Unexpected data after snapshot end");
+                }
+                return false;
+            } else if (marker != ROW) {
+                throw new IOException("Unexpected snapshot row marker " + marker);
+            }
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readString();
+            }
+            count++;
+            return true;
+        }
+
+        private String readString() throws IOException {
+            int length = in.readInt();
+            if (length == -1) {
+                return null;
+            }
+            // испорченная длина не должна заставить нас выделить гигабайты
+            if (length < 0 || length > fileSize) {
+                throw new IOException("Invalid string length " + length);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override public void close() throws IOException {
+            raw.close();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
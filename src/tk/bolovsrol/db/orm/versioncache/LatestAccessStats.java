@@ -0,0 +1,98 @@
+package tk.bolovsrol.db.orm.versioncache;
+
+import tk.bolovsrol.db.stats.Histogram;
+import tk.bolovsrol.utils.StringDumpBuilder;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Счётчики записывателя информации о дате последнего доступа к записям.
+ *
+ * @see LatestAccessWriter#getStats()
+ */
+public class LatestAccessStats {
+    private final LongAdder fixes = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Histogram flushMillis = new Histogram();
+    private final LongSupplier bufferSize;
+
+    LatestAccessStats(LongSupplier bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    void fixed(boolean merged) {
+        fixes.increment();
+        if (merged) {
+            coalesced.increment();
+        }
+    }
+
+    void dropped() {
+        dropped.increment();
+    }
+
+    void flushed(long millis, int written, int failed) {
+        flushes.increment();
+        this.written.add(written);
+        this.failed.add(failed);
+        flushMillis.record(millis);
+    }
+
+    /** @return сколько раз зафиксирован доступ к записям */
+    public long getFixes() {
+        return fixes.sum();
+    }
+
+    /** @return сколько доступов пришлось на запись, доступ к которой уже ждал сохранения, и только обновили его дату */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /** @return сколько доступов не зафиксировано, потому что несохранённых записей накопилось слишком много */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /** @return сколько раз записыватель сохранял накопленное */
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /** @return сколько записей о доступе сохранено */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /** @return сколько записей о доступе не удалось сохранить */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /** @return сколько записей о доступе сейчас ждут сохранения */
+    public long getBufferSize() {
+        return bufferSize.getAsLong();
+    }
+
+    /** @return время сохранения накопленного, мс */
+    public Histogram getFlushMillis() {
+        return flushMillis;
+    }
+
+    public String toString() {
+        return new StringDumpBuilder()
+                .append("fixes", getFixes())
+                .append("coalesced", getCoalesced())
+                .append("dropped", getDropped())
+                .append("flushes", getFlushes())
+                .append("written", getWritten())
+                .append("failed", getFailed())
+                .append("bufferSize", getBufferSize())
+                .append("flushMillis", flushMillis)
+                .toString();
+    }
+}
@@ -1,16 +1,21 @@
 package tk.bolovsrol.db.orm.versioncache;
 
 import tk.bolovsrol.db.orm.object.RefDbDataObject;
+import tk.bolovsrol.db.orm.sql.statements.insert.InsertOrUpdate;
+import tk.bolovsrol.db.orm.sql.statements.insert.RowlessInsertOrUpdate;
 import tk.bolovsrol.db.pool.ConnectionManager;
 import tk.bolovsrol.utils.Spell;
 import tk.bolovsrol.utils.log.Log;
 
 import java.lang.reflect.Constructor;
 import java.sql.Connection;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /** Записывает, когда какая-либо запись была вынута из кэша по первичному ключу. */
 public class LatestAccessWriter implements Runnable {
@@ -46,7 +51,16 @@ public class LatestAccessWriter implements Runnable {
 
     private final Object lock = new Object();
 
-    private Map<LatestAccessCoordinates, Date> data;
+    /**
+     * Несохранённые даты доступа. Повторный доступ к той же записи только обновляет дату.
+     * Карта конкурентная, так что фиксирующие нити не ждут друг друга и записывателя.
+     */
+    private final ConcurrentHashMap<LatestAccessCoordinates, Date> buffer = new ConcurrentHashMap<>();
+
+    /** Записывателя уже разбудили, и будить его снова незачем. */
+    private final AtomicBoolean wakeRequested = new AtomicBoolean();
+
+    private final LatestAccessStats stats = new LatestAccessStats(buffer::mappingCount);
 
     private final LatestAccessDbdo la = new LatestAccessDbdo();
 
@@ -54,6 +68,11 @@ public class LatestAccessWriter implements Runnable {
     private LatestAccessWriter() {
     }
 
+    /** @return счётчики записывателя */
+    public static LatestAccessStats getStats() {
+        return INSTANCE.stats;
+    }
+
     public static void fix(Class<? extends RefDbDataObject> rdbdoClass, Long objectId) {
         INSTANCE.fixInternal(new LatestAccessCoordinates(retrieveCatalogAndTableName(rdbdoClass), objectId), new Date());
     }
@@ -84,18 +103,34 @@ public class LatestAccessWriter implements Runnable {
 
     /**
      * Добавляет информацию в очередь для фиксирования.
+     * <p>
+     * Если очередь переполнена, доступ к записи, которой ещё нет в очереди, теряется.
      *
      * @param lac
      * @param when
      */
     private void fixInternal(LatestAccessCoordinates lac, Date when) {
-        synchronized (lock) {
-            if (data == null) {
-                data = new TreeMap<>();
-            }
-            Date replaced = data.put(lac, when);
-            // если мы ничего не заменили, значит размер карты увеличился и мог превысить порог срабатывания.
-            if (replaced == null && data.size() > VersionCacheConst.LATEST_ACCESS_THRESHOLD) {
+        if (buffer.replace(lac, when) != null) {
+            stats.fixed(true);
+            return;
+        }
+        long size = buffer.mappingCount();
+        if (size >= VersionCacheConst.LATEST_ACCESS_MAX_BUFFER) {
+            stats.dropped();
+            wake();
+            return;
+        }
+        // если мы ничего не заменили, значит размер карты увеличился и мог превысить порог срабатывания.
+        boolean merged = buffer.put(lac, when) != null;
+        stats.fixed(merged);
+        if (!merged && size >= VersionCacheConst.LATEST_ACCESS_THRESHOLD) {
+            wake();
+        }
+    }
+
+    private void wake() {
+        if (wakeRequested.compareAndSet(false, true)) {
+            synchronized (lock) {
                 lock.notifyAll();
             }
         }
@@ -105,15 +140,13 @@ public class LatestAccessWriter implements Runnable {
     public void run() {
         try {
             while (true) {
-                Map<LatestAccessCoordinates, Date> data;
                 synchronized (lock) {
-                    do {
+                    if (!wakeRequested.get()) {
                         lock.wait(VersionCacheConst.LATEST_ACCESS_SLEEP); // если проснёмся раньше времени, в общем, пофиг
-                    } while (this.data == null);
-                    data = this.data;
-                    this.data = null;
+                    }
                 }
-                write(data);
+                wakeRequested.set(false);
+                flush();
             }
         } catch (InterruptedException e) {
             // ok
@@ -121,25 +154,68 @@ public class LatestAccessWriter implements Runnable {
     }
 
     private void writeAtShutdown() {
-        synchronized (lock) {
-            if (data != null) {
-                write(data);
+        flush();
+    }
+
+    /**
+     * Сохраняет накопленное пачками по {@link VersionCacheConst#LATEST_ACCESS_BATCH_SIZE} записей на одном соединении.
+     * <p>
+     * Сохранённая запись удаляется из очереди, только если её дата за время сохранения не обновилась,
+     * иначе новая дата будет сохранена в следующий раз.
+     */
+    private void flush() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        List<Map.Entry<LatestAccessCoordinates, Date>> entries = new ArrayList<>(buffer.size());
+        for (Map.Entry<LatestAccessCoordinates, Date> entry : buffer.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+        }
+        // упорядоченные ключи не дают параллельным записывателям разных машин взаимно заблокироваться
+        entries.sort(Map.Entry.comparingByKey());
+
+        int written = 0;
+        int failed = 0;
+        try (Connection con = ConnectionManager.getConnection()) {
+            for (int from = 0; from < entries.size(); from += VersionCacheConst.LATEST_ACCESS_BATCH_SIZE) {
+                List<Map.Entry<LatestAccessCoordinates, Date>> chunk = entries.subList(from, Math.min(entries.size(), from + VersionCacheConst.LATEST_ACCESS_BATCH_SIZE));
+                if (write(con, chunk)) {
+                    written += chunk.size();
+                } else {
+                    failed += chunk.size();
+                }
+                for (Map.Entry<LatestAccessCoordinates, Date> entry : chunk) {
+                    buffer.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        } catch (Exception e) {
+            Log.warning("Failed to update access info for " + (entries.size() - written - failed) + " object(s). ", e);
+            failed = entries.size() - written;
+            for (Map.Entry<LatestAccessCoordinates, Date> entry : entries) {
+                buffer.remove(entry.getKey(), entry.getValue());
             }
         }
+        stats.flushed(System.currentTimeMillis() - started, written, failed);
     }
 
-    private void write(Map<LatestAccessCoordinates, Date> lacs) {
-        for (Map.Entry<LatestAccessCoordinates, Date> entry : lacs.entrySet()) {
-            write(entry.getKey(), entry.getValue());
+    /**
+     * Сохраняет пачку записей одним инсертом.
+     *
+     * @return true, если пачка сохранена
+     */
+    private boolean write(Connection con, List<Map.Entry<LatestAccessCoordinates, Date>> chunk) {
+        try {
+            RowlessInsertOrUpdate insert = la.insert(la.objectName, la.objectId, la.accessDate);
+            InsertOrUpdate rows = null;
+            for (Map.Entry<LatestAccessCoordinates, Date> entry : chunk) {
+                rows = insert.valueRow(entry.getKey().getTableName(), entry.getKey().getObjectId(), entry.getValue());
+            }
+            rows.orUpdateEveryColumnWithValues().execute(con);
+            return true;
+        } catch (Exception e) {
+            Log.warning("Failed to update access info for " + chunk.size() + " object(s) starting with " + Spell.get(chunk.get(0).getKey()) + ". ", e);
+            return false;
         }
     }
-
-    protected void write(LatestAccessCoordinates lac, Date date) {
-        try (Connection con = ConnectionManager.getConnection()) {
-            la.set(lac.getTableName(), lac.getObjectId(), date);
-			la.insert(la.dataFields()).valueRowFromColumns().orUpdateEveryColumnWithValues().execute(con);
-		} catch (Exception e) {
-			Log.warning("Failed to update access info for object " + Spell.get(lac) + ". ", e);
-		}
-	}
 }
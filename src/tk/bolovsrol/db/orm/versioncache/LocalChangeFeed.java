@@ -0,0 +1,79 @@
+package tk.bolovsrol.db.orm.versioncache;
+
+import tk.bolovsrol.db.orm.object.RefDbDataObject;
+import tk.bolovsrol.db.pool.HookConnection;
+
+import java.sql.Connection;
+
+/**
+ * Лента изменений справочников, сделанных этой джава-машиной.
+ * <p>
+ * {@link RefDbDataObject} сообщает сюда о вставке, обновлении и удалении записи. Если запись сделана
+ * через {@link HookConnection}, а менеджер кэшей запущен, после коммита ид записи сразу отправляется
+ * в рассылку, не дожидаясь, пока {@link VersionWatcher} увидит её в истории версий.
+ * Когда наблюдатель всё же увидит соответствующую запись истории, он разошлёт её ещё раз —
+ * перечитать запись безвредно, а пропустить её значило бы рискнуть потерять чужое изменение той же записи.
+ * <p>
+ * Сама лента менеджер не запускает: пока кэшами никто не пользуется, сообщения ничего не стоят.
+ *
+ * @see VersionCacheConst#LOCAL_FEED_ENABLED
+ */
+public final class LocalChangeFeed {
+
+    /** Менеджер, когда он запущен. */
+    private static volatile VersionCacheManager manager = null;
+
+    private LocalChangeFeed() {
+    }
+
+    static void setManager(VersionCacheManager manager) {
+        if (VersionCacheConst.LOCAL_FEED_ENABLED) {
+            LocalChangeFeed.manager = manager;
+        }
+    }
+
+    /**
+     * Сообщает о вставке записи.
+     *
+     * @param con соединение, которым запись вставлена
+     * @param rdbdo вставленная запись с заполненным ид
+     */
+    public static void created(Connection con, RefDbDataObject rdbdo) {
+        push(con, rdbdo, VersionHistoryDbdo.EventType.CREATE);
+    }
+
+    /**
+     * Сообщает об обновлении записи.
+     *
+     * @param con соединение, которым запись обновлена
+     * @param rdbdo обновлённая запись
+     */
+    public static void updated(Connection con, RefDbDataObject rdbdo) {
+        push(con, rdbdo, VersionHistoryDbdo.EventType.UPDATE);
+    }
+
+    /**
+     * Сообщает об удалении записи.
+     *
+     * @param con соединение, которым запись удалена
+     * @param rdbdo удалённая запись
+     */
+    public static void deleted(Connection con, RefDbDataObject rdbdo) {
+        push(con, rdbdo, VersionHistoryDbdo.EventType.DELETE);
+    }
+
+    private static void push(Connection con, RefDbDataObject rdbdo, VersionHistoryDbdo.EventType eventType) {
+        VersionCacheManager m = manager;
+        if (m == null || !(con instanceof HookConnection)) {
+            return;
+        }
+        Long id = rdbdo.getId();
+        if (id == null) {
+            return;
+        }
+        CatalogAndTableName catalogAndTableName = new CatalogAndTableName(rdbdo.getSqlCatalogName(), rdbdo.getSqlTableName());
+        if (m.isWatched(catalogAndTableName)) {
+            ((HookConnection) con).afterCommit(() -> m.localChange(catalogAndTableName, eventType, id));
+        }
+    }
+}
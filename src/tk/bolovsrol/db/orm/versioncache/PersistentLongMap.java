@@ -0,0 +1,386 @@
+package tk.bolovsrol.db.orm.versioncache;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Неизменяемая карта с ключами-лонгами — префиксное дерево по хэшу ключа (HAMT).
+ * <p>
+ * Изменённая копия карты делается {@link Builder строителем} и делит с исходной все неизменившиеся узлы,
+ * так что пачка из n изменений стоит O(n) новых узлов независимо от размера карты.
+ * Хэш — биекция ключа, поэтому коллизий не бывает, и глубина дерева не превышает 13 уровней.
+ * <p>
+ * Карта неизменяема: методы {@link Map}, меняющие её, выкидывают {@link UnsupportedOperationException}.
+ *
+ * @param <V> тип значений
+ */
+public final class PersistentLongMap<V> extends AbstractMap<Long, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int MAX_DEPTH = 64 / BITS + 1;
+
+    private static final PersistentLongMap<Object> EMPTY = new PersistentLongMap<>(null, 0);
+
+    /** Корень дерева или нул для пустой карты. */
+    private final Node root;
+    private final int size;
+
+    private Set<Map.Entry<Long, V>> entrySet = null;
+
+    private PersistentLongMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentLongMap<V> empty() {
+        return (PersistentLongMap<V>) EMPTY;
+    }
+
+    /** @return строитель, начинающий с содержимого этой карты */
+    public Builder<V> builder() {
+        return new Builder<>(root, size);
+    }
+
+    private static long hash(long key) {
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    private static int fragment(long hash, int shift) {
+        return (int) (hash >>> shift) & MASK;
+    }
+
+    /**
+     * Значение по ключу-лонгу без упаковки.
+     *
+     * @param key ключ
+     * @return значение или нул
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long hash = hash(key);
+        Node node = root;
+        int shift = 0;
+        while (node != null) {
+            int bit = 1 << fragment(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object o = node.array[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (o instanceof Leaf) {
+                Leaf<V> leaf = (Leaf<V>) o;
+                return leaf.key == key ? leaf.value : null;
+            }
+            node = (Node) o;
+            shift += BITS;
+        }
+        return null;
+    }
+
+    @Override public V get(Object key) {
+        return key instanceof Long ? get(((Long) key).longValue()) : null;
+    }
+
+    @Override public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override public int size() {
+        return size;
+    }
+
+    @Override public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override public Set<Map.Entry<Long, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<Long, V>>() {
+                @Override public Iterator<Map.Entry<Long, V>> iterator() {
+                    return new LeafIterator<>(root);
+                }
+
+                @Override public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Узел дерева: битовая карта занятых ячеек и плотный массив листьев и дочерних узлов.
+     * <p>
+     * Поля изменяемы только строителем, создавшим узел, и только до публикации результата.
+     */
+    private static final class Node {
+        private Object owner;
+        private int bitmap;
+        private Object[] array;
+
+        private Node(Object owner, int bitmap, Object[] array) {
+            this.owner = owner;
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private Node set(Object owner, int index, Object value) {
+            if (this.owner == owner) {
+                array[index] = value;
+                return this;
+            }
+            Object[] newArray = array.clone();
+            newArray[index] = value;
+            return new Node(owner, bitmap, newArray);
+        }
+
+        private Node insert(Object owner, int bit, int index, Object value) {
+            Object[] newArray = new Object[array.length + 1];
+            System.arraycopy(array, 0, newArray, 0, index);
+            newArray[index] = value;
+            System.arraycopy(array, index, newArray, index + 1, array.length - index);
+            return replace(owner, bitmap | bit, newArray);
+        }
+
+        private Node delete(Object owner, int bit, int index) {
+            Object[] newArray = new Object[array.length - 1];
+            System.arraycopy(array, 0, newArray, 0, index);
+            System.arraycopy(array, index + 1, newArray, index, array.length - index - 1);
+            return replace(owner, bitmap & ~bit, newArray);
+        }
+
+        private Node replace(Object owner, int bitmap, Object[] array) {
+            if (this.owner == owner) {
+                this.bitmap = bitmap;
+                this.array = array;
+                return this;
+            }
+            return new Node(owner, bitmap, array);
+        }
+    }
+
+    /** Лист дерева — пара ключ-значение. */
+    private static final class Leaf<V> implements Map.Entry<Long, V> {
+        private final long key;
+        private final V value;
+
+        private Leaf(long key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override public Long getKey() {
+            return key;
+        }
+
+        @Override public V getValue() {
+            return value;
+        }
+
+        @Override public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return getKey().equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override public int hashCode() {
+            return Long.hashCode(key) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /** Обход листьев в глубину. */
+    private static final class LeafIterator<V> implements Iterator<Map.Entry<Long, V>> {
+        private final Object[][] arrays = new Object[MAX_DEPTH][];
+        private final int[] positions = new int[MAX_DEPTH];
+        private int depth;
+        private Leaf<V> next;
+
+        private LeafIterator(Node root) {
+            if (root == null) {
+                depth = -1;
+            } else {
+                arrays[0] = root.array;
+                depth = 0;
+                advance();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                Object[] array = arrays[depth];
+                if (positions[depth] == array.length) {
+                    arrays[depth] = null;
+                    depth--;
+                    continue;
+                }
+                Object o = array[positions[depth]++];
+                if (o instanceof Leaf) {
+                    next = (Leaf<V>) o;
+                    return;
+                }
+                depth++;
+                arrays[depth] = ((Node) o).array;
+                positions[depth] = 0;
+            }
+        }
+
+        @Override public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override public Map.Entry<Long, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf<V> result = next;
+            advance();
+            return result;
+        }
+    }
+
+    /**
+     * Строитель изменённой копии карты.
+     * <p>
+     * Узлы, которые строитель уже скопировал, он меняет на месте, поэтому большая пачка изменений
+     * не порождает промежуточных копий. После {@link #build()} строитель можно использовать дальше,
+     * опубликованные узлы он уже не тронет.
+     *
+     * @param <V> тип значений
+     */
+    public static final class Builder<V> {
+        private Object owner = new Object();
+        private Node root;
+        private int size;
+
+        private Builder(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        /**
+         * Кладёт значение по ключу.
+         *
+         * @param key ключ
+         * @param value значение, не нул
+         */
+        public void put(long key, V value) {
+            if (value == null) {
+                throw new IllegalArgumentException("Null value for key " + key);
+            }
+            long hash = hash(key);
+            Leaf<V> leaf = new Leaf<>(key, value);
+            if (root == null) {
+                root = new Node(owner, 1 << fragment(hash, 0), new Object[]{leaf});
+                size = 1;
+            } else {
+                root = put(root, 0, hash, leaf);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Node put(Node node, int shift, long hash, Leaf<V> leaf) {
+            int bit = 1 << fragment(hash, shift);
+            int index = Integer.bitCount(node.bitmap & (bit - 1));
+            if ((node.bitmap & bit) == 0) {
+                size++;
+                return node.insert(owner, bit, index, leaf);
+            }
+            Object o = node.array[index];
+            Object replacement;
+            if (o instanceof Leaf) {
+                Leaf<V> existing = (Leaf<V>) o;
+                if (existing.key == leaf.key) {
+                    if (existing.value == leaf.value) {
+                        return node;
+                    }
+                    replacement = leaf;
+                } else {
+                    size++;
+                    replacement = pair(shift + BITS, existing, hash(existing.key), leaf, hash);
+                }
+            } else {
+                Node child = (Node) o;
+                Node newChild = put(child, shift + BITS, hash, leaf);
+                if (newChild == child) {
+                    return node;
+                }
+                replacement = newChild;
+            }
+            return node.set(owner, index, replacement);
+        }
+
+        private Node pair(int shift, Leaf<V> leaf1, long hash1, Leaf<V> leaf2, long hash2) {
+            int fragment1 = fragment(hash1, shift);
+            int fragment2 = fragment(hash2, shift);
+            if (fragment1 == fragment2) {
+                return new Node(owner, 1 << fragment1, new Object[]{pair(shift + BITS, leaf1, hash1, leaf2, hash2)});
+            }
+            return new Node(
+                owner, (1 << fragment1) | (1 << fragment2),
+                fragment1 < fragment2 ? new Object[]{leaf1, leaf2} : new Object[]{leaf2, leaf1}
+            );
+        }
+
+        /**
+         * Удаляет ключ, если он есть.
+         *
+         * @param key ключ
+         */
+        public void remove(long key) {
+            if (root != null) {
+                root = remove(root, 0, hash(key), key);
+            }
+        }
+
+        private Node remove(Node node, int shift, long hash, long key) {
+            int bit = 1 << fragment(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return node;
+            }
+            int index = Integer.bitCount(node.bitmap & (bit - 1));
+            Object o = node.array[index];
+            if (o instanceof Leaf) {
+                if (((Leaf<?>) o).key != key) {
+                    return node;
+                }
+                size--;
+                return node.array.length == 1 ? null : node.delete(owner, bit, index);
+            }
+            Node child = (Node) o;
+            Node newChild = remove(child, shift + BITS, hash, key);
+            if (newChild == child) {
+                return node;
+            }
+            if (newChild == null) {
+                return node.array.length == 1 ? null : node.delete(owner, bit, index);
+            }
+            // одинокий лист поднимаем на уровень выше, чтобы дерево не вырождалось в цепочки
+            Object replacement = newChild.array.length == 1 && newChild.array[0] instanceof Leaf ? newChild.array[0] : newChild;
+            return node.set(owner, index, replacement);
+        }
+
+        /** @return карта с текущим содержимым строителя */
+        public PersistentLongMap<V> build() {
+            // дальнейшие изменения не должны трогать узлы опубликованной карты
+            owner = new Object();
+            return size == 0 ? empty() : new PersistentLongMap<>(root, size);
+        }
+    }
+}
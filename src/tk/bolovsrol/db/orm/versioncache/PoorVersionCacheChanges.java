@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.versioncache;
 
+import tk.bolovsrol.db.collections.LongHashSet;
 import tk.bolovsrol.utils.StringDumpBuilder;
 
 import java.util.Collection;
@@ -7,7 +8,6 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
  * Пакет изменений в таблице для клиента бедного кэша:
@@ -107,7 +107,7 @@ public class PoorVersionCacheChanges<O> implements UserVersionCacheChanges<O> {
             } else if (updatedIds.isEmpty()) {
                 deletedOrUpdatedIds = deletedIds;
             } else {
-                deletedOrUpdatedIds = new TreeSet<>();
+                deletedOrUpdatedIds = new LongHashSet(deletedIds.size() + updatedIds.size());
                 deletedOrUpdatedIds.addAll(deletedIds);
                 deletedOrUpdatedIds.addAll(updatedIds);
             }
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.versioncache;
 
+import tk.bolovsrol.db.collections.ConcurrentLongHashMap;
 import tk.bolovsrol.db.orm.RecordNotFoundException;
 import tk.bolovsrol.utils.Spell;
 
@@ -10,6 +11,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 /**
  * Богатый кэш хранит в памяти все кэшируемые элементы и предоставляет своим клиентам информацию о произошедших изменениях,
@@ -17,7 +19,11 @@ import java.util.concurrent.ConcurrentMap;
  * <p/>
  * В богатом кэше также можно зарегистрировать и клиента бедного кэша.
  * <p/>
- * Богатый кэш также сам по себе предоставляет несколько простых методов для доступа к хранящимся элементам.
+ * Богатый кэш также сам по себе предоставляет несколько простых методов для доступа к хранящимся элементам,
+ * а для поиска по другим полям в нём можно зарегистрировать {@link RichVersionCacheIndex вторичные индексы}.
+ * <p/>
+ * Живая карта данных меняется по мере применения пачки изменений, и читатель может застать пачку применённой наполовину.
+ * Кому нужна согласованная картина, пользуется {@link #getSnapshot() снимками}.
  *
  * @param <O> кэшируемый класс
  * @see VersionCacheManager#rich(Class)
@@ -26,7 +32,13 @@ import java.util.concurrent.ConcurrentMap;
  */
 public class RichVersionCache<O> extends PoorVersionCache<O> {
 
-    private final ConcurrentMap<Long, O> data = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, O> data = new ConcurrentLongHashMap<>();
+
+    /** Вторичные индексы по названиям. Изменяется под локом агента. */
+    private final Map<String, RichVersionCacheIndex<?, O>> indexes = new ConcurrentHashMap<>();
+
+    /** Последний опубликованный снимок или нул, пока снимки никто не запрашивал. Изменяется под локом агента. */
+    private volatile RichVersionCacheSnapshot<O> snapshot = null;
 
     public RichVersionCache(VersionCacheManager.Agent<O> agent) {
         super(agent);
@@ -74,11 +86,137 @@ public class RichVersionCache<O> extends PoorVersionCache<O> {
             result = null;
         }
 
+        if (!indexes.isEmpty()) {
+            updateIndexes(newObjects, deletedIds);
+        }
         data.putAll(newObjects);
-        data.keySet().removeAll(deletedIds);
+        for (Long id : deletedIds) {
+            data.remove(id);
+        }
+        if (snapshot != null) {
+            publishSnapshot(newObjects, deletedIds);
+        }
         return result;
     }
 
+    /**
+     * Публикует новый снимок: старый снимок плюс пачка изменений. Неизменившиеся узлы снимки делят между собой.
+     */
+    private void publishSnapshot(Map<Long, O> newObjects, Set<Long> deletedIds) {
+        RichVersionCacheSnapshot<O> current = snapshot;
+        PersistentLongMap.Builder<O> builder = current.getData().builder();
+        for (Map.Entry<Long, O> entry : newObjects.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue());
+        }
+        for (Long id : deletedIds) {
+            builder.remove(id);
+        }
+        snapshot = new RichVersionCacheSnapshot<>(agent.catalogAndTableName, current.getVersion() + 1L, builder.build());
+    }
+
+    /**
+     * Возвращает последний снимок данных кэша. Не блокирует, кроме самого первого вызова,
+     * который строит снимок из текущих данных; после этого кэш публикует новый снимок с каждой пачкой изменений.
+     *
+     * @return снимок
+     */
+    public RichVersionCacheSnapshot<O> getSnapshot() {
+        RichVersionCacheSnapshot<O> result = snapshot;
+        if (result == null) {
+            synchronized (agent) {
+                result = snapshot;
+                if (result == null) {
+                    PersistentLongMap.Builder<O> builder = PersistentLongMap.<O>empty().builder();
+                    for (Map.Entry<Long, O> entry : data.entrySet()) {
+                        builder.put(entry.getKey(), entry.getValue());
+                    }
+                    result = new RichVersionCacheSnapshot<>(agent.catalogAndTableName, 1L, builder.build());
+                    snapshot = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Переиндексирует изменившиеся элементы. Вызывается до обновления карты данных, пока в ней старые элементы.
+     */
+    private void updateIndexes(Map<Long, O> newObjects, Set<Long> deletedIds) {
+        for (Map.Entry<Long, O> entry : newObjects.entrySet()) {
+            O obsolete = data.get(entry.getKey());
+            for (RichVersionCacheIndex<?, O> index : indexes.values()) {
+                if (obsolete != null) {
+                    index.remove(entry.getKey(), obsolete);
+                }
+                index.add(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Long id : deletedIds) {
+            O obsolete = data.get(id);
+            if (obsolete != null) {
+                for (RichVersionCacheIndex<?, O> index : indexes.values()) {
+                    index.remove(id, obsolete);
+                }
+            }
+        }
+    }
+
+    /**
+     * Регистрирует уникальный вторичный индекс и наполняет его текущими данными.
+     * Если индекс с таким названием уже есть, возвращает его.
+     *
+     * @param name название индекса
+     * @param keyExtractor функция, вычисляющая ключ из элемента
+     * @param <K> тип ключа
+     * @return индекс
+     * @throws IllegalArgumentException под этим названием зарегистрирован неуникальный индекс
+     */
+    public <K> RichVersionCacheIndex.Unique<K, O> registerUniqueIndex(String name, Function<? super O, ? extends K> keyExtractor) {
+        return registerIndex(new RichVersionCacheIndex.Unique<>(name, keyExtractor), RichVersionCacheIndex.Unique.class);
+    }
+
+    /**
+     * Регистрирует неуникальный вторичный индекс и наполняет его текущими данными.
+     * Если индекс с таким названием уже есть, возвращает его.
+     *
+     * @param name название индекса
+     * @param keyExtractor функция, вычисляющая ключ из элемента
+     * @param <K> тип ключа
+     * @return индекс
+     * @throws IllegalArgumentException под этим названием зарегистрирован уникальный индекс
+     */
+    public <K> RichVersionCacheIndex.Multi<K, O> registerMultiIndex(String name, Function<? super O, ? extends K> keyExtractor) {
+        return registerIndex(new RichVersionCacheIndex.Multi<>(name, keyExtractor), RichVersionCacheIndex.Multi.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <I extends RichVersionCacheIndex<?, O>> I registerIndex(I index, Class<?> indexClass) {
+        synchronized (agent) {
+            RichVersionCacheIndex<?, O> existing = indexes.get(index.getName());
+            if (existing != null) {
+                if (!indexClass.isInstance(existing)) {
+                    throw new IllegalArgumentException("Index " + index.getName() + " of " + agent.catalogAndTableName + " is already registered as " + existing.getClass().getSimpleName());
+                }
+                return (I) existing;
+            }
+            for (Map.Entry<Long, O> entry : data.entrySet()) {
+                index.add(entry.getKey(), entry.getValue());
+            }
+            indexes.put(index.getName(), index);
+            return index;
+        }
+    }
+
+    /**
+     * Возвращает зарегистрированный вторичный индекс по названию.
+     *
+     * @param name название индекса
+     * @return индекс или нул, если такого нет
+     */
+    public RichVersionCacheIndex<?, O> getIndex(String name) {
+        return indexes.get(name);
+    }
+
     private void copyObsoletes(Map<Long, O> obsoleteMap, Set<Long> idSource) {
         for (Long id : idSource) {
             O item = data.get(id);
@@ -118,6 +256,7 @@ public class RichVersionCache<O> extends PoorVersionCache<O> {
      * <p/>
      * Следует иметь в виду, что данные в карте могут изменяться с течением времени в соответствии с происходящими
      * в наблюдаемой таблцие изменениями, и наоборот, внесённые изменения будут видны кэшу.
+     * Неизменяемые данные даёт {@link #getSnapshot()}.
      *
      * @return дамп
      */
@@ -130,6 +269,7 @@ public class RichVersionCache<O> extends PoorVersionCache<O> {
      * <p/>
      * Следует иметь в виду, что данные в сете могут изменяться с течением времени в соответствии с происходящими
      * в наблюдаемой таблцие изменениями, и наоборот, внесённые изменения будут видны кэшу.
+     * Неизменяемые данные даёт {@link #getSnapshot()}.
      *
      * @return ключи
      */
@@ -142,6 +282,7 @@ public class RichVersionCache<O> extends PoorVersionCache<O> {
      * <p/>
      * Следует иметь в виду, что данные в коллекции могут изменяться с течением времени в соответствии с происходящими
      * в наблюдаемой таблцие изменениями, и наоборот, внесённые изменения будут видны кэшу.
+     * Неизменяемые данные даёт {@link #getSnapshot()}.
      *
      * @return элементы
      */
@@ -0,0 +1,179 @@
+package tk.bolovsrol.db.orm.versioncache;
+
+import tk.bolovsrol.db.orm.RecordNotFoundException;
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.log.Log;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Вторичный индекс богатого кэша: отображение ключа, вычисленного из элемента, на элементы кэша.
+ * <p>
+ * Индекс регистрируют в кэше методами {@link RichVersionCache#registerUniqueIndex(String, Function)}
+ * и {@link RichVersionCache#registerMultiIndex(String, Function)}, после чего кэш сам поддерживает его
+ * при каждом обновлении, обрабатывая только изменившиеся записи. Поиск по индексу не блокирует.
+ * <p>
+ * Элементы, для которых функция вернула нул, в индекс не попадают.
+ *
+ * @param <K> тип ключа
+ * @param <O> кэшируемый класс
+ */
+public abstract class RichVersionCacheIndex<K, O> {
+
+    protected final String name;
+    protected final Function<? super O, ? extends K> keyExtractor;
+
+    private RichVersionCacheIndex(String name, Function<? super O, ? extends K> keyExtractor) {
+        this.name = name;
+        this.keyExtractor = keyExtractor;
+    }
+
+    /** @return название индекса */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Индексирует элемент. Вызывается кэшем под локом агента.
+     *
+     * @param id ид элемента
+     * @param item элемент
+     */
+    void add(Long id, O item) {
+        K key = keyExtractor.apply(item);
+        if (key != null) {
+            put(key, id, item);
+        }
+    }
+
+    /**
+     * Убирает элемент из индекса. Вызывается кэшем под локом агента.
+     *
+     * @param id ид элемента
+     * @param item элемент в том виде, в каком он был проиндексирован
+     */
+    void remove(Long id, O item) {
+        K key = keyExtractor.apply(item);
+        if (key != null) {
+            remove(key, id, item);
+        }
+    }
+
+    abstract void put(K key, Long id, O item);
+
+    abstract void remove(K key, Long id, O item);
+
+    /** @return количество различных ключей в индексе */
+    public abstract int getKeyCount();
+
+    /**
+     * Уникальный индекс: каждому ключу соответствует не более одного элемента.
+     * <p>
+     * Уникальность должна обеспечивать сама таблица. Если двум записям всё же достанется один ключ,
+     * в индексе останется та, что проиндексирована последней, а в лог попадёт предупреждение.
+     *
+     * @param <K> тип ключа
+     * @param <O> кэшируемый класс
+     */
+    public static class Unique<K, O> extends RichVersionCacheIndex<K, O> {
+        private final ConcurrentMap<K, O> map = new ConcurrentHashMap<>();
+
+        Unique(String name, Function<? super O, ? extends K> keyExtractor) {
+            super(name, keyExtractor);
+        }
+
+        @Override void put(K key, Long id, O item) {
+            O previous = map.put(key, item);
+            if (previous != null && previous != item) {
+                Log.warning("Unique index " + name + " has more than one item with key " + Spell.get(key) + ", item id " + id + " wins");
+            }
+        }
+
+        @Override void remove(K key, Long id, O item) {
+            map.remove(key, item);
+        }
+
+        @Override public int getKeyCount() {
+            return map.size();
+        }
+
+        /**
+         * Возвращает элемент по ключу либо нул, если такого элемента нет.
+         *
+         * @param key ключ
+         * @return элемент или нул
+         */
+        public O get(K key) {
+            return map.get(key);
+        }
+
+        /**
+         * Возвращает элемент по ключу либо выкидывает исключение, если такого элемента нет.
+         *
+         * @param key ключ
+         * @return элемент
+         * @throws RecordNotFoundException элемент с указанным ключом не найден
+         */
+        public O getOrDie(K key) throws RecordNotFoundException {
+            O result = map.get(key);
+            if (result == null) {
+                throw new RecordNotFoundException("No item is found by " + name + ' ' + Spell.get(key));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Неуникальный индекс: каждому ключу соответствует сколько угодно элементов.
+     *
+     * @param <K> тип ключа
+     * @param <O> кэшируемый класс
+     */
+    public static class Multi<K, O> extends RichVersionCacheIndex<K, O> {
+        private final ConcurrentMap<K, Map<Long, O>> map = new ConcurrentHashMap<>();
+
+        Multi(String name, Function<? super O, ? extends K> keyExtractor) {
+            super(name, keyExtractor);
+        }
+
+        @Override void put(K key, Long id, O item) {
+            map.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).put(id, item);
+        }
+
+        @Override void remove(K key, Long id, O item) {
+            map.computeIfPresent(key, (k, items) -> {
+                items.remove(id, item);
+                return items.isEmpty() ? null : items;
+            });
+        }
+
+        @Override public int getKeyCount() {
+            return map.size();
+        }
+
+        /**
+         * Возвращает живую неизменяемую коллекцию элементов с указанным ключом
+         * либо пустую коллекцию, если таких элементов нет.
+         *
+         * @param key ключ
+         * @return элементы
+         */
+        public Collection<O> get(K key) {
+            Map<Long, O> items = map.get(key);
+            return items == null ? Collections.emptyList() : Collections.unmodifiableCollection(items.values());
+        }
+
+        /**
+         * @param key ключ
+         * @return true, если есть хотя бы один элемент с указанным ключом
+         */
+        public boolean contains(K key) {
+            return map.containsKey(key);
+        }
+    }
+}
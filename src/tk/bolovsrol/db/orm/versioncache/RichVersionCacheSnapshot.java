@@ -0,0 +1,93 @@
+package tk.bolovsrol.db.orm.versioncache;
+
+import tk.bolovsrol.db.orm.RecordNotFoundException;
+import tk.bolovsrol.utils.Spell;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Неизменяемый снимок данных богатого кэша на момент после применения очередной пачки изменений.
+ * <p>
+ * Снимок никогда не увидит половину пачки, и его данные не меняются, сколько бы его ни держали.
+ * Если обработчику запроса нужна согласованная картина справочника, он берёт снимок
+ * в начале запроса и все обращения делает к нему.
+ *
+ * @param <O> кэшируемый класс
+ * @see RichVersionCache#getSnapshot()
+ */
+public final class RichVersionCacheSnapshot<O> {
+
+    private final CatalogAndTableName catalogAndTableName;
+    private final long version;
+    private final PersistentLongMap<O> data;
+
+    RichVersionCacheSnapshot(CatalogAndTableName catalogAndTableName, long version, PersistentLongMap<O> data) {
+        this.catalogAndTableName = catalogAndTableName;
+        this.version = version;
+        this.data = data;
+    }
+
+    /**
+     * Возвращает номер снимка. Каждая применённая к кэшу пачка изменений увеличивает номер на единицу.
+     *
+     * @return номер снимка
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Возвращает элемент по его id либо нул, если элемента с таким ид в снимке нет.
+     *
+     * @param id
+     * @return элемент или нул
+     */
+    public O getById(Long id) {
+        return id == null ? null : data.get(id.longValue());
+    }
+
+    /**
+     * Возвращает элемент по его id либо выкидывает исключение, если элемента с таким ид в снимке нет.
+     *
+     * @param id
+     * @return элемент
+     * @throws RecordNotFoundException элемент с указанным ид не найден
+     */
+    public O getByIdOrDie(Long id) throws RecordNotFoundException {
+        O result = getById(id);
+        if (result == null) {
+            throw new RecordNotFoundException("No " + catalogAndTableName + " is found by id " + Spell.get(id));
+        }
+        return result;
+    }
+
+    /** @return количество элементов в снимке */
+    public int size() {
+        return data.size();
+    }
+
+    PersistentLongMap<O> getData() {
+        return data;
+    }
+
+    /** @return неизменяемая карта данных снимка */
+    public Map<Long, O> getMap() {
+        return data;
+    }
+
+    /** @return неизменяемый сет идентификаторов снимка */
+    public Set<Long> getIds() {
+        return data.keySet();
+    }
+
+    /** @return неизменяемая коллекция элементов снимка */
+    public Collection<O> getItems() {
+        return data.values();
+    }
+
+    @Override public String toString() {
+        return catalogAndTableName + " snapshot " + version + " of " + data.size() + " item(s)";
+    }
+}
@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.versioncache;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.orm.object.RefDbDataObject;
 import tk.bolovsrol.db.pool.ConnectionManager;
 import tk.bolovsrol.utils.StringDumpBuilder;
@@ -14,6 +15,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,6 +24,8 @@ import java.util.Map;
  * Утилитка для проверки наличия триггеров для таблиц-справочников, создания их и генерации SQL-команд для выполнения вручную пользователем.
  * <p>
  * Использует шаблоны, определяемые в {@link tk.bolovsrol.db.DbProperties пропертях} или в конфиге.
+ * Шаблоны подбираются под СУБД соединения, см. {@link VersionCacheConst#getTriggerTemplate(DatabaseDialect, String)};
+ * из коробки есть шаблоны для MySQL и HSQLDB.
  * <p>
  * В командах по удалению триггера можно использовать макросы
  * <ul>
@@ -62,10 +66,7 @@ public class TriggerUtils {
         return INSTANCE;
     }
 
-    private final ProxyingCompiledFormatter triggerDropFtr;
-    private final ProxyingCompiledFormatter triggerCreateAfterInsertFtr;
-    private final ProxyingCompiledFormatter triggerCreateAfterUpdateFtr;
-    private final ProxyingCompiledFormatter triggerCreateAfterDeleteFtr;
+    private final Map<DatabaseDialect, Templates> dialectToTemplates = new EnumMap<>(DatabaseDialect.class);
 
     private final MapEvaluator ke;
 
@@ -75,17 +76,60 @@ public class TriggerUtils {
      */
     private final Object lock = new Object();
 
+    /** Скомпилированные шаблоны команд для одной СУБД. */
+    private static final class Templates {
+        private final String delimiterStart;
+        private final String delimiterEnd;
+        private final String delimiter;
+        private final ProxyingCompiledFormatter dropFtr;
+        private final ProxyingCompiledFormatter createAfterInsertFtr;
+        private final ProxyingCompiledFormatter createAfterUpdateFtr;
+        private final ProxyingCompiledFormatter createAfterDeleteFtr;
+
+        private Templates(DatabaseDialect dialect, TextFormatCompiler tfc, MapEvaluator ke) throws InvalidTemplateException {
+            delimiterStart = VersionCacheConst.getTriggerTemplate(dialect, "delimiterStart");
+            delimiterEnd = VersionCacheConst.getTriggerTemplate(dialect, "delimiterEnd");
+            delimiter = VersionCacheConst.getTriggerTemplate(dialect, "delimiter");
+            dropFtr = compile(tfc, ke, VersionCacheConst.getTriggerTemplate(dialect, "drop"));
+            createAfterInsertFtr = compile(tfc, ke, VersionCacheConst.getTriggerTemplate(dialect, "create.afterInsert"));
+            createAfterUpdateFtr = compile(tfc, ke, VersionCacheConst.getTriggerTemplate(dialect, "create.afterUpdate"));
+            createAfterDeleteFtr = compile(tfc, ke, VersionCacheConst.getTriggerTemplate(dialect, "create.afterDelete"));
+        }
+
+        private static ProxyingCompiledFormatter compile(TextFormatCompiler tfc, MapEvaluator ke, String template) throws InvalidTemplateException {
+            ProxyingCompiledFormatter ftr = tfc.compile(template);
+            if (ftr != null) ftr.setKeywordEvaluator(ke);
+            return ftr;
+        }
+
+        private boolean isComplete() {
+            return dropFtr != null && createAfterInsertFtr != null && createAfterUpdateFtr != null && createAfterDeleteFtr != null;
+        }
+
+        private void appendDelimited(List<String> target, List<String> statements) {
+            if (delimiterStart != null && !delimiterStart.isEmpty()) {
+                target.add(delimiterStart);
+            }
+            for (String s : statements) {
+                target.add(s + (delimiter == null ? "" : delimiter));
+            }
+            if (delimiterEnd != null && !delimiterEnd.isEmpty()) {
+                target.add(delimiterEnd);
+            }
+        }
+    }
+
     private TriggerUtils() throws InvalidTemplateException {
         ke = new MapEvaluator();
         TextFormatCompiler tfc = new TextFormatCompiler().setQuoteChars(null);
-        triggerDropFtr = tfc.compile(VersionCacheConst.TRIGGER_DROP);
-        if (triggerDropFtr != null) triggerDropFtr.setKeywordEvaluator(ke);
-        triggerCreateAfterInsertFtr = tfc.compile(VersionCacheConst.TRIGGER_CREATE_AFTER_INSERT);
-        if (triggerCreateAfterInsertFtr != null) triggerCreateAfterInsertFtr.setKeywordEvaluator(ke);
-        triggerCreateAfterUpdateFtr = tfc.compile(VersionCacheConst.TRIGGER_CREATE_AFTER_UPDATE);
-        if (triggerCreateAfterUpdateFtr != null) triggerCreateAfterUpdateFtr.setKeywordEvaluator(ke);
-        triggerCreateAfterDeleteFtr = tfc.compile(VersionCacheConst.TRIGGER_CREATE_AFTER_DELETE);
-        if (triggerCreateAfterDeleteFtr != null) triggerCreateAfterDeleteFtr.setKeywordEvaluator(ke);
+        for (DatabaseDialect dialect : DatabaseDialect.values()) {
+            if (dialect != DatabaseDialect.OTHER) {
+                Templates templates = new Templates(dialect, tfc, ke);
+                if (templates.isComplete()) {
+                    dialectToTemplates.put(dialect, templates);
+                }
+            }
+        }
 
         ke.add("vhCatalogName", VersionCacheConst.VERSION_HISTORY_SQL_CATALOG_NAME);
         ke.add("vhTableName", VersionCacheConst.VERSION_HISTORY_SQL_TABLE_NAME);
@@ -106,8 +150,14 @@ public class TriggerUtils {
         if (triggerCheckAction == VersionCacheConst.TriggerCheckAction.IGNORE) {
             return;
         }
+        DatabaseDialect dialect = detectDialect(rdbdo);
         synchronized (lock) {
-            List<String> statements = produceCreateStatements(rdbdo, true);
+            Templates templates = dialectToTemplates.get(dialect);
+            if (templates == null) {
+                Log.warning("No version history trigger templates for " + dialect + ", cannot check triggers for reference table " + rdbdo.getSqlCatalogName() + '.' + rdbdo.getSqlTableName());
+                return;
+            }
+            List<String> statements = produceCreateStatements(rdbdo, templates, true);
             if (statements == null) {
                 return;
             }
@@ -121,34 +171,67 @@ public class TriggerUtils {
                     // если не удалось, напишем в логе, что надо делать
                 }
                 Log.warning("Missing or outdated triggers detected for reference table " + rdbdo.getSqlCatalogName() + '.' + rdbdo.getSqlTableName() + ", consider running following SQL statements by hand:");
-                Log.warning(VersionCacheConst.TRIGGER_DELIMITER_START);
-                for (String s : statements) {
-                    Log.warning(s + VersionCacheConst.TRIGGER_DELIMITER);
+                List<String> lines = new ArrayList<>(statements.size() + 2);
+                templates.appendDelimited(lines, statements);
+                for (String line : lines) {
+                    Log.warning(line);
                 }
-                Log.warning(VersionCacheConst.TRIGGER_DELIMITER_END);
             }
         }
     }
 
     /**
-     * Генерирует строку с SQL-командами для создания триггеров для переданного объекта.
+     * Генерирует строку с SQL-командами для создания триггеров MySQL для переданного объекта.
      *
      * @param rdbdo исследуемый объект
      * @return SQL-команды
      * @see RefDbDataObject#generateSqlCreateTableTemplate()
      */
     public String generateSqlCreateTriggers(RefDbDataObject rdbdo) {
+        return generateSqlCreateTriggers(rdbdo, DatabaseDialect.MYSQL);
+    }
+
+    /**
+     * Генерирует строку с SQL-командами для создания триггеров для переданного объекта
+     * на указанной СУБД.
+     *
+     * @param rdbdo исследуемый объект
+     * @param dialect СУБД
+     * @return SQL-команды
+     * @throws IllegalArgumentException для СУБД нет шаблонов
+     * @see RefDbDataObject#generateSqlCreateTableTemplate()
+     */
+    public String generateSqlCreateTriggers(RefDbDataObject rdbdo, DatabaseDialect dialect) {
         synchronized (lock) {
+            Templates templates = dialectToTemplates.get(dialect);
+            if (templates == null) {
+                throw new IllegalArgumentException("No version history trigger templates for " + dialect);
+            }
+            List<String> lines = new ArrayList<>(5);
+            templates.appendDelimited(lines, produceCreateStatements(rdbdo, templates, false));
             StringDumpBuilder sdb = new StringDumpBuilder("\n");
-            sdb.append(VersionCacheConst.TRIGGER_DELIMITER_START);
-            for (String s : produceCreateStatements(rdbdo, false)) {
-                sdb.append(s + VersionCacheConst.TRIGGER_DELIMITER);
+            for (String line : lines) {
+                sdb.append(line);
             }
-            sdb.append(VersionCacheConst.TRIGGER_DELIMITER_END);
             return sdb.toString();
         }
     }
 
+    /**
+     * Определяет СУБД, с которой работает справочник. Если это не удаётся, считает, что это MySQL.
+     *
+     * @param rdbdo исследуемый объект, только для логов
+     * @return диалект СУБД
+     */
+    private static DatabaseDialect detectDialect(RefDbDataObject rdbdo) {
+        try (Connection con = ConnectionManager.getConnection()) {
+            return DatabaseDialect.of(con);
+        } catch (Exception e) {
+            Log.exception("Error detecting database for reference table " + rdbdo.getSqlCatalogName() + '.' + rdbdo.getSqlTableName() + ", assuming " + DatabaseDialect.MYSQL, e);
+            return DatabaseDialect.MYSQL;
+        }
+    }
+
     /**
      * Выполняет переданные команды для создания триггеров.
      *
@@ -175,16 +258,15 @@ public class TriggerUtils {
         }
     }
 
-    //  реализовано только для мускля
-    private List<String> produceCreateStatements(RefDbDataObject rdbdo, boolean checkDb) {
+    private List<String> produceCreateStatements(RefDbDataObject rdbdo, Templates templates, boolean checkDb) {
         ke.add("subjectCatalogName", rdbdo.getSqlCatalogName());
         ke.add("subjectTableName", rdbdo.getSqlTableName());
         ke.add("subjectKeyFieldName", rdbdo.idField().getName());
 
         Map<String, String> templateStatements = new HashMap<>(3);
-        templateStatements.put("INSERT", triggerCreateAfterInsertFtr.format());
-        templateStatements.put("UPDATE", triggerCreateAfterUpdateFtr.format());
-        templateStatements.put("DELETE", triggerCreateAfterDeleteFtr.format());
+        templateStatements.put("INSERT", templates.createAfterInsertFtr.format());
+        templateStatements.put("UPDATE", templates.createAfterUpdateFtr.format());
+        templateStatements.put("DELETE", templates.createAfterDeleteFtr.format());
 
         List<String> msg = new ArrayList<>(6);
 
@@ -209,7 +291,7 @@ public class TriggerUtils {
 								if (!templateStatement.contains(body) && !templateStatement.contains(body.replace('`', '"'))) {
                                     ke.add("triggerCatalogName", rs.getString(1));
                                     ke.add("triggerTableName", rs.getString(2));
-                                    msg.add(triggerDropFtr.format());
+                                    msg.add(templates.dropFtr.format());
                                     msg.add(templateStatement);
 								}
 							}
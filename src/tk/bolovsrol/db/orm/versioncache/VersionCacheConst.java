@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.orm.versioncache;
 
+import tk.bolovsrol.db.DatabaseDialect;
 import tk.bolovsrol.db.DbProperties;
 import tk.bolovsrol.utils.log.Log;
 import tk.bolovsrol.utils.log.LogLevel;
@@ -10,9 +11,43 @@ import tk.bolovsrol.utils.time.TimeUtils;
 /** Кешовые константы. */
 public final class VersionCacheConst {
 
-    /** Частота проверки изменений кешируемых объектов, по умолчанию 3 секунды. */
+    /** Начальная частота проверки изменений кешируемых объектов, по умолчанию 3 секунды. */
     public static final long REFRESH_INTERVAL = Cfg.getLong("versioncache.refresh.ms", 3000L, Log.getInstance());
 
+    /**
+     * Наименьший интервал проверки изменений. Пока изменения идут, наблюдатель проверяет историю версий с этим интервалом.
+     * <p>
+     * По умолчанию полсекунды, но не больше {@link #REFRESH_INTERVAL}.
+     */
+    public static final long REFRESH_MIN_INTERVAL = Cfg.getLong("versioncache.refresh.min.ms", Math.min(500L, REFRESH_INTERVAL), Log.getInstance());
+
+    /**
+     * Наибольший интервал проверки изменений. Пока изменений нет, наблюдатель вдвое увеличивает интервал
+     * после каждой пустой проверки, но не больше этого.
+     * <p>
+     * По умолчанию четыре {@link #REFRESH_INTERVAL}. Чтобы проверять с постоянным интервалом,
+     * надо задать наименьший и наибольший интервалы равными {@link #REFRESH_INTERVAL}.
+     */
+    public static final long REFRESH_MAX_INTERVAL = Cfg.getLong("versioncache.refresh.max.ms", 4L * REFRESH_INTERVAL, Log.getInstance());
+
+    /**
+     * Количество нитей, вычитывающих изменения из таблиц и рассылающих их кэшам.
+     * Изменения одной таблицы рассылаются последовательно, разные таблицы — параллельно.
+     * <p>
+     * По умолчанию 4 нити.
+     */
+    public static final int BROADCAST_THREADS = Cfg.getInteger("versioncache.broadcast.threads", 4, Log.getInstance());
+
+    /**
+     * Рассылать ли изменения справочников, сделанные этой джава-машиной через {@link tk.bolovsrol.db.pool.HookConnection},
+     * сразу после коммита, не дожидаясь опроса истории версий.
+     * <p>
+     * По умолчанию рассылать.
+     *
+     * @see LocalChangeFeed
+     */
+    public static final boolean LOCAL_FEED_ENABLED = Cfg.getBoolean("versioncache.localFeed.enabled", true);
+
     /** Название SQL-схемы {@link VersionHistoryDbdo}, по умолчанию «version_cache». */
     public static final String VERSION_HISTORY_SQL_CATALOG_NAME =
         DbProperties.properties().get("versionCache.versionHistory.sqlCatalogName", "version_cache");
@@ -54,9 +89,68 @@ public final class VersionCacheConst {
      * Наименее часто используемые записи будут удалены из кэша,
      * чтобы не допустить перегрузки.
      * <p>
-     * По умолчанию лимит 10000 записей.
+     * Этим же числом ограничена страница истории версий, которую наблюдатель читает за один запрос.
+     * <p>
+     * По умолчанию лимит 10000 записей; меньше одной записи не бывает, иначе постраничное чтение не сдвинется с места.
      */
-    public static final int PARTIAL_MAX_RECORDS = Cfg.getInteger("versioncache.partial.maxRecords", 10000, Log.getInstance());
+    public static final int PARTIAL_MAX_RECORDS = Math.max(1, Cfg.getInteger("versioncache.partial.maxRecords", 10000, Log.getInstance()));
+
+    /**
+     * Количество созданных и обновлённых записей таблицы, накопившихся к рассылке, начиная с которого
+     * вместо вычитывания отдельных записей таблица перечитывается целиком.
+     * <p>
+     * По умолчанию 10000 записей.
+     */
+    public static final int FULL_RELOAD_THRESHOLD = Cfg.getInteger("versioncache.fullReload.threshold", 10000, Log.getInstance());
+
+    /**
+     * Сколько соединений одновременно занимает первоначальная загрузка таблицы кэша целиком.
+     * Если больше одного, таблица делится на диапазоны ид, которые читаются параллельно.
+     * Относится и к {@link tk.bolovsrol.db.orm.manualcache.ManualCache ручным кэшам}.
+     * <p>
+     * По умолчанию одно соединение, то есть таблица читается одним селектом.
+     *
+     * @see tk.bolovsrol.db.orm.processing.ParallelRefDbdoLoader
+     */
+    public static final int INITIAL_LOAD_THREADS = Cfg.getInteger("versioncache.initialLoad.threads", 1, Log.getInstance());
+
+    /**
+     * Публиковать ли данные {@link tk.bolovsrol.db.orm.manualcache.ManualCache ручных кэшей} неизменяемыми копиями.
+     * <p>
+     * В этом режиме обновление собирает новую карту данных и подменяет ею прежнюю, а чтение идёт без локов
+     * и не ждёт обновления. Наборы ид и записей отдаются неизменяемыми представлениями без копирования.
+     * Зато каждое обновление копирует карту целиком, так что режим годится для кэшей, которые читают
+     * гораздо чаще, чем обновляют.
+     * <p>
+     * По умолчанию не публиковать, читатели и обновление делят лок.
+     */
+    public static final boolean MANUAL_CACHE_COPY_ON_PUBLISH = Cfg.getBoolean("versioncache.manualCache.copyOnPublish", false);
+
+    /**
+     * Как часто {@link tk.bolovsrol.db.orm.manualcache.ManualCache ручной кэш} с колонкой времени изменения записей
+     * перечитывает таблицу целиком, чтобы узнать об удалённых записях, о которых ему не сообщили.
+     * В промежутках кэш перечитывает только записи, изменившиеся после прошлого обновления.
+     * <p>
+     * По умолчанию час.
+     */
+    public static final Duration MANUAL_CACHE_RECONCILE_INTERVAL = Cfg.getDuration("versioncache.manualCache.reconcileInterval", new Duration(TimeUtils.MS_IN_HOUR), Log.getInstance());
+
+    /**
+     * Количество нитей, обновляющих {@link tk.bolovsrol.db.orm.manualcache.ManualCache ручные кэши}
+     * по {@link tk.bolovsrol.db.orm.manualcache.ManualCacheManager#update(Class, java.util.Collection)}.
+     * Кэши одного класса обновляются параллельно, каждый на своём соединении, а кэши из цепочек обновлений — после своих источников.
+     * <p>
+     * По умолчанию 4 нити.
+     */
+    public static final int MANUAL_CACHE_REFRESH_THREADS = Cfg.getInteger("versioncache.manualCache.refreshThreads", 4, Log.getInstance());
+
+    /**
+     * Сколько чтение {@link tk.bolovsrol.db.orm.manualcache.ManualCache ручного кэша}, заставшее данные старше допустимого,
+     * ждёт их обновления. Не дождавшись, чтение получает то, что есть в кэше, а обновление продолжается само.
+     * <p>
+     * По умолчанию 10 секунд.
+     */
+    public static final Duration MANUAL_CACHE_STALE_REFRESH_TIMEOUT = Cfg.getDuration("versioncache.manualCache.staleRefreshTimeout", new Duration(10L * TimeUtils.MS_IN_SECOND), Log.getInstance());
 
     /**
      * Максимальное время спячки записывателя информации
@@ -75,6 +169,21 @@ public final class VersionCacheConst {
      */
     public static final int LATEST_ACCESS_THRESHOLD = Cfg.getInteger("versioncache.latestAccess.threshold", 64, Log.getInstance());
 
+    /**
+     * Сколько записей о доступе записыватель сохраняет одним инсертом.
+     * <p>
+     * По умолчанию 500 штук.
+     */
+    public static final int LATEST_ACCESS_BATCH_SIZE = Cfg.getInteger("versioncache.latestAccess.batchSize", 500, Log.getInstance());
+
+    /**
+     * Сколько несохранённых записей о доступе к разным записям может накопиться. Если записыватель не успевает,
+     * доступ к записям, которых ещё нет среди несохранённых, не фиксируется, а только подсчитывается.
+     * <p>
+     * По умолчанию 100000 штук.
+     */
+    public static final int LATEST_ACCESS_MAX_BUFFER = Cfg.getInteger("versioncache.latestAccess.maxBuffer", 100000, Log.getInstance());
+
     /** Разрешено ли очищать историю версий. */
     public static final boolean CLEANUP_ENABLED = Cfg.getBoolean("versioncache.cleanup.enabled", false);
 
@@ -84,6 +193,76 @@ public final class VersionCacheConst {
     /** Насколько старые записи удалять из истории версий, очищая её. */
     public static final Duration CLEANUP_AGE = Cfg.getDuration("versioncache.cleanup.age", new Duration(TimeUtils.MS_IN_HOUR), Log.getInstance());
 
+    /** Способ очистки истории версий. */
+    public enum CleanupStrategy {
+        /** Удалять записи пачками по диапазонам ид. */
+        DELETE,
+        /**
+         * Сначала удалить целиком секции таблицы, в которых все записи старые, а оставшееся удалить пачками.
+         * Годится для секционированной таблицы истории версий на MySQL и PostgreSQL, на прочих СУБД работает как {@link #DELETE}.
+         */
+        PARTITIONS
+    }
+
+    /**
+     * Способ очистки истории версий.
+     * <p>
+     * По умолчанию удалять пачками.
+     */
+    public static final CleanupStrategy CLEANUP_STRATEGY = Cfg.getEnum("versioncache.cleanup.strategy", CleanupStrategy.DELETE, Log.getInstance());
+
+    /**
+     * Ширина диапазона ид истории версий, удаляемого одним запросом при очистке.
+     * <p>
+     * По умолчанию 5000.
+     */
+    public static final int CLEANUP_BATCH_SIZE = Cfg.getInteger("versioncache.cleanup.batchSize", 5000, Log.getInstance());
+
+    /**
+     * Пауза между запросами очистки истории версий, чтобы не мешать триггерам, пишущим в ту же таблицу.
+     * <p>
+     * По умолчанию 200 мс.
+     */
+    public static final Duration CLEANUP_PAUSE = Cfg.getDuration("versioncache.cleanup.pause", new Duration(200L), Log.getInstance());
+
+    /**
+     * Папка для снимков кэшей на диске. Со снимком кэш после перезапуска не перечитывает таблицу целиком,
+     * а берёт записи из снимка и дочитывает только изменившиеся после него.
+     * <p>
+     * По умолчанию не задана, и снимки не пишутся.
+     *
+     * @see CacheSnapshot
+     */
+    public static final String SNAPSHOT_DIR = Cfg.get("versioncache.snapshot.dir", null);
+
+    /**
+     * Снимать ли на диск ручные кэши {@link tk.bolovsrol.db.orm.manualcache.ManualCache}, если задана {@link #SNAPSHOT_DIR папка для снимков}.
+     * Изменения, сделанные после снимка, кэш узнаёт из истории версий, поэтому на всех таблицах ручных кэшей
+     * должны стоять триггеры версионного кэша. Кэши со специальным условием выборки не снимаются никогда.
+     * <p>
+     * По умолчанию не снимать.
+     */
+    public static final boolean SNAPSHOT_MANUAL_CACHE = Cfg.getBoolean("versioncache.snapshot.manualCache", false);
+
+    /**
+     * Насколько раньше снимка дочитывать историю версий. Запись истории получает ид при вставке, а видна становится
+     * при коммите, так что транзакция, начатая до снимка и закоммиченная после, оставит запись с ид меньше штампа снимка.
+     * Поэтому дочитываются и записи истории не старше этого запаса до начала снимка. Запас должен быть больше самой долгой
+     * транзакции, меняющей справочники.
+     * <p>
+     * По умолчанию 5 минут.
+     */
+    public static final Duration SNAPSHOT_REPLAY_MARGIN = Cfg.getDuration("versioncache.snapshot.replayMargin", new Duration(5L * TimeUtils.MS_IN_MINUTE), Log.getInstance());
+
+    /**
+     * Как часто перечитывать таблицу целиком, даже если снимок годен. Каждый снимок, дописанный историей версий,
+     * наследует время полного чтения предыдущего, так что расхождение с таблицей, если оно всё же случилось,
+     * проживёт не дольше этого срока.
+     * <p>
+     * По умолчанию сутки.
+     */
+    public static final Duration SNAPSHOT_FULL_RELOAD_INTERVAL = Cfg.getDuration("versioncache.snapshot.fullReloadInterval", new Duration(24L * TimeUtils.MS_IN_HOUR), Log.getInstance());
+
 
     //--- triggers suite
 
@@ -156,6 +335,24 @@ public final class VersionCacheConst {
     public static final String TRIGGER_CREATE_AFTER_DELETE =
         Cfg.get("versioncache.trigger.create.afterDelete", DbProperties.properties().get("versioncache.trigger.create.afterDelete"));
 
+    /**
+     * Возвращает шаблон команды для триггеров версионного кэша на указанной СУБД.
+     * <p>
+     * Шаблоны для MySQL — это константы выше. Для прочих СУБД шаблоны ищутся в конфиге и {@link DbProperties пропертях}
+     * по ключу с именем диалекта, например, <code>versioncache.trigger.hsqldb.create.afterInsert</code>.
+     *
+     * @param dialect СУБД
+     * @param name имя шаблона без префикса, например, <code>create.afterInsert</code>
+     * @return шаблон или null, если для этой СУБД он не определён
+     * @see tk.bolovsrol.db.orm.versioncache.TriggerUtils
+     */
+    public static String getTriggerTemplate(DatabaseDialect dialect, String name) {
+        String key = dialect == DatabaseDialect.MYSQL
+            ? "versioncache.trigger." + name
+            : "versioncache.trigger." + dialect.name().toLowerCase() + '.' + name;
+        return Cfg.get(key, DbProperties.properties().get(key));
+    }
+
     private VersionCacheConst() {
     }
 
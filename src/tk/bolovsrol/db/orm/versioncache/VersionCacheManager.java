@@ -1,13 +1,15 @@
 package tk.bolovsrol.db.orm.versioncache;
 
+import tk.bolovsrol.db.collections.ConcurrentLongHashMap;
+import tk.bolovsrol.db.collections.LongHashMap;
+import tk.bolovsrol.db.collections.LongHashSet;
+import tk.bolovsrol.db.orm.processing.ParallelRefDbdoLoader;
 import tk.bolovsrol.db.orm.sql.statements.select.Select;
 import tk.bolovsrol.db.pool.ConnectionManager;
 import tk.bolovsrol.utils.Spell;
 import tk.bolovsrol.utils.StringDumpBuilder;
 import tk.bolovsrol.utils.StringUtils;
 import tk.bolovsrol.utils.log.Log;
-import tk.bolovsrol.utils.syncro.LockQueuedSynchronizer;
-import tk.bolovsrol.utils.syncro.QueuedKey;
 
 import java.lang.ref.SoftReference;
 import java.lang.reflect.Constructor;
@@ -17,10 +19,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Менеджер предоставляет программам кэши таблиц-справочников из БД и принимает меры к поддержанию этих кэшей в актуальном состоянии.
@@ -42,16 +48,42 @@ import java.util.concurrent.ConcurrentSkipListMap;
  */
 public class VersionCacheManager implements VersionWatcherListener {
 
+    private static final BroadcastStats BROADCAST_STATS = new BroadcastStats();
+
+    /**
+     * Нити, рассылающие изменения. Каждая таблица стоит в очереди не более одного раза,
+     * так что очередь не длиннее числа наблюдаемых таблиц и ограничивать её не нужно.
+     */
+    private static final ThreadPoolExecutor BROADCAST_EXECUTOR;
+
+    /** Откладывает повторную рассылку после неудачного чтения, чтобы во время недоступности БД не долбить её без перерыва. */
+    private static final ScheduledThreadPoolExecutor BROADCAST_RETRY_SCHEDULER;
+
     private static final VersionCacheManager INSTANCE;
 
     static {
-        INSTANCE = new VersionCacheManager();
-        Thread versionWatcherThread = new Thread(
-            new VersionWatcher(INSTANCE, VersionCacheConst.REFRESH_INTERVAL),
-            "VersionWatcher"
+        AtomicInteger threadNumber = new AtomicInteger();
+        BROADCAST_EXECUTOR = new ThreadPoolExecutor(
+            VersionCacheConst.BROADCAST_THREADS, VersionCacheConst.BROADCAST_THREADS,
+            0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            r -> {
+                Thread thread = new Thread(r, "VersionCacheUpdate-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
         );
+        BROADCAST_RETRY_SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "VersionCacheRetry");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        INSTANCE = new VersionCacheManager();
+        Thread versionWatcherThread = new Thread(INSTANCE.watcher, "VersionWatcher");
         versionWatcherThread.setDaemon(true);
         versionWatcherThread.start();
+        LocalChangeFeed.setManager(INSTANCE);
     }
 
     /**
@@ -92,6 +124,9 @@ public class VersionCacheManager implements VersionWatcherListener {
          */
         public SoftReference<Map<Long, O>> softDataMap = null;
 
+        /** Рассыльщик изменений этой таблицы. */
+        final Broadcaster<O> broadcaster = new Broadcaster<>(this);
+
         public Agent(Class<? extends CacheableDbDataObject<O>> cdbdoClass) {
             this.cdbdoClass = cdbdoClass;
             try {
@@ -117,87 +152,257 @@ public class VersionCacheManager implements VersionWatcherListener {
 
     /**
      * Рассылает изменения по объекту его возможным слушателям.
+     * <p>
+     * У каждого агента свой рассыльщик. Пачки изменений, пришедшие, пока рассыльщик ждёт в очереди
+     * или работает, накапливаются и рассылаются следующим заходом одним запросом.
+     * В очереди рассыльщик стоит не более одного раза, так что изменения одной таблицы рассылаются строго по порядку.
      *
      * @param <O> кешируемый класс
      */
-    private static class Broadcaster<O> implements Runnable {
-        private final VersionIdChangesContainer cc;
+    static class Broadcaster<O> implements Runnable {
         private final Agent<O> ct;
-        private final QueuedKey key;
 
-        private Broadcaster(VersionIdChangesContainer cc, Agent<O> ct, QueuedKey key) {
-            this.cc = cc;
+        /** Накопленные изменения, ещё не взятые в работу. Под локом this. */
+        private VersionIdChangesContainer pending = null;
+        /** Когда пришла первая из накопленных пачек. */
+        private long pendingSince;
+        /** Рассыльщик стоит в очереди, работает или ждёт повтора. */
+        private boolean scheduled = false;
+        /** Сколько раз подряд не удалось прочитать изменения из таблицы. */
+        private int failures = 0;
+
+        private Broadcaster(Agent<O> ct) {
             this.ct = ct;
-            this.key = key;
+        }
+
+        /**
+         * Принимает пачку изменений и при необходимости ставит рассыльщика в очередь.
+         *
+         * @param cc изменения
+         */
+        void offer(VersionIdChangesContainer cc) {
+            boolean merged;
+            boolean schedule;
+            synchronized (this) {
+                merged = pending != null;
+                if (merged) {
+                    pending.merge(cc);
+                } else {
+                    pending = cc;
+                    pendingSince = System.currentTimeMillis();
+                }
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            BROADCAST_STATS.batchReceived(merged);
+            if (schedule) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            BROADCAST_STATS.scheduled();
+            BROADCAST_EXECUTOR.execute(this);
         }
 
         @Override public void run() {
+            BROADCAST_STATS.started();
+            VersionIdChangesContainer cc;
+            long since;
+            synchronized (this) {
+                cc = pending;
+                since = pendingSince;
+                pending = null;
+            }
+            boolean failed = false;
+            long retryDelay = 0L;
             try {
-                // уберём ид, которые могли задвоиться из-за слишком шустрого пользователя:
-                // - если пользователь удалил запись, то её не должно быть в созданных и обновлённых
-                if (cc.deletedIds != null) {
+                if (cc != null) {
+                    broadcast(cc);
+                }
+                synchronized (this) {
+                    failures = 0;
+                }
+            } catch (SQLException | InterruptedException e) {
+                failed = true;
+                retryDelay = retry(cc, since);
+                Log.exception("Error reading changes of " + ct.catalogAndTableName + ", will retry in " + retryDelay + " ms", e);
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+            } catch (RuntimeException e) {
+                failed = true;
+                Log.exception("Error broadcasting changes of " + ct.catalogAndTableName, e);
+            } finally {
+                if (cc != null) {
+                    BROADCAST_STATS.finished(System.currentTimeMillis() - since, failed);
+                }
+                boolean reschedule;
+                synchronized (this) {
+                    reschedule = pending != null;
+                    scheduled = reschedule;
+                }
+                if (retryDelay > 0L) {
+                    // пока ждём, новые пачки копятся в pending, а в очередь рассыльщик не встаёт
+                    BROADCAST_RETRY_SCHEDULER.schedule(this::schedule, retryDelay, TimeUnit.MILLISECONDS);
+                } else if (reschedule) {
+                    // в хвост очереди, чтобы часто меняющаяся таблица не задерживала остальные
+                    schedule();
+                }
+            }
+        }
+
+        /**
+         * Возвращает в накопленные изменения пачку, которую не удалось прочитать из таблицы,
+         * чтобы кэши не остались без этих изменений.
+         * <p>
+         * Повтор откладывается на {@link VersionCacheConst#REFRESH_INTERVAL}, удваивая задержку
+         * с каждой неудачей подряд, но не дольше {@link VersionCacheConst#REFRESH_MAX_INTERVAL}.
+         *
+         * @param cc непрочитанные изменения
+         * @param since когда пришла первая из них
+         * @return задержка перед повтором, мс
+         */
+        private long retry(VersionIdChangesContainer cc, long since) {
+            synchronized (this) {
+                if (pending != null) {
+                    cc.merge(pending);
+                }
+                pending = cc;
+                pendingSince = since;
+                failures++;
+                long delay = VersionCacheConst.REFRESH_INTERVAL << Math.min(failures - 1, 20);
+                return Math.max(1L, Math.min(delay, VersionCacheConst.REFRESH_MAX_INTERVAL));
+            }
+        }
+
+        private void broadcast(VersionIdChangesContainer cc) throws SQLException, InterruptedException {
+            if (cc.fullReload) {
+                broadcastFullReload(cc);
+                return;
+            }
+            // уберём ид, которые могли задвоиться из-за слишком шустрого пользователя:
+            // - если запись удалили, а потом создали или обновили (или наоборот), порядок событий нам неизвестен,
+            //   поэтому перечитаем её: если записи в таблице нет, она попадёт в удалённые ниже
+            if (cc.deletedIds != null) {
+                if (cc.createdIds != null) {
+                    cc.deletedIds.removeAll(cc.createdIds);
+                }
+                if (cc.updatedIds != null) {
+                    cc.deletedIds.removeAll(cc.updatedIds);
+                }
+            }
+            // - и если пользователь создал и тут же обновил запись, она должна быть только в созданных
+            if (cc.createdIds != null && cc.updatedIds != null) {
+                cc.updatedIds.removeAll(cc.createdIds);
+            }
+
+            synchronized (ct) {
+                if (ct.rich == null && ct.poor == null) {
+                    return;
+                }
+
+                // мы не хотим поддерживать это в живом состоянии
+                ct.softDataMap = null;
+
+                Map<Long, O> newData = retrieveData(ct.cdbdo, cc.createdIds, cc.updatedIds);
+
+                // с момента, как обыли обнаружены изменения, и то момента, когда мы вычитали данные из таблицы,
+                // некоторые записи пользователь мог и удалить, и мы их не загрузили
+                // значит, кэш уже ждёт следующее обновление с удалением этих записей, но лучше мы это сразу обнаружим
+                Set<Long> actuallyDeletedIds = cc.deletedIds;
+                if (newData != null) {
+                    if (actuallyDeletedIds == null) {
+                        actuallyDeletedIds = new LongHashSet();
+                    }
                     if (cc.createdIds != null) {
-                        cc.createdIds.removeAll(cc.deletedIds);
+                        actuallyDeletedIds.addAll(cc.createdIds);
+                        cc.createdIds.retainAll(newData.keySet());
+                        actuallyDeletedIds.removeAll(cc.createdIds);
                     }
                     if (cc.updatedIds != null) {
-                        cc.updatedIds.retainAll(cc.deletedIds);
+                        actuallyDeletedIds.addAll(cc.updatedIds);
+                        cc.updatedIds.retainAll(newData.keySet());
+                        actuallyDeletedIds.removeAll(cc.updatedIds);
                     }
                 }
-                // - и если пользователь создал и тут же обновил запись, она должна быть только в созданных
-                if (cc.createdIds != null && cc.updatedIds != null) {
-                    cc.updatedIds.removeAll(cc.createdIds);
-                }
 
-                key.synchronize();
-                synchronized (ct) {
-                    if (ct.rich == null && ct.poor == null) {
-                        return;
+                // ну вот, нам надо разослать изменения бедному и/или богатому кэшу
+                {
+                    Map<Long, O> createdOrUpdated = newData == null ? Collections.emptyMap() : newData;
+                    Set<Long> createdIds = cc.createdIds == null ? Collections.emptySet() : cc.createdIds;
+                    Set<Long> updatedIds = cc.updatedIds == null ? Collections.emptySet() : cc.updatedIds;
+                    Set<Long> deletedIds = actuallyDeletedIds == null ? Collections.emptySet() : actuallyDeletedIds;
+
+                    if (ct.poor != null) {
+                        ct.poor.update(createdOrUpdated, createdIds, updatedIds, deletedIds);
                     }
+                    if (ct.rich != null) {
+                        ct.rich.update(createdOrUpdated, createdIds, updatedIds, deletedIds);
+                    }
+                }
+            }
+        }
 
-                    // мы не хотим поддерживать это в живом состоянии
-                    ct.softDataMap = null;
+        /**
+         * Перечитывает таблицу целиком и рассылает разницу с тем, что было известно раньше.
+         * <p>
+         * Прежний состав таблицы берём у богатого кэша либо из {@link Agent#softDataMap}, если она ещё жива.
+         * Если его взять негде, созданные записи не отличить от обновлённых, и все они рассылаются как обновлённые.
+         * <p>
+         * Если таблицу прочитать не удалось, кэши остаются как есть: по неполным данным удалённые записи не вычислить.
+         */
+        private void broadcastFullReload(VersionIdChangesContainer cc) throws SQLException, InterruptedException {
+            synchronized (ct) {
+                if (ct.rich == null && ct.poor == null) {
+                    return;
+                }
+                BROADCAST_STATS.fullReload();
+
+                Set<Long> oldIds;
+                if (ct.rich != null) {
+                    oldIds = ct.rich.getIds();
+                } else {
+                    Map<Long, O> oldData = ct.softDataMap == null ? null : ct.softDataMap.get();
+                    oldIds = oldData == null ? null : oldData.keySet();
+                }
 
-                    Map<Long, O> newData = retrieveData(ct.cdbdo, cc.createdIds, cc.updatedIds);
+                Map<Long, O> newData = loadData(ct.cdbdo, null);
 
-                    // с момента, как обыли обнаружены изменения, и то момента, когда мы вычитали данные из таблицы,
-                    // некоторые записи пользователь мог и удалить, и мы их не загрузили
-                    // значит, кэш уже ждёт следующее обновление с удалением этих записей, но лучше мы это сразу обнаружим
-                    Set<Long> actuallyDeletedIds = cc.deletedIds;
-                    if (newData != null) {
-                        if (actuallyDeletedIds == null) {
-                            actuallyDeletedIds = new TreeSet<>();
-                        }
-                        if (cc.createdIds != null) {
-                            actuallyDeletedIds.addAll(cc.createdIds);
-                            cc.createdIds.retainAll(newData.keySet());
-                            actuallyDeletedIds.removeAll(cc.createdIds);
+                Set<Long> createdIds = new LongHashSet();
+                Set<Long> updatedIds = new LongHashSet(newData.size());
+                Set<Long> deletedIds = new LongHashSet();
+                for (Long id : newData.keySet()) {
+                    if (oldIds == null || oldIds.contains(id)) {
+                        updatedIds.add(id);
+                    } else {
+                        createdIds.add(id);
+                    }
+                }
+                if (oldIds != null) {
+                    for (Long id : oldIds) {
+                        if (!newData.containsKey(id)) {
+                            deletedIds.add(id);
                         }
-                        if (cc.updatedIds != null) {
-                            actuallyDeletedIds.addAll(cc.updatedIds);
-                            cc.updatedIds.retainAll(newData.keySet());
-                            actuallyDeletedIds.removeAll(cc.updatedIds);
+                    }
+                }
+                if (cc.deletedIds != null) {
+                    for (Long id : cc.deletedIds) {
+                        if (!newData.containsKey(id)) {
+                            deletedIds.add(id);
                         }
                     }
+                }
 
-                    // ну вот, нам надо разослать изменения бедному и/или богатому кэшу
-                    {
-                        Map<Long, O> createdOrUpdated = newData == null ? Collections.emptyMap() : newData;
-                        Set<Long> createdIds = cc.createdIds == null ? Collections.emptySet() : cc.createdIds;
-                        Set<Long> updatedIds = cc.updatedIds == null ? Collections.emptySet() : cc.updatedIds;
-                        Set<Long> deletedIds = actuallyDeletedIds == null ? Collections.emptySet() : actuallyDeletedIds;
+                // свежие полные данные пригодятся при регистрации клиентов
+                ct.softDataMap = new SoftReference<>(newData);
 
-                        if (ct.poor != null) {
-                            ct.poor.update(createdOrUpdated, createdIds, updatedIds, deletedIds);
-                        }
-                        if (ct.rich != null) {
-                            ct.rich.update(createdOrUpdated, createdIds, updatedIds, deletedIds);
-                        }
-                    }
+                if (ct.poor != null) {
+                    ct.poor.update(newData, createdIds, updatedIds, deletedIds);
+                }
+                if (ct.rich != null) {
+                    ct.rich.update(newData, createdIds, updatedIds, deletedIds);
                 }
-            } catch (InterruptedException ignored) {
-                // пора завершать работу, обновления не нужны уж никому
-            } finally {
-                key.release();
             }
         }
     }
@@ -225,15 +430,16 @@ public class VersionCacheManager implements VersionWatcherListener {
     }
 
 
-    /** Соблюдает порядок рассылки изменений по каждому из объектов, если в какой-то момент времени по объекту нужно разослать несколько пачек изменений. */
-    private final LockQueuedSynchronizer<Class<? extends CacheableDbDataObject<?>>> broadcastSync = new LockQueuedSynchronizer<>();
-
     /** Агенты по именам — для рассылки изменений. */
     private final ConcurrentMap<CatalogAndTableName, Agent<?>> nameToAgent = new ConcurrentSkipListMap<>();
 
     /** Агенты по классам — для (раз)регистрации слушателей. */
     private final ConcurrentMap<Class<? extends CacheableDbDataObject<?>>, Agent<?>> classToAgent = new ConcurrentHashMap<>();
 
+    private final VersionWatcher watcher = new VersionWatcher(
+        this, VersionCacheConst.REFRESH_INTERVAL, VersionCacheConst.REFRESH_MIN_INTERVAL, VersionCacheConst.REFRESH_MAX_INTERVAL, BROADCAST_STATS
+    );
+
     private VersionCacheManager() {
     }
 
@@ -250,16 +456,54 @@ public class VersionCacheManager implements VersionWatcherListener {
             }
             if (VersionCacheConst.LOG_CHANGES) {
                 StringDumpBuilder sb = new StringDumpBuilder(", ");
+                if (cc.fullReload) {
+                    sb.append("too many changes, full reload");
+                }
                 appendReport(sb, cc.createdIds, "created");
                 appendReport(sb, cc.updatedIds, "updated");
                 appendReport(sb, cc.deletedIds, "deleted");
                 Log.info(ct.catalogAndTableName + ": " + sb.toString() + "; current version " + cc.maxVersionId);
             }
-            new Thread(
-                new Broadcaster<>(cc, ct, broadcastSync.register(ct.cdbdoClass)),
-                "VersionCacheUpdate-" + cc.maxVersionId + '-' + ct.catalogAndTableName
-            ).start();
+            ct.broadcaster.offer(cc);
+        }
+    }
+
+    /**
+     * @param catalogAndTableName каталог и таблица
+     * @return true, если таблицу кто-то кэширует
+     */
+    boolean isWatched(CatalogAndTableName catalogAndTableName) {
+        return nameToAgent.containsKey(catalogAndTableName);
+    }
+
+    /**
+     * Рассылает изменение, сделанное этой джава-машиной и уже закоммиченное.
+     * Наблюдатель потом разошлёт его ещё раз по записи истории версий: кэши перечитают запись,
+     * это лишняя, но безвредная работа, зато изменение, сделанное другими в то же время, не потеряется.
+     *
+     * @param catalogAndTableName каталог и таблица
+     * @param eventType что случилось с записью
+     * @param id ид записи
+     * @see LocalChangeFeed
+     */
+    void localChange(CatalogAndTableName catalogAndTableName, VersionHistoryDbdo.EventType eventType, Long id) {
+        Agent<?> ct = nameToAgent.get(catalogAndTableName);
+        if (ct == null) {
+            return;
+        }
+        BROADCAST_STATS.localChange();
+
+        VersionIdChangesContainer cc = new VersionIdChangesContainer(catalogAndTableName);
+        cc.add(eventType, id);
+        if (VersionCacheConst.LOG_CHANGES) {
+            Log.info(ct.catalogAndTableName + ": locally " + eventType + " item id " + id);
         }
+        ct.broadcaster.offer(cc);
+    }
+
+    /** @return счётчики рассылки изменений */
+    public static BroadcastStats getBroadcastStats() {
+        return BROADCAST_STATS;
     }
 
     private static void appendReport(StringDumpBuilder sdb, Set<Long> ids, String action) {
@@ -281,8 +525,9 @@ public class VersionCacheManager implements VersionWatcherListener {
      * @param updatedIdsOrNull
      * @param <O>
      * @return карта актуальных записей или нул
+     * @throws SQLException записи прочитать не удалось
      */
-    private static <O> Map<Long, O> retrieveData(CacheableDbDataObject<O> cdbdo, Set<Long> createdIdsOrNull, Set<Long> updatedIdsOrNull) {
+    private static <O> Map<Long, O> retrieveData(CacheableDbDataObject<O> cdbdo, Set<Long> createdIdsOrNull, Set<Long> updatedIdsOrNull) throws SQLException, InterruptedException {
         Set<Long> idsToRead;
         if (createdIdsOrNull == null) {
             if (updatedIdsOrNull == null) {
@@ -294,12 +539,12 @@ public class VersionCacheManager implements VersionWatcherListener {
             if (updatedIdsOrNull == null) {
                 idsToRead = createdIdsOrNull;
             } else {
-                idsToRead = new TreeSet<>();
+                idsToRead = new LongHashSet(createdIdsOrNull.size() + updatedIdsOrNull.size());
                 idsToRead.addAll(createdIdsOrNull);
                 idsToRead.addAll(updatedIdsOrNull);
             }
         }
-        return retrieveData(cdbdo, idsToRead);
+        return loadData(cdbdo, idsToRead);
     }
 
     public <O> PoorVersionCache<O> getPoorInternal(Class<? extends CacheableDbDataObject<O>> cdbdoClass) {
@@ -343,7 +588,13 @@ public class VersionCacheManager implements VersionWatcherListener {
         synchronized (ct) {
             Map<Long, O> data = ct.softDataMap == null ? null : ct.softDataMap.get();
             if (data == null) {
-                data = retrieveData(ct.cdbdo, null);
+                if (CacheSnapshot.isEnabled()) {
+                    data = retrieveSnapshotData(ct.cdbdo);
+                } else if (VersionCacheConst.INITIAL_LOAD_THREADS > 1) {
+                    data = retrieveDataInParallel(ct);
+                } else {
+                    data = retrieveData(ct.cdbdo, null);
+                }
                 if (VersionCacheConst.LOG_CHANGES) {
                     Log.info(ct.catalogAndTableName + ": read " + (data.isEmpty() ? "no items" : data.size() == 1 ? "1 item" : data.size() + " item(s)"));
                 }
@@ -353,6 +604,64 @@ public class VersionCacheManager implements VersionWatcherListener {
         }
     }
 
+    /**
+     * Достаёт актуальные данные всей таблицы-справочника в {@link VersionCacheConst#INITIAL_LOAD_THREADS} нитей,
+     * каждую на своём соединении.
+     *
+     * Как и {@link #retrieveData(CacheableDbDataObject, Set)}, отдаёт либо все записи, либо, если загрузить их не удалось, ни одной.
+     *
+     * @param ct агент таблицы
+     * @param <O> кешируемый класс
+     * @return все данные, находящиеся в БД, или пустую карту, если загрузка не удалась
+     * @see ParallelRefDbdoLoader
+     */
+    private static <O> Map<Long, O> retrieveDataInParallel(Agent<O> ct) {
+        Map<Long, O> data = new ConcurrentLongHashMap<>();
+        ParallelRefDbdoLoader<CacheableDbDataObject<O>> loader = new ParallelRefDbdoLoader<>(
+            null, ParallelRefDbdoLoader.constructorOf(ct.cdbdoClass), VersionCacheConst.INITIAL_LOAD_THREADS
+        );
+        try {
+            loader.browseAll(cdbdo -> {
+                try {
+                    data.put(cdbdo.getId(), cdbdo.getCacheItem());
+                } catch (Exception e) {
+                    Log.warning("Failed to retrieve Cache item from " + Spell.get(cdbdo), e);
+                }
+            });
+        } catch (InterruptedException | SQLException e) {
+            Log.exception(e);
+            return Collections.emptyMap();
+        }
+        return data;
+    }
+
+    /**
+     * Достаёт актуальные данные всей таблицы-справочника, по возможности из снимка на диске, и обновляет снимок.
+     * Если загрузка со снимком не удалась, читает таблицу заново без него.
+     *
+     * @param cdbdo объект таблицы
+     * @param <O> кешируемый класс
+     * @return все данные, находящиеся в БД, или пустую карту, если загрузка не удалась
+     * @see CacheSnapshot
+     */
+    private static <O> Map<Long, O> retrieveSnapshotData(final CacheableDbDataObject<O> cdbdo) {
+        Map<Long, O> data = new LongHashMap<>();
+        try (Connection con = ConnectionManager.getConnection()) {
+            CacheSnapshot.browse(con, cdbdo, "versioncache", () -> {
+                try {
+                    data.put(cdbdo.getId(), cdbdo.getCacheItem());
+                } catch (Exception e) {
+                    Log.warning("Failed to retrieve Cache item from " + Spell.get(cdbdo), e);
+                }
+            }, data::clear);
+        } catch (InterruptedException | SQLException | RuntimeException e) {
+            // часть записей уже могла прийти из снимка, поэтому собранное выбрасываем и читаем таблицу заново
+            Log.warning("Failed to load " + cdbdo.getLogCatalogAndTableName() + " using snapshot, reading the whole table", e);
+            return retrieveData(cdbdo, null);
+        }
+        return data;
+    }
+
     /**
      * Достаёт актуальные данные из таблицы-справочника.
      *
@@ -362,10 +671,29 @@ public class VersionCacheManager implements VersionWatcherListener {
      * @return запрошенные данные, находящиеся в БД
      */
     private static <O> Map<Long, O> retrieveData(final CacheableDbDataObject<O> cdbdo, Set<Long> filterIdsOrNull) {
+        try {
+            return loadData(cdbdo, filterIdsOrNull);
+        } catch (InterruptedException | SQLException e) {
+            Log.exception(e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Достаёт актуальные данные из таблицы-справочника, а если это не удалось, выкидывает исключение,
+     * чтобы отсутствующие записи не сочли удалёнными.
+     *
+     * @param cdbdo объект таблицы
+     * @param filterIdsOrNull сет интересующих записей или нул, если интересуют все записи
+     * @param <O> кешируемый класс
+     * @return запрошенные данные, находящиеся в БД
+     * @throws SQLException данные прочитать не удалось
+     */
+    private static <O> Map<Long, O> loadData(final CacheableDbDataObject<O> cdbdo, Set<Long> filterIdsOrNull) throws SQLException, InterruptedException {
         if (filterIdsOrNull != null && filterIdsOrNull.isEmpty()) {
             return Collections.emptyMap();
         }
-        Map<Long, O> data = new ConcurrentHashMap<>();
+        Map<Long, O> data = new LongHashMap<>(filterIdsOrNull == null ? 0 : filterIdsOrNull.size());
         try (Connection con = ConnectionManager.getConnection()) {
             Select s = cdbdo.selectAllColumns();
             if (filterIdsOrNull != null) {
@@ -378,8 +706,6 @@ public class VersionCacheManager implements VersionWatcherListener {
                     Log.warning("Failed to retrieve Cache item from " + Spell.get(cdbdo), e);
                 }
             });
-        } catch (InterruptedException | SQLException e) {
-            Log.exception(e);
         }
         return data;
     }
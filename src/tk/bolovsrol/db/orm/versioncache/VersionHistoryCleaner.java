@@ -0,0 +1,204 @@
+package tk.bolovsrol.db.orm.versioncache;
+
+import tk.bolovsrol.db.DatabaseDialect;
+import tk.bolovsrol.db.pool.ConnectionManager;
+import tk.bolovsrol.utils.Spell;
+import tk.bolovsrol.utils.log.Log;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Удаляет застарелые записи из истории версий в своей нити, не задерживая наблюдателя.
+ * <p>
+ * Записи удаляются не одним запросом, а пачками по диапазонам ид шириной {@link VersionCacheConst#CLEANUP_BATCH_SIZE}
+ * с паузой {@link VersionCacheConst#CLEANUP_PAUSE} между ними, так что каждый запрос держит локи недолго
+ * и триггеры, пишущие в историю версий, не простаивают. Пустые промежутки ид между пачками пропускаются.
+ * <p>
+ * Для секционированной таблицы истории можно включить {@link VersionCacheConst.CleanupStrategy#PARTITIONS удаление секций}:
+ * секция, в которой все записи старые, удаляется целиком, а записи, оставшиеся в прочих секциях, — пачками.
+ * Секцию, в которой лежит наибольший ид таблицы, и пустые секции очистка не трогает: в них, возможно, ещё будут писать.
+ *
+ * @see VersionCacheConst#CLEANUP_ENABLED
+ */
+class VersionHistoryCleaner implements Runnable {
+
+    private final VersionHistoryDbdo versionHistory = new VersionHistoryDbdo();
+    private final BroadcastStats stats;
+
+    /** Когда очистить историю, под локом this. Нул, если очистка не назначена. */
+    private Date nextCleanup = null;
+
+    VersionHistoryCleaner(BroadcastStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Назначает очистку через {@link VersionCacheConst#CLEANUP_LATENCY}, если она ещё не назначена.
+     */
+    synchronized void schedule() {
+        if (nextCleanup == null) {
+            nextCleanup = new Date(System.currentTimeMillis() + VersionCacheConst.CLEANUP_LATENCY.getMillis());
+            notifyAll();
+        }
+    }
+
+    @Override public void run() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (nextCleanup == null || nextCleanup.getTime() > System.currentTimeMillis()) {
+                        wait(nextCleanup == null ? 0L : Math.max(1L, nextCleanup.getTime() - System.currentTimeMillis()));
+                    }
+                    nextCleanup = null;
+                }
+                try {
+                    cleanup(new Date(System.currentTimeMillis() - VersionCacheConst.CLEANUP_AGE.getMillis()));
+                } catch (SQLException e) {
+                    Log.exception(e);
+                } finally {
+                    stats.cleanupFinished();
+                }
+            }
+        } catch (InterruptedException ignored) {
+            Log.info("Version History Cleaner interrupted");
+        } catch (Throwable e) {
+            Log.exception(e);
+        }
+    }
+
+    private void cleanup(Date threshold) throws SQLException, InterruptedException {
+        if (VersionCacheConst.CLEANUP_STRATEGY == VersionCacheConst.CleanupStrategy.PARTITIONS) {
+            // не удалось удалить секции — удалим те же записи пачками
+            try {
+                dropPartitions(threshold);
+            } catch (SQLException e) {
+                Log.warning("Cannot drop version history partitions, deleting records instead", e);
+            }
+        }
+
+        Long fromId;
+        Long toId;
+        try (Connection con = ConnectionManager.getConnection()) {
+            fromId = versionHistory.retrieveMinId(con);
+            toId = fromId == null ? null : versionHistory.retrieveMaxIdBefore(con, threshold);
+        }
+        if (toId == null) {
+            return;
+        }
+        stats.cleanupStarted(toId - fromId + 1L);
+
+        int total = 0;
+        Long from = fromId;
+        while (from != null && from <= toId) {
+            long to = Math.min(toId, from + VersionCacheConst.CLEANUP_BATCH_SIZE - 1L);
+            long started = System.currentTimeMillis();
+            int count;
+            try (Connection con = ConnectionManager.getConnection()) {
+                count = versionHistory.deleteRange(con, from, to, threshold);
+                // следующую пачку начинаем с ближайшего существующего ид, чтобы не гонять запросы по пустым диапазонам,
+                // например, оставшимся от удалённых секций
+                from = to < toId ? versionHistory.retrieveMinIdAfter(con, to) : null;
+            }
+            total += count;
+            stats.cleanupBatch(System.currentTimeMillis() - started, count, toId - to);
+            if (from != null && from <= toId) {
+                Thread.sleep(VersionCacheConst.CLEANUP_PAUSE.getMillis());
+            }
+        }
+        if (total > 0) {
+            Log.info("Removed " + total + " version history records older than " + Spell.get(threshold));
+        }
+    }
+
+    /**
+     * Удаляет секции истории версий, в которых все записи старше указанной даты.
+     * Ошибка на одной секции не мешает удалять остальные.
+     */
+    private void dropPartitions(Date threshold) throws SQLException {
+        try (Connection con = ConnectionManager.getConnection()) {
+            DatabaseDialect dialect = DatabaseDialect.of(con);
+            if (dialect != DatabaseDialect.MYSQL && dialect != DatabaseDialect.POSTGRESQL) {
+                Log.warning("Version history partitions cannot be dropped on " + dialect + ", deleting records instead");
+                return;
+            }
+            Long maxId = versionHistory.retrieveMaxId(con);
+            if (maxId == null) {
+                return;
+            }
+            String catalogName = versionHistory.getSqlCatalogName();
+            String tableName = versionHistory.getSqlTableName();
+            for (String[] partition : retrievePartitions(con, dialect, catalogName, tableName)) {
+                String from = dialect == DatabaseDialect.MYSQL
+                    ? '"' + catalogName + "\".\"" + tableName + "\" PARTITION (\"" + partition[1] + "\")"
+                    : '"' + partition[0] + "\".\"" + partition[1] + '"';
+                String drop = dialect == DatabaseDialect.MYSQL
+                    ? "ALTER TABLE \"" + catalogName + "\".\"" + tableName + "\" DROP PARTITION \"" + partition[1] + '"'
+                    : "DROP TABLE \"" + partition[0] + "\".\"" + partition[1] + '"';
+                // секцию, которую не удалось проверить или удалить, пропускаем: её записи удалятся пачками
+                try {
+                    if (!isStale(con, from, maxId, threshold)) {
+                        continue;
+                    }
+                    try (Statement st = con.createStatement()) {
+                        st.execute(drop);
+                    }
+                } catch (SQLException e) {
+                    Log.warning("Cannot drop version history partition " + partition[0] + '.' + partition[1], e);
+                    continue;
+                }
+                stats.partitionDropped();
+                Log.info("Dropped version history partition " + partition[0] + '.' + partition[1] + " older than " + Spell.get(threshold));
+            }
+        }
+    }
+
+    /**
+     * @return пары из схемы и названия секций таблицы
+     */
+    private static List<String[]> retrievePartitions(Connection con, DatabaseDialect dialect, String catalogName, String tableName) throws SQLException {
+        String sql = dialect == DatabaseDialect.MYSQL
+            ? "SELECT \"TABLE_SCHEMA\",\"PARTITION_NAME\" FROM \"INFORMATION_SCHEMA\".\"PARTITIONS\""
+            + " WHERE \"TABLE_SCHEMA\"=? AND \"TABLE_NAME\"=? AND \"PARTITION_NAME\" IS NOT NULL"
+            + " ORDER BY \"PARTITION_ORDINAL_POSITION\""
+            : "SELECT cn.nspname, c.relname FROM pg_inherits i"
+            + " JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_namespace cn ON cn.oid = c.relnamespace"
+            + " JOIN pg_class p ON p.oid = i.inhparent JOIN pg_namespace pn ON pn.oid = p.relnamespace"
+            + " WHERE pn.nspname = ? AND p.relname = ? ORDER BY c.relname";
+        List<String[]> result = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setString(1, catalogName);
+            ps.setString(2, tableName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new String[]{rs.getString(1), rs.getString(2)});
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true, если в секции есть записи, все они старше указанной даты и среди них нет наибольшего ид таблицы
+     */
+    private boolean isStale(Connection con, String from, long tableMaxId, Date threshold) throws SQLException {
+        String sql = "SELECT MAX(\"" + versionHistory.eventDate.getName() + "\"),MAX(\"" + versionHistory.idField().getName() + "\") FROM " + from;
+        try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            if (!rs.next()) {
+                return false;
+            }
+            Timestamp maxEventDate = rs.getTimestamp(1);
+            long maxId = rs.getLong(2);
+            return maxEventDate != null && !rs.wasNull()
+                && maxEventDate.getTime() < threshold.getTime()
+                && maxId < tableMaxId;
+        }
+    }
+}
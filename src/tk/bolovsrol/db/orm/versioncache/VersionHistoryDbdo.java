@@ -5,8 +5,7 @@ import tk.bolovsrol.db.orm.fields.EnumDbField;
 import tk.bolovsrol.db.orm.fields.LongDbField;
 import tk.bolovsrol.db.orm.fields.StringDbField;
 import tk.bolovsrol.db.orm.object.AbstractRefDbDataObject;
-import tk.bolovsrol.db.orm.sql.dbcolumns.FakeColumn;
-import tk.bolovsrol.db.orm.sql.statements.Limit;
+import tk.bolovsrol.db.orm.sql.statements.delete.Delete;
 import tk.bolovsrol.db.orm.sql.statements.select.Browser;
 import tk.bolovsrol.db.orm.sql.statements.select.Select;
 
@@ -37,24 +36,78 @@ class VersionHistoryDbdo extends AbstractRefDbDataObject {
         return s.load(con, id.max());
     }
 
-    public Browser browseAfterId(Connection con, Long id) throws SQLException {
+    /**
+     * @param con соединение
+     * @return наименьший ид в истории версий или нул, если история пуста
+     * @throws SQLException
+     */
+    public Long retrieveMinId(Connection con) throws SQLException {
         Select s = Select.from(this);
         s.setAllowLogging(VersionCacheConst.LOG_SQL);
-        if (id != null) {
-            s.where(this.id.gt(id));
-        }
-        return s.browse(con);
+        return s.load(con, id.min());
+    }
+
+    /**
+     * @param con соединение
+     * @param afterId ид
+     * @return наименьший ид в истории версий больше указанного или нул, если таких записей нет
+     * @throws SQLException
+     */
+    public Long retrieveMinIdAfter(Connection con, long afterId) throws SQLException {
+        Select s = Select.from(this);
+        s.setAllowLogging(VersionCacheConst.LOG_SQL);
+        s.where(id.gt(afterId));
+        return s.load(con, id.min());
     }
 
-    public boolean hasAfterId(Connection con, Long id) throws SQLException {
+    /**
+     * @param con соединение
+     * @param threshold дата
+     * @return наибольший ид записи истории версий старше указанной даты или нул, если таких записей нет
+     * @throws SQLException
+     */
+    public Long retrieveMaxIdBefore(Connection con, Date threshold) throws SQLException {
+        Select s = Select.from(this);
+        s.setAllowLogging(VersionCacheConst.LOG_SQL);
+        s.where(eventDate.lt(threshold));
+        return s.load(con, id.max());
+    }
+
+    /**
+     * Удаляет записи истории версий старше указанной даты с ид в указанном диапазоне.
+     *
+     * @param con соединение
+     * @param fromId наименьший ид, включительно
+     * @param toId наибольший ид, включительно
+     * @param threshold дата
+     * @return количество удалённых записей
+     * @throws SQLException
+     */
+    public int deleteRange(Connection con, long fromId, long toId, Date threshold) throws SQLException {
+        Delete d = delete().where(id.ge(fromId), id.le(toId), eventDate.lt(threshold));
+        d.setAllowLogging(VersionCacheConst.LOG_SQL);
+        return d.execute(con);
+    }
+
+    /**
+     * Открывает очередную страницу истории версий: записи новее указанной, по возрастанию ид,
+     * не более указанного количества.
+     *
+     * @param con соединение
+     * @param id ид последней прочитанной записи или нул, чтобы читать с начала
+     * @param limit размер страницы
+     * @return браузер по записям страницы
+     * @throws SQLException
+     */
+    public Browser browseAfterId(Connection con, Long id, int limit) throws SQLException {
         Select s = Select.from(this);
         s.setAllowLogging(VersionCacheConst.LOG_SQL);
-        s.column(FakeColumn.INSTANCE);
         if (id != null) {
             s.where(this.id.gt(id));
         }
-        s.limit(Limit.LIMIT_1);
-        return s.load(con);
+        s.orderBy(this.id);
+        s.limit(limit);
+        return s.browse(con);
     }
 
     public Date getEventDate() {
@@ -1,11 +1,16 @@
 package tk.bolovsrol.db.orm.versioncache;
 
+import tk.bolovsrol.db.collections.LongHashSet;
 import tk.bolovsrol.utils.StringDumpBuilder;
 
 import java.util.Set;
 
 /**
  * Контейнер со списком изменившихся ид в таблице.
+ * <p>
+ * Если созданных и обновлённых записей набирается больше {@link VersionCacheConst#FULL_RELOAD_THRESHOLD},
+ * их ид больше не копятся, а контейнер помечается для полной перечитки таблицы.
+ * Ид удалённых записей копятся всегда: без них бедный кэш не узнает об удалении.
  */
 class VersionIdChangesContainer {
     public final CatalogAndTableName catalogAndTableName;
@@ -13,11 +18,99 @@ class VersionIdChangesContainer {
     public Set<Long> updatedIds;
     public Set<Long> deletedIds;
     public Long maxVersionId;
+    /** Таблицу надо перечитать целиком, {@link #createdIds} и {@link #updatedIds} не ведутся. */
+    public boolean fullReload;
 
     VersionIdChangesContainer(CatalogAndTableName catalogAndTableName) {
         this.catalogAndTableName = catalogAndTableName;
     }
 
+    /**
+     * Вливает в этот контейнер более свежие изменения той же таблицы.
+     * <p>
+     * Множества ид объединяются, а не вычитаются: что в итоге стало с записью,
+     * всё равно выясняется при вычитывании изменений из таблицы.
+     *
+     * @param newer более свежие изменения
+     */
+    void merge(VersionIdChangesContainer newer) {
+        if (newer.fullReload) {
+            markFullReload();
+        } else if (!fullReload) {
+            createdIds = union(createdIds, newer.createdIds);
+            updatedIds = union(updatedIds, newer.updatedIds);
+        }
+        deletedIds = union(deletedIds, newer.deletedIds);
+        if (newer.maxVersionId != null && (maxVersionId == null || maxVersionId < newer.maxVersionId)) {
+            maxVersionId = newer.maxVersionId;
+        }
+        checkFullReloadThreshold();
+    }
+
+    /**
+     * Добавляет ид изменившейся записи.
+     *
+     * @param eventType что случилось с записью
+     * @param id ид записи
+     */
+    void add(VersionHistoryDbdo.EventType eventType, Long id) {
+        switch (eventType) {
+        case CREATE:
+            if (!fullReload) {
+                createdIds = appendId(createdIds, id);
+            }
+            break;
+        case UPDATE:
+            if (!fullReload) {
+                updatedIds = appendId(updatedIds, id);
+            }
+            break;
+        case DELETE:
+            deletedIds = appendId(deletedIds, id);
+            break;
+        }
+        checkFullReloadThreshold();
+    }
+
+    /** Помечает таблицу для полной перечитки и забывает ид созданных и обновлённых записей. */
+    void markFullReload() {
+        fullReload = true;
+        createdIds = null;
+        updatedIds = null;
+    }
+
+    private void checkFullReloadThreshold() {
+        if (!fullReload && size(createdIds) + size(updatedIds) > VersionCacheConst.FULL_RELOAD_THRESHOLD) {
+            markFullReload();
+        }
+    }
+
+    private static int size(Set<Long> ids) {
+        return ids == null ? 0 : ids.size();
+    }
+
+    private static Set<Long> appendId(Set<Long> ids, Long id) {
+        if (ids == null) {
+            Set<Long> result = new LongHashSet();
+            result.add(id);
+            return result;
+        } else {
+            ids.add(id);
+            return ids;
+        }
+    }
+
+    private static Set<Long> union(Set<Long> target, Set<Long> source) {
+        if (source == null) {
+            return target;
+        } else if (target == null) {
+            return source;
+        } else {
+            target.addAll(source);
+            return target;
+        }
+    }
+
     @Override public String toString() {
         return new StringDumpBuilder()
               .append("catalogAndTableName", catalogAndTableName)
@@ -25,6 +118,7 @@ class VersionIdChangesContainer {
               .append("updatedIds", updatedIds)
               .append("deletedIds", deletedIds)
               .append("maxVersionId", maxVersionId)
+              .append("fullReload", fullReload)
               .toString();
     }
 }
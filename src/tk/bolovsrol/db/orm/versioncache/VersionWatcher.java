@@ -12,29 +12,38 @@ import tk.bolovsrol.utils.time.SleepUtils;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Date;
-import java.util.Set;
-import java.util.TreeSet;
 
-import static tk.bolovsrol.db.orm.versioncache.VersionCacheConst.CLEANUP_AGE;
 import static tk.bolovsrol.db.orm.versioncache.VersionCacheConst.CLEANUP_ENABLED;
-import static tk.bolovsrol.db.orm.versioncache.VersionCacheConst.CLEANUP_LATENCY;
 
-/** Следит за изменениями версий и рассылает эти изменения внутреннему кэшу. */
+/**
+ * Следит за изменениями версий и рассылает эти изменения внутреннему кэшу.
+ * <p>
+ * Интервал проверки подстраивается под поток изменений: если при проверке нашлись изменения,
+ * следующая будет через наименьший интервал, а после каждой пустой проверки интервал удваивается до наибольшего.
+ */
 class VersionWatcher implements Runnable {
 
-    private final long refreshInterval;
+    private final long minRefreshInterval;
+    private final long maxRefreshInterval;
+    private long refreshInterval;
     private final VersionWatcherListener listener;
     private final VersionHistoryDbdo versionHistory = new VersionHistoryDbdo();
     private final SpawnMap<CatalogAndTableName, VersionIdChangesContainer> changes = new HashSpawnMap<>(VersionIdChangesContainer::new);
 
+    private final BroadcastStats stats;
+
     private Date nextRefresh;
     private Long maxVersionHistoryId;
-    private Date nextCleanup = null;
+    private final VersionHistoryCleaner cleaner;
 
-    VersionWatcher(VersionWatcherListener listener, long refreshInterval) {
+    VersionWatcher(VersionWatcherListener listener, long refreshInterval, long minRefreshInterval, long maxRefreshInterval, BroadcastStats stats) {
         this.listener = listener;
-        this.refreshInterval = refreshInterval;
+        this.minRefreshInterval = Math.max(1L, minRefreshInterval);
+        this.maxRefreshInterval = Math.max(this.minRefreshInterval, maxRefreshInterval);
+        this.refreshInterval = Math.min(Math.max(refreshInterval, this.minRefreshInterval), this.maxRefreshInterval);
+        this.stats = stats;
         this.nextRefresh = new Date();
+        this.cleaner = new VersionHistoryCleaner(stats);
     }
 
     @Override
@@ -43,8 +52,8 @@ class VersionWatcher implements Runnable {
             init();
             while (true) {
                 SleepUtils.sleepUntil(nextRefresh);
-                refresh();
-                cleanup();
+                int rows = refresh();
+                adjustRefreshInterval(rows);
                 nextRefresh.setTime(System.currentTimeMillis() + refreshInterval);
             }
         } catch (InterruptedException ignored) {
@@ -55,6 +64,12 @@ class VersionWatcher implements Runnable {
     }
 
     private void init() throws InterruptedException {
+        stats.refreshIntervalChanged(refreshInterval);
+        if (CLEANUP_ENABLED) {
+            Thread cleanerThread = new Thread(cleaner, "VersionHistoryCleaner");
+            cleanerThread.setDaemon(true);
+            cleanerThread.start();
+        }
         nextRefresh = new Date(System.currentTimeMillis() + refreshInterval);
 
         Connection con = null;
@@ -69,57 +84,45 @@ class VersionWatcher implements Runnable {
     }
 
     /**
-     * Если настало время, удаляет застарелые записи из истории версий.
+     * Вычитывает новые записи истории версий страницами по {@link VersionCacheConst#PARTIAL_MAX_RECORDS}
+     * и рассылает изменения после каждой страницы, чтобы массовое обновление справочника
+     * не копилось в памяти целиком.
+     *
+     * @return сколько записей истории версий прочитано
      */
-    private void cleanup() throws InterruptedException {
-        if (nextCleanup == null) {
-            return;
-        }
-        long now = System.currentTimeMillis();
-        if (now >= nextCleanup.getTime()) {
-            nextCleanup = null;
-            try (Connection con = ConnectionManager.getConnection()) {
-                Date threshold = new Date(now - CLEANUP_AGE.getMillis());
-                int count = versionHistory.delete().where(versionHistory.eventDate.lt(threshold)).execute(con);
-                if (count > 0) {
-                    Log.info("Removed " + count + " version history records older than " + Spell.get(threshold));
-                }
-            } catch (SQLException e) {
-                Log.exception(e);
-            }
-        }
-    }
-
-    private void refresh() throws InterruptedException {
+    private int refresh() throws InterruptedException {
+        stats.polled();
+        int total = 0;
         Connection con = null;
         try {
             con = ConnectionManager.getConnection();
-            while (versionHistory.hasAfterId(con, maxVersionHistoryId)) {
-                if (CLEANUP_ENABLED && nextCleanup == null) {
-                    nextCleanup = new Date(System.currentTimeMillis() + CLEANUP_LATENCY.getMillis());
-                }
-                try (Browser br = versionHistory.browseAfterId(con, maxVersionHistoryId)) {
+            int rows;
+            do {
+                rows = 0;
+                try (Browser br = versionHistory.browseAfterId(con, maxVersionHistoryId, VersionCacheConst.PARTIAL_MAX_RECORDS)) {
+                    long now = System.currentTimeMillis();
                     while (br.next()) {
-                        if (maxVersionHistoryId == null || maxVersionHistoryId.longValue() < versionHistory.getId().longValue()) {
-                            maxVersionHistoryId = versionHistory.getId();
+                        rows++;
+                        maxVersionHistoryId = versionHistory.getId();
+                        Date eventDate = versionHistory.getEventDate();
+                        if (eventDate != null) {
+                            stats.propagated(now - eventDate.getTime());
                         }
                         CatalogAndTableName catalogAndTableName = new CatalogAndTableName(versionHistory.getDbName(), versionHistory.getTableName());
                         VersionIdChangesContainer cc = changes.getOrSpawn(catalogAndTableName);
                         cc.maxVersionId = maxVersionHistoryId;
-                        switch (versionHistory.getEventType()) {
-                        case CREATE:
-                            cc.createdIds = appendId(cc.createdIds, versionHistory.getRecordId());
-                            break;
-                        case DELETE:
-                            cc.deletedIds = appendId(cc.deletedIds, versionHistory.getRecordId());
-                            break;
-                        case UPDATE:
-                            cc.updatedIds = appendId(cc.updatedIds, versionHistory.getRecordId());
-                            break;
-                        }
+                        cc.add(versionHistory.getEventType(), versionHistory.getRecordId());
                     }
                 }
-            }
+                total += rows;
+                if (rows > 0 && CLEANUP_ENABLED) {
+                    cleaner.schedule();
+                }
+                if (!changes.isEmpty()) {
+                    listener.versionChanged(changes.values());
+                    changes.clear();
+                }
+            } while (rows >= VersionCacheConst.PARTIAL_MAX_RECORDS);
         } catch (SQLException e) {
             Log.exception(e);
         } finally {
@@ -128,16 +131,19 @@ class VersionWatcher implements Runnable {
 
         listener.versionChanged(changes.values());
         changes.clear();
+        return total;
     }
 
-    private static Set<Long> appendId(Set<Long> ids, Long id) {
-        if (ids == null) {
-            Set<Long> result = new TreeSet<>();
-            result.add(id);
-            return result;
-        } else {
-            ids.add(id);
-            return ids;
+    /**
+     * Если изменения были, переходит на наименьший интервал, иначе удваивает интервал до наибольшего.
+     *
+     * @param rows сколько записей истории версий прочитано последней проверкой
+     */
+    private void adjustRefreshInterval(int rows) {
+        long interval = rows > 0 ? minRefreshInterval : Math.min(maxRefreshInterval, refreshInterval * 2L);
+        if (interval != refreshInterval) {
+            refreshInterval = interval;
+            stats.refreshIntervalChanged(interval);
         }
     }
 
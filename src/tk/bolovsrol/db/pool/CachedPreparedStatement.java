@@ -0,0 +1,323 @@
+package tk.bolovsrol.db.pool;
+
+import tk.bolovsrol.db.JDBCUtils;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Враппер подготовленного выражения из {@link StatementCache кэша}.
+ * <p/>
+ * {@link #close()} не закрывает выражение, а сбрасывает его параметры и настройки,
+ * закрывает открытые им результаты и возвращает выражение в кэш.
+ */
+final class CachedPreparedStatement implements PreparedStatement {
+
+    private static final int UNCHANGED = -1;
+
+    private final PooledConnectionHandle con;
+    private final StatementCache.Key key;
+    private final PreparedStatement ps;
+    private final List<ResultSet> resultSets = new ArrayList<>(1);
+    private boolean closed = false;
+
+    // исходные значения настроек, которые приложение поменяло
+    private int fetchSize = UNCHANGED;
+    private int maxRows = UNCHANGED;
+    private int queryTimeout = UNCHANGED;
+    private int maxFieldSize = UNCHANGED;
+    private int fetchDirection = UNCHANGED;
+
+    CachedPreparedStatement(PooledConnectionHandle con, StatementCache.Key key, PreparedStatement ps) {
+        this.con = con;
+        this.key = key;
+        this.ps = ps;
+    }
+
+    private PreparedStatement ps() throws SQLException {
+        if (closed) {
+            throw new SQLException("Statement is closed.");
+        }
+        return ps;
+    }
+
+    private ResultSet track(ResultSet rs) {
+        if (rs != null) {
+            resultSets.add(rs);
+        }
+        return rs;
+    }
+
+    /**
+     * Возвращает выражение в кэш соединения, предварительно приведя его в исходное состояние.
+     * Если это не удалось, выражение закрывается по-настоящему.
+     */
+    @Override public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (ResultSet rs : resultSets) {
+            JDBCUtils.close(rs);
+        }
+        resultSets.clear();
+        try {
+            if (ps.isClosed() || ps.isCloseOnCompletion()) {
+                con.statementDiscarded(this);
+                ps.close();
+                return;
+            }
+            ps.clearParameters();
+            ps.clearBatch();
+            ps.clearWarnings();
+            if (fetchSize != UNCHANGED) { ps.setFetchSize(fetchSize); }
+            if (maxRows != UNCHANGED) { ps.setMaxRows(maxRows); }
+            if (queryTimeout != UNCHANGED) { ps.setQueryTimeout(queryTimeout); }
+            if (maxFieldSize != UNCHANGED) { ps.setMaxFieldSize(maxFieldSize); }
+            if (fetchDirection != UNCHANGED) { ps.setFetchDirection(fetchDirection); }
+        } catch (SQLException e) {
+            con.statementDiscarded(this);
+            JDBCUtils.close(ps);
+            return;
+        }
+        con.statementClosed(this, key, ps);
+    }
+
+    @Override public boolean isClosed() throws SQLException {return closed;}
+
+    @Override public Connection getConnection() throws SQLException {
+        ps();
+        return con;
+    }
+
+    @Override public ResultSet executeQuery() throws SQLException {return track(ps().executeQuery());}
+
+    @Override public ResultSet getResultSet() throws SQLException {return track(ps().getResultSet());}
+
+    @Override public ResultSet getGeneratedKeys() throws SQLException {return track(ps().getGeneratedKeys());}
+
+    @Override public void setFetchSize(int rows) throws SQLException {
+        if (fetchSize == UNCHANGED) { fetchSize = ps().getFetchSize(); }
+        ps().setFetchSize(rows);
+    }
+
+    @Override public void setMaxRows(int max) throws SQLException {
+        if (maxRows == UNCHANGED) { maxRows = ps().getMaxRows(); }
+        ps().setMaxRows(max);
+    }
+
+    @Override public void setQueryTimeout(int seconds) throws SQLException {
+        if (queryTimeout == UNCHANGED) { queryTimeout = ps().getQueryTimeout(); }
+        ps().setQueryTimeout(seconds);
+    }
+
+    @Override public void setMaxFieldSize(int max) throws SQLException {
+        if (maxFieldSize == UNCHANGED) { maxFieldSize = ps().getMaxFieldSize(); }
+        ps().setMaxFieldSize(max);
+    }
+
+    @Override public void setFetchDirection(int direction) throws SQLException {
+        if (fetchDirection == UNCHANGED) { fetchDirection = ps().getFetchDirection(); }
+        ps().setFetchDirection(direction);
+    }
+
+    // Дальше делегации выражению
+
+    @Override public int executeUpdate() throws SQLException {return ps().executeUpdate();}
+
+    @Override public void setNull(int parameterIndex, int sqlType) throws SQLException {ps().setNull(parameterIndex, sqlType);}
+
+    @Override public void setBoolean(int parameterIndex, boolean x) throws SQLException {ps().setBoolean(parameterIndex, x);}
+
+    @Override public void setByte(int parameterIndex, byte x) throws SQLException {ps().setByte(parameterIndex, x);}
+
+    @Override public void setShort(int parameterIndex, short x) throws SQLException {ps().setShort(parameterIndex, x);}
+
+    @Override public void setInt(int parameterIndex, int x) throws SQLException {ps().setInt(parameterIndex, x);}
+
+    @Override public void setLong(int parameterIndex, long x) throws SQLException {ps().setLong(parameterIndex, x);}
+
+    @Override public void setFloat(int parameterIndex, float x) throws SQLException {ps().setFloat(parameterIndex, x);}
+
+    @Override public void setDouble(int parameterIndex, double x) throws SQLException {ps().setDouble(parameterIndex, x);}
+
+    @Override public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {ps().setBigDecimal(parameterIndex, x);}
+
+    @Override public void setString(int parameterIndex, String x) throws SQLException {ps().setString(parameterIndex, x);}
+
+    @Override public void setBytes(int parameterIndex, byte[] x) throws SQLException {ps().setBytes(parameterIndex, x);}
+
+    @Override public void setDate(int parameterIndex, Date x) throws SQLException {ps().setDate(parameterIndex, x);}
+
+    @Override public void setTime(int parameterIndex, Time x) throws SQLException {ps().setTime(parameterIndex, x);}
+
+    @Override public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {ps().setTimestamp(parameterIndex, x);}
+
+    @Override public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {ps().setAsciiStream(parameterIndex, x, length);}
+
+    @Override public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {ps().setUnicodeStream(parameterIndex, x, length);}
+
+    @Override public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {ps().setBinaryStream(parameterIndex, x, length);}
+
+    @Override public void clearParameters() throws SQLException {ps().clearParameters();}
+
+    @Override public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {ps().setObject(parameterIndex, x, targetSqlType);}
+
+    @Override public void setObject(int parameterIndex, Object x) throws SQLException {ps().setObject(parameterIndex, x);}
+
+    @Override public boolean execute() throws SQLException {return ps().execute();}
+
+    @Override public void addBatch() throws SQLException {ps().addBatch();}
+
+    @Override public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {ps().setCharacterStream(parameterIndex, reader, length);}
+
+    @Override public void setRef(int parameterIndex, Ref x) throws SQLException {ps().setRef(parameterIndex, x);}
+
+    @Override public void setBlob(int parameterIndex, Blob x) throws SQLException {ps().setBlob(parameterIndex, x);}
+
+    @Override public void setClob(int parameterIndex, Clob x) throws SQLException {ps().setClob(parameterIndex, x);}
+
+    @Override public void setArray(int parameterIndex, Array x) throws SQLException {ps().setArray(parameterIndex, x);}
+
+    @Override public ResultSetMetaData getMetaData() throws SQLException {return ps().getMetaData();}
+
+    @Override public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {ps().setDate(parameterIndex, x, cal);}
+
+    @Override public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {ps().setTime(parameterIndex, x, cal);}
+
+    @Override public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {ps().setTimestamp(parameterIndex, x, cal);}
+
+    @Override public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {ps().setNull(parameterIndex, sqlType, typeName);}
+
+    @Override public void setURL(int parameterIndex, URL x) throws SQLException {ps().setURL(parameterIndex, x);}
+
+    @Override public ParameterMetaData getParameterMetaData() throws SQLException {return ps().getParameterMetaData();}
+
+    @Override public void setRowId(int parameterIndex, RowId x) throws SQLException {ps().setRowId(parameterIndex, x);}
+
+    @Override public void setNString(int parameterIndex, String value) throws SQLException {ps().setNString(parameterIndex, value);}
+
+    @Override public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {ps().setNCharacterStream(parameterIndex, value, length);}
+
+    @Override public void setNClob(int parameterIndex, NClob value) throws SQLException {ps().setNClob(parameterIndex, value);}
+
+    @Override public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {ps().setClob(parameterIndex, reader, length);}
+
+    @Override public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {ps().setBlob(parameterIndex, inputStream, length);}
+
+    @Override public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {ps().setNClob(parameterIndex, reader, length);}
+
+    @Override public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {ps().setSQLXML(parameterIndex, xmlObject);}
+
+    @Override public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {ps().setObject(parameterIndex, x, targetSqlType, scaleOrLength);}
+
+    @Override public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {ps().setAsciiStream(parameterIndex, x, length);}
+
+    @Override public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {ps().setBinaryStream(parameterIndex, x, length);}
+
+    @Override public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {ps().setCharacterStream(parameterIndex, reader, length);}
+
+    @Override public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {ps().setAsciiStream(parameterIndex, x);}
+
+    @Override public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {ps().setBinaryStream(parameterIndex, x);}
+
+    @Override public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {ps().setCharacterStream(parameterIndex, reader);}
+
+    @Override public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {ps().setNCharacterStream(parameterIndex, value);}
+
+    @Override public void setClob(int parameterIndex, Reader reader) throws SQLException {ps().setClob(parameterIndex, reader);}
+
+    @Override public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {ps().setBlob(parameterIndex, inputStream);}
+
+    @Override public void setNClob(int parameterIndex, Reader reader) throws SQLException {ps().setNClob(parameterIndex, reader);}
+
+    @Override public ResultSet executeQuery(String sql) throws SQLException {return ps().executeQuery(sql);}
+
+    @Override public int executeUpdate(String sql) throws SQLException {return ps().executeUpdate(sql);}
+
+    @Override public int getMaxFieldSize() throws SQLException {return ps().getMaxFieldSize();}
+
+    @Override public int getMaxRows() throws SQLException {return ps().getMaxRows();}
+
+    @Override public void setEscapeProcessing(boolean enable) throws SQLException {ps().setEscapeProcessing(enable);}
+
+    @Override public int getQueryTimeout() throws SQLException {return ps().getQueryTimeout();}
+
+    @Override public void cancel() throws SQLException {ps().cancel();}
+
+    @Override public SQLWarning getWarnings() throws SQLException {return ps().getWarnings();}
+
+    @Override public void clearWarnings() throws SQLException {ps().clearWarnings();}
+
+    @Override public void setCursorName(String name) throws SQLException {ps().setCursorName(name);}
+
+    @Override public boolean execute(String sql) throws SQLException {return ps().execute(sql);}
+
+    @Override public int getUpdateCount() throws SQLException {return ps().getUpdateCount();}
+
+    @Override public boolean getMoreResults() throws SQLException {return ps().getMoreResults();}
+
+    @Override public int getFetchDirection() throws SQLException {return ps().getFetchDirection();}
+
+    @Override public int getFetchSize() throws SQLException {return ps().getFetchSize();}
+
+    @Override public int getResultSetConcurrency() throws SQLException {return ps().getResultSetConcurrency();}
+
+    @Override public int getResultSetType() throws SQLException {return ps().getResultSetType();}
+
+    @Override public void addBatch(String sql) throws SQLException {ps().addBatch(sql);}
+
+    @Override public void clearBatch() throws SQLException {ps().clearBatch();}
+
+    @Override public int[] executeBatch() throws SQLException {return ps().executeBatch();}
+
+    @Override public boolean getMoreResults(int current) throws SQLException {return ps().getMoreResults(current);}
+
+    @Override public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {return ps().executeUpdate(sql, autoGeneratedKeys);}
+
+    @Override public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {return ps().executeUpdate(sql, columnIndexes);}
+
+    @Override public int executeUpdate(String sql, String[] columnNames) throws SQLException {return ps().executeUpdate(sql, columnNames);}
+
+    @Override public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {return ps().execute(sql, autoGeneratedKeys);}
+
+    @Override public boolean execute(String sql, int[] columnIndexes) throws SQLException {return ps().execute(sql, columnIndexes);}
+
+    @Override public boolean execute(String sql, String[] columnNames) throws SQLException {return ps().execute(sql, columnNames);}
+
+    @Override public int getResultSetHoldability() throws SQLException {return ps().getResultSetHoldability();}
+
+    @Override public void setPoolable(boolean poolable) throws SQLException {ps().setPoolable(poolable);}
+
+    @Override public boolean isPoolable() throws SQLException {return ps().isPoolable();}
+
+    @Override public void closeOnCompletion() throws SQLException {ps().closeOnCompletion();}
+
+    @Override public boolean isCloseOnCompletion() throws SQLException {return ps().isCloseOnCompletion();}
+
+    @Override public <T> T unwrap(Class<T> iface) throws SQLException {return ps().unwrap(iface);}
+
+    @Override public boolean isWrapperFor(Class<?> iface) throws SQLException {return ps().isWrapperFor(iface);}
+}
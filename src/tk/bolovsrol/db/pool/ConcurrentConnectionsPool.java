@@ -0,0 +1,340 @@
+package tk.bolovsrol.db.pool;
+
+import tk.bolovsrol.utils.log.Log;
+import tk.bolovsrol.utils.properties.ReadOnlyProperties;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пул соединений без общего монитора.
+ * <p/>
+ * Бездельничающие соединения лежат в неблокирующих стопках, отдельной для каждой базы данных:
+ * свежевозвращённые сверху, давно бездельничающие снизу. Лимит {@link #DB_CONNECTIONS_MAX}
+ * соблюдается атомарным счётчиком разрешений.
+ * <p/>
+ * Когда соединений нет, запрашивающие нити встают в очередь и получают соединение
+ * (или разрешение открыть новое) строго по очереди, каждое освободившееся соединение будит ровно одну нить.
+ * Пока очередь не пуста, новые запросы становятся в её конец, а не лезут вперёд.
+ * <p/>
+ * Как и {@link SynchronizedConnectionsPool}, при исчерпании лимита пул закрывает самое давно
+ * бездельничающее соединение к другой базе и открывает вместо него нужное.
+ */
+public class ConcurrentConnectionsPool extends ConnectionsPool {
+
+    /** Бездельничающие соединения, разложенные по базам данных: сверху самые свежие. */
+    private final ConcurrentMap<MetaConnectionPoolDataSource, Deque<PooledConnectionWrapper>> idleStacks = new ConcurrentHashMap<>();
+
+    /** Все созданные (открытые) соединения. */
+    private final Set<PooledConnectionWrapper> createdConnections = ConcurrentHashMap.newKeySet();
+
+    /** Количество соединений, которые ещё можно открыть. Не используется, если лимита нет. */
+    private final AtomicInteger permits;
+
+    /** Количество бездельничающих соединений. */
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /** Очередь ожидающих соединения нитей. */
+    private final Queue<PoolWaiter> waiters = new ConcurrentLinkedQueue<>();
+
+    public ConcurrentConnectionsPool(ReadOnlyProperties pp, String serverName) {
+        super(pp, serverName);
+        permits = new AtomicInteger(maxConnections);
+    }
+
+    @Override protected PooledConnectionWrapper acquire(MetaConnectionPoolDataSource mcpds) throws SQLException, InterruptedException {
+        PooledConnectionWrapper pcw = waiters.isEmpty() ? tryObtainConnectionWrapper(mcpds) : null;
+        return pcw != null ? pcw : awaitConnectionWrapper(mcpds);
+    }
+
+    /**
+     * Пытается получить соединение, не дожидаясь.
+     *
+     * @param mcpds метадатасорс базы данных, к которой нужно прицепиться
+     * @return соединение или null, если лимит исчерпан и бездельников нет
+     * @throws SQLException
+     */
+    private PooledConnectionWrapper tryObtainConnectionWrapper(MetaConnectionPoolDataSource mcpds) throws SQLException {
+        Object resource = obtainResource(mcpds);
+        if (resource == null) {
+            return null;
+        } else if (resource == PoolWaiter.PERMIT) {
+            return createConnectionWrapper(mcpds);
+        } else {
+            return (PooledConnectionWrapper) resource;
+        }
+    }
+
+    /**
+     * Становится в очередь и ждёт соединения или разрешения его открыть.
+     *
+     * @param mcpds метадатасорс базы данных, к которой нужно прицепиться
+     * @return соединение
+     * @throws SQLException
+     * @throws InterruptedException
+     */
+    private PooledConnectionWrapper awaitConnectionWrapper(MetaConnectionPoolDataSource mcpds) throws SQLException, InterruptedException {
+        PoolWaiter waiter = new PoolWaiter(mcpds);
+        waiters.add(waiter);
+        // пока мы становились в очередь, что-нибудь могло освободиться
+        dispatch();
+        if (!waiter.isServed()) {
+            Log.warning("Connections pool size has reached max connections limit (" + maxConnections + "). Waiting for a connection to free.");
+        }
+        Object resource = await(waiter);
+        if (resource == PoolWaiter.PERMIT) {
+            return createConnectionWrapper(mcpds);
+        } else {
+            return (PooledConnectionWrapper) resource;
+        }
+    }
+
+    @Override protected void cancelled(PoolWaiter waiter) {
+        waiters.remove(waiter);
+    }
+
+    /**
+     * Раздаёт доступные соединения и разрешения ожидающим в порядке очереди.
+     * Может вызываться из нескольких нитей одновременно.
+     */
+    private void dispatch() {
+        PoolWaiter waiter;
+        while ((waiter = waiters.peek()) != null) {
+            Object resource = obtainResource(waiter.getMetaConnectionPoolDataSource());
+            if (resource == null) {
+                return;
+            }
+            if (!waiter.offer(resource)) {
+                // ожидающего успели обслужить другой нитью, или он ушёл сам
+                giveBack(resource);
+            }
+            waiters.remove(waiter);
+        }
+    }
+
+    /**
+     * Добывает соединение к базе или разрешение открыть новое:
+     * бездельничающее соединение к этой базе, свободное разрешение
+     * или разрешение, освободившееся после закрытия самого давнего бездельника к другой базе.
+     *
+     * @param mcpds метадатасорс базы данных
+     * @return {@link PooledConnectionWrapper}, {@link PoolWaiter#PERMIT} или null, если добыть ничего не удалось
+     */
+    private Object obtainResource(MetaConnectionPoolDataSource mcpds) {
+        PooledConnectionWrapper pcw = pollIdle(mcpds);
+        if (pcw != null) {
+            return pcw;
+        }
+        if (tryAcquirePermit()) {
+            return PoolWaiter.PERMIT;
+        }
+        // больше соединений создавать нельзя. позаимствуем бездельнчиающее соединение для другой базы
+        pcw = pollMostIdle();
+        if (pcw != null) {
+            closeConnectionWrapper(pcw);
+            return PoolWaiter.PERMIT;
+        }
+        return null;
+    }
+
+    /** Возвращает в пул ресурс, который не удалось никому передать. */
+    private void giveBack(Object resource) {
+        if (resource == PoolWaiter.PERMIT) {
+            releasePermit();
+        } else {
+            pushIdle((PooledConnectionWrapper) resource);
+        }
+    }
+
+    private boolean tryAcquirePermit() {
+        if (maxConnections == UNLIMITED_CONNECTIONS) {
+            return true;
+        }
+        while (true) {
+            int available = permits.get();
+            if (available <= 0) {
+                return false;
+            }
+            if (permits.compareAndSet(available, available - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void releasePermit() {
+        if (maxConnections != UNLIMITED_CONNECTIONS) {
+            permits.incrementAndGet();
+        }
+    }
+
+    /**
+     * Открывает новое соединение в счёт уже полученного разрешения.
+     * Если открыть не удалось, разрешение возвращается.
+     */
+    private PooledConnectionWrapper createConnectionWrapper(MetaConnectionPoolDataSource mcpds) throws SQLException {
+        PooledConnectionWrapper pcw;
+        try {
+            pcw = newConnectionWrapper(mcpds);
+        } catch (SQLException | RuntimeException e) {
+            releasePermit();
+            dispatch();
+            throw e;
+        }
+        createdConnections.add(pcw);
+        return pcw;
+    }
+
+    /** Закрывает изъятое из стопки бездельничающее соединение, разрешение остаётся у вызывающего. */
+    private void closeConnectionWrapper(PooledConnectionWrapper pcw) {
+        pcw.close();
+        createdConnections.remove(pcw);
+    }
+
+    private Deque<PooledConnectionWrapper> getIdleStack(MetaConnectionPoolDataSource mcpds) {
+        Deque<PooledConnectionWrapper> stack = idleStacks.get(mcpds);
+        if (stack == null) {
+            stack = new ConcurrentLinkedDeque<>();
+            Deque<PooledConnectionWrapper> existing = idleStacks.putIfAbsent(mcpds, stack);
+            if (existing != null) {
+                stack = existing;
+            }
+        }
+        return stack;
+    }
+
+    private void pushIdle(PooledConnectionWrapper pcw) {
+        getIdleStack(pcw.getMetaConnectionPoolDataSource()).addFirst(pcw);
+        idleCount.incrementAndGet();
+    }
+
+    private PooledConnectionWrapper pollIdle(MetaConnectionPoolDataSource mcpds) {
+        Deque<PooledConnectionWrapper> stack = idleStacks.get(mcpds);
+        if (stack == null) {
+            return null;
+        }
+        PooledConnectionWrapper pcw = stack.pollFirst();
+        if (pcw != null) {
+            idleCount.decrementAndGet();
+        }
+        return pcw;
+    }
+
+    /**
+     * Изымает из стопок самое давно бездельничающее соединение.
+     *
+     * @return соединение или null, если бездельников нет
+     */
+    private PooledConnectionWrapper pollMostIdle() {
+        while (idleCount.get() > 0) {
+            Deque<PooledConnectionWrapper> oldestStack = null;
+            PooledConnectionWrapper oldest = null;
+            long oldestAge = -1L;
+            for (Deque<PooledConnectionWrapper> stack : idleStacks.values()) {
+                PooledConnectionWrapper pcw = stack.peekLast();
+                if (pcw != null) {
+                    long age = pcw.getIdleAge();
+                    if (age > oldestAge) {
+                        oldestStack = stack;
+                        oldest = pcw;
+                        oldestAge = age;
+                    }
+                }
+            }
+            if (oldest == null) {
+                return null;
+            }
+            if (oldestStack.removeLastOccurrence(oldest)) {
+                idleCount.decrementAndGet();
+                return oldest;
+            }
+            // соединение успели забрать, ищем заново
+        }
+        return null;
+    }
+
+    @Override protected void release(PooledConnectionWrapper pcw) {
+        pushIdle(pcw);
+        dispatch();
+    }
+
+    @Override protected void discard(PooledConnectionWrapper pcw) {
+        pcw.close();
+        if (createdConnections.remove(pcw)) {
+            releasePermit();
+            dispatch();
+        }
+    }
+
+    @Override protected boolean takeIdle(PooledConnectionWrapper pcw) {
+        Deque<PooledConnectionWrapper> stack = idleStacks.get(pcw.getMetaConnectionPoolDataSource());
+        if (stack != null && stack.removeFirstOccurrence(pcw)) {
+            idleCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    @Override protected List<PooledConnectionWrapper> snapshotIdle() {
+        List<PooledConnectionWrapper> idle = new ArrayList<>(idleCount.get());
+        for (Deque<PooledConnectionWrapper> stack : idleStacks.values()) {
+            // снизу стопки самые давние
+            for (Iterator<PooledConnectionWrapper> it = stack.descendingIterator(); it.hasNext(); ) {
+                idle.add(it.next());
+            }
+        }
+        return idle;
+    }
+
+    @Override protected PooledConnectionWrapper createIfAllowed(MetaConnectionPoolDataSource mcpds) throws SQLException {
+        return waiters.isEmpty() && tryAcquirePermit() ? createConnectionWrapper(mcpds) : null;
+    }
+
+    /**
+     * КоннекшнВраппер сообщает, что его соединение сдохло, и на него можно больше не расчитывать.
+     *
+     * @param pcw
+     */
+    @Override public void connectionBroken(PooledConnectionWrapper pcw) {
+        takeIdle(pcw);
+        if (createdConnections.remove(pcw)) {
+            releasePermit();
+            dispatch();
+        }
+    }
+
+    @Override public int getOpenConnectionsCount() {
+        return createdConnections.size();
+    }
+
+    @Override public int getIdleConnectionsCount() {
+        return idleCount.get();
+    }
+
+    @Override public int getIdleConnectionsCount(MetaConnectionPoolDataSource mcpds) {
+        Deque<PooledConnectionWrapper> stack = idleStacks.get(mcpds);
+        return stack == null ? 0 : stack.size();
+    }
+
+    @Override public ConnectionInfo[] getConnectionInfos() {
+        List<ConnectionInfo> infos = new ArrayList<>(createdConnections.size());
+        for (PooledConnectionWrapper pcw : createdConnections) {
+            infos.add(newConnectionInfo(pcw));
+        }
+        return infos.toArray(new ConnectionInfo[infos.size()]);
+    }
+
+    /** Количество нитей, ожидающих соединения. */
+    public int getWaitersCount() {
+        return waiters.size();
+    }
+}
@@ -0,0 +1,31 @@
+package tk.bolovsrol.db.pool;
+
+import tk.bolovsrol.utils.Spell;
+
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Пул не смог выдать соединение за отведённое время {@link ConnectionsPool#DB_CONNECTIONS_ACQUIRE_TIMEOUT}:
+ * все соединения заняты, а лимит исчерпан.
+ * <p/>
+ * Ошибка временная, запрос можно повторить позже.
+ */
+public class ConnectionAcquireTimeoutException extends SQLTransientConnectionException {
+    private final String serverName;
+    private final long timeout;
+
+    public ConnectionAcquireTimeoutException(String serverName, long timeout) {
+        super("Timed out waiting " + timeout + " ms for a connection to server " + Spell.get(serverName) + ", pool is exhausted");
+        this.serverName = serverName;
+        this.timeout = timeout;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    /** @return время ожидания, мс */
+    public long getTimeout() {
+        return timeout;
+    }
+}
@@ -18,6 +18,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -163,12 +164,8 @@ public class ConnectionManager {
                 String serverName = entry.getKey();
                 List<MetaConnectionPoolDataSource> mdses = entry.getValue();
 
-                ConnectionsPool cp = new ConnectionsPool(cfg, serverName);
+                ConnectionsPool cp = ConnectionsPool.create(cfg, serverName, mdses);
                 connectionsPools.add(cp);
-
-                for (MetaConnectionPoolDataSource mdse : mdses) {
-                    mdse.setConnectionsPool(cp);
-                }
             }
         }
 
@@ -283,6 +280,17 @@ public class ConnectionManager {
         return INSTANCE.getConnectionInfosInternal();
     }
 
+    /**
+     * Возвращает пулы соединений всех серверов, например, чтобы посмотреть их гистограммы ожидания.
+     *
+     * @return неизменяемый список пулов
+     * @see ConnectionsPool#getAcquireHistogram()
+     * @see ConnectionsPool#getWaitHistogram()
+     */
+    public static List<ConnectionsPool> getConnectionsPools() throws IllegalStateException {
+        return Collections.unmodifiableList(INSTANCE.connectionsPools);
+    }
+
     //------- dynamic fields below ----
     /** Привязка имени базы данных к метадатасорсу. */
     private final Map<String, MetaConnectionPoolDataSource> nameToMdsBindings;
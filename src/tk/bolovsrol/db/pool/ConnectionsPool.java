@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.pool;
 
+import tk.bolovsrol.db.stats.Histogram;
 import tk.bolovsrol.utils.QuitException;
 import tk.bolovsrol.utils.log.Log;
 import tk.bolovsrol.utils.properties.ReadOnlyProperties;
@@ -7,24 +8,48 @@ import tk.bolovsrol.utils.properties.ReadOnlyProperties;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Пул соединений с сервером баз данных.
  * <p/>
  * Здесь хранятся бездельничающие соединения
- * раздельно по базам данных (для повторного использования)
- * и большой кучей (для воспроизведения).
+ * раздельно по базам данных (для повторного использования).
+ * Когда лимит соединений исчерпан, пул может закрыть самое давно бездельничающее соединение
+ * к другой базе и открыть вместо него нужное.
  * <p/>
  * Пул обслуживает запросы на выдачу соединения максимально экффективным образом.
  * Он же соблюдает ограничение на общее количество открытых соединений.
  * <p/>
  * Он скажет в лог варнинг, когда будет достингут лимит соединений.
+ * Нити, дожидающиеся соединения, обслуживаются строго в порядке очереди,
+ * каждое освободившееся соединение будит ровно одну нить. Ожидание можно ограничить
+ * параметром {@link #DB_CONNECTIONS_ACQUIRE_TIMEOUT}, тогда по его истечении вылетит
+ * {@link ConnectionAcquireTimeoutException}.
+ * <p/>
+ * Время получения соединений пул записывает в гистограммы (в микросекундах):
+ * {@link #getAcquireHistogram()} по всем запросам, {@link #getWaitHistogram()} только по тем,
+ * которым пришлось постоять в очереди.
+ * <p/>
+ * Чистильщик тунеядцев™ заодно присматривает за бездельничающими соединениями:
+ * <ul><li>закрывает отработавшие дольше {@link #DB_CONNECTIONS_MAX_LIFETIME} (занятые соединения
+ * закрываются, когда их вернут, работу у приложения никто не отнимает);</li>
+ * <li>проверяет давно не проверявшиеся соединения, если задан {@link #DB_CONNECTIONS_KEEP_ALIVE};</li>
+ * <li>держит для каждой базы не меньше {@link #DB_CONNECTIONS_MIN_IDLE} бездельников,
+ * открывая их заранее, если лимит позволяет.</li></ul>
+ * Если задан {@link #DB_CONNECTIONS_VALIDATION_INTERVAL}, соединение, которое слишком долго не было
+ * в деле, перед выдачей проверяется {@link Connection#isValid(int)}, дохлые соединения заменяются новыми.
+ * <p/>
+ * Реализаций две: {@link SynchronizedConnectionsPool} с одним общим монитором (по умолчанию)
+ * и {@link ConcurrentConnectionsPool} без блокировок на пути выдачи и возврата соединения,
+ * включается параметром {@link #DB_CONNECTIONS_CONCURRENT}. Создавать пул следует
+ * методом {@link #create(ReadOnlyProperties, String, Collection)}.
  */
-public class ConnectionsPool implements PooledConnectionEventListener {
+public abstract class ConnectionsPool implements PooledConnectionEventListener {
 
     /**
      * Максимальное количество открываемых соединений к каждой из баз данных.
@@ -35,6 +60,63 @@ public class ConnectionsPool implements PooledConnectionEventListener {
     /** Можно открывать бесконченое количество соединений. Не рекомендуется. */
     public static final int UNLIMITED_CONNECTIONS = 0;
 
+    /**
+     * Параметр: сколько ждать освобождения соединения, когда лимит исчерпан, мс.
+     * По умолчанию {@link #DB_CONNECTIONS_ACQUIRE_TIMEOUT_DEF}.
+     */
+    public static final String DB_CONNECTIONS_ACQUIRE_TIMEOUT = "db.connections.acquireTimeout.ms";
+    /** По умолчанию ждём бесконечно. */
+    public static final long DB_CONNECTIONS_ACQUIRE_TIMEOUT_DEF = 0L;
+
+    /**
+     * Параметр: сколько бездельничающих соединений к каждой базе держать открытыми заранее.
+     * Можно задать отдельно для сервера: <code>db.connections.minIdle.<i>имя_сервера</i></code>.
+     * По умолчанию 0.
+     */
+    public static final String DB_CONNECTIONS_MIN_IDLE = "db.connections.minIdle";
+
+    /**
+     * Параметр: соединение, которое не было в деле и не проверялось дольше этого времени,
+     * перед выдачей проверяется, мс. По умолчанию 0, не проверяется.
+     */
+    public static final String DB_CONNECTIONS_VALIDATION_INTERVAL = "db.connections.validation.interval.ms";
+
+    /**
+     * Параметр: сколько ждать ответа сервера при проверке соединения, мс.
+     * По умолчанию {@link #DB_CONNECTIONS_VALIDATION_TIMEOUT_DEF}.
+     */
+    public static final String DB_CONNECTIONS_VALIDATION_TIMEOUT = "db.connections.validation.timeout.ms";
+    /** Ответа ждём 5 секунд. */
+    public static final long DB_CONNECTIONS_VALIDATION_TIMEOUT_DEF = 5000L;
+
+    /**
+     * Параметр: бездельничающее соединение, не проверявшееся дольше этого времени,
+     * чистильщик проверит сам, мс. По умолчанию 0, не проверяет.
+     */
+    public static final String DB_CONNECTIONS_KEEP_ALIVE = "db.connections.keepAlive.ms";
+
+    /**
+     * Параметр: соединение, открытое дольше этого времени, закрывается, как только окажется свободным, мс.
+     * По умолчанию 0, живёт сколько угодно.
+     */
+    public static final String DB_CONNECTIONS_MAX_LIFETIME = "db.connections.maxLifetime.ms";
+
+    /**
+     * Параметр: сколько подготовленных выражений кэшировать в каждом соединении.
+     * По умолчанию 0, кэш выключен.
+     * <p/>
+     * С включённым кэшем пул держит для каждого физического соединения одно логическое соединение драйвера
+     * и выдаёт приложению его обёртку. Подготовленные выражения, закрытые приложением, остаются открытыми
+     * в кэше соединения, и повторное {@link Connection#prepareStatement(String)} с тем же SQL берёт их оттуда.
+     * Ключ кэша -- SQL, тип результата и способ получения сгенерированных ключей.
+     */
+    public static final String DB_CONNECTIONS_STATEMENT_CACHE_SIZE = "db.connections.statementCache.size";
+
+    /**
+     * Параметр: использовать неблокирующий пул {@link ConcurrentConnectionsPool}.
+     * По умолчанию false, используется {@link SynchronizedConnectionsPool}.
+     */
+    public static final String DB_CONNECTIONS_CONCURRENT = "db.connections.concurrent";
 
     /**
      * Параметр: время спячки убивателя тунеядцев, мс.
@@ -54,202 +136,365 @@ public class ConnectionsPool implements PooledConnectionEventListener {
     /** Время признания бездельника тунеядцем, по умолчанию 5 минут. */
     public static final long DB_JUNKWATCHER_AGETOKILL_DEF = 600000L;
 
+    /** Имя сервера, для которого создан пул. */
+    protected final String serverName;
+
     /** Ограничение количества соединений. */
-    private final int maxConnections;
+    protected final int maxConnections;
 
-    /** Бездельничающие соединения (PooledConnectionWrapper), разложенные по именам баз данных. */
-    private final Map<MetaConnectionPoolDataSource, LinkedList<PooledConnectionWrapper>> dbBindConnections
-		= new HashMap<>();
+    /** Время ожидания соединения, мс, 0 -- бесконечно. */
+    protected final long acquireTimeout;
 
-    /**
-     * Бездельничающие соединения, разложенные в хронологическом порядке: сверху наиболее
-     * давно бездельничающие.
-     */
-	private final LinkedList<PooledConnectionWrapper> idleConnections = new LinkedList<>();
+    /** Время получения соединения, мкс. */
+    private final Histogram acquireHistogram = new Histogram();
+
+    /** Время ожидания в очереди, мкс. */
+    private final Histogram waitHistogram = new Histogram();
+
+    /** Количество запросов, не дождавшихся соединения. */
+    private final AtomicLong acquireTimeouts = new AtomicLong();
+
+    /** Сколько бездельников держать к каждой базе. */
+    protected final int minIdle;
+
+    /** Интервал проверки соединений при выдаче, мс, 0 -- не проверять. */
+    protected final long validationInterval;
+
+    /** Время ожидания ответа при проверке, с. */
+    protected final int validationTimeoutSeconds;
+
+    /** Интервал проверки бездельников чистильщиком, мс, 0 -- не проверять. */
+    protected final long keepAlive;
 
-    /** Все созданные (открытые) соединения. Для статистики или типа того. */
-	private final Collection<PooledConnectionWrapper> createdConnections = new LinkedList<>();
+    /** Максимальное время жизни соединения, мс, 0 -- не ограничено. */
+    protected final long maxLifetime;
 
-    /** Синхронизатор доступа. */
-    private final Object lock = new Object();
+    /** Размер кэша выражений каждого соединения, 0 -- без кэша. */
+    protected final int statementCacheSize;
+
+    /** Счётчики кэша выражений. */
+    private final StatementCacheStats statementCacheStats = new StatementCacheStats();
+
+    /** Базы данных сервера. */
+    private final List<MetaConnectionPoolDataSource> dataSources = new CopyOnWriteArrayList<>();
+
+    /** Количество соединений, не прошедших проверку. */
+    private final AtomicLong validationFailures = new AtomicLong();
+
+    /** Количество соединений, закрытых по старости. */
+    private final AtomicLong retired = new AtomicLong();
 
     /** Время спячки чистильщика тунеядцев™. */
-    private final long junkWatcherSleepTime;
+    protected final long junkWatcherSleepTime;
 
     /** Время, через которое бездельничающее соединение признаётся тунеядцем™ и подлежит уничтожению. */
-    private final long cwsIdleTimeToDie;
+    protected final long cwsIdleTimeToDie;
 
-    private volatile boolean connectionAvailable;
+    /**
+     * Создаёт пул для сервера баз данных нужной реализации, привязывает к нему базы данных
+     * и запускает его чистильщика тунеядцев™.
+     *
+     * @param pp настройки
+     * @param serverName имя сервера
+     * @param dataSources базы данных сервера
+     * @return пул
+     * @see #DB_CONNECTIONS_CONCURRENT
+     */
+    public static ConnectionsPool create(ReadOnlyProperties pp, String serverName, Collection<MetaConnectionPoolDataSource> dataSources) {
+        ConnectionsPool cp = pp.getBoolean(DB_CONNECTIONS_CONCURRENT, false)
+              ? new ConcurrentConnectionsPool(pp, serverName)
+              : new SynchronizedConnectionsPool(pp, serverName);
+        for (MetaConnectionPoolDataSource mcpds : dataSources) {
+            mcpds.setConnectionsPool(cp);
+            cp.dataSources.add(mcpds);
+        }
+        cp.start();
+        return cp;
+    }
 
     /**
      * Создаём инстанцию пула для сервера баз данных.
      *
-     * @param pp
-     * @param serverName
+     * @param pp настройки
+     * @param serverName имя сервера
      */
-    public ConnectionsPool(ReadOnlyProperties pp, String serverName) {
-		maxConnections = pp.getInteger(DB_CONNECTIONS_MAX, UNLIMITED_CONNECTIONS, Log.getInstance());
-		junkWatcherSleepTime = pp.getLong(DB_JUNKWATCHER_SLEEP, DB_JUNKWATCHER_SLEEP_DEF, Log.getInstance());
-		cwsIdleTimeToDie = pp.getLong(DB_JUNKWATCHER_AGETOKILL, DB_JUNKWATCHER_AGETOKILL_DEF, Log.getInstance());
+    protected ConnectionsPool(ReadOnlyProperties pp, String serverName) {
+        this.serverName = serverName;
+        maxConnections = pp.getInteger(DB_CONNECTIONS_MAX, UNLIMITED_CONNECTIONS, Log.getInstance());
+        acquireTimeout = pp.getLong(DB_CONNECTIONS_ACQUIRE_TIMEOUT, DB_CONNECTIONS_ACQUIRE_TIMEOUT_DEF, Log.getInstance());
+        minIdle = pp.getInteger(DB_CONNECTIONS_MIN_IDLE + '.' + serverName, pp.getInteger(DB_CONNECTIONS_MIN_IDLE, 0, Log.getInstance()), Log.getInstance());
+        validationInterval = pp.getLong(DB_CONNECTIONS_VALIDATION_INTERVAL, 0L, Log.getInstance());
+        validationTimeoutSeconds = (int) Math.max(1L, (pp.getLong(DB_CONNECTIONS_VALIDATION_TIMEOUT, DB_CONNECTIONS_VALIDATION_TIMEOUT_DEF, Log.getInstance()) + 999L) / 1000L);
+        keepAlive = pp.getLong(DB_CONNECTIONS_KEEP_ALIVE, 0L, Log.getInstance());
+        maxLifetime = pp.getLong(DB_CONNECTIONS_MAX_LIFETIME, 0L, Log.getInstance());
+        statementCacheSize = pp.getInteger(DB_CONNECTIONS_STATEMENT_CACHE_SIZE, 0, Log.getInstance());
+        junkWatcherSleepTime = pp.getLong(DB_JUNKWATCHER_SLEEP, DB_JUNKWATCHER_SLEEP_DEF, Log.getInstance());
+        cwsIdleTimeToDie = pp.getLong(DB_JUNKWATCHER_AGETOKILL, DB_JUNKWATCHER_AGETOKILL_DEF, Log.getInstance());
+    }
 
+    /** Запускает фоновые нити пула. Вызывается один раз после создания. */
+    protected void start() {
         if (junkWatcherSleepTime > 0L) {
             new JunkWatcher(serverName).start();
         }
-
     }
 
     /**
      * Выдаёт соединение к базе данных.
      *
+     * @param mcpds метадатасорс базы данных, к которой нужно прицепиться
      * @return соединение
+     * @throws ConnectionAcquireTimeoutException не дождались соединения
      */
     public Connection getConnection(MetaConnectionPoolDataSource mcpds) throws SQLException, InterruptedException {
-        //Log.trace("Retrieving connection to " + Log.getSpell(dbName) + " for class " + calledBy.getName() + "...");
-        PooledConnectionWrapper connectionWrapper;
-        synchronized (lock) {
-            connectionWrapper = getConnectionWrapper(mcpds);
+        long started = System.nanoTime();
+        PooledConnectionWrapper pcw = acquire(mcpds);
+        while (!isUsable(pcw)) {
+            discard(pcw);
+            pcw = acquire(mcpds);
         }
-        return connectionWrapper.openConnection();
+        acquireHistogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+        return pcw.openConnection();
     }
 
     /**
      * Получает свободный ConnectionWrapper, из которого можно вытянуть
-     * Connection для использования приложением.
-     * <p/>
-     * Метод нужно вызывать в синхронизированном контексте!
+     * Connection для использования приложением. Если соединений нет, ждёт методом {@link #await(PoolWaiter)}.
      *
      * @param mcpds метадатасорс базы данных, к которой нужно прицепиться
-     * @return
-     * @throws SQLException
-     * @throws InterruptedException
+     * @return соединение
+     * @throws ConnectionAcquireTimeoutException не дождались соединения
      */
-    private PooledConnectionWrapper getConnectionWrapper(MetaConnectionPoolDataSource mcpds) throws SQLException, InterruptedException {
-        while (true) {
-            // сначала достаём существующее соединение.
-            {
-                PooledConnectionWrapper pcw = pickExistingConnectionWrapper(mcpds);
-                if (pcw != null) {
-                    return pcw;
-                }
-            }
+    protected abstract PooledConnectionWrapper acquire(MetaConnectionPoolDataSource mcpds) throws SQLException, InterruptedException;
 
-            // а свободных открытых соединений нет. создадим новое?
-            if (maxConnections == UNLIMITED_CONNECTIONS || createdConnections.size() < maxConnections) {
-                // создавать новое соединение можно
-                return createConnectionWrapper(mcpds);
-            }
-
-            // больше соединений создавать нельзя. позаимствуем бездельнчиающее соединение для другой базы
-            if (!idleConnections.isEmpty()) {
-                closeMostIdleConnectionWrapper();
-                return createConnectionWrapper(mcpds);
-            }
+    /**
+     * Ожидающий ушёл из очереди, не дождавшись. Его нужно убрать из очереди.
+     *
+     * @param waiter ожидающий
+     */
+    protected abstract void cancelled(PoolWaiter waiter);
 
-            // а бездельничающих соединений нет -- ждём их появления и ругаемся об этом,
-            // так как это хоть и не ошибка, но ситуация, безусловно, нехорошая
-            Log.warning("Connections pool size has reached max connections limit (" + maxConnections + "). Waiting for a connection to free.");
-            connectionAvailable = false;
-            while (!connectionAvailable) {
-                lock.wait();
-            }
-            // теперь должно появиться хоть одно соединение либо возможность создать новое.
-            // повторяем процесс получения соединения...
+    /**
+     * Ждёт, пока ожидающему, поставленному в очередь, что-нибудь передадут,
+     * но не дольше {@link #acquireTimeout}.
+     *
+     * @param waiter ожидающий, уже стоящий в очереди
+     * @return {@link PooledConnectionWrapper} или {@link PoolWaiter#PERMIT}
+     * @throws ConnectionAcquireTimeoutException время вышло
+     * @throws InterruptedException
+     */
+    protected Object await(PoolWaiter waiter) throws ConnectionAcquireTimeoutException, InterruptedException {
+        long started = System.nanoTime();
+        Object resource;
+        try {
+            resource = waiter.await(TimeUnit.MILLISECONDS.toNanos(acquireTimeout));
+        } catch (InterruptedException e) {
+            cancelled(waiter);
+            throw e;
         }
+        waitHistogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+        if (resource == null) {
+            cancelled(waiter);
+            acquireTimeouts.incrementAndGet();
+            throw new ConnectionAcquireTimeoutException(serverName, acquireTimeout);
+        }
+        return resource;
     }
 
     /**
-     * Создаёт новое соединение.
-     * <p/>
-     * Метод нужно вызывать в синхронизированном контексте!
+     * Открывает новое физическое соединение, с кэшем выражений, если он включён.
      *
-     * @param mcpds метадатасорс, для которого нужно получить соединение
-     * @return
+     * @param mcpds база данных
+     * @return соединение
      * @throws SQLException
      */
-    private PooledConnectionWrapper createConnectionWrapper(MetaConnectionPoolDataSource mcpds) throws SQLException {
-        PooledConnectionWrapper pcw = new PooledConnectionWrapper(this, mcpds);
-        createdConnections.add(pcw);
-        return pcw;
+    protected PooledConnectionWrapper newConnectionWrapper(MetaConnectionPoolDataSource mcpds) throws SQLException {
+        return new PooledConnectionWrapper(this, mcpds,
+              statementCacheSize > 0 ? new StatementCache(statementCacheSize, statementCacheStats) : null);
     }
 
     /**
-     * Закрывает самое старое соединение
-     * <p/>
-     * Метод нужно вызывать в синхронизированном контексте!
+     * Проверяет, можно ли выдать полученное соединение приложению:
+     * не пора ли ему на покой и живо ли оно, если его пора проверить.
      */
-    private void closeMostIdleConnectionWrapper() {
-        // закроем соединение к самой старой базе
-        PooledConnectionWrapper pcw = idleConnections.removeFirst();
-        dbBindConnections.get(pcw.getMetaConnectionPoolDataSource()).remove(pcw);
-        pcw.close();
-        createdConnections.remove(pcw);
+    private boolean isUsable(PooledConnectionWrapper pcw) {
+        if (isExpired(pcw)) {
+            retired.incrementAndGet();
+            return false;
+        }
+        if (validationInterval > 0L && pcw.getValidatedAge() >= validationInterval && !pcw.validate(validationTimeoutSeconds)) {
+            validationFailures.incrementAndGet();
+            Log.info("Discarding stale connection to " + pcw.getMetaConnectionPoolDataSource().getDbUrl());
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isExpired(PooledConnectionWrapper pcw) {
+        return maxLifetime > 0L && pcw.getAge() >= maxLifetime;
     }
 
     /**
-     * Кладёт соединение в пул для повторного использования.
-     * <p/>
-     * Метод нужно вызывать в синхронизированном контексте!
+     * КоннекшнВраппер сообщает, что его соединение закрыли, и он снова свободен.
+     * Соединение, отработавшее своё, закрывается, остальные возвращаются в пул.
      *
      * @param pcw
      */
-    private void putConnectionWrapper(PooledConnectionWrapper pcw) {
-        MetaConnectionPoolDataSource mcpds = pcw.getMetaConnectionPoolDataSource();
-        LinkedList<PooledConnectionWrapper> cws = dbBindConnections.get(mcpds);
-        if (cws == null) {
-			cws = new LinkedList<>();
-			dbBindConnections.put(mcpds, cws);
+    @Override public void connectionClosed(PooledConnectionWrapper pcw) {
+        if (isExpired(pcw)) {
+            retired.incrementAndGet();
+            discard(pcw);
+        } else {
+            release(pcw);
         }
-        cws.addLast(pcw);
-        idleConnections.addLast(pcw);
     }
 
     /**
-     * Возвращает доступное открытое бездельничающее соединение для повторного использования.
-     * Если таких нету, то возвращает null.
-     * <p/>
-     * Метод нужно вызывать в синхронизированном контексте!
+     * Кладёт свободное соединение в пул и передаёт его ожидающему, если такой есть.
      *
-     * @param mcpds
-     * @return соединение
+     * @param pcw соединение, не лежащее в пуле
      */
-    private PooledConnectionWrapper pickExistingConnectionWrapper(MetaConnectionPoolDataSource mcpds) {
-        LinkedList<PooledConnectionWrapper> cws = dbBindConnections.get(mcpds);
-        if (cws == null || cws.isEmpty()) {
-            return null;
-        } else {
-            PooledConnectionWrapper pcw = cws.removeLast();
-            idleConnections.remove(pcw);
-            return pcw;
-        }
-    }
+    protected abstract void release(PooledConnectionWrapper pcw);
 
     /**
-     * КоннекшнВраппер сообщает, что его соединение закрыли, и он снова свободен.
+     * Закрывает соединение, не лежащее в пуле, и освобождает место для нового.
+     * Повторный вызов для того же соединения ничего не делает.
      *
-     * @param pcw
+     * @param pcw соединение
      */
-    @Override public void connectionClosed(PooledConnectionWrapper pcw) {
-        synchronized (lock) {
-            putConnectionWrapper(pcw);
-            connectionAvailable = true;
-            lock.notifyAll();
-        }
-    }
+    protected abstract void discard(PooledConnectionWrapper pcw);
 
     /**
-     * КоннекшнВраппер сообщает, что его соединение сдохло, и на него можно больше не расчитывать.
+     * Забирает из пула указанное бездельничающее соединение.
      *
-     * @param pcw
+     * @param pcw соединение
+     * @return true, если соединение лежало в пуле и теперь принадлежит вызывающему
+     */
+    protected abstract boolean takeIdle(PooledConnectionWrapper pcw);
+
+    /** @return список бездельничающих соединений на момент вызова */
+    protected abstract List<PooledConnectionWrapper> snapshotIdle();
+
+    /**
+     * Открывает новое соединение, если лимит позволяет и никто не ждёт в очереди.
+     * Бездельников к другим базам не закрывает.
+     *
+     * @param mcpds база данных
+     * @return соединение или null
+     * @throws SQLException
+     */
+    protected abstract PooledConnectionWrapper createIfAllowed(MetaConnectionPoolDataSource mcpds) throws SQLException;
+
+    /**
+     * @param mcpds база данных
+     * @return количество бездельничающих соединений к базе
+     */
+    public abstract int getIdleConnectionsCount(MetaConnectionPoolDataSource mcpds);
+
+    /**
+     * Обход чистильщика: закрывает отслужившие своё и тунеядствующие соединения,
+     * проверяет давно не проверявшиеся и открывает недостающих бездельников.
      */
-    @Override public void connectionBroken(PooledConnectionWrapper pcw) {
-        synchronized (lock) {
-            createdConnections.remove(pcw);
-            connectionAvailable = true;
-            lock.notifyAll();
+    protected void housekeep() {
+        for (PooledConnectionWrapper pcw : snapshotIdle()) {
+            if (isExpired(pcw)) {
+                if (takeIdle(pcw)) {
+                    retired.incrementAndGet();
+                    discard(pcw);
+                }
+            } else if (pcw.getIdleAge() >= cwsIdleTimeToDie) {
+                // ага, этих самых... тунеядцев™. но необходимый минимум оставляем.
+                if (getIdleConnectionsCount(pcw.getMetaConnectionPoolDataSource()) > minIdle && takeIdle(pcw)) {
+                    discard(pcw);
+                }
+            } else if (keepAlive > 0L && pcw.getValidatedAge() >= keepAlive && takeIdle(pcw)) {
+                if (pcw.validate(validationTimeoutSeconds)) {
+                    release(pcw);
+                } else {
+                    validationFailures.incrementAndGet();
+                    Log.info("Discarding stale idle connection to " + pcw.getMetaConnectionPoolDataSource().getDbUrl());
+                    discard(pcw);
+                }
+            }
         }
+        prewarm();
     }
 
-    /** Вычищатель тунеядцев™. */
+    /** Открывает соединения к базам, у которых бездельников меньше {@link #minIdle}. */
+    protected void prewarm() {
+        if (minIdle <= 0) {
+            return;
+        }
+        for (MetaConnectionPoolDataSource mcpds : dataSources) {
+            for (int missing = minIdle - getIdleConnectionsCount(mcpds); missing > 0; missing--) {
+                PooledConnectionWrapper pcw;
+                try {
+                    pcw = createIfAllowed(mcpds);
+                } catch (SQLException e) {
+                    Log.warning("Cannot prewarm connection to " + mcpds.getDbUrl() + ": ", e);
+                    break;
+                }
+                if (pcw == null) {
+                    break;
+                }
+                release(pcw);
+            }
+        }
+    }
+
+    public abstract int getOpenConnectionsCount();
+
+    public abstract int getIdleConnectionsCount();
+
+    public abstract ConnectionInfo[] getConnectionInfos();
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    /** @return время получения соединения по всем запросам, мкс */
+    public Histogram getAcquireHistogram() {
+        return acquireHistogram;
+    }
+
+    /** @return время ожидания в очереди запросов, которым не хватило соединения, мкс */
+    public Histogram getWaitHistogram() {
+        return waitHistogram;
+    }
+
+    /** @return количество запросов, не дождавшихся соединения */
+    public long getAcquireTimeoutsCount() {
+        return acquireTimeouts.get();
+    }
+
+    /** @return счётчики попаданий и промахов кэша выражений */
+    public StatementCacheStats getStatementCacheStats() {
+        return statementCacheStats;
+    }
+
+    /** @return количество соединений, не прошедших проверку */
+    public long getValidationFailuresCount() {
+        return validationFailures.get();
+    }
+
+    /** @return количество соединений, закрытых по истечении {@link #maxLifetime} */
+    public long getRetiredCount() {
+        return retired.get();
+    }
+
+    /** @return базы данных сервера */
+    public List<MetaConnectionPoolDataSource> getDataSources() {
+        return Collections.unmodifiableList(dataSources);
+    }
+
+    protected static ConnectionInfo newConnectionInfo(PooledConnectionWrapper pcw) {
+        MetaConnectionPoolDataSource ds = pcw.getMetaConnectionPoolDataSource();
+        return new ConnectionInfo(pcw.hashCode(),
+              ds.getServerName(), ds.getDbUrl(),
+              pcw.getIdleAge(), pcw.getInUseAge());
+    }
+
+    /** Вычищатель тунеядцев™ и смотритель за бездельниками. */
     private class JunkWatcher extends Thread {
 
         private JunkWatcher(String serverName) {
@@ -261,6 +506,8 @@ public class ConnectionsPool implements PooledConnectionEventListener {
         @Override
         public void run() {
             try {
+                // сразу открываем минимум соединений, чтобы не ждать их при первых запросах
+                prewarm();
                 while (!isInterrupted()) {
                     // некоторое время спим...
                     try {
@@ -269,21 +516,8 @@ public class ConnectionsPool implements PooledConnectionEventListener {
                         throw new QuitException(e);
                     }
 
-                    // затем вычищаем... ага, этих самых... тунеядцев™.
-                    synchronized (lock) {
-                        // так как соединения кладутся в idle-список в хронологическом порядке,
-                        // первое встреченное живое соединение будет значить, что за ним смотреть нечего.
-                        try {
-                            PooledConnectionWrapper pcw = idleConnections.getFirst();
-                            while (pcw.getIdleAge() >= cwsIdleTimeToDie) {
-                                closeMostIdleConnectionWrapper();
-                                connectionAvailable = true;
-                                lock.notifyAll();
-                                pcw = idleConnections.getFirst();
-                            }
-                        } catch (NoSuchElementException ignored) {
-                        }
-                    }
+                    // затем обходим бездельников.
+                    housekeep();
                 }
             } catch (QuitException ignored) {
             } catch (Throwable e) {
@@ -292,28 +526,4 @@ public class ConnectionsPool implements PooledConnectionEventListener {
         }
     }
 
-    public int getOpenConnectionsCount() {
-        synchronized (lock) { // необходимо ли здесь? ну, пусть будет, некритично.
-            return createdConnections.size();
-        }
-    }
-
-    public int getIdleConnectionsCount() {
-        synchronized (lock) {
-            return idleConnections.size();
-        }
-    }
-
-    public ConnectionInfo[] getConnectionInfos() {
-		LinkedList<ConnectionInfo> infos = new LinkedList<>();
-		synchronized (lock) {
-            for (PooledConnectionWrapper pcw : createdConnections) {
-                MetaConnectionPoolDataSource ds = pcw.getMetaConnectionPoolDataSource();
-                infos.add(new ConnectionInfo(pcw.hashCode(),
-                        ds.getServerName(), ds.getDbUrl(),
-                        pcw.getIdleAge(), pcw.getInUseAge()));
-            }
-        }
-        return infos.toArray(new ConnectionInfo[infos.size()]);
-    }
 }
@@ -1,5 +1,7 @@
 package tk.bolovsrol.db.pool;
 
+import tk.bolovsrol.db.DatabaseDialect;
+import tk.bolovsrol.db.DialectAware;
 import tk.bolovsrol.utils.Nullable;
 
 import java.sql.Array;
@@ -26,10 +28,11 @@ import java.util.concurrent.Executor;
 /**
  * Враппер коннекшна, которому можно навешивать хуки, которые будут исполнены после коммита и перед ролбеком.
  */
-public class HookConnection implements Connection {
+public class HookConnection implements Connection, DialectAware {
 
     public final Connection con;
     private boolean autoCommit;
+    private DatabaseDialect dialect = null;
     private LinkedHashSet<Runnable> commitTasks = null;
     private LinkedHashSet<Runnable> rollbackTasks = null;
 
@@ -111,6 +114,13 @@ public class HookConnection implements Connection {
         con.close();
     }
 
+    @Override public DatabaseDialect getDialect() throws SQLException {
+        if (dialect == null) {
+            dialect = DatabaseDialect.of(con);
+        }
+        return dialect;
+    }
+
     public LinkedHashSet<Runnable> getAfterCommitTasks() {
         return commitTasks;
     }
@@ -0,0 +1,82 @@
+package tk.bolovsrol.db.pool;
+
+import org.hsqldb.jdbc.pool.JDBCPooledDataSource;
+import tk.bolovsrol.utils.UnexpectedBehaviourException;
+import tk.bolovsrol.utils.properties.ReadOnlyProperties;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Генератор датасорса для встраиваемой HyperSQL (HSQLDB), работающей в том же процессе.
+ * <p>
+ * Предназначен для тестов и бенчмарков без внешнего сервера, например:
+ * <code>jdbc:hsqldb:mem:bench;user=SA;password=</code>. Параметры, как принято у HSQLDB,
+ * пишутся через точку с запятой, драйвер получает их как есть. Дополнительно понимается
+ * параметр <code>autoCommit</code>, как у других провайдеров.
+ * <p>
+ * Если в адресе не выбран режим совместимости (параметры <code>sql.syntax_*</code>),
+ * включается совместимость с MySQL (<code>sql.syntax_mys=true</code>), чтобы выражения,
+ * написанные под основную СУБД, исполнялись без изменений. Пользователь по умолчанию — <code>SA</code>
+ * с пустым паролем.
+ */
+public class HsqldbMetaDataSourceProvider implements MetaDataSourceProvider {
+    private static final String JDBC_HSQLDB_PREFIX = "jdbc:hsqldb:";
+    private static final String SYNTAX_PREFIX = "sql.syntax_";
+    private static final String MYSQL_SYNTAX = "sql.syntax_mys";
+
+    private boolean autoCommit = true;
+
+    @Override
+    public MetaConnectionPoolDataSource getMetaConnectionPoolDataSource(ReadOnlyProperties pp, String dbUrl) throws UnexpectedBehaviourException {
+        try {
+            if (!dbUrl.startsWith(JDBC_HSQLDB_PREFIX)) {
+                throw new UnexpectedBehaviourException("Not an HSQLDB url.");
+            }
+            String[] parts = dbUrl.substring(JDBC_HSQLDB_PREFIX.length()).split(";");
+            String database = parts[0];
+            if (database.isEmpty()) {
+                throw new UnexpectedBehaviourException("Database is not specified.");
+            }
+            Map<String, String> props = new LinkedHashMap<>();
+            for (int i = 1; i < parts.length; i++) {
+                int eqPos = parts[i].indexOf('=');
+                if (eqPos > 0) {
+                    props.put(parts[i].substring(0, eqPos).trim(), parts[i].substring(eqPos + 1).trim());
+                }
+            }
+
+            JDBCPooledDataSource ds = new JDBCPooledDataSource();
+            StringBuilder url = new StringBuilder(dbUrl);
+            boolean syntaxChosen = false;
+            for (String key : props.keySet()) {
+                if (key.startsWith(SYNTAX_PREFIX)) {
+                    syntaxChosen = true;
+                    break;
+                }
+            }
+            if (!syntaxChosen) {
+                url.append(';').append(MYSQL_SYNTAX).append("=true");
+            }
+            ds.setUrl(url.toString());
+            ds.setUser(props.containsKey("user") ? props.get("user") : "SA");
+            ds.setPassword(props.containsKey("password") ? props.get("password") : "");
+            if (props.containsKey("autoCommit")) {
+                autoCommit = Boolean.parseBoolean(props.get("autoCommit"));
+            }
+
+            return new MetaConnectionPoolDataSource(ds, "hsqldb:" + database, dbUrl) {
+                @Override
+                public Connection getConnection() throws SQLException, InterruptedException {
+                    Connection connection = super.getConnection();
+                    connection.setAutoCommit(autoCommit);
+                    return connection;
+                }
+            };
+        } catch (Exception e) {
+            throw new UnexpectedBehaviourException(e);
+        }
+    }
+}
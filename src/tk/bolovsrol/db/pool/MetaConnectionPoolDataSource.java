@@ -1,5 +1,7 @@
 package tk.bolovsrol.db.pool;
 
+import tk.bolovsrol.db.DatabaseDialect;
+
 import javax.sql.ConnectionPoolDataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -10,6 +12,7 @@ public class MetaConnectionPoolDataSource {
     private final String serverName;
     private final String dbUrl;
     private ConnectionsPool connectionsPool = null;
+    private volatile DatabaseDialect dialect = null;
 
     public MetaConnectionPoolDataSource(ConnectionPoolDataSource connectionPoolDataSource, String serverName, String dbUrl) {
         this.connectionPoolDataSource = connectionPoolDataSource;
@@ -33,6 +36,28 @@ public class MetaConnectionPoolDataSource {
         return dbUrl;
     }
 
+    /**
+     * Возвращает диалект СУБД. Диалект определяется по метаданным переданного соединения
+     * к этой базе один раз, дальше используется запомненный.
+     *
+     * @param con соединение к этой базе
+     * @return диалект
+     * @throws SQLException
+     */
+    public DatabaseDialect getDialect(Connection con) throws SQLException {
+        DatabaseDialect d = dialect;
+        if (d == null) {
+            d = DatabaseDialect.forProductName(con.getMetaData().getDatabaseProductName());
+            dialect = d;
+        }
+        return d;
+    }
+
+    /** @return диалект СУБД или null, если соединений к базе ещё не открывали */
+    public DatabaseDialect getDialect() {
+        return dialect;
+    }
+
     public ConnectionsPool getConnectionsPool() {
         return connectionsPool;
     }
@@ -0,0 +1,89 @@
+package tk.bolovsrol.db.pool;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Нить, ожидающая соединения в очереди пула.
+ * <p/>
+ * Пул передаёт ожидающему либо бездельничающее соединение к нужной базе,
+ * либо разрешение {@link #PERMIT} открыть новое соединение.
+ * Передача происходит ровно один раз и будит ровно одну нить.
+ */
+final class PoolWaiter {
+
+    /** Разрешение открыть новое соединение в счёт лимита пула. */
+    static final Object PERMIT = new Object();
+
+    /** Ожидающий ушёл, не дождавшись. */
+    private static final Object CANCELLED = new Object();
+
+    private final MetaConnectionPoolDataSource mcpds;
+    private final Thread thread = Thread.currentThread();
+    private final AtomicReference<Object> handoff = new AtomicReference<>();
+
+    PoolWaiter(MetaConnectionPoolDataSource mcpds) {
+        this.mcpds = mcpds;
+    }
+
+    public MetaConnectionPoolDataSource getMetaConnectionPoolDataSource() {
+        return mcpds;
+    }
+
+    /**
+     * Передаёт ожидающему соединение или разрешение и будит его.
+     *
+     * @param resource {@link PooledConnectionWrapper} или {@link #PERMIT}
+     * @return true, если ожидающий принял передачу, false, если он уже что-то получил или ушёл
+     */
+    boolean offer(Object resource) {
+        if (handoff.compareAndSet(null, resource)) {
+            LockSupport.unpark(thread);
+            return true;
+        }
+        return false;
+    }
+
+    /** @return true, если ожидающему уже что-то передали */
+    boolean isServed() {
+        Object resource = handoff.get();
+        return resource != null && resource != CANCELLED;
+    }
+
+    /**
+     * Ждёт передачи не дольше указанного времени.
+     * <p/>
+     * Если время вышло или нить прервали, а передачи ещё не было, ожидающий помечается ушедшим.
+     * Если передача уже состоялась, она возвращается, а флаг прерывания сохраняется.
+     *
+     * @param timeoutNanos время ожидания в наносекундах, 0 -- ждать бесконечно
+     * @return {@link PooledConnectionWrapper}, {@link #PERMIT} или null, если время вышло
+     * @throws InterruptedException
+     */
+    Object await(long timeoutNanos) throws InterruptedException {
+        long deadline = timeoutNanos > 0L ? System.nanoTime() + timeoutNanos : 0L;
+        Object resource;
+        while ((resource = handoff.get()) == null) {
+            if (deadline == 0L) {
+                LockSupport.park(this);
+            } else {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    if (handoff.compareAndSet(null, CANCELLED)) {
+                        return null;
+                    }
+                    continue;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            if (Thread.interrupted()) {
+                if (handoff.compareAndSet(null, CANCELLED)) {
+                    throw new InterruptedException();
+                }
+                Thread.currentThread().interrupt();
+            }
+        }
+        return resource;
+    }
+
+}
@@ -0,0 +1,275 @@
+package tk.bolovsrol.db.pool;
+
+import tk.bolovsrol.db.DatabaseDialect;
+import tk.bolovsrol.db.DialectAware;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * Соединение, выдаваемое приложению пулом.
+ * <p/>
+ * Знает свою базу данных и поэтому её {@link #getDialect() диалект}: диалект определяется
+ * один раз на {@link MetaConnectionPoolDataSource}.
+ * <p/>
+ * Если у пула включён {@link ConnectionsPool#DB_CONNECTIONS_STATEMENT_CACHE_SIZE кэш выражений},
+ * все выдачи одного физического соединения работают через одно и то же логическое соединение драйвера,
+ * поэтому подготовленные выражения переживают возврат соединения в пул.
+ * Подготовленные выражения берутся из кэша, а их {@link PreparedStatement#close()} возвращает их обратно.
+ * {@link #close()} в этом случае логическое соединение не закрывает, а откатывает незавершённую транзакцию,
+ * восстанавливает исходные настройки соединения и возвращает физическое соединение в пул.
+ * Без кэша {@link #close()} просто закрывает логическое соединение.
+ * <p/>
+ * После закрытия пользоваться этим объектом нельзя.
+ */
+final class PooledConnectionHandle implements Connection, DialectAware {
+
+    private final PooledConnectionWrapper pcw;
+    private final Connection con;
+    private final StatementCache statementCache;
+    private final List<CachedPreparedStatement> openStatements;
+    private boolean closed = false;
+
+    /**
+     * @param pcw физическое соединение
+     * @param con логическое соединение драйвера
+     * @param statementCache кэш выражений или null
+     */
+    PooledConnectionHandle(PooledConnectionWrapper pcw, Connection con, StatementCache statementCache) {
+        this.pcw = pcw;
+        this.con = con;
+        this.statementCache = statementCache;
+        this.openStatements = statementCache == null ? null : new ArrayList<>(2);
+    }
+
+    private Connection con() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection is closed.");
+        }
+        return con;
+    }
+
+    private PreparedStatement prepare(StatementCache.Key key, PreparedStatement ps) {
+        CachedPreparedStatement cps = new CachedPreparedStatement(this, key, ps);
+        openStatements.add(cps);
+        return cps;
+    }
+
+    /** Закрытое приложением выражение возвращается в кэш, если соединение ещё в деле. */
+    void statementClosed(CachedPreparedStatement cps, StatementCache.Key key, PreparedStatement ps) throws SQLException {
+        openStatements.remove(cps);
+        if (closed) {
+            ps.close();
+        } else {
+            statementCache.put(key, ps);
+        }
+    }
+
+    /** Выражение не удалось вернуть в кэш, оно закрыто насовсем. */
+    void statementDiscarded(CachedPreparedStatement cps) {
+        openStatements.remove(cps);
+    }
+
+    public PooledConnectionWrapper getPooledConnectionWrapper() {
+        return pcw;
+    }
+
+    @Override public DatabaseDialect getDialect() throws SQLException {
+        return pcw.getMetaConnectionPoolDataSource().getDialect(con());
+    }
+
+    @Override public void close() throws SQLException {
+        if (!closed) {
+            if (statementCache == null) {
+                closed = true;
+                con.close();
+            } else {
+                // как и настоящее соединение, закрываем незакрытые приложением выражения
+                for (CachedPreparedStatement cps : openStatements.toArray(new CachedPreparedStatement[openStatements.size()])) {
+                    cps.close();
+                }
+                closed = true;
+                // логическое соединение не закрывается, поэтому откат и сброс настроек, которые сделал бы драйвер, делаем сами
+                if (pcw.resetLogicalConnection()) {
+                    pcw.handleClosed();
+                }
+            }
+        }
+    }
+
+    @Override public boolean isClosed() throws SQLException {
+        return closed || con.isClosed();
+    }
+
+    @Override public PreparedStatement prepareStatement(String sql) throws SQLException {
+        Connection c = con();
+        if (statementCache == null) {
+            return c.prepareStatement(sql);
+        }
+        StatementCache.Key key = StatementCache.Key.of(sql);
+        PreparedStatement ps = statementCache.take(key);
+        return prepare(key, ps != null ? ps : c.prepareStatement(sql));
+    }
+
+    @Override public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        Connection c = con();
+        if (statementCache == null) {
+            return c.prepareStatement(sql, resultSetType, resultSetConcurrency);
+        }
+        StatementCache.Key key = StatementCache.Key.of(sql, resultSetType, resultSetConcurrency);
+        PreparedStatement ps = statementCache.take(key);
+        return prepare(key, ps != null ? ps : c.prepareStatement(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        Connection c = con();
+        if (statementCache == null) {
+            return c.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+        }
+        StatementCache.Key key = StatementCache.Key.of(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+        PreparedStatement ps = statementCache.take(key);
+        return prepare(key, ps != null ? ps : c.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        Connection c = con();
+        if (statementCache == null) {
+            return c.prepareStatement(sql, autoGeneratedKeys);
+        }
+        StatementCache.Key key = StatementCache.Key.of(sql, autoGeneratedKeys);
+        PreparedStatement ps = statementCache.take(key);
+        return prepare(key, ps != null ? ps : c.prepareStatement(sql, autoGeneratedKeys));
+    }
+
+    @Override public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        Connection c = con();
+        if (statementCache == null) {
+            return c.prepareStatement(sql, columnIndexes);
+        }
+        StatementCache.Key key = StatementCache.Key.of(sql, columnIndexes);
+        PreparedStatement ps = statementCache.take(key);
+        return prepare(key, ps != null ? ps : c.prepareStatement(sql, columnIndexes));
+    }
+
+    @Override public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        Connection c = con();
+        if (statementCache == null) {
+            return c.prepareStatement(sql, columnNames);
+        }
+        StatementCache.Key key = StatementCache.Key.of(sql, columnNames);
+        PreparedStatement ps = statementCache.take(key);
+        return prepare(key, ps != null ? ps : c.prepareStatement(sql, columnNames));
+    }
+
+    @Override public void setClientInfo(String name, String value) throws SQLClientInfoException {con.setClientInfo(name, value);}
+
+    @Override public void setClientInfo(Properties properties) throws SQLClientInfoException {con.setClientInfo(properties);}
+
+    // Дальше делегации коннекшну
+
+    @Override public Statement createStatement() throws SQLException {return con().createStatement();}
+
+    @Override public CallableStatement prepareCall(String sql) throws SQLException {return con().prepareCall(sql);}
+
+    @Override public String nativeSQL(String sql) throws SQLException {return con().nativeSQL(sql);}
+
+    @Override public void setAutoCommit(boolean autoCommit) throws SQLException {con().setAutoCommit(autoCommit);}
+
+    @Override public boolean getAutoCommit() throws SQLException {return con().getAutoCommit();}
+
+    @Override public void commit() throws SQLException {con().commit();}
+
+    @Override public void rollback() throws SQLException {con().rollback();}
+
+    @Override public DatabaseMetaData getMetaData() throws SQLException {return con().getMetaData();}
+
+    @Override public void setReadOnly(boolean readOnly) throws SQLException {con().setReadOnly(readOnly);}
+
+    @Override public boolean isReadOnly() throws SQLException {return con().isReadOnly();}
+
+    @Override public void setCatalog(String catalog) throws SQLException {con().setCatalog(catalog);}
+
+    @Override public String getCatalog() throws SQLException {return con().getCatalog();}
+
+    @Override public void setTransactionIsolation(int level) throws SQLException {con().setTransactionIsolation(level);}
+
+    @Override public int getTransactionIsolation() throws SQLException {return con().getTransactionIsolation();}
+
+    @Override public SQLWarning getWarnings() throws SQLException {return con().getWarnings();}
+
+    @Override public void clearWarnings() throws SQLException {con().clearWarnings();}
+
+    @Override public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {return con().createStatement(resultSetType, resultSetConcurrency);}
+
+    @Override public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {return con().prepareCall(sql, resultSetType, resultSetConcurrency);}
+
+    @Override public Map<String, Class<?>> getTypeMap() throws SQLException {return con().getTypeMap();}
+
+    @Override public void setTypeMap(Map<String, Class<?>> map) throws SQLException {con().setTypeMap(map);}
+
+    @Override public void setHoldability(int holdability) throws SQLException {con().setHoldability(holdability);}
+
+    @Override public int getHoldability() throws SQLException {return con().getHoldability();}
+
+    @Override public Savepoint setSavepoint() throws SQLException {return con().setSavepoint();}
+
+    @Override public Savepoint setSavepoint(String name) throws SQLException {return con().setSavepoint(name);}
+
+    @Override public void rollback(Savepoint savepoint) throws SQLException {con().rollback(savepoint);}
+
+    @Override public void releaseSavepoint(Savepoint savepoint) throws SQLException {con().releaseSavepoint(savepoint);}
+
+    @Override public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {return con().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);}
+
+    @Override public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {return con().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);}
+
+    @Override public Clob createClob() throws SQLException {return con().createClob();}
+
+    @Override public Blob createBlob() throws SQLException {return con().createBlob();}
+
+    @Override public NClob createNClob() throws SQLException {return con().createNClob();}
+
+    @Override public SQLXML createSQLXML() throws SQLException {return con().createSQLXML();}
+
+    @Override public boolean isValid(int timeout) throws SQLException {return con().isValid(timeout);}
+
+    @Override public String getClientInfo(String name) throws SQLException {return con().getClientInfo(name);}
+
+    @Override public Properties getClientInfo() throws SQLException {return con().getClientInfo();}
+
+    @Override public Array createArrayOf(String typeName, Object[] elements) throws SQLException {return con().createArrayOf(typeName, elements);}
+
+    @Override public Struct createStruct(String typeName, Object[] attributes) throws SQLException {return con().createStruct(typeName, attributes);}
+
+    @Override public void setSchema(String schema) throws SQLException {con().setSchema(schema);}
+
+    @Override public String getSchema() throws SQLException {return con().getSchema();}
+
+    @Override public void abort(Executor executor) throws SQLException {con().abort(executor);}
+
+    @Override public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {con().setNetworkTimeout(executor, milliseconds);}
+
+    @Override public int getNetworkTimeout() throws SQLException {return con().getNetworkTimeout();}
+
+    @Override public <T> T unwrap(Class<T> iface) throws SQLException {return con().unwrap(iface);}
+
+    @Override public boolean isWrapperFor(Class<?> iface) throws SQLException {return con().isWrapperFor(iface);}
+}
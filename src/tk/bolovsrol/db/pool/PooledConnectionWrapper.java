@@ -1,5 +1,6 @@
 package tk.bolovsrol.db.pool;
 
+import tk.bolovsrol.utils.Spell;
 import tk.bolovsrol.utils.log.Log;
 
 import javax.sql.ConnectionEvent;
@@ -7,6 +8,7 @@ import javax.sql.ConnectionEventListener;
 import javax.sql.PooledConnection;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Objects;
 
 /**
  * Враппер вокруг PooledConnection, отслеживающий использование соединения.
@@ -19,10 +21,39 @@ public class PooledConnectionWrapper implements ConnectionEventListener {
     /** собственно физическое соединение */
     private final PooledConnection pooledConnection;
 
-    private boolean idle = true;
+    private volatile boolean idle = true;
 
     /** время, когда соединение было крайний раз в использовании. для вычисления бездельного возраста */
-    private long lastAccessed;
+    private volatile long lastAccessed;
+
+    /** время открытия физического соединения */
+    private final long created;
+
+    /** время, когда соединение крайний раз оказалось живым */
+    private volatile long lastValidated;
+
+    /** идёт проверка соединения, его события пулу не передаём */
+    private volatile boolean validating = false;
+
+    /** проверяемое соединение сломалось */
+    private volatile boolean broken = false;
+
+    /** физическое соединение закрыто */
+    private volatile boolean closed = false;
+
+    /** кэш подготовленных выражений, null, если кэширование выключено */
+    private final StatementCache statementCache;
+
+    /** логическое соединение, с которым работает кэш выражений */
+    private Connection logicalConnection = null;
+
+    /** состояние логического соединения при первой выдаче, к нему оно приводится при каждом возврате */
+    private boolean initialAutoCommit;
+    private boolean initialReadOnly;
+    private int initialTransactionIsolation;
+    private String initialCatalog;
+    /** null, если драйвер схем не поддерживает */
+    private String initialSchema;
 
     /** родительский пул, которому мы будем сообщать о закрытии соединений */
     private final PooledConnectionEventListener cp;
@@ -38,10 +69,26 @@ public class PooledConnectionWrapper implements ConnectionEventListener {
      * @throws SQLException
      */
     public PooledConnectionWrapper(PooledConnectionEventListener cp, MetaConnectionPoolDataSource ds) throws SQLException {
+        this(cp, ds, null);
+    }
+
+    /**
+     * Создаём пулд-коннекшн с кэшем подготовленных выражений и регистрируем себя его слушателем.
+     *
+     * @param cp
+     * @param ds
+     * @param statementCache кэш выражений или null
+     * @throws SQLException
+     */
+    PooledConnectionWrapper(PooledConnectionEventListener cp, MetaConnectionPoolDataSource ds, StatementCache statementCache) throws SQLException {
         this.cp = cp;
         this.ds = ds;
+        this.statementCache = statementCache;
         pooledConnection = ds.getConnectionPoolDataSource().getPooledConnection();
         pooledConnection.addConnectionEventListener(this);
+        created = System.currentTimeMillis();
+        lastAccessed = created;
+        lastValidated = created;
     }
 
     /**
@@ -51,6 +98,14 @@ public class PooledConnectionWrapper implements ConnectionEventListener {
      * @param event
      */
     @Override public void connectionClosed(ConnectionEvent event) {
+        if (validating || closed) {
+            return;
+        }
+        handleClosed();
+    }
+
+    /** Приложение вернуло соединение. */
+    void handleClosed() {
         idle = true;
         lastAccessed = System.currentTimeMillis();
         cp.connectionClosed(this);
@@ -64,7 +119,21 @@ public class PooledConnectionWrapper implements ConnectionEventListener {
      */
     @Override public void connectionErrorOccurred(ConnectionEvent event) {
         //Log.warning("Connection error reported! " + Log.getSpell(event.getSQLException()));
+        if (validating) {
+            // пул сам закроет соединение, когда узнает, что проверка не прошла
+            broken = true;
+            return;
+        }
+        discardBroken();
+    }
+
+    /** Закрывает сломанное физическое соединение и сообщает пулу, что его больше нет. */
+    private void discardBroken() {
+        closed = true;
         pooledConnection.removeConnectionEventListener(this);
+        if (statementCache != null) {
+            statementCache.clear();
+        }
         try {
             pooledConnection.close();
         } catch (SQLException e) {
@@ -72,6 +141,45 @@ public class PooledConnectionWrapper implements ConnectionEventListener {
         cp.connectionBroken(this);
     }
 
+    /**
+     * Приводит логическое соединение кэша выражений, которое при возврате не закрывается, в состояние его первой выдачи:
+     * откатывает незавершённую транзакцию и восстанавливает автокоммит, режим только для чтения, уровень изоляции,
+     * каталог и схему, чтобы следующему получателю не досталось ничего от предыдущего.
+     * <p>
+     * Если привести соединение не удалось, физическое соединение закрывается, а пул извещается о его поломке.
+     *
+     * @return true, если соединение приведено в порядок и его можно вернуть в пул
+     */
+    boolean resetLogicalConnection() {
+        Connection c = logicalConnection;
+        try {
+            if (!c.getAutoCommit()) {
+                c.rollback();
+            }
+            if (c.getAutoCommit() != initialAutoCommit) {
+                c.setAutoCommit(initialAutoCommit);
+            }
+            if (c.isReadOnly() != initialReadOnly) {
+                c.setReadOnly(initialReadOnly);
+            }
+            if (c.getTransactionIsolation() != initialTransactionIsolation) {
+                c.setTransactionIsolation(initialTransactionIsolation);
+            }
+            if (initialCatalog != null && !Objects.equals(c.getCatalog(), initialCatalog)) {
+                c.setCatalog(initialCatalog);
+            }
+            if (initialSchema != null && !Objects.equals(c.getSchema(), initialSchema)) {
+                c.setSchema(initialSchema);
+            }
+            c.clearWarnings();
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            Log.warning("Cannot reset pooled connection, discarding it: " + Spell.get(e));
+            discardBroken();
+            return false;
+        }
+    }
+
     /**
      * Возвращает соединение, которое может быть использовано приложением.
      *
@@ -83,12 +191,87 @@ public class PooledConnectionWrapper implements ConnectionEventListener {
 //            Log.trace("Opening connection for " + Log.getSpell(calledBy) + "...");
             idle = false;
             lastAccessed = System.currentTimeMillis();
-            return pooledConnection.getConnection();
+            if (statementCache == null) {
+                return new PooledConnectionHandle(this, pooledConnection.getConnection(), null);
+            }
+            if (logicalConnection == null) {
+                Connection c = pooledConnection.getConnection();
+                initialAutoCommit = c.getAutoCommit();
+                initialReadOnly = c.isReadOnly();
+                initialTransactionIsolation = c.getTransactionIsolation();
+                initialCatalog = c.getCatalog();
+                try {
+                    initialSchema = c.getSchema();
+                } catch (SQLException | AbstractMethodError e) {
+                    // драйвер до JDBC 4.1 схем не знает
+                    initialSchema = null;
+                }
+                logicalConnection = c;
+            }
+            return new PooledConnectionHandle(this, logicalConnection, statementCache);
         } else {
             throw new IllegalStateException("Connection already in use.");
         }
     }
 
+    /**
+     * Проверяет бездельничающее соединение методом {@link Connection#isValid(int)}.
+     * <p/>
+     * События соединения во время проверки пулу не передаются.
+     * Если соединение живо, запоминается время проверки.
+     *
+     * @param timeoutSeconds сколько ждать ответа сервера, с
+     * @return true, если соединение живо
+     */
+    public boolean validate(int timeoutSeconds) {
+        if (!idle) {
+            throw new IllegalStateException("Connection is in use.");
+        }
+        boolean valid;
+        validating = true;
+        try {
+            if (logicalConnection != null) {
+                // новое логическое соединение закрыло бы это вместе с кэшем выражений
+                valid = logicalConnection.isValid(timeoutSeconds);
+            } else {
+                Connection con = pooledConnection.getConnection();
+                try {
+                    valid = con.isValid(timeoutSeconds);
+                } finally {
+                    con.close();
+                }
+            }
+        } catch (SQLException e) {
+            valid = false;
+        } finally {
+            validating = false;
+        }
+        if (valid && !broken) {
+            lastValidated = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Возвращает время, прошедшее с открытия физического соединения.
+     *
+     * @return время в миллисекундах
+     */
+    public long getAge() {
+        return System.currentTimeMillis() - created;
+    }
+
+    /**
+     * Возвращает время, прошедшее с тех пор, как соединение крайний раз оказалось живым:
+     * с открытия, с удачной проверки или с возврата в пул, если его использовали позже.
+     *
+     * @return время в миллисекундах
+     */
+    public long getValidatedAge() {
+        return System.currentTimeMillis() - Math.max(lastValidated, lastAccessed);
+    }
+
     /**
      * Возвращает время, которое это соединение провело в праздности и бездеятельности.
      *
@@ -107,9 +290,16 @@ public class PooledConnectionWrapper implements ConnectionEventListener {
         return idle ? 0L : System.currentTimeMillis() - lastAccessed;
     }
 
-    /** Принудительно закрываем соединение. */
+    /** Принудительно закрываем соединение. Повторное закрытие ничего не делает. */
     public void close() {
         if (idle) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (statementCache != null) {
+                statementCache.clear();
+            }
             try {
                 pooledConnection.close();
             } catch (SQLException e) {
@@ -120,6 +310,11 @@ public class PooledConnectionWrapper implements ConnectionEventListener {
         }
     }
 
+    /** @return количество выражений в кэше этого соединения */
+    public int getCachedStatementsCount() {
+        return statementCache == null ? 0 : statementCache.size();
+    }
+
     public MetaConnectionPoolDataSource getMetaConnectionPoolDataSource() {
         return ds;
     }
@@ -0,0 +1,171 @@
+package tk.bolovsrol.db.pool;
+
+import tk.bolovsrol.db.JDBCUtils;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Кэш подготовленных выражений одного физического соединения.
+ * <p/>
+ * В кэше лежат только свободные выражения. Взятое выражение из кэша изымается,
+ * закрытое приложением -- возвращается. Если выражение с таким же ключом уже лежит в кэше
+ * или кэш переполнен, лишнее выражение закрывается, вытесняется давнее всех использовавшееся.
+ * <p/>
+ * Кэш принадлежит соединению и используется одной нитью, синхронизация не нужна.
+ */
+final class StatementCache {
+
+    private final int maxSize;
+    private final StatementCacheStats stats;
+    private final LinkedHashMap<Key, PreparedStatement> statements;
+
+    StatementCache(int maxSize, StatementCacheStats stats) {
+        this.maxSize = maxSize;
+        this.stats = stats;
+        this.statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() > StatementCache.this.maxSize) {
+                    stats.evicted();
+                    JDBCUtils.close(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Изымает выражение из кэша.
+     *
+     * @param key ключ
+     * @return выражение или null, если его в кэше нет
+     */
+    PreparedStatement take(Key key) {
+        PreparedStatement ps = statements.remove(key);
+        if (ps == null) {
+            stats.missed();
+        } else {
+            stats.hit();
+        }
+        return ps;
+    }
+
+    /**
+     * Возвращает выражение в кэш. Если выражение с таким ключом в кэше уже есть, закрывает возвращаемое.
+     *
+     * @param key ключ
+     * @param ps выражение
+     */
+    void put(Key key, PreparedStatement ps) {
+        if (statements.containsKey(key)) {
+            JDBCUtils.close(ps);
+        } else {
+            statements.put(key, ps);
+        }
+    }
+
+    /** Закрывает и выкидывает все выражения. */
+    void clear() {
+        for (Iterator<PreparedStatement> it = statements.values().iterator(); it.hasNext(); ) {
+            JDBCUtils.close(it.next());
+            it.remove();
+        }
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    /**
+     * Ключ выражения: SQL, тип и параллелизм результата, удержание курсора
+     * и способ получения сгенерированных ключей.
+     */
+    static final class Key {
+        private final String sql;
+        private final int resultSetType;
+        private final int resultSetConcurrency;
+        private final int resultSetHoldability;
+        private final int autoGeneratedKeys;
+        private final int[] columnIndexes;
+        private final String[] columnNames;
+        private final int hash;
+
+        private Key(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability, int autoGeneratedKeys, int[] columnIndexes, String[] columnNames) {
+            this.sql = sql;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+            this.resultSetHoldability = resultSetHoldability;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+            this.columnIndexes = columnIndexes;
+            this.columnNames = columnNames;
+            int h = sql.hashCode();
+            h = 31 * h + resultSetType;
+            h = 31 * h + resultSetConcurrency;
+            h = 31 * h + resultSetHoldability;
+            h = 31 * h + autoGeneratedKeys;
+            h = 31 * h + Arrays.hashCode(columnIndexes);
+            h = 31 * h + Arrays.hashCode(columnNames);
+            this.hash = h;
+        }
+
+        /** Удержание курсора не задано, используется умолчание соединения. */
+        private static final int DEFAULT_HOLDABILITY = 0;
+
+        static Key of(String sql) {
+            return new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, DEFAULT_HOLDABILITY, Statement.NO_GENERATED_KEYS, null, null);
+        }
+
+        static Key of(String sql, int resultSetType, int resultSetConcurrency) {
+            return new Key(sql, resultSetType, resultSetConcurrency, DEFAULT_HOLDABILITY, Statement.NO_GENERATED_KEYS, null, null);
+        }
+
+        static Key of(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
+            return new Key(sql, resultSetType, resultSetConcurrency, resultSetHoldability, Statement.NO_GENERATED_KEYS, null, null);
+        }
+
+        static Key of(String sql, int autoGeneratedKeys) {
+            return new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, DEFAULT_HOLDABILITY, autoGeneratedKeys, null, null);
+        }
+
+        static Key of(String sql, int[] columnIndexes) {
+            return new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, DEFAULT_HOLDABILITY, Statement.RETURN_GENERATED_KEYS, columnIndexes.clone(), null);
+        }
+
+        static Key of(String sql, String[] columnNames) {
+            return new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, DEFAULT_HOLDABILITY, Statement.RETURN_GENERATED_KEYS, null, columnNames.clone());
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash
+                  && resultSetType == key.resultSetType
+                  && resultSetConcurrency == key.resultSetConcurrency
+                  && resultSetHoldability == key.resultSetHoldability
+                  && autoGeneratedKeys == key.autoGeneratedKeys
+                  && Objects.equals(sql, key.sql)
+                  && Arrays.equals(columnIndexes, key.columnIndexes)
+                  && Arrays.equals(columnNames, key.columnNames);
+        }
+
+        @Override public int hashCode() {
+            return hash;
+        }
+
+        @Override public String toString() {
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package tk.bolovsrol.db.pool;
+
+import tk.bolovsrol.utils.StringDumpBuilder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Счётчики кэша подготовленных выражений пула, общие для всех его соединений. */
+public class StatementCacheStats {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    void hit() {
+        hits.increment();
+    }
+
+    void missed() {
+        misses.increment();
+    }
+
+    void evicted() {
+        evictions.increment();
+    }
+
+    /** @return сколько раз выражение нашлось в кэше */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** @return сколько раз выражение пришлось готовить заново */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** @return сколько выражений вытеснено из переполненного кэша */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public String toString() {
+        return new StringDumpBuilder()
+                .append("hits", getHits())
+                .append("misses", getMisses())
+                .append("evictions", getEvictions())
+                .toString();
+    }
+}
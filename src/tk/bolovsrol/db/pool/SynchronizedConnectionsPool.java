@@ -0,0 +1,325 @@
+package tk.bolovsrol.db.pool;
+
+import tk.bolovsrol.utils.log.Log;
+import tk.bolovsrol.utils.properties.ReadOnlyProperties;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Пул соединений с одним общим монитором.
+ * <p/>
+ * Здесь хранятся бездельничающие соединения
+ * раздельно по базам данных (для повторного использования)
+ * и большой кучей (для воспроизведения).
+ *
+ * @see ConnectionsPool
+ */
+public class SynchronizedConnectionsPool extends ConnectionsPool {
+
+    /** Бездельничающие соединения (PooledConnectionWrapper), разложенные по именам баз данных. */
+    private final Map<MetaConnectionPoolDataSource, LinkedList<PooledConnectionWrapper>> dbBindConnections
+		= new HashMap<>();
+
+    /**
+     * Бездельничающие соединения, разложенные в хронологическом порядке: сверху наиболее
+     * давно бездельничающие.
+     */
+	private final LinkedList<PooledConnectionWrapper> idleConnections = new LinkedList<>();
+
+    /** Все созданные (открытые) соединения. Для статистики или типа того. */
+	private final Collection<PooledConnectionWrapper> createdConnections = new LinkedList<>();
+
+    /** Синхронизатор доступа. */
+    private final Object lock = new Object();
+
+    /** Очередь ожидающих соединения нитей. */
+    private final ArrayDeque<PoolWaiter> waiters = new ArrayDeque<>();
+
+    /** Разрешения открыть новое соединение, переданные ожидающим, но ещё не использованные. */
+    private int reservedPermits = 0;
+
+    /**
+     * Создаём инстанцию пула для сервера баз данных.
+     *
+     * @param pp
+     * @param serverName
+     */
+    public SynchronizedConnectionsPool(ReadOnlyProperties pp, String serverName) {
+        super(pp, serverName);
+    }
+
+    /**
+     * Получает свободный ConnectionWrapper, из которого можно вытянуть
+     * Connection для использования приложением.
+     *
+     * @param mcpds метадатасорс базы данных, к которой нужно прицепиться
+     * @return
+     * @throws SQLException
+     * @throws InterruptedException
+     */
+    @Override protected PooledConnectionWrapper acquire(MetaConnectionPoolDataSource mcpds) throws SQLException, InterruptedException {
+        //Log.trace("Retrieving connection to " + Log.getSpell(dbName) + " for class " + calledBy.getName() + "...");
+        PoolWaiter waiter;
+        synchronized (lock) {
+            // вперёд очереди не лезем
+            if (waiters.isEmpty()) {
+                Object resource = obtainResource(mcpds);
+                if (resource != null) {
+                    return resource == PoolWaiter.PERMIT ? createReservedConnectionWrapper(mcpds) : (PooledConnectionWrapper) resource;
+                }
+            }
+
+            // а бездельничающих соединений нет -- ждём их появления и ругаемся об этом,
+            // так как это хоть и не ошибка, но ситуация, безусловно, нехорошая
+            Log.warning("Connections pool size has reached max connections limit (" + maxConnections + "). Waiting for a connection to free.");
+            waiter = new PoolWaiter(mcpds);
+            waiters.addLast(waiter);
+        }
+        Object resource = await(waiter);
+        if (resource == PoolWaiter.PERMIT) {
+            synchronized (lock) {
+                return createReservedConnectionWrapper(mcpds);
+            }
+        } else {
+            return (PooledConnectionWrapper) resource;
+        }
+    }
+
+    @Override protected void cancelled(PoolWaiter waiter) {
+        synchronized (lock) {
+            waiters.remove(waiter);
+        }
+    }
+
+    /**
+     * Добывает соединение к базе или разрешение открыть новое.
+     * <p/>
+     * Метод нужно вызывать в синхронизированном контексте!
+     *
+     * @param mcpds метадатасорс базы данных, к которой нужно прицепиться
+     * @return {@link PooledConnectionWrapper}, {@link PoolWaiter#PERMIT} или null, если добыть ничего не удалось
+     */
+    private Object obtainResource(MetaConnectionPoolDataSource mcpds) {
+        // сначала достаём существующее соединение.
+        PooledConnectionWrapper pcw = pickExistingConnectionWrapper(mcpds);
+        if (pcw != null) {
+            return pcw;
+        }
+
+        // а свободных открытых соединений нет. создадим новое?
+        if (maxConnections == UNLIMITED_CONNECTIONS || createdConnections.size() + reservedPermits < maxConnections) {
+            // создавать новое соединение можно
+            reservedPermits++;
+            return PoolWaiter.PERMIT;
+        }
+
+        // больше соединений создавать нельзя. позаимствуем бездельнчиающее соединение для другой базы
+        if (!idleConnections.isEmpty()) {
+            closeMostIdleConnectionWrapper();
+            reservedPermits++;
+            return PoolWaiter.PERMIT;
+        }
+
+        return null;
+    }
+
+    /**
+     * Раздаёт доступные соединения и разрешения ожидающим строго в порядке очереди,
+     * будит ровно по одной нити на каждое соединение.
+     * <p/>
+     * Метод нужно вызывать в синхронизированном контексте!
+     */
+    private void dispatch() {
+        PoolWaiter waiter;
+        while ((waiter = waiters.peekFirst()) != null) {
+            Object resource = obtainResource(waiter.getMetaConnectionPoolDataSource());
+            if (resource == null) {
+                return;
+            }
+            waiters.pollFirst();
+            if (!waiter.offer(resource)) {
+                // ожидающий ушёл, не дождавшись
+                if (resource == PoolWaiter.PERMIT) {
+                    reservedPermits--;
+                } else {
+                    putConnectionWrapper((PooledConnectionWrapper) resource);
+                }
+            }
+        }
+    }
+
+    /**
+     * Создаёт новое соединение в счёт ранее зарезервированного разрешения.
+     * <p/>
+     * Метод нужно вызывать в синхронизированном контексте!
+     *
+     * @param mcpds метадатасорс, для которого нужно получить соединение
+     * @return
+     * @throws SQLException
+     */
+    private PooledConnectionWrapper createReservedConnectionWrapper(MetaConnectionPoolDataSource mcpds) throws SQLException {
+        reservedPermits--;
+        try {
+            return createConnectionWrapper(mcpds);
+        } catch (SQLException | RuntimeException e) {
+            dispatch();
+            throw e;
+        }
+    }
+
+    /**
+     * Создаёт новое соединение.
+     * <p/>
+     * Метод нужно вызывать в синхронизированном контексте!
+     *
+     * @param mcpds метадатасорс, для которого нужно получить соединение
+     * @return
+     * @throws SQLException
+     */
+    private PooledConnectionWrapper createConnectionWrapper(MetaConnectionPoolDataSource mcpds) throws SQLException {
+        PooledConnectionWrapper pcw = newConnectionWrapper(mcpds);
+        createdConnections.add(pcw);
+        return pcw;
+    }
+
+    /**
+     * Закрывает самое старое соединение
+     * <p/>
+     * Метод нужно вызывать в синхронизированном контексте!
+     */
+    private void closeMostIdleConnectionWrapper() {
+        // закроем соединение к самой старой базе
+        PooledConnectionWrapper pcw = idleConnections.removeFirst();
+        dbBindConnections.get(pcw.getMetaConnectionPoolDataSource()).remove(pcw);
+        pcw.close();
+        createdConnections.remove(pcw);
+    }
+
+    /**
+     * Кладёт соединение в пул для повторного использования.
+     * <p/>
+     * Метод нужно вызывать в синхронизированном контексте!
+     *
+     * @param pcw
+     */
+    private void putConnectionWrapper(PooledConnectionWrapper pcw) {
+        MetaConnectionPoolDataSource mcpds = pcw.getMetaConnectionPoolDataSource();
+        LinkedList<PooledConnectionWrapper> cws = dbBindConnections.get(mcpds);
+        if (cws == null) {
+			cws = new LinkedList<>();
+			dbBindConnections.put(mcpds, cws);
+        }
+        cws.addLast(pcw);
+        idleConnections.addLast(pcw);
+    }
+
+    /**
+     * Возвращает доступное открытое бездельничающее соединение для повторного использования.
+     * Если таких нету, то возвращает null.
+     * <p/>
+     * Метод нужно вызывать в синхронизированном контексте!
+     *
+     * @param mcpds
+     * @return соединение
+     */
+    private PooledConnectionWrapper pickExistingConnectionWrapper(MetaConnectionPoolDataSource mcpds) {
+        LinkedList<PooledConnectionWrapper> cws = dbBindConnections.get(mcpds);
+        if (cws == null || cws.isEmpty()) {
+            return null;
+        } else {
+            PooledConnectionWrapper pcw = cws.removeLast();
+            idleConnections.remove(pcw);
+            return pcw;
+        }
+    }
+
+    @Override protected void release(PooledConnectionWrapper pcw) {
+        synchronized (lock) {
+            putConnectionWrapper(pcw);
+            dispatch();
+        }
+    }
+
+    @Override protected void discard(PooledConnectionWrapper pcw) {
+        synchronized (lock) {
+            pcw.close();
+            if (createdConnections.remove(pcw)) {
+                dispatch();
+            }
+        }
+    }
+
+    @Override protected boolean takeIdle(PooledConnectionWrapper pcw) {
+        synchronized (lock) {
+            LinkedList<PooledConnectionWrapper> cws = dbBindConnections.get(pcw.getMetaConnectionPoolDataSource());
+            if (cws != null && cws.remove(pcw)) {
+                idleConnections.remove(pcw);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    @Override protected List<PooledConnectionWrapper> snapshotIdle() {
+        synchronized (lock) {
+            return new ArrayList<>(idleConnections);
+        }
+    }
+
+    @Override protected PooledConnectionWrapper createIfAllowed(MetaConnectionPoolDataSource mcpds) throws SQLException {
+        synchronized (lock) {
+            if (waiters.isEmpty() && (maxConnections == UNLIMITED_CONNECTIONS || createdConnections.size() + reservedPermits < maxConnections)) {
+                return createConnectionWrapper(mcpds);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * КоннекшнВраппер сообщает, что его соединение сдохло, и на него можно больше не расчитывать.
+     *
+     * @param pcw
+     */
+    @Override public void connectionBroken(PooledConnectionWrapper pcw) {
+        synchronized (lock) {
+            createdConnections.remove(pcw);
+            dispatch();
+        }
+    }
+
+    @Override public int getOpenConnectionsCount() {
+        synchronized (lock) { // необходимо ли здесь? ну, пусть будет, некритично.
+            return createdConnections.size();
+        }
+    }
+
+    @Override public int getIdleConnectionsCount() {
+        synchronized (lock) {
+            return idleConnections.size();
+        }
+    }
+
+    @Override public int getIdleConnectionsCount(MetaConnectionPoolDataSource mcpds) {
+        synchronized (lock) {
+            LinkedList<PooledConnectionWrapper> cws = dbBindConnections.get(mcpds);
+            return cws == null ? 0 : cws.size();
+        }
+    }
+
+    @Override public ConnectionInfo[] getConnectionInfos() {
+		LinkedList<ConnectionInfo> infos = new LinkedList<>();
+		synchronized (lock) {
+            for (PooledConnectionWrapper pcw : createdConnections) {
+                infos.add(newConnectionInfo(pcw));
+            }
+        }
+        return infos.toArray(new ConnectionInfo[infos.size()]);
+    }
+}
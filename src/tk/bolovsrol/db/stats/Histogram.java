@@ -0,0 +1,234 @@
+package tk.bolovsrol.db.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Потокобезопасная гистограмма неотрицательных величин (обычно длительностей) с логарифмическими корзинами.
+ * <p/>
+ * Каждый двоичный порядок делится на {@link #SUB_BUCKETS_HALF} равных корзин,
+ * так что относительная погрешность процентилей не превышает 1/{@link #SUB_BUCKETS_HALF} (~3%)
+ * во всём диапазоне long, а память постоянна. Значения меньше {@link #SUB_BUCKETS} хранятся точно.
+ * <p/>
+ * Запись не блокирует и не создаёт мусора. Единицы измерения гистограмма не знает,
+ * их выбирает тот, кто пишет.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKETS_HALF = SUB_BUCKETS >> 1;
+    private static final int BUCKETS = indexOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return (shift << (SUB_BUCKET_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    /** Наибольшее значение, попадающее в корзину. */
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >> (SUB_BUCKET_BITS - 1)) - 1;
+        long mantissa = (index & (SUB_BUCKETS_HALF - 1)) + SUB_BUCKETS_HALF;
+        return ((mantissa + 1L) << shift) - 1L;
+    }
+
+    /**
+     * Записывает значение. Отрицательные значения считаются нулём.
+     *
+     * @param value значение
+     */
+    public void record(long value) {
+        if (value < 0L) {
+            value = 0L;
+        }
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long m;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+            // повторяем
+        }
+    }
+
+    /**
+     * Добавляет к этой гистограмме все значения другой.
+     *
+     * @param other гистограмма
+     */
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0L) {
+                counts.addAndGet(i, c);
+            }
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        long otherMax = other.max.get();
+        long m;
+        while (otherMax > (m = max.get()) && !max.compareAndSet(m, otherMax)) {
+            // повторяем
+        }
+    }
+
+    /**
+     * Добавляет к этой гистограмме все значения снимка.
+     *
+     * @param snapshot снимок
+     */
+    public void add(Snapshot snapshot) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = snapshot.counts[i];
+            if (c != 0L) {
+                counts.addAndGet(i, c);
+            }
+        }
+        count.addAndGet(snapshot.count);
+        sum.addAndGet(snapshot.sum);
+        long m;
+        while (snapshot.max > (m = max.get()) && !max.compareAndSet(m, snapshot.max)) {
+            // повторяем
+        }
+    }
+
+    /** Очищает гистограмму. Записи, сделанные одновременно с очисткой, могут потеряться частично. */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0L);
+        }
+        count.set(0L);
+        sum.set(0L);
+        max.set(0L);
+    }
+
+    /** @return согласованный снимок текущего состояния */
+    public Snapshot snapshot() {
+        long[] c = new long[BUCKETS];
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts.get(i);
+            total += c[i];
+        }
+        return new Snapshot(c, total, sum.get(), max.get());
+    }
+
+    /**
+     * Снимает снимок и очищает гистограмму.
+     * <p>
+     * Корзины изымаются атомарно, поэтому каждая запись, сделанная одновременно со снятием,
+     * попадает либо в этот снимок, либо в следующий. Сумма и максимум при этом могут
+     * достаться соседнему снимку.
+     *
+     * @return снимок значений, накопленных с прошлой очистки
+     */
+    public Snapshot snapshotAndReset() {
+        long[] c = new long[BUCKETS];
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts.getAndSet(i, 0L);
+            total += c[i];
+        }
+        count.addAndGet(-total);
+        return new Snapshot(c, total, sum.getAndSet(0L), max.getAndSet(0L));
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    @Override public String toString() {
+        return snapshot().toString();
+    }
+
+    /** Неизменяемый снимок гистограммы. */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0L ? 0.0 : (double) sum / (double) count;
+        }
+
+        /**
+         * Возвращает значение, не меньше которого оказались указанная доля записанных значений.
+         *
+         * @param percentile процентиль от 0 до 100
+         * @return верхняя граница корзины процентиля, но не больше максимума; 0, если значений нет
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0L) {
+                return 0L;
+            }
+            long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0.0), 100.0) / 100.0 * (double) count);
+            if (rank < 1L) {
+                rank = 1L;
+            }
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        public long getP50() {
+            return getValueAtPercentile(50.0);
+        }
+
+        public long getP99() {
+            return getValueAtPercentile(99.0);
+        }
+
+        public long getP999() {
+            return getValueAtPercentile(99.9);
+        }
+
+        @Override public String toString() {
+            return "count=" + count
+                  + " mean=" + Math.round(getMean())
+                  + " p50=" + getP50()
+                  + " p99=" + getP99()
+                  + " p999=" + getP999()
+                  + " max=" + max;
+        }
+    }
+
+}
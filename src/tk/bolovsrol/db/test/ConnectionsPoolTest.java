@@ -0,0 +1,402 @@
+package tk.bolovsrol.db.test;
+
+import tk.bolovsrol.db.pool.ConnectionAcquireTimeoutException;
+import tk.bolovsrol.db.pool.ConnectionsPool;
+import tk.bolovsrol.db.pool.MetaConnectionPoolDataSource;
+import tk.bolovsrol.utils.properties.ReadOnlyProperties;
+import tk.bolovsrol.utils.properties.sources.ReadOnlySource;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.ConnectionPoolDataSource;
+import javax.sql.PooledConnection;
+import javax.sql.StatementEventListener;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Гоняет обе реализации {@link ConnectionsPool} на поддельной базе данных, которая не ходит в сеть:
+ * <ul><li>много нитей одновременно берут и возвращают соединения, лимит соединений не нарушается,
+ * и одно физическое соединение никогда не выдаётся двум нитям сразу;</li>
+ * <li>нити, ждущие соединения, получают его строго в порядке очереди;</li>
+ * <li>не дождавшийся соединения получает {@link ConnectionAcquireTimeoutException} и уходит из очереди;</li>
+ * <li>соединение, не прошедшее проверку перед выдачей, закрывается и заменяется новым.</li></ul>
+ * <p>
+ * Аргументы: зерно генератора (по умолчанию случайное) и количество выдач на нить (по умолчанию десять тысяч).
+ */
+public class ConnectionsPoolTest {
+
+    private ConnectionsPoolTest() {
+    }
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : new Random().nextLong();
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        System.out.println("Seed " + seed + ", " + ops + " operations per thread");
+        try {
+            for (boolean concurrent : new boolean[]{false, true}) {
+                String name = concurrent ? "ConcurrentConnectionsPool" : "SynchronizedConnectionsPool";
+                testStress(concurrent, seed, ops);
+                System.out.println(name + " stress OK");
+                testFifo(concurrent);
+                System.out.println(name + " FIFO OK");
+                testAcquireTimeout(concurrent);
+                System.out.println(name + " acquire timeout OK");
+                testValidation(concurrent);
+                System.out.println(name + " validation OK");
+            }
+        } catch (Exception | AssertionError e) {
+            e.printStackTrace(System.err);
+            System.exit(1);
+        }
+    }
+
+    /** Нитей больше, чем соединений: все выдачи проходят, занятых соединений никогда не больше лимита. */
+    private static void testStress(boolean concurrent, long seed, int ops) throws Exception {
+        int maxConnections = 4;
+        int threadCount = 16;
+        FakeDataSource fds = new FakeDataSource();
+        MetaConnectionPoolDataSource mcpds = new MetaConnectionPoolDataSource(fds, "test", "fake:stress");
+        ConnectionsPool pool = createPool(concurrent, mcpds, ConnectionsPool.DB_CONNECTIONS_MAX, Integer.toString(maxConnections));
+
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger maxInUse = new AtomicInteger();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            int stripe = t;
+            Thread thread = new Thread(() -> {
+                Random random = new Random(seed + stripe);
+                try {
+                    start.await();
+                    for (int op = 0; op < ops; op++) {
+                        Connection con = mcpds.getConnection();
+                        FakePooledConnection fpc = FakeDataSource.ownerOf(con);
+                        try {
+                            if (!fpc.busy.compareAndSet(0, 1)) {
+                                throw new AssertionError("Connection " + fpc.number + " is given out twice");
+                            }
+                            int now = inUse.incrementAndGet();
+                            maxInUse.accumulateAndGet(now, Math::max);
+                            if (random.nextInt(8) == 0) {
+                                Thread.yield();
+                            }
+                            inUse.decrementAndGet();
+                            fpc.busy.set(0);
+                        } finally {
+                            con.close();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }, "ConnectionsPoolTest-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            AssertionError error = new AssertionError("Stress test failed");
+            failures.forEach(error::addSuppressed);
+            throw error;
+        }
+        check("connections in use at most", true, maxInUse.get() <= maxConnections);
+        check("open connections at most", true, pool.getOpenConnectionsCount() <= maxConnections);
+        check("all open connections are idle", pool.getOpenConnectionsCount(), pool.getIdleConnectionsCount());
+        check("physical connections opened", (long) pool.getOpenConnectionsCount(), fds.openCount());
+    }
+
+    /** Единственное соединение занято, нити встают в очередь одна за другой и получают его в том же порядке. */
+    private static void testFifo(boolean concurrent) throws Exception {
+        FakeDataSource fds = new FakeDataSource();
+        MetaConnectionPoolDataSource mcpds = new MetaConnectionPoolDataSource(fds, "test", "fake:fifo");
+        createPool(concurrent, mcpds, ConnectionsPool.DB_CONNECTIONS_MAX, "1");
+
+        Connection held = mcpds.getConnection();
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 5; t++) {
+            int number = t;
+            Thread thread = new Thread(() -> {
+                try (Connection con = mcpds.getConnection()) {
+                    order.add(number);
+                    Objects.requireNonNull(con);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }, "ConnectionsPoolTest-fifo-" + t);
+            threads.add(thread);
+            thread.start();
+            // следующая нить стартует, только когда эта уже стоит в очереди
+            awaitParked(thread);
+        }
+        held.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            AssertionError error = new AssertionError("FIFO test failed");
+            failures.forEach(error::addSuppressed);
+            throw error;
+        }
+        check("handoff order", Arrays.asList(0, 1, 2, 3, 4), order);
+        check("physical connections opened", 1L, fds.openCount());
+    }
+
+    /** Не дождавшийся соединения вылетает по таймауту, а следующий запрос после освобождения получает соединение. */
+    private static void testAcquireTimeout(boolean concurrent) throws Exception {
+        FakeDataSource fds = new FakeDataSource();
+        MetaConnectionPoolDataSource mcpds = new MetaConnectionPoolDataSource(fds, "test", "fake:timeout");
+        ConnectionsPool pool = createPool(concurrent, mcpds,
+            ConnectionsPool.DB_CONNECTIONS_MAX, "1",
+            ConnectionsPool.DB_CONNECTIONS_ACQUIRE_TIMEOUT, "100");
+
+        Connection held = mcpds.getConnection();
+        long started = System.nanoTime();
+        try {
+            mcpds.getConnection().close();
+            throw new AssertionError("Connection is acquired beyond the limit");
+        } catch (ConnectionAcquireTimeoutException ignored) {
+        }
+        long waitedMillis = (System.nanoTime() - started) / 1_000_000L;
+        check("waited for the timeout", true, waitedMillis >= 100L);
+        check("acquire timeouts", 1L, pool.getAcquireTimeoutsCount());
+
+        held.close();
+        // ушедший по таймауту не должен остаться в очереди и забрать соединение
+        try (Connection con = mcpds.getConnection()) {
+            Objects.requireNonNull(con);
+        }
+        check("physical connections opened", 1L, fds.openCount());
+    }
+
+    /** Сломавшееся, пока лежало в пуле, соединение проверка перед выдачей отбраковывает и заменяет новым. */
+    private static void testValidation(boolean concurrent) throws Exception {
+        FakeDataSource fds = new FakeDataSource();
+        MetaConnectionPoolDataSource mcpds = new MetaConnectionPoolDataSource(fds, "test", "fake:validation");
+        ConnectionsPool pool = createPool(concurrent, mcpds,
+            ConnectionsPool.DB_CONNECTIONS_MAX, "1",
+            ConnectionsPool.DB_CONNECTIONS_VALIDATION_INTERVAL, "1");
+
+        FakePooledConnection first;
+        try (Connection con = mcpds.getConnection()) {
+            first = FakeDataSource.ownerOf(con);
+        }
+        first.broken = true;
+        Thread.sleep(10L);
+
+        FakePooledConnection second;
+        try (Connection con = mcpds.getConnection()) {
+            second = FakeDataSource.ownerOf(con);
+        }
+        check("broken connection is replaced", true, first != second);
+        check("broken connection is closed", true, first.closed);
+        check("validation failures", 1L, pool.getValidationFailuresCount());
+        check("open connections", 1, pool.getOpenConnectionsCount());
+        check("physical connections opened", 1L, fds.openCount());
+    }
+
+    private static ConnectionsPool createPool(boolean concurrent, MetaConnectionPoolDataSource mcpds, String... keyValues) {
+        Map<String, String> matter = new LinkedHashMap<>();
+        matter.put(ConnectionsPool.DB_CONNECTIONS_CONCURRENT, Boolean.toString(concurrent));
+        // чистильщик не нужен, он только вносит случайность
+        matter.put(ConnectionsPool.DB_JUNKWATCHER_SLEEP, "0");
+        for (int i = 0; i < keyValues.length; i += 2) {
+            matter.put(keyValues[i], keyValues[i + 1]);
+        }
+        return ConnectionsPool.create(new ReadOnlyProperties(new MapSource(matter)), "test", Collections.singletonList(mcpds));
+    }
+
+    /** Ждёт, пока нить не уснёт в ожидании соединения. */
+    private static void awaitParked(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000L;
+        while (thread.getState() != Thread.State.WAITING) {
+            if (!thread.isAlive() || System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Thread " + thread.getName() + " did not start waiting, state " + thread.getState());
+            }
+            Thread.sleep(1L);
+        }
+    }
+
+    private static void check(String what, Object expected, Object actual) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(what + ": expected " + expected + ", got " + actual);
+        }
+    }
+
+    /** Настройки пула из карты. */
+    private static final class MapSource implements ReadOnlySource {
+        private final Map<String, String> matter;
+
+        private MapSource(Map<String, String> matter) {
+            this.matter = matter;
+        }
+
+        @Override public String expand(String localBranchKey) {
+            return localBranchKey;
+        }
+
+        @Override public String get(String key) {
+            return matter.get(key);
+        }
+
+        @Override public boolean has(String key) {
+            return matter.containsKey(key);
+        }
+
+        @Override public Map<String, String> dump() {
+            return new LinkedHashMap<>(matter);
+        }
+
+        @Override public String getIdentity(String key) {
+            return null;
+        }
+    }
+
+    /** База данных, которая открывает поддельные физические соединения и считает их. */
+    private static final class FakeDataSource implements ConnectionPoolDataSource {
+        private final List<FakePooledConnection> opened = new CopyOnWriteArrayList<>();
+
+        @Override public PooledConnection getPooledConnection() {
+            FakePooledConnection fpc = new FakePooledConnection(opened.size());
+            opened.add(fpc);
+            return fpc;
+        }
+
+        @Override public PooledConnection getPooledConnection(String user, String password) {
+            return getPooledConnection();
+        }
+
+        /** @return физическое соединение, которому принадлежит выданное пулом: обёртка пула пропускает unwrap к логическому */
+        static FakePooledConnection ownerOf(Connection con) throws SQLException {
+            return con.unwrap(FakePooledConnection.class);
+        }
+
+        /** @return сколько физических соединений открыто и не закрыто */
+        long openCount() {
+            return opened.stream().filter(fpc -> !fpc.closed).count();
+        }
+
+        @Override public PrintWriter getLogWriter() {
+            return null;
+        }
+
+        @Override public void setLogWriter(PrintWriter out) {
+        }
+
+        @Override public void setLoginTimeout(int seconds) {
+        }
+
+        @Override public int getLoginTimeout() {
+            return 0;
+        }
+
+        @Override public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+
+    /**
+     * Физическое соединение. Логическое соединение — прокси, который понимает закрытие и проверку,
+     * а на всё остальное отвечает значениями по умолчанию.
+     */
+    private static final class FakePooledConnection implements PooledConnection {
+        final int number;
+        final AtomicInteger busy = new AtomicInteger();
+        private final List<ConnectionEventListener> listeners = new CopyOnWriteArrayList<>();
+        volatile boolean broken = false;
+        volatile boolean closed = false;
+
+        private FakePooledConnection(int number) {
+            this.number = number;
+        }
+
+        @Override public Connection getConnection() throws SQLException {
+            if (closed) {
+                throw new SQLException("Physical connection " + number + " is closed");
+            }
+            boolean[] logicalClosed = {false};
+            Connection con = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close":
+                        if (!logicalClosed[0]) {
+                            logicalClosed[0] = true;
+                            for (ConnectionEventListener listener : listeners) {
+                                listener.connectionClosed(new ConnectionEvent(this));
+                            }
+                        }
+                        return null;
+                    case "isClosed":
+                        return logicalClosed[0];
+                    case "isValid":
+                        return !broken;
+                    case "isWrapperFor":
+                        return args[0] == FakePooledConnection.class;
+                    case "unwrap":
+                        return this;
+                    case "getAutoCommit":
+                        return true;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "FakeConnection-" + number;
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            });
+            return con;
+        }
+
+        @Override public void close() {
+            closed = true;
+        }
+
+        @Override public void addConnectionEventListener(ConnectionEventListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override public void removeConnectionEventListener(ConnectionEventListener listener) {
+            listeners.remove(listener);
+        }
+
+        @Override public void addStatementEventListener(StatementEventListener listener) {
+        }
+
+        @Override public void removeStatementEventListener(StatementEventListener listener) {
+        }
+
+        private static Object defaultValue(Class<?> type) {
+            if (type == boolean.class) {
+                return false;
+            } else if (type == int.class) {
+                return 0;
+            } else if (type == long.class) {
+                return 0L;
+            } else {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package tk.bolovsrol.db.test;
+
+import tk.bolovsrol.db.collections.ConcurrentLongHashMap;
+import tk.bolovsrol.db.collections.LongHashMap;
+import tk.bolovsrol.db.collections.LongHashSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Сверяет коллекции с ключами-лонгами с {@link HashMap} и {@link HashSet} на случайной последовательности операций.
+ * <p>
+ * Ключи берутся из небольшого диапазона, чтобы операции чаще попадали в существующие ключи,
+ * вперемешку с краевыми значениями и ключами, кратными степеням двойки, которые сталкиваются в одной ячейке.
+ * <p>
+ * Аргументы: зерно генератора (по умолчанию случайное) и количество операций (по умолчанию миллион).
+ */
+public class LongCollectionsTest {
+
+    private static final long[] EDGE_KEYS = {0L, -1L, 1L, Long.MIN_VALUE, Long.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE};
+
+    private LongCollectionsTest() {
+    }
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : new Random().nextLong();
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        System.out.println("Seed " + seed + ", " + ops + " operations");
+        try {
+            testLongHashMap(new Random(seed), ops);
+            System.out.println("LongHashMap OK");
+            testLongHashSet(new Random(seed), ops);
+            System.out.println("LongHashSet OK");
+            testConcurrentLongHashMap(new Random(seed), ops);
+            System.out.println("ConcurrentLongHashMap OK");
+            testConcurrentLongHashMapThreads(seed);
+            System.out.println("ConcurrentLongHashMap threads OK");
+        } catch (Exception | AssertionError e) {
+            e.printStackTrace(System.err);
+            System.exit(1);
+        }
+    }
+
+    public static long randomKey(Random random) {
+        switch (random.nextInt(8)) {
+            case 0:
+                return EDGE_KEYS[random.nextInt(EDGE_KEYS.length)];
+            case 1:
+                // одинаковые младшие биты
+                return (long) random.nextInt(64) << (16 + random.nextInt(40));
+            default:
+                return random.nextInt(2048) - 1024;
+        }
+    }
+
+    private static void testLongHashMap(Random random, int ops) {
+        LongHashMap<String> map = new LongHashMap<>();
+        Map<Long, String> ref = new HashMap<>();
+        for (int op = 0; op < ops; op++) {
+            long key = randomKey(random);
+            String value = Long.toString(random.nextInt(16));
+            switch (random.nextInt(10)) {
+                case 0:
+                case 1:
+                    check(op, "put", ref.put(key, value), map.put(key, value));
+                    break;
+                case 2:
+                    check(op, "boxed put", ref.put(key, value), map.put(Long.valueOf(key), value));
+                    break;
+                case 3:
+                    check(op, "remove", ref.remove(key), map.remove(key));
+                    break;
+                case 4:
+                    check(op, "boxed remove", ref.remove(key), map.remove(Long.valueOf(key)));
+                    break;
+                case 5:
+                    check(op, "keySet remove", ref.keySet().remove(key), map.keySet().remove(key));
+                    break;
+                case 6:
+                    check(op, "get", ref.get(key), map.get(key));
+                    check(op, "boxed get", ref.get(key), map.get(Long.valueOf(key)));
+                    break;
+                case 7:
+                    check(op, "containsKey", ref.containsKey(key), map.containsKey(key));
+                    check(op, "boxed containsKey", ref.containsKey(key), map.containsKey(Long.valueOf(key)));
+                    break;
+                case 8:
+                    Map<Long, String> forEach = new HashMap<>();
+                    map.forEachEntry(forEach::put);
+                    check(op, "forEachEntry", ref, forEach);
+                    break;
+                default:
+                    if (random.nextInt(1000) == 0) {
+                        ref.clear();
+                        map.clear();
+                    } else if (random.nextInt(100) == 0) {
+                        map = new LongHashMap<>(map);
+                    }
+                    break;
+            }
+            checkMap(op, ref, map);
+        }
+    }
+
+    private static void testLongHashSet(Random random, int ops) {
+        LongHashSet set = new LongHashSet();
+        Set<Long> ref = new HashSet<>();
+        for (int op = 0; op < ops; op++) {
+            long key = randomKey(random);
+            switch (random.nextInt(9)) {
+                case 0:
+                case 1:
+                    check(op, "add", ref.add(key), set.add(key));
+                    break;
+                case 2:
+                    check(op, "boxed add", ref.add(key), set.add(Long.valueOf(key)));
+                    break;
+                case 3:
+                    check(op, "remove", ref.remove(key), set.remove(key));
+                    break;
+                case 4:
+                    check(op, "boxed remove", ref.remove(key), set.remove(Long.valueOf(key)));
+                    break;
+                case 5:
+                    check(op, "contains", ref.contains(key), set.contains(key));
+                    check(op, "boxed contains", ref.contains(key), set.contains(Long.valueOf(key)));
+                    break;
+                case 6: {
+                    List<Long> other = randomKeys(random);
+                    check(op, "removeAll", ref.removeAll(other), set.removeAll(other));
+                    break;
+                }
+                case 7: {
+                    if (random.nextInt(20) == 0) {
+                        Set<Long> other = new HashSet<>(ref);
+                        other.removeAll(randomKeys(random));
+                        check(op, "retainAll", ref.retainAll(other), set.retainAll(other));
+                    }
+                    break;
+                }
+                default:
+                    if (random.nextInt(1000) == 0) {
+                        ref.clear();
+                        set.clear();
+                    } else if (random.nextInt(100) == 0) {
+                        set = new LongHashSet(set);
+                    }
+                    break;
+            }
+            check(op, "size", ref.size(), set.size());
+            if (op % 64 == 0) {
+                check(op, "contents", ref, new HashSet<>(set));
+                check(op, "equals", true, set.equals(ref) && ref.equals(set));
+                check(op, "hashCode", ref.hashCode(), set.hashCode());
+            }
+        }
+    }
+
+    private static void testConcurrentLongHashMap(Random random, int ops) {
+        ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>();
+        Map<Long, String> ref = new HashMap<>();
+        for (int op = 0; op < ops; op++) {
+            long key = randomKey(random);
+            String value = Long.toString(random.nextInt(16));
+            String other = Long.toString(random.nextInt(16));
+            switch (random.nextInt(12)) {
+                case 0:
+                case 1:
+                    check(op, "put", ref.put(key, value), map.put(key, value));
+                    break;
+                case 2:
+                    check(op, "putIfAbsent", ref.putIfAbsent(key, value), map.putIfAbsent(key, value));
+                    break;
+                case 3:
+                    check(op, "remove", ref.remove(key), map.remove(key));
+                    break;
+                case 4:
+                    check(op, "conditional remove", ref.remove(key, value), map.remove(key, value));
+                    break;
+                case 5:
+                    check(op, "replace", ref.replace(key, value), map.replace(key, value));
+                    break;
+                case 6:
+                    check(op, "conditional replace", ref.replace(key, value, other), map.replace(key, value, other));
+                    break;
+                case 7:
+                    check(op, "get", ref.get(key), map.get(key));
+                    check(op, "boxed get", ref.get(key), map.get(Long.valueOf(key)));
+                    check(op, "containsKey", ref.containsKey(key), map.containsKey(key));
+                    break;
+                case 8:
+                    check(op, "compute", ref.compute(key, (k, v) -> v == null ? value : null), map.compute(key, (k, v) -> v == null ? value : null));
+                    break;
+                case 9:
+                    check(op, "merge", ref.merge(key, value, String::concat), map.merge(key, value, String::concat));
+                    break;
+                case 10:
+                    if (random.nextInt(20) == 0) {
+                        ref.values().removeIf(value::equals);
+                        map.values().removeIf(value::equals);
+                    } else if (random.nextInt(20) == 0) {
+                        // hasNext() перед remove() заглядывает в следующую ячейку
+                        ref.values().removeIf(value::equals);
+                        for (Iterator<String> it = map.values().iterator(); it.hasNext(); ) {
+                            String v = it.next();
+                            it.hasNext();
+                            if (v.equals(value)) {
+                                it.remove();
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    if (random.nextInt(1000) == 0) {
+                        ref.clear();
+                        map.clear();
+                    }
+                    break;
+            }
+            checkMap(op, ref, map);
+        }
+    }
+
+    /** Нити пишут каждая в свои ключи, перемешанные по сегментам, и сверяют свою часть карты в конце. */
+    private static void testConcurrentLongHashMapThreads(long seed) throws InterruptedException {
+        int threadCount = 8;
+        ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>();
+        List<Map<Long, String>> refs = new ArrayList<>(threadCount);
+        List<Throwable> failures = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            int stripe = t;
+            Map<Long, String> ref = new HashMap<>();
+            refs.add(ref);
+            Thread thread = new Thread(() -> {
+                Random random = new Random(seed + stripe);
+                try {
+                    start.await();
+                    for (int op = 0; op < 200_000; op++) {
+                        long key = (long) random.nextInt(4096) * threadCount + stripe;
+                        String value = Long.toString(random.nextInt(16));
+                        if (random.nextInt(3) == 0) {
+                            check(op, "remove", ref.remove(key), map.remove(key));
+                        } else {
+                            check(op, "put", ref.put(key, value), map.put(key, value));
+                        }
+                        // обход по всей карте, пока её меняют другие нити
+                        if (op % 10_000 == 0) {
+                            for (Map.Entry<Long, String> entry : map.entrySet()) {
+                                Objects.requireNonNull(entry.getValue());
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }, "LongCollectionsTest-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            AssertionError error = new AssertionError("Concurrent test failed");
+            failures.forEach(error::addSuppressed);
+            throw error;
+        }
+        Map<Long, String> ref = new HashMap<>();
+        refs.forEach(ref::putAll);
+        checkMap(0, ref, map);
+    }
+
+    private static List<Long> randomKeys(Random random) {
+        int size = random.nextInt(32);
+        List<Long> keys = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            keys.add(randomKey(random));
+        }
+        return keys;
+    }
+
+    public static void checkMap(int op, Map<Long, ?> ref, Map<Long, ?> map) {
+        check(op, "size", ref.size(), map.size());
+        check(op, "isEmpty", ref.isEmpty(), map.isEmpty());
+        if (op % 64 == 0) {
+            check(op, "contents", ref, new HashMap<>(map));
+            check(op, "keySet", ref.keySet(), new HashSet<>(map.keySet()));
+            check(op, "equals", true, map.equals(ref) && ref.equals(map));
+            check(op, "hashCode", ref.hashCode(), map.hashCode());
+        }
+    }
+
+    public static void check(int op, String what, Object expected, Object actual) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError("Operation " + op + ", " + what + ": expected " + expected + ", got " + actual);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package tk.bolovsrol.db.test;
+
+import tk.bolovsrol.db.orm.versioncache.PersistentLongMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static tk.bolovsrol.db.test.LongCollectionsTest.check;
+import static tk.bolovsrol.db.test.LongCollectionsTest.checkMap;
+
+/**
+ * Сверяет {@link PersistentLongMap} с {@link HashMap} на случайной последовательности изменений,
+ * а заодно проверяет, что изменения через строитель не трогают ранее опубликованные карты.
+ * <p>
+ * Ключи и проверки общие с {@link LongCollectionsTest}.
+ * <p>
+ * Аргументы: зерно генератора (по умолчанию случайное) и количество операций (по умолчанию миллион).
+ */
+public class PersistentLongMapTest {
+
+    private PersistentLongMapTest() {
+    }
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : new Random().nextLong();
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        System.out.println("Seed " + seed + ", " + ops + " operations");
+        try {
+            testPersistentLongMap(new Random(seed), ops);
+            System.out.println("PersistentLongMap OK");
+        } catch (Exception | AssertionError e) {
+            e.printStackTrace(System.err);
+            System.exit(1);
+        }
+    }
+
+    private static void testPersistentLongMap(Random random, int ops) {
+        PersistentLongMap<String> map = PersistentLongMap.empty();
+        PersistentLongMap.Builder<String> builder = map.builder();
+        Map<Long, String> ref = new HashMap<>();
+        // содержимое последней построенной карты, строитель с тех пор мог уйти вперёд
+        Map<Long, String> builtRef = new HashMap<>();
+        // опубликованные карты и их содержимое на момент публикации
+        List<PersistentLongMap<String>> published = new ArrayList<>();
+        List<Map<Long, String>> publishedRefs = new ArrayList<>();
+        for (int op = 0; op < ops; op++) {
+            long key = LongCollectionsTest.randomKey(random);
+            String value = Long.toString(random.nextInt(16));
+            switch (random.nextInt(8)) {
+                case 0:
+                case 1:
+                case 2:
+                    builder.put(key, value);
+                    ref.put(key, value);
+                    break;
+                case 3:
+                case 4:
+                    builder.remove(key);
+                    ref.remove(key);
+                    break;
+                case 5:
+                    check(op, "get", builtRef.get(key), map.get(key));
+                    check(op, "boxed get", builtRef.get(key), map.get(Long.valueOf(key)));
+                    check(op, "containsKey", builtRef.containsKey(key), map.containsKey(key));
+                    break;
+                default:
+                    if (random.nextInt(32) != 0) {
+                        break;
+                    }
+                    map = builder.build();
+                    builtRef = new HashMap<>(ref);
+                    checkMap(op, ref, map);
+                    if (random.nextInt(16) == 0) {
+                        published.add(map);
+                        publishedRefs.add(new HashMap<>(ref));
+                    }
+                    if (random.nextInt(16) == 0) {
+                        // новый строитель от опубликованной карты тоже не должен её трогать
+                        builder = map.builder();
+                    }
+                    if (random.nextInt(500) == 0) {
+                        map = PersistentLongMap.empty();
+                        builder = map.builder();
+                        ref.clear();
+                        builtRef.clear();
+                    }
+                    break;
+            }
+        }
+        map = builder.build();
+        checkMap(0, ref, map);
+        for (int i = 0; i < published.size(); i++) {
+            checkMap(0, publishedRefs.get(i), published.get(i));
+        }
+        try {
+            map.put(1L, "1");
+            throw new AssertionError("PersistentLongMap accepted put");
+        } catch (UnsupportedOperationException ignored) {
+        }
+    }
+}
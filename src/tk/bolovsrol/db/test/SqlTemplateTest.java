@@ -0,0 +1,191 @@
+package tk.bolovsrol.db.test;
+
+import tk.bolovsrol.db.DatabaseProductNames;
+import tk.bolovsrol.db.orm.containers.DbLong;
+import tk.bolovsrol.db.orm.containers.DbString;
+import tk.bolovsrol.db.orm.fields.LongDbField;
+import tk.bolovsrol.db.orm.fields.StringDbField;
+import tk.bolovsrol.db.orm.object.AbstractRefDbDataObject;
+import tk.bolovsrol.db.orm.sql.statements.CompilableSqlStatement;
+import tk.bolovsrol.db.orm.sql.statements.delete.Delete;
+import tk.bolovsrol.db.orm.sql.statements.select.Browser;
+import tk.bolovsrol.db.orm.sql.statements.select.Select;
+import tk.bolovsrol.db.orm.sql.statements.update.Update;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Сверяет исполнение скомпилированных выражений {@link Select}, {@link Update} и {@link Delete}
+ * с исполнением тех же выражений, генерируемых заново: на поддельном соединении оба пути должны
+ * подготовить одинаковый текст и вызвать у {@link PreparedStatement} одни и те же сеттеры
+ * с одними и теми же аргументами в одном и том же порядке. Между прогонами значения параметров меняются,
+ * так что проверяется и то, что шаблон подхватывает текущие значения условий и колонок.
+ * <p>
+ * Аргументы: зерно генератора (по умолчанию случайное) и количество прогонов (по умолчанию тысяча).
+ */
+public class SqlTemplateTest {
+
+    private SqlTemplateTest() {
+    }
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : new Random().nextLong();
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        System.out.println("Seed " + seed + ", " + rounds + " rounds");
+        try {
+            Random rnd = new Random(seed);
+            TestDbdo dbdo = new TestDbdo();
+            DbLong amount = new DbLong();
+            DbString name = new DbString();
+
+            compare("Select", rnd, rounds, dbdo, amount, name,
+                () -> Select.from(dbdo)
+                    .columns(dbdo)
+                    .where(dbdo.id.gtSelf(), dbdo.name.eqValue(name), dbdo.amount.gt(0L))
+                    .orderBy(dbdo.id)
+                    .limit(10),
+                (s, con) -> {
+                    try (Browser browser = s.browse(con)) {
+                        browser.next();
+                    }
+                });
+            System.out.println("Select OK");
+
+            compare("Update", rnd, rounds, dbdo, amount, name,
+                () -> new Update(dbdo)
+                    .set(dbdo.name, "fixed")
+                    .column(dbdo.amount.withValue(amount))
+                    .where(dbdo.id.eqSelf(), dbdo.name.neValue(name)),
+                Update::execute);
+            System.out.println("Update OK");
+
+            compare("Delete", rnd, rounds, dbdo, amount, name,
+                () -> new Delete(dbdo)
+                    .where(dbdo.id.eqSelf(), dbdo.amount.geValue(amount), dbdo.name.eq("fixed")),
+                Delete::execute);
+            System.out.println("Delete OK");
+        } catch (Exception | AssertionError e) {
+            e.printStackTrace(System.err);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Каждый прогон задаёт новые значения параметров, исполняет свежее нескомпилированное выражение
+     * и однажды скомпилированное и сравнивает записанные вызовы.
+     */
+    private static <S extends CompilableSqlStatement> void compare(String what, Random rnd, int rounds,
+                                                                    TestDbdo dbdo, DbLong amount, DbString name,
+                                                                    Supplier<S> factory, Execution<S> execution) throws Exception {
+        S compiled = factory.get();
+        compiled.compile(new RecordingConnection().connection);
+        for (int round = 0; round < rounds; round++) {
+            dbdo.id.setValue(rnd.nextLong());
+            dbdo.name.setValue(Long.toString(rnd.nextLong(), 36));
+            dbdo.amount.setValue((long) rnd.nextInt());
+            amount.setValue(rnd.nextLong());
+            name.setValue(Long.toString(rnd.nextLong(), 36));
+
+            RecordingConnection plainCon = new RecordingConnection();
+            execution.execute(factory.get(), plainCon.connection);
+            RecordingConnection compiledCon = new RecordingConnection();
+            execution.execute(compiled, compiledCon.connection);
+
+            check(what + " round " + round + " SQL", plainCon.sql, compiledCon.sql);
+            check(what + " round " + round + " setters", plainCon.calls, compiledCon.calls);
+            if (plainCon.calls.isEmpty()) {
+                throw new AssertionError(what + " round " + round + ": no parameters were set, nothing compared");
+            }
+        }
+        if (compiled.getTemplate() == null) {
+            throw new AssertionError(what + ": template was dropped while executing");
+        }
+    }
+
+    @FunctionalInterface
+    private interface Execution<S> {
+        void execute(S statement, Connection con) throws Exception;
+    }
+
+    private static void check(String what, Object expected, Object actual) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(what + ": expected " + expected + ", got " + actual);
+        }
+    }
+
+    /** Таблица, на которой строятся выражения. */
+    private static final class TestDbdo extends AbstractRefDbDataObject {
+        final StringDbField name = new StringDbField(this, "name");
+        final LongDbField amount = new LongDbField(this, "amount");
+
+        private TestDbdo() {
+            super("test", "sql_template_test");
+        }
+    }
+
+    /**
+     * Поддельное соединение с MySQL. Записывает тексты подготовленных выражений
+     * и вызовы сеттеров у выражений вместе с аргументами; на всё остальное отвечает значениями по умолчанию.
+     */
+    private static final class RecordingConnection {
+        final List<String> sql = new ArrayList<>();
+        final List<String> calls = new ArrayList<>();
+        final Connection connection = proxy(Connection.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getMetaData":
+                    return proxy(DatabaseMetaData.class, (p, m, a) ->
+                        m.getName().equals("getDatabaseProductName") ? DatabaseProductNames.MYSQL : defaultValue(m.getReturnType()));
+                case "prepareStatement":
+                    sql.add((String) args[0]);
+                    return recordingStatement();
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+
+        private PreparedStatement recordingStatement() {
+            return proxy(PreparedStatement.class, (proxy, method, args) -> {
+                if (method.getName().startsWith("set")) {
+                    calls.add(method.getName() + Arrays.deepToString(args));
+                    return null;
+                }
+                switch (method.getName()) {
+                    case "executeUpdate":
+                        return 1;
+                    case "executeQuery":
+                        return proxy(ResultSet.class, (p, m, a) -> defaultValue(m.getReturnType()));
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+        }
+
+        private static Object defaultValue(Class<?> type) {
+            if (type == boolean.class) {
+                return false;
+            } else if (type == int.class) {
+                return 0;
+            } else if (type == long.class) {
+                return 0L;
+            } else {
+                return null;
+            }
+        }
+    }
+}